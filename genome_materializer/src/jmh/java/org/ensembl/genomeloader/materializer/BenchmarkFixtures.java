@@ -0,0 +1,82 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.ensembl.genomeloader.materializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.ensembl.genomeloader.metadata.GenomeMetaData;
+import org.ensembl.genomeloader.metadata.GenomicComponentMetaData;
+import org.ensembl.genomeloader.model.GenomicComponent;
+import org.ensembl.genomeloader.model.impl.GenomeImpl;
+import org.ensembl.genomeloader.util.InputOutputUtils;
+import org.ensembl.genomeloader.xrefregistry.impl.XmlDatabaseReferenceTypeRegistry;
+
+/**
+ * Access to the ENA entries bundled with the tests for use by benchmarks
+ */
+public class BenchmarkFixtures {
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * @param accession
+     *            accession of a bundled entry e.g. U00096
+     * @return open stream for the entry XML
+     * @throws IOException
+     */
+    public static InputStream openEntry(String accession) throws IOException {
+        return InputOutputUtils.openGzippedClasspathResource("/" + accession + ".xml.gz");
+    }
+
+    public static EnaParser createParser() {
+        return new EnaParser(null, new XmlDatabaseReferenceTypeRegistry());
+    }
+
+    /**
+     * Parse a bundled entry into a component
+     * 
+     * @param parser
+     * @param accession
+     * @return parsed component
+     * @throws IOException
+     */
+    public static GenomicComponent parseComponent(EnaParser parser, String accession) throws IOException {
+        try (InputStream is = openEntry(accession)) {
+            return parser.parse(new GenomicComponentMetaData(accession, new GenomeMetaData("1", "", 0)), is);
+        }
+    }
+
+    /**
+     * Build a genome containing the supplied bundled entries
+     * 
+     * @param accessions
+     * @return genome
+     * @throws IOException
+     */
+    public static GenomeImpl buildGenome(String... accessions) throws IOException {
+        EnaParser parser = createParser();
+        GenomeImpl genome = new GenomeImpl(new GenomeMetaData("1", "", 0));
+        for (String accession : accessions) {
+            genome.addGenomicComponent(parseComponent(parser, accession));
+        }
+        return genome;
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.ensembl.genomeloader.materializer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.ensembl.genomeloader.model.Genome;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmark for writing a parsed genome as JSON with
+ * {@link DumpGenome#dumpGenomeJson(Genome, File)}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DumpGenomeBenchmark {
+
+    private Genome genome;
+    private DumpGenome dumper;
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        genome = BenchmarkFixtures.buildGenome("AP001918", "U00096");
+        dumper = new DumpGenome(null, null);
+        file = File.createTempFile("dump_genome_benchmark", ".json");
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public File dumpGenomeJson() {
+        dumper.dumpGenomeJson(genome, file);
+        return file;
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.ensembl.genomeloader.materializer;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.ensembl.genomeloader.model.GenomicComponent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark for parsing a complete ENA entry with {@link EnaParser}, reusing
+ * the parser between entries as the materializer does
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EnaParserBenchmark {
+
+    @Param({ "AP001918", "U00096" })
+    public String accession;
+
+    private EnaParser parser;
+
+    @Setup
+    public void setUp() {
+        parser = BenchmarkFixtures.createParser();
+    }
+
+    @Benchmark
+    public GenomicComponent parse() throws IOException {
+        return BenchmarkFixtures.parseComponent(parser, accession);
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.ensembl.genomeloader.model;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.biojava.bio.seq.RNATools;
+import org.biojava.bio.symbol.TranslationTable;
+import org.ensembl.genomeloader.materializer.BenchmarkFixtures;
+import org.ensembl.genomeloader.model.sequence.SequenceUtils;
+import org.ensembl.genomeloader.util.collections.CollectionUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for translation and overlap resolution of the coding sequences
+ * from U00096. Each operation processes every translatable protein.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CdsBenchmark {
+
+    private GenomicComponent component;
+    private TranslationTable table;
+    private final List<EntityLocation> locations = CollectionUtils.createArrayList();
+
+    @Setup
+    public void setUp() throws IOException {
+        component = BenchmarkFixtures.parseComponent(BenchmarkFixtures.createParser(), "U00096");
+        table = RNATools.getGeneticCode(component.getMetaData().getGeneticCode());
+        for (Gene gene : component.getGenes()) {
+            for (Protein protein : gene.getProteins()) {
+                if (!protein.isPseudo() && protein.getCodonStart() <= 1
+                        && ModelUtils.getEntityLocationLength(protein.getLocation()) % 3 == 0) {
+                    locations.add(protein.getLocation());
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void getTranslatedSequence(Blackhole bh) {
+        for (EntityLocation loc : locations) {
+            bh.consume(SequenceUtils.getTranslatedSequence(component.getSequence(), loc, table));
+        }
+    }
+
+    @Benchmark
+    public void resolveOverlap(Blackhole bh) {
+        for (EntityLocation loc : locations) {
+            bh.consume(ModelUtils.resolveOverlap(component, loc));
+        }
+    }
+
+}
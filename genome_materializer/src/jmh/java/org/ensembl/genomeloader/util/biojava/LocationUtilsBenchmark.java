@@ -0,0 +1,89 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.ensembl.genomeloader.util.biojava;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.biojavax.bio.seq.RichLocation;
+import org.ensembl.genomeloader.materializer.BenchmarkFixtures;
+import org.ensembl.genomeloader.model.Gene;
+import org.ensembl.genomeloader.model.GenomicComponent;
+import org.ensembl.genomeloader.model.Protein;
+import org.ensembl.genomeloader.util.collections.CollectionUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for location handling in {@link LocationUtils}, using the
+ * protein locations from U00096. Each operation processes every location.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LocationUtilsBenchmark {
+
+    private static final int LOCAL_LENGTH = 30;
+
+    private final List<String> locationStrings = CollectionUtils.createArrayList();
+    private final List<RichLocation> locations = CollectionUtils.createArrayList();
+    private RichLocation localLocation;
+
+    @Setup
+    public void setUp() throws IOException {
+        GenomicComponent component = BenchmarkFixtures.parseComponent(BenchmarkFixtures.createParser(), "U00096");
+        for (Gene gene : component.getGenes()) {
+            for (Protein protein : gene.getProteins()) {
+                if (LocationUtils.getLocationLength(protein.getLocation()) >= LOCAL_LENGTH) {
+                    locationStrings.add(LocationUtils.locationToEmblFormat(protein.getLocation()));
+                    locations.add(protein.getLocation());
+                }
+            }
+        }
+        localLocation = LocationUtils.parseEmblLocation("4.." + LOCAL_LENGTH);
+    }
+
+    @Benchmark
+    public void parseEmblLocation(Blackhole bh) {
+        for (String locStr : locationStrings) {
+            bh.consume(LocationUtils.parseEmblLocation(locStr));
+        }
+    }
+
+    @Benchmark
+    public void flatten(Blackhole bh) {
+        for (RichLocation loc : locations) {
+            bh.consume(LocationUtils.flatten(loc));
+        }
+    }
+
+    @Benchmark
+    public void getGlobalLocation(Blackhole bh) {
+        for (RichLocation loc : locations) {
+            bh.consume(LocationUtils.getGlobalLocation(loc, localLocation));
+        }
+    }
+
+}
@@ -11,6 +11,7 @@ import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.MissingOptionException;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.biojavax.bio.seq.RichLocation;
@@ -24,6 +25,8 @@ import org.ensembl.genomeloader.model.DatabaseReference;
 import org.ensembl.genomeloader.model.EntityLocation;
 import org.ensembl.genomeloader.model.GeneName;
 import org.ensembl.genomeloader.model.Genome;
+import org.ensembl.genomeloader.model.sequence.Sequence;
+import org.ensembl.genomeloader.model.sequence.SequenceStore;
 import org.ensembl.genomeloader.services.sql.SqlService;
 import org.ensembl.genomeloader.services.sql.impl.LocalSqlService;
 import org.ensembl.genomeloader.validator.EnaGenomeValidator;
@@ -79,45 +82,132 @@ public class DumpGenome {
     Log log = LogFactory.getLog(this.getClass());
     private final EnaGenomeConfig config;
     private final SqlService srv;
+    private final MaterializerMetrics metrics = new MaterializerMetrics();
+    private SequenceStore sequenceStore;
 
     public DumpGenome(EnaGenomeConfig config, SqlService srv) {
         this.config = config;
         this.srv = srv;
     }
 
+    /**
+     * @return costs of each stage of materializing and dumping genomes with
+     *         this instance
+     */
+    public MaterializerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Materialize a genome and write it to a JSON file, with a report of the
+     * cost of each stage alongside (see
+     * {@link MaterializerMetrics#getReportFile(File)})
+     */
     public void dumpGenome(String setChain, String file) {
-        Genome genome = materializeGenome(setChain);
-        dumpGenomeJson(genome, new File(file));
+        try {
+            dumpGenomeJson(materializeGenome(setChain), new File(file));
+        } finally {
+            closeSequenceStore();
+        }
+        File reportFile = MaterializerMetrics.getReportFile(new File(file));
+        log.info("Writing metrics for " + setChain + " to " + reportFile.getPath());
+        try {
+            metrics.writeReport(reportFile);
+        } catch (IOException e) {
+            throw new GenomeDumpException("Could not write metrics for " + setChain + " to " + reportFile.getPath(),
+                    e);
+        }
     }
 
     public Genome materializeGenome(String setChain) {
         log.info("Retrieving metadata for " + setChain);
+        MaterializerMetrics.Timer timer = metrics.start(MaterializerMetrics.METADATA, setChain);
         GenomeCollections gc = new OracleGenomeCollections(config, srv);
         GenomeMetaData genomeMetaData = gc.getGenomeForSetChain(setChain);
         if (genomeMetaData == null) {
             throw new MaterializationUncheckedException("Could not find assembly for " + setChain);
         }
+        timer.stop();
         log.info("Retrieved metadata for " + setChain);
         return materializeGenome(genomeMetaData);
     }
 
     public Genome materializeGenome(GenomeMetaData genomeMetaData) {
-        EnaXmlRetriever retriever = new EnaXmlRetriever(
-                new FileLockExecutor(config.getLockFileDir(), config.getMaxEnaConnections()), config.getEnaEntryUrl());
-        EnaGenomeMaterializer matfer = new EnaGenomeMaterializer(config.getEnaEntryUrl(),
-                new EnaParser(retriever, new XmlDatabaseReferenceTypeRegistry()), new EnaGenomeProcessor(config, srv),
-                new EnaGenomeValidator(config));
-        log.info("Dumping data for " + genomeMetaData.getId());
-        Genome genome = matfer.getGenome(genomeMetaData);
-        log.info("Processing genome for " + genomeMetaData.getId());
-        matfer.processGenome(genome);
-        log.info("Validating genome for " + genomeMetaData.getId());
-        matfer.validateGenome(genome);
-        return genome;
+        EnaEntryCache cache = null;
+        if (!StringUtils.isEmpty(config.getEnaCacheDir())) {
+            cache = new EnaEntryCache(new File(config.getEnaCacheDir()), config.getEnaCacheMaxMb() * 1024 * 1024);
+        }
+        FileLockExecutor executor = new FileLockExecutor(config.getLockFileDir(), config.getMaxEnaConnections());
+        executor.setMetrics(metrics);
+        try (EnaXmlRetriever retriever = new EnaXmlRetriever(executor, config.getEnaEntryUrl(), cache)) {
+            retriever.setMetrics(metrics);
+            retriever.setMaxConnections(config.getMaxEnaConnections());
+            if (config.getWgsDecoderThreads() > 0) {
+                retriever.setWgsDecoderThreads(config.getWgsDecoderThreads());
+            }
+            retriever.setWgsFlatFile(config.isWgsFlatFileParsing());
+            EnaGenomeProcessor processor = new EnaGenomeProcessor(config, srv, retriever);
+            processor.setMetrics(metrics);
+            EnaGenomeValidator validator = new EnaGenomeValidator(config);
+            validator.setMetrics(metrics);
+            EnaGenomeMaterializer matfer = new EnaGenomeMaterializer(config.getEnaEntryUrl(),
+                    getParser(retriever), processor, validator, config.getComponentThreads());
+            matfer.setMetrics(metrics);
+            log.info("Dumping data for " + genomeMetaData.getId());
+            MaterializerMetrics.Timer timer = metrics.start(MaterializerMetrics.GENOME, "getGenome");
+            Genome genome = matfer.getGenome(genomeMetaData);
+            timer.getStage().setCounts(genome.getGenomicComponents());
+            timer.stop();
+            log.info("Processing genome for " + genomeMetaData.getId());
+            timer = metrics.start(MaterializerMetrics.GENOME, "processGenome");
+            matfer.processGenome(genome);
+            timer.getStage().setCounts(genome.getGenomicComponents());
+            timer.stop();
+            if (cache != null) {
+                log.info(cache.getReport());
+            }
+            log.info(executor.getReport());
+            log.info("Validating genome for " + genomeMetaData.getId());
+            timer = metrics.start(MaterializerMetrics.GENOME, "validateGenome");
+            matfer.validateGenome(genome);
+            timer.getStage().setCounts(genome.getGenomicComponents());
+            timer.stop();
+            return genome;
+        }
     }
 
-    public void dumpGenomeJson(Genome genome, File file) {
-        log.info("Writing json for " + genome.getIdString() + " to " + file.getPath());
+    protected EnaParser getParser(EnaXmlRetriever retriever) {
+        EnaParser parser = new EnaParser(retriever, new XmlDatabaseReferenceTypeRegistry());
+        if (!StringUtils.isEmpty(config.getSequenceStoreDir())) {
+            // sequences are read back when processed and dumped, so the store
+            // is kept until the genome is written
+            if (sequenceStore == null) {
+                try {
+                    File f = File.createTempFile("sequences", ".seq", new File(config.getSequenceStoreDir()));
+                    f.deleteOnExit();
+                    sequenceStore = new SequenceStore(f);
+                } catch (IOException e) {
+                    throw new MaterializationUncheckedException(
+                            "Could not create sequence store in " + config.getSequenceStoreDir(), e);
+                }
+            }
+            parser.setSequenceStore(sequenceStore);
+        }
+        return parser;
+    }
+
+    private void closeSequenceStore() {
+        if (sequenceStore != null) {
+            try {
+                sequenceStore.close();
+            } catch (IOException e) {
+                log.warn("Could not close sequence store " + sequenceStore.getFile().getPath(), e);
+            }
+            sequenceStore = null;
+        }
+    }
+
+    public static ObjectMapper createObjectMapper() {
         ObjectMapper mapper = new ObjectMapper();
         mapper.setSerializationInclusion(Include.NON_EMPTY);
         SimpleModule simpleModule = new SimpleModule("SimpleModule", new Version(1, 0, 0, null, null, null));
@@ -126,14 +216,23 @@ public class DumpGenome {
         simpleModule.addSerializer(DatabaseReference.class, new DatabaseReferenceSerializer());
         simpleModule.addSerializer(Date.class, new DateSerializer());
         simpleModule.addSerializer(GeneName.class, new GeneNameSerializer());
+        simpleModule.addSerializer(Sequence.class, new SequenceSerializer());
         mapper.registerModule(simpleModule);
+        return mapper;
+    }
+
+    public void dumpGenomeJson(Genome genome, File file) {
+        log.info("Writing json for " + genome.getIdString() + " to " + file.getPath());
+        MaterializerMetrics.Timer timer = metrics.start(MaterializerMetrics.DUMP, file.getName());
+        timer.getStage().setCounts(genome.getGenomicComponents());
         try {
-            mapper.writeValue(file, genome);
+            createObjectMapper().writeValue(file, genome);
             log.info("Completed writing json for " + genome.getIdString());
         } catch (IOException e) {
             throw new GenomeDumpException("Could not write JSON for " + genome.getIdString() + " to " + file.getPath(),
                     e);
         }
+        timer.stop();
     }
 
 }
@@ -0,0 +1,219 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.genomeloader.materializer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ensembl.genomeloader.materializer.EnaXmlRetriever.CheckedConsumer;
+
+/**
+ * Persistent on-disk cache of ENA entries shared between materializer runs.
+ * Entries are stored as files named by a key which must include the entry
+ * version (e.g. <code>U00096.3.xml</code>) so that a cached entry is never
+ * served for a newer version.
+ * <p/>
+ * Several processes may share a cache directory: population of an entry is
+ * guarded by a file lock per key so that only one process downloads it, and
+ * entries are written to a temporary file and moved into place so that a
+ * partially written entry is never visible. When the total size of the cache
+ * exceeds the configured maximum, the least recently used entries are deleted.
+ */
+public class EnaEntryCache {
+
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String EVICT_LOCK = ".evict" + LOCK_SUFFIX;
+
+    private final File dir;
+    private final long maxBytes;
+    private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private Log log;
+
+    /**
+     * @param dir
+     *            directory to store entries in
+     * @param maxBytes
+     *            maximum total size of cached entries
+     */
+    public EnaEntryCache(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        dir.mkdirs();
+        if (!dir.isDirectory()) {
+            throw new EnaParsingException("Could not create ENA cache directory " + dir.getPath());
+        }
+    }
+
+    private Log getLog() {
+        if (log == null) {
+            log = LogFactory.getLog(EnaEntryCache.class);
+        }
+        return log;
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    /**
+     * Retrieve an entry from the cache, populating it if needed
+     *
+     * @param key
+     *            file name for the entry, including its version
+     * @param loader
+     *            writes the entry to the supplied file if it is not cached
+     * @return cached file
+     * @throws IOException
+     */
+    public File getEntry(String key, CheckedConsumer<File> loader) throws IOException {
+        File f = new File(dir, key);
+        if (hit(f)) {
+            return f;
+        }
+        Object lock = locks.computeIfAbsent(key, k -> new Object());
+        synchronized (lock) {
+            File lockFile = new File(dir, key + LOCK_SUFFIX);
+            try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE); FileLock fileLock = channel.lock()) {
+                try {
+                    // another thread or process may have populated the entry
+                    // whilst we were waiting
+                    if (hit(f)) {
+                        return f;
+                    }
+                    misses.incrementAndGet();
+                    getLog().debug("Cache miss for " + key);
+                    File tmp = File.createTempFile(key + ".", TMP_SUFFIX, dir);
+                    try {
+                        loader.consume(tmp);
+                        if (tmp.length() == 0) {
+                            throw new IOException("No data retrieved for " + key);
+                        }
+                        Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                                StandardCopyOption.REPLACE_EXISTING);
+                    } finally {
+                        tmp.delete();
+                    }
+                } finally {
+                    // remove the lock file whilst still holding the lock so
+                    // that lock files do not build up. A process already
+                    // waiting on the old file may then populate the entry at
+                    // the same time as one using a new lock file, which at
+                    // worst retrieves it twice as the move is atomic
+                    lockFile.delete();
+                }
+            }
+        }
+        evict(f);
+        return f;
+    }
+
+    private boolean hit(File f) {
+        if (f.exists()) {
+            // touch to record use for LRU eviction
+            f.setLastModified(System.currentTimeMillis());
+            hits.incrementAndGet();
+            getLog().debug("Cache hit for " + f.getName());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Remove least recently used entries until the cache is within its size
+     * limit. Only one process evicts at a time, others skip eviction.
+     *
+     * @param keep
+     *            entry that should not be removed
+     * @throws IOException
+     */
+    protected void evict(File keep) throws IOException {
+        try (FileChannel channel = FileChannel.open(new File(dir, EVICT_LOCK).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE); FileLock fileLock = channel.tryLock()) {
+            if (fileLock == null) {
+                return;
+            }
+            File[] entries = dir.listFiles(f -> f.isFile() && !f.getName().endsWith(LOCK_SUFFIX)
+                    && !f.getName().endsWith(TMP_SUFFIX));
+            if (entries == null) {
+                return;
+            }
+            long size = 0;
+            for (File f : entries) {
+                size += f.length();
+            }
+            if (size <= maxBytes) {
+                return;
+            }
+            Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+            for (File f : entries) {
+                if (size <= maxBytes) {
+                    break;
+                }
+                if (f.equals(keep)) {
+                    continue;
+                }
+                long len = f.length();
+                if (f.delete()) {
+                    getLog().debug("Evicted " + f.getName() + " from cache");
+                    size -= len;
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return summary of cache use for logging
+     */
+    public String getReport() {
+        long h = hits.get();
+        long m = misses.get();
+        long total = h + m;
+        return String.format("ENA cache %s: %d hits, %d misses (%.1f%% hit rate), %d evictions", dir.getPath(), h, m,
+                total == 0 ? 0.0 : 100.0 * h / total, evictions.get());
+    }
+
+}
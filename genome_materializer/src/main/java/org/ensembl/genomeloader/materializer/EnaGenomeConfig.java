@@ -115,6 +115,20 @@ public class EnaGenomeConfig {
     private int minGeneCount = 50;
     private boolean allowMixedCoordSystems = true;
     private boolean skipBrokenLocations = false;
+    private int componentThreads = 1;
+    private int processorThreads = 1;
+    private int wgsDecoderThreads = 0;
+    private boolean wgsFlatFileParsing = false;
+    private int upiBatchSize = 500;
+    private int conXrefBatchSize = 500;
+    private int rfamBatchSize = 1000;
+    private int interproBatchSize = 500;
+    private int interproBatchesInFlight = 2;
+    private int interproFetchSize = 1000;
+    private String enaCacheDir;
+    private long enaCacheMaxMb = 20000;
+    private String sequenceStoreDir;
+    private String metadataSnapshotDir;
 
 	public String getEnaEntryUrl() {
 		return enaEntryUrl;
@@ -292,4 +306,116 @@ public class EnaGenomeConfig {
         this.skipBrokenLocations = skipBrokenLocations;
     }
 
+    public int getComponentThreads() {
+        return componentThreads;
+    }
+
+    public void setComponentThreads(int componentThreads) {
+        this.componentThreads = componentThreads;
+    }
+
+    public int getProcessorThreads() {
+        return processorThreads;
+    }
+
+    public void setProcessorThreads(int processorThreads) {
+        this.processorThreads = processorThreads;
+    }
+
+    public int getUpiBatchSize() {
+        return upiBatchSize;
+    }
+
+    public void setUpiBatchSize(int upiBatchSize) {
+        this.upiBatchSize = upiBatchSize;
+    }
+
+    public int getConXrefBatchSize() {
+        return conXrefBatchSize;
+    }
+
+    public void setConXrefBatchSize(int conXrefBatchSize) {
+        this.conXrefBatchSize = conXrefBatchSize;
+    }
+
+    public int getRfamBatchSize() {
+        return rfamBatchSize;
+    }
+
+    public void setRfamBatchSize(int rfamBatchSize) {
+        this.rfamBatchSize = rfamBatchSize;
+    }
+
+    public int getInterproBatchSize() {
+        return interproBatchSize;
+    }
+
+    public void setInterproBatchSize(int interproBatchSize) {
+        this.interproBatchSize = interproBatchSize;
+    }
+
+    public int getInterproBatchesInFlight() {
+        return interproBatchesInFlight;
+    }
+
+    public void setInterproBatchesInFlight(int interproBatchesInFlight) {
+        this.interproBatchesInFlight = interproBatchesInFlight;
+    }
+
+    public int getInterproFetchSize() {
+        return interproFetchSize;
+    }
+
+    public void setInterproFetchSize(int interproFetchSize) {
+        this.interproFetchSize = interproFetchSize;
+    }
+
+    public String getEnaCacheDir() {
+        return enaCacheDir;
+    }
+
+    public void setEnaCacheDir(String enaCacheDir) {
+        this.enaCacheDir = enaCacheDir;
+    }
+
+    public long getEnaCacheMaxMb() {
+        return enaCacheMaxMb;
+    }
+
+    public void setEnaCacheMaxMb(long enaCacheMaxMb) {
+        this.enaCacheMaxMb = enaCacheMaxMb;
+    }
+
+    public int getWgsDecoderThreads() {
+        return wgsDecoderThreads;
+    }
+
+    public void setWgsDecoderThreads(int wgsDecoderThreads) {
+        this.wgsDecoderThreads = wgsDecoderThreads;
+    }
+
+    public boolean isWgsFlatFileParsing() {
+        return wgsFlatFileParsing;
+    }
+
+    public void setWgsFlatFileParsing(boolean wgsFlatFileParsing) {
+        this.wgsFlatFileParsing = wgsFlatFileParsing;
+    }
+
+    public String getSequenceStoreDir() {
+        return sequenceStoreDir;
+    }
+
+    public void setSequenceStoreDir(String sequenceStoreDir) {
+        this.sequenceStoreDir = sequenceStoreDir;
+    }
+
+    public String getMetadataSnapshotDir() {
+        return metadataSnapshotDir;
+    }
+
+    public void setMetadataSnapshotDir(String metadataSnapshotDir) {
+        this.metadataSnapshotDir = metadataSnapshotDir;
+    }
+
 }
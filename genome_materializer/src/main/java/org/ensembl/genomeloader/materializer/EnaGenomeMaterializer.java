@@ -21,8 +21,16 @@ import java.net.URL;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -35,6 +43,7 @@ import org.ensembl.genomeloader.model.Genome;
 import org.ensembl.genomeloader.model.GenomicComponent;
 import org.ensembl.genomeloader.model.impl.GenomeImpl;
 import org.ensembl.genomeloader.util.collections.CollectionUtils;
+import org.ensembl.genomeloader.util.concurrency.ConcurrencyUtils;
 import org.ensembl.genomeloader.util.templating.TemplateBuilder;
 import org.ensembl.genomeloader.validator.EnaGenomeValidator;
 import org.ensembl.genomeloader.validator.GenomeValidationException;
@@ -51,10 +60,20 @@ public class EnaGenomeMaterializer {
     public final static DateFormat ENA_DATEFORMAT = new SimpleDateFormat("yyyy-MM-dd");
 
     public static Date parseEnaDate(String dateStr) {
-        try {
-            return ENA_DATEFORMAT.parse(dateStr);
-        } catch (ParseException e) {
-            throw new EnaParsingException("Could not parse date " + dateStr, e);
+        // SimpleDateFormat is not thread-safe and components may be parsed
+        // concurrently
+        synchronized (ENA_DATEFORMAT) {
+            try {
+                return ENA_DATEFORMAT.parse(dateStr);
+            } catch (ParseException e) {
+                throw new EnaParsingException("Could not parse date " + dateStr, e);
+            }
+        }
+    }
+
+    public static String formatEnaDate(Date date) {
+        synchronized (ENA_DATEFORMAT) {
+            return ENA_DATEFORMAT.format(date);
         }
     }
 
@@ -62,18 +81,46 @@ public class EnaGenomeMaterializer {
     private final EnaParser parser;
     private final GenomeProcessor processor;
     private final GenomeValidator validator;
+    private final int threads;
+    private MaterializerMetrics metrics;
 
     public EnaGenomeMaterializer(String enaFlatfileLoc, EnaParser parser) {
         this.enaFlatfileLoc = enaFlatfileLoc;
         this.parser = parser;
         this.processor = null;
         this.validator = null;
+        this.threads = 1;
     }
+
     public EnaGenomeMaterializer(String enaFlatfileLoc, EnaParser parser, EnaGenomeProcessor processor, EnaGenomeValidator validator) {
+        this(enaFlatfileLoc, parser, processor, validator, 1);
+    }
+
+    /**
+     * @param threads
+     *            number of worker threads used to retrieve and parse
+     *            components (1 or less parses components sequentially)
+     */
+    public EnaGenomeMaterializer(String enaFlatfileLoc, EnaParser parser, EnaGenomeProcessor processor,
+            EnaGenomeValidator validator, int threads) {
         this.enaFlatfileLoc = enaFlatfileLoc;
         this.parser = parser;
         this.processor = processor;
         this.validator = validator;
+        this.threads = threads;
+    }
+
+    public MaterializerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param metrics
+     *            metrics to add a stage to for each component retrieved (may
+     *            be null)
+     */
+    public void setMetrics(MaterializerMetrics metrics) {
+        this.metrics = metrics;
     }
 
     private Log log;
@@ -128,6 +175,11 @@ public class EnaGenomeMaterializer {
             throw new MaterializationUncheckedException("No components found for genome " + genomeMetaData.getName()
                     + " (ID: " + genomeMetaData.getId() + ")");
         }
+        prefetchComponents(genomeMetaData.getComponentMetaData());
+        if (threads > 1 && genomeMetaData.getComponentMetaData().size() > 1) {
+            getComponentsInParallel(g, genomeMetaData.getComponentMetaData());
+            return g;
+        }
         for (GenomicComponentMetaData md : genomeMetaData.getComponentMetaData()) {
             // 3. for each component, retrieve the XML file
             getLog().info("Parsing XML for accession " + md.getAccession() + " for genome " + g.getName() + " (id "
@@ -138,10 +190,7 @@ public class EnaGenomeMaterializer {
                 try {
                     GenomicComponent c = getComponent(md);
                     success = true;
-                    addComponent(g, md, c);
-                    if(c.getMetaData().getGeneticCode() == GenomicComponentMetaData.NULL_GENETIC_CODE) {
-                        setDefaultGeneticCode(g, c.getMetaData());
-                    }
+                    mergeComponent(g, md, c);
                 } catch (Throwable e) {
                     throw e;
                     // if (retry_count++ > 3) {
@@ -161,8 +210,100 @@ public class EnaGenomeMaterializer {
         return g;
     }
 
+    /**
+     * Retrieve and parse components on a bounded pool of worker threads. The
+     * first component is parsed on the calling thread as it seeds the genome
+     * level metadata (e.g. lineage) used when parsing the remainder. Parsed
+     * components are merged into the genome in the order of the supplied
+     * metadata, and no more than twice the number of threads are held in
+     * memory awaiting merging.
+     * 
+     * @param g
+     *            genome to add components to
+     * @param mds
+     *            metadata for components to retrieve
+     */
+    protected void getComponentsInParallel(Genome g, List<GenomicComponentMetaData> mds) {
+        getLog().info("Parsing " + mds.size() + " components for genome " + g.getName() + " (id " + g.getId()
+                + ") using " + threads + " threads");
+        GenomicComponentMetaData first = mds.get(0);
+        mergeComponent(g, first, getComponent(first));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, ConcurrencyUtils.getDaemonThreadFactory());
+        try {
+            int window = threads * 2;
+            Deque<Future<GenomicComponent>> pending = new ArrayDeque<Future<GenomicComponent>>(window);
+            int next = 1;
+            for (int i = 1; i < mds.size(); i++) {
+                while (next < mds.size() && pending.size() < window) {
+                    pending.add(submitComponent(executor, mds.get(next++)));
+                }
+                GenomicComponentMetaData md = mds.get(i);
+                mergeComponent(g, md, waitForComponent(pending.poll(), md));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Future<GenomicComponent> submitComponent(ExecutorService executor, final GenomicComponentMetaData md) {
+        return executor.submit(() -> {
+            getLog().info("Parsing XML for accession " + md.getAccession());
+            return getComponent(md);
+        });
+    }
+
+    private GenomicComponent waitForComponent(Future<GenomicComponent> future, GenomicComponentMetaData md) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MaterializationUncheckedException("Interrupted while parsing " + md.getAccession(), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new MaterializationUncheckedException("Could not parse " + md.getAccession(), cause);
+            }
+        }
+    }
+
+    /**
+     * Add a parsed component to the genome, setting a default genetic code if
+     * none was found when parsing
+     */
+    protected void mergeComponent(Genome g, GenomicComponentMetaData md, GenomicComponent c) {
+        addComponent(g, md, c);
+        if (c.getMetaData().getGeneticCode() == GenomicComponentMetaData.NULL_GENETIC_CODE) {
+            setDefaultGeneticCode(g, c.getMetaData());
+        }
+    }
+
+    /**
+     * Start retrieving entries for components in the background so they are
+     * ready when each component is parsed
+     * 
+     * @param mds
+     *            components which will be parsed
+     */
+    public void prefetchComponents(Collection<GenomicComponentMetaData> mds) {
+        if (parser != null && parser.getRetriever() != null && mds.size() > 1) {
+            getLog().debug("Prefetching " + mds.size() + " entries");
+            parser.getRetriever().prefetchEntries(mds);
+        }
+    }
+
     public GenomicComponent getComponent(GenomicComponentMetaData md) {
-        return parser.parse(md, getUrl(md.getAccession()));
+        if (metrics == null) {
+            return parser.parse(md, getUrl(md.getAccession()));
+        }
+        MaterializerMetrics.Timer timer = metrics.start(MaterializerMetrics.COMPONENT, md.getAccession());
+        GenomicComponent c = parser.parse(md, getUrl(md.getAccession()));
+        timer.getStage().setCounts(Collections.singleton(c));
+        timer.stop();
+        return c;
     }
 
     /**
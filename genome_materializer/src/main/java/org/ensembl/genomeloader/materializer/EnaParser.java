@@ -23,7 +23,7 @@
 package org.ensembl.genomeloader.materializer;
 
 import static org.ensembl.genomeloader.materializer.impl.XomUtils.getFirstChild;
-import static org.ensembl.genomeloader.materializer.impl.XomUtils.hashByAttribute;
+import static org.ensembl.genomeloader.materializer.impl.XomUtils.readElement;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -41,15 +41,18 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.ensembl.genomeloader.materializer.impl.CdsFeatureParser;
 import org.ensembl.genomeloader.materializer.impl.DefaultXmlEnaFeatureParser;
+import org.ensembl.genomeloader.materializer.impl.EntryElementBuilder;
 import org.ensembl.genomeloader.materializer.impl.GeneFeatureParser;
 import org.ensembl.genomeloader.materializer.impl.MrnaFeatureParser;
 import org.ensembl.genomeloader.materializer.impl.PeptideFeatureParser;
@@ -68,11 +71,15 @@ import org.ensembl.genomeloader.model.impl.DatabaseReferenceImpl;
 import org.ensembl.genomeloader.model.impl.GenomicComponentImpl;
 import org.ensembl.genomeloader.model.sequence.Sequence;
 import org.ensembl.genomeloader.model.sequence.SequenceInformation;
+import org.ensembl.genomeloader.model.sequence.SequenceStore;
 import org.ensembl.genomeloader.util.InputOutputUtils;
 import org.ensembl.genomeloader.util.biojava.LocationUtils;
 import org.ensembl.genomeloader.util.collections.CollectionUtils;
 import org.ensembl.genomeloader.util.reflection.ReflectionUtils;
 import org.ensembl.genomeloader.xrefregistry.DatabaseReferenceTypeRegistry;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
 
 import nu.xom.Attribute;
 import nu.xom.Builder;
@@ -81,6 +88,7 @@ import nu.xom.Element;
 import nu.xom.Elements;
 import nu.xom.ParsingException;
 import nu.xom.ValidityException;
+import uk.ac.ebi.embl.api.entry.feature.Feature;
 import uk.ac.ebi.embl.api.validation.ValidationResult;
 import uk.ac.ebi.embl.flatfile.reader.embl.EmblEntryReader;
 import uk.ac.ebi.embl.flatfile.writer.xml.XmlEntryWriter;
@@ -130,9 +138,16 @@ public class EnaParser {
 
     private Log log;
 
+    /**
+     * Parsers are stateless, so one instance per feature key is reused for
+     * every component parsed
+     */
+    private final ConcurrentMap<String, XmlEnaFeatureParser> parserInstances = new ConcurrentHashMap<String, XmlEnaFeatureParser>();
+
     private final DatabaseReferenceType pubmedType;
     private final DatabaseReferenceTypeRegistry registry;
     private final EnaXmlRetriever retriever;
+    private SequenceStore sequenceStore;
 
     public EnaParser(EnaXmlRetriever retriever, DatabaseReferenceTypeRegistry registry) {
         this.retriever = retriever;
@@ -147,6 +162,27 @@ public class EnaParser {
         return log;
     }
 
+    /**
+     * @return retriever used to find entries by accession (may be null)
+     */
+    public EnaXmlRetriever getRetriever() {
+        return retriever;
+    }
+
+    public SequenceStore getSequenceStore() {
+        return sequenceStore;
+    }
+
+    /**
+     * @param sequenceStore
+     *            if set, the sequence of each component is written to the
+     *            store once parsed and read back only when needed, rather than
+     *            held in memory
+     */
+    public void setSequenceStore(SequenceStore sequenceStore) {
+        this.sequenceStore = sequenceStore;
+    }
+
     /**
      * Get a parser for the supplied feature
      * 
@@ -155,6 +191,25 @@ public class EnaParser {
      * @return parser instance or null if none supported
      */
     protected XmlEnaFeatureParser getParserForFeature(String key) {
+        XmlEnaFeatureParser parser = parserInstances.get(key);
+        if (parser == null) {
+            parser = createParserForFeature(key);
+            XmlEnaFeatureParser existing = parserInstances.putIfAbsent(key, parser);
+            if (existing != null) {
+                parser = existing;
+            }
+        }
+        return parser;
+    }
+
+    /**
+     * Create a new parser for the supplied feature
+     * 
+     * @param key
+     *            name of feature
+     * @return parser instance
+     */
+    protected XmlEnaFeatureParser createParserForFeature(String key) {
         Class<? extends XmlEnaFeatureParser> clazz = parsersByName.get(key);
         if (clazz != null) {
             return (XmlEnaFeatureParser) ReflectionUtils.newInstance(clazz,
@@ -188,21 +243,261 @@ public class EnaParser {
         parseMetaData(md, entryElem);
         Sequence seq = parseSequence(entryElem);
         parseFeatures(component, entryElem);
+        return completeComponent(component, entryElem, seq);
+    }
+
+    /**
+     * Parse a component from a pull parser positioned at the start of the
+     * document. Unlike {@link #parse(GenomicComponentMetaData, Document)}, the
+     * whole entry is never held in memory: the sequence is read straight into a
+     * buffer and each feature is read as a small subtree, which is parsed and
+     * discarded as soon as it is read unless its parser depends on others (see
+     * {@link FeatureDispatcher}).
+     * 
+     * @param md
+     * @param xpp
+     * @return parsed component
+     */
+    public GenomicComponentImpl parse(GenomicComponentMetaData md, XmlPullParser xpp) {
+        try {
+            GenomicComponentImpl component = new GenomicComponentImpl(md);
+            while (xpp.next() != XmlPullParser.START_TAG) {
+                if (xpp.getEventType() == XmlPullParser.END_DOCUMENT) {
+                    throw new EnaParsingException("No entry found in ENA record");
+                }
+            }
+            // hold entry attributes and header elements, but not features or
+            // sequence
+            Element entryElem = new Element(xpp.getName());
+            for (int i = 0; i < xpp.getAttributeCount(); i++) {
+                entryElem.addAttribute(new Attribute(xpp.getAttributeName(i), xpp.getAttributeValue(i)));
+            }
+            FeatureDispatcher<Element> features = new FeatureDispatcher<Element>(component, entryElem, false,
+                    f -> f.getAttributeValue("name"), Function.identity());
+            Sequence seq = new Sequence();
+            int depth = xpp.getDepth();
+            while (xpp.next() != XmlPullParser.END_TAG || xpp.getDepth() > depth) {
+                if (xpp.getEventType() == XmlPullParser.START_TAG) {
+                    if ("sequence".equals(xpp.getName())) {
+                        readSequence(xpp, seq);
+                    } else {
+                        Element elem = readElement(xpp);
+                        if ("feature".equals(elem.getLocalName())) {
+                            features.add(elem);
+                        } else {
+                            entryElem.appendChild(elem);
+                        }
+                    }
+                } else if (xpp.getEventType() == XmlPullParser.END_DOCUMENT) {
+                    throw new EnaParsingException("Unexpected end of ENA record");
+                }
+            }
+            features.complete();
+            seq.setProperties(getProperties(entryElem));
+            return completeComponent(component, entryElem, seq);
+        } catch (XmlPullParserException e) {
+            throw new EnaParsingException("Could not parse ENA record", e);
+        } catch (IOException e) {
+            throw new EnaParsingException("Could not parse ENA record", e);
+        }
+    }
+
+    /**
+     * Parse a component directly from an embl-api entry, as read from an ENA
+     * flatfile by {@link EmblEntryReader}, rather than writing the entry as XML
+     * and parsing that. The entry header and each feature are converted to the
+     * elements found in ENA XML by {@link EntryElementBuilder} and handed to
+     * the same feature parsers in the same order as
+     * {@link #parse(GenomicComponentMetaData, XmlPullParser)}, so the component
+     * is identical to that parsed from the XML for the entry. Each feature is
+     * only converted when its parser is run.
+     * 
+     * @param md
+     * @param entry
+     * @return parsed component
+     */
+    public GenomicComponentImpl parse(GenomicComponentMetaData md, uk.ac.ebi.embl.api.entry.Entry entry) {
+        GenomicComponentImpl component = new GenomicComponentImpl(md);
+        Element entryElem = EntryElementBuilder.buildEntryElement(entry);
+        FeatureDispatcher<Feature> features = new FeatureDispatcher<Feature>(component, entryElem, false,
+                Feature::getName, EntryElementBuilder::buildFeatureElement);
+        for (Feature feature : entry.getFeatures()) {
+            features.add(feature);
+        }
+        features.complete();
+        Sequence seq = new Sequence();
+        EntryElementBuilder.appendSequence(entry, seq);
+        seq.setProperties(getProperties(entryElem));
+        return completeComponent(component, entryElem, seq);
+    }
+
+    /**
+     * Dispatches features to parsers in the order they are read, so that only
+     * the current feature needs to be held. Until the metadata has been parsed
+     * (which needs the source feature), features are held back. After that,
+     * features for parsers without dependencies are parsed straight away, and
+     * only the features for parsers that depend on others are buffered, to be
+     * parsed at the end of the entry in an order respecting
+     * {@link XmlEnaFeatureParser#dependsOn()}. Every front end dispatches its
+     * features this way, so all produce components in the same order.
+     * 
+     * @param <T>
+     *            type of feature, converted to an element when parsed
+     */
+    private class FeatureDispatcher<T> {
+
+        private final GenomicComponentImpl component;
+        private final Element entryElem;
+        private final Function<T, String> getKey;
+        private final Function<T, Element> toElement;
+        private final List<T> pending = CollectionUtils.createArrayList();
+        private final Map<String, XmlEnaFeatureParser> parsersByKey = CollectionUtils.createHashMap();
+        // parsers in order of first use, so that they are always sorted the
+        // same way
+        private final Map<XmlEnaFeatureParser, Integer> counts = CollectionUtils.createLinkedHashMap();
+        private final Map<XmlEnaFeatureParser, List<T>> deferred = CollectionUtils.createHashMap();
+        private boolean metaDataParsed;
+
+        FeatureDispatcher(GenomicComponentImpl component, Element entryElem, boolean metaDataParsed,
+                Function<T, String> getKey, Function<T, Element> toElement) {
+            this.component = component;
+            this.entryElem = entryElem;
+            this.metaDataParsed = metaDataParsed;
+            this.getKey = getKey;
+            this.toElement = toElement;
+        }
+
+        void add(T feature) {
+            if (!metaDataParsed) {
+                if ("source".equals(getKey.apply(feature))) {
+                    // needed for parseMetaData
+                    entryElem.appendChild(toElement.apply(feature));
+                    pending.add(feature);
+                    return;
+                }
+                parseMetaData();
+            }
+            dispatch(feature);
+        }
+
+        void complete() {
+            if (!metaDataParsed) {
+                parseMetaData();
+            }
+            for (XmlEnaFeatureParser parser : sortParsers(counts.keySet())) {
+                List<T> featuresForParser = deferred.get(parser);
+                if (featuresForParser != null) {
+                    for (T feature : featuresForParser) {
+                        parser.parseFeature(component, toElement.apply(feature));
+                    }
+                }
+                getLog().info("Parsed " + counts.get(parser) + " features with " + parser.getClass().getSimpleName());
+            }
+            component.setTopLevel(true);
+        }
+
+        private void parseMetaData() {
+            EnaParser.this.parseMetaData(component.getMetaData(), entryElem);
+            metaDataParsed = true;
+            for (T feature : pending) {
+                dispatch(feature);
+            }
+            pending.clear();
+        }
+
+        private void dispatch(T feature) {
+            if (!isParsingFeatures()) {
+                return;
+            }
+            String key = getKey.apply(feature);
+            XmlEnaFeatureParser parser;
+            if (parsersByKey.containsKey(key)) {
+                parser = parsersByKey.get(key);
+            } else {
+                getLog().debug("Handling features of type " + key);
+                parser = findParserForFeature(key);
+                parsersByKey.put(key, parser);
+            }
+            if (parser == null) {
+                return;
+            }
+            counts.merge(parser, 1, Integer::sum);
+            if (parser.dependsOn().isEmpty()) {
+                parser.parseFeature(component, toElement.apply(feature));
+            } else {
+                List<T> featuresForParser = deferred.get(parser);
+                if (featuresForParser == null) {
+                    featuresForParser = CollectionUtils.createArrayList();
+                    deferred.put(parser, featuresForParser);
+                }
+                featuresForParser.add(feature);
+            }
+        }
+
+    }
+
+    /**
+     * Read the text of a sequence element into a sequence, discarding
+     * whitespace
+     */
+    private static void readSequence(XmlPullParser xpp, Sequence seq) throws XmlPullParserException, IOException {
+        int[] holder = new int[2];
+        while (xpp.next() != XmlPullParser.END_TAG) {
+            if (xpp.getEventType() == XmlPullParser.TEXT) {
+                char[] chars = xpp.getTextCharacters(holder);
+                int end = holder[0] + holder[1];
+                int start = holder[0];
+                for (int i = holder[0]; i <= end; i++) {
+                    if (i == end || Character.isWhitespace(chars[i])) {
+                        if (i > start) {
+                            seq.appendSequence(chars, start, i - start);
+                        }
+                        start = i + 1;
+                    }
+                }
+            } else if (xpp.getEventType() == XmlPullParser.END_DOCUMENT) {
+                throw new EnaParsingException("Unexpected end of ENA record in sequence");
+            }
+        }
+    }
+
+    /**
+     * Set the top level properties, sequence, references and assembly of a
+     * component once its features have been parsed
+     */
+    protected GenomicComponentImpl completeComponent(GenomicComponentImpl component, Element entryElem,
+            Sequence seq) {
         component.setAccession(component.getMetaData().getAccession());
         component.setLength(component.getMetaData().getLength());
-        if (component.getLength() != seq.getSequence().length()) {
+        if (component.getLength() != seq.getLength()) {
             throw new EnaParsingException(component.getMetaData().getAccession() + " metadata has length "
                     + component.getMetaData().getLength() + " but parsed sequence contains "
-                    + seq.getSequence().length() + " characters");
+                    + seq.getLength() + " characters");
         }
         seq.setDescription(component.getMetaData().getDescription());
         seq.setIdentifier(component.getAccession());
-        component.setSequence(seq);
+        component.setSequence(storeSequence(seq));
         component.getDatabaseReferences().addAll(parseReferences(entryElem));
         parseContig(component, entryElem);
+        // gene indexes are only needed whilst the feature table is parsed
+        component.clearIndexes();
         return component;
     }
 
+    /**
+     * Move a parsed sequence to the sequence store, if one is set
+     */
+    protected Sequence storeSequence(Sequence seq) {
+        if (sequenceStore == null) {
+            return seq;
+        }
+        try {
+            return sequenceStore.store(seq);
+        } catch (IOException e) {
+            throw new EnaParsingException("Could not store sequence for " + seq.getIdentifier(), e);
+        }
+    }
+
     public GenomicComponent parse(GenomicComponentMetaData md, File file) {
         InputStream is = null;
         try {
@@ -216,11 +511,50 @@ public class EnaParser {
     }
 
     public GenomicComponent parse(GenomicComponentMetaData md, InputStream record) {
-        return parse(md, parseDocument(record));
+        try {
+            XmlPullParser xpp = XmlPullParserFactory.newInstance().newPullParser();
+            xpp.setInput(new BufferedReader(new InputStreamReader(record)));
+            return parse(md, xpp);
+        } catch (XmlPullParserException e) {
+            throw new EnaParsingException("Could not parse ENA record", e);
+        }
+    }
+
+    /**
+     * Parse a component from an ENA flatfile record without converting it to
+     * XML
+     * 
+     * @param md
+     * @param record
+     *            stream containing a single flatfile entry
+     * @return parsed component
+     */
+    public GenomicComponent parseFlatFile(GenomicComponentMetaData md, InputStream record) {
+        EmblEntryReader reader = new EmblEntryReader(new BufferedReader(new InputStreamReader(record)));
+        try {
+            ValidationResult read = reader.read();
+            if (read.isHasReportMessage()) {
+                getLog().warn(read.getReportMessage());
+            }
+        } catch (IOException e) {
+            throw new EnaParsingException("Could not parse ENA flatfile record", e);
+        }
+        if (!reader.isEntry()) {
+            throw new EnaParsingException("No entry found in ENA flatfile record");
+        }
+        return parse(md, reader.getEntry());
     }
 
     public GenomicComponent parse(GenomicComponentMetaData md, final URL url) {
-        return parse(md, retriever.getFileForEntry(md.getAccession()));
+        InputStream is = retriever.openEntry(md.getAccession(), md.getVersion());
+        try {
+            if (retriever.isFlatFile(md.getAccession())) {
+                return parseFlatFile(md, is);
+            }
+            return parse(md, is);
+        } finally {
+            InputOutputUtils.closeQuietly(is);
+        }
     }
 
     protected void parseContig(GenomicComponentImpl component, Element entryElem) {
@@ -294,51 +628,49 @@ public class EnaParser {
     }
 
     /**
+     * Parse the features of a whole document, in the same order as they are
+     * parsed when streamed (see {@link FeatureDispatcher}):
+     * <ol>
+     * <li>CDSs, RNAs, repeats and other features without dependencies, in the
+     * order they appear</li>
+     * <li>then genes, mRNAs, UTRs and peptides, once the features they are
+     * overlaid onto have been parsed</li>
+     * </ol>
+     * 
      * @param component
      * @param entryElem
      */
     protected void parseFeatures(GenomicComponentImpl component, Element entryElem) {
-
-        Elements childElements = entryElem.getChildElements("feature");
-
-        // 1. hash features by name
-        Map<String, List<Element>> features = hashByAttribute(childElements, "name");
-        Map<XmlEnaFeatureParser, List<Element>> parsers = CollectionUtils.createHashMap();
-        for (Entry<String, List<Element>> e : features.entrySet()) {
-            getLog().debug("Handling " + e.getValue().size() + " features of type " + e.getKey());
-            try {
-                XmlEnaFeatureParser parserForFeature = getParserForFeature(e.getKey());
-                getLog().debug("Found parser " + parserForFeature.getClass().getName());
-                parsers.put(parserForFeature, e.getValue());
-            } catch (EnaParsingException ex) {
-                getLog().warn(ex.getMessage());
-            } finally {
-            }
-        }
-
-        // 2. process features in stages using individual parsers
-        // 2.1 parse CDSs into gene-protein-transcripts or pseudogenes
-        // accordingly
-        // 2.2 parse mRNA
-        // 2.3 parse ncRNA
-        // 2.4 parse gene -> overlay onto proteins or turn into pseudogenes
-        // 2.5 parse repeats
-        // 2.6 parse features
-        // 2.7 parse products
-        getLog().debug("Found " + parsers.keySet().size() + " parser-map pairs to deal with:" + parsers.keySet());
-        List<XmlEnaFeatureParser> sortParsers = sortParsers(parsers.keySet());
-        for (XmlEnaFeatureParser parser : sortParsers) {
-            // parse each feature in turn
-            List<Element> featuresForParser = parsers.get(parser);
-            getLog().info(
-                    "Parsing " + featuresForParser.size() + " features with " + parser.getClass().getSimpleName());
-            for (Element feature : featuresForParser) {
-                parser.parseFeature(component, feature);
-            }
+        FeatureDispatcher<Element> features = new FeatureDispatcher<Element>(component, entryElem, true,
+                f -> f.getAttributeValue("name"), Function.identity());
+        for (Element feature : new ElementsIterable(entryElem.getChildElements("feature"))) {
+            features.add(feature);
         }
+        features.complete();
+    }
 
-        component.setTopLevel(true);
+    /**
+     * @return true if features should be parsed, or false if only the
+     *         metadata, sequence and assembly of each entry are needed
+     */
+    protected boolean isParsingFeatures() {
+        return true;
+    }
 
+    /**
+     * @param key
+     *            feature name
+     * @return parser for the feature, or null if it cannot be parsed
+     */
+    private XmlEnaFeatureParser findParserForFeature(String key) {
+        try {
+            XmlEnaFeatureParser parser = getParserForFeature(key);
+            getLog().debug("Found parser " + parser.getClass().getName());
+            return parser;
+        } catch (EnaParsingException ex) {
+            getLog().warn(ex.getMessage());
+            return null;
+        }
     }
 
     protected void parseMetaData(GenomicComponentMetaData md, Element entryElem) {
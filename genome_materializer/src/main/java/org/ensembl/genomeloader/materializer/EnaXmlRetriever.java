@@ -1,30 +1,51 @@
 package org.ensembl.genomeloader.materializer;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.file.Files;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 import org.ensembl.genomeloader.materializer.executor.FileLockExecutor;
 import org.ensembl.genomeloader.materializer.executor.SimpleExecutor;
 import org.ensembl.genomeloader.materializer.impl.MaterializationUncheckedException;
+import org.ensembl.genomeloader.metadata.GenomicComponentMetaData;
+import org.ensembl.genomeloader.util.collections.CollectionUtils;
+import org.ensembl.genomeloader.util.concurrency.ConcurrencyUtils;
 import org.ensembl.genomeloader.util.templating.TemplateBuilder;
 
 import uk.ac.ebi.embl.api.entry.Entry;
@@ -48,32 +69,62 @@ import uk.ac.ebi.embl.flatfile.writer.xml.XmlEntryWriter;
  * <p/>
  * For WGS entries: - determine the WGS set -
  * <ul>
- * <li>check if file already retrieved and return if it is</li>
+ * <li>check if set already retrieved and return the entry if it is</li>
  * <li>otherwise retrieve the complete WGS set from ENA</li>
- * <li>parse each entry to an XML file and store the path for each
- * accession</li>
- * <li>return the XML file path for that accession</li>
+ * <li>stream each entry as XML into a single {@link WgsSetStore} file for the
+ * set, indexed by accession, decoding entries in parallel as the set is read
+ * (see {@link WgsSetDecoder})</li>
+ * <li>return the XML for that accession from the store</li>
  * </ul>
+ * If {@link #setWgsFlatFile(boolean)} is set, WGS entries are stored and
+ * returned as flatfile text instead, to be parsed without conversion to XML
+ * (see {@link #isFlatFile(String)}).
+ * <p/>
+ * If an {@link EnaEntryCache} is supplied, versioned entries and complete WGS
+ * set stores are kept in the cache between runs rather than in a temporary
+ * directory, so that repeated materialization of the same genome does not
+ * need to retrieve entries from ENA again. Files evicted from the cache after
+ * they were retrieved are retrieved again when next opened.
+ * <p/>
+ * Downloads share a pooled HTTP client so connections to ENA are reused, and
+ * failed downloads are retried with exponential backoff and jitter. Entries
+ * can be retrieved ahead of use with {@link #prefetchEntries(Collection)},
+ * which downloads them concurrently on a pool of up to
+ * {@link #getMaxConnections()} threads. Retrievers using a pool should be
+ * closed when no longer needed.
  * 
  * @author dstaines
  *
  */
-public class EnaXmlRetriever {
+public class EnaXmlRetriever implements Closeable {
 
     @FunctionalInterface
     public interface CheckedConsumer<T> {
         void consume(T t) throws IOException;
     }
 
+    public final static int DEFAULT_MAX_CONNECTIONS = 10;
     private final static int MAX_TRIES = 3;
-    private final static long SLEEP_TIME = 30000;
+    private final static long INITIAL_RETRY_DELAY = 1000;
+    private final static long MAX_RETRY_DELAY = 30000;
     private final static Pattern WGS_ACCESSION = Pattern.compile("([A-Z]{4}[0-9]{2})([0-9]{6,8})");
 
-    private final Map<String, File> files = new HashMap<>();
-    private final Set<String> wgs = new HashSet<>();
+    // retrievals in progress or complete, removed again if they fail so that
+    // they can be retried
+    private final ConcurrentMap<String, CompletableFuture<File>> files = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<WgsSetStore>> wgs = new ConcurrentHashMap<>();
     private final File workingDir;
     private final String enaUrl;
     private final Executor executor;
+    private final EnaEntryCache cache;
+    private MaterializerMetrics metrics;
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private int wgsDecoderThreads = Runtime.getRuntime().availableProcessors();
+    private boolean wgsFlatFile = false;
+    private long initialRetryDelay = INITIAL_RETRY_DELAY;
+    private long maxRetryDelay = MAX_RETRY_DELAY;
+    private CloseableHttpClient httpClient;
+    private ExecutorService prefetchExecutor;
     private Log log;
 
     public EnaXmlRetriever(String enaUrl) {
@@ -93,9 +144,92 @@ public class EnaXmlRetriever {
     }
 
     public EnaXmlRetriever(Executor executor, String enaUrl, File workingDir) {
+        this(executor, enaUrl, workingDir, null);
+    }
+
+    public EnaXmlRetriever(Executor executor, String enaUrl, EnaEntryCache cache) {
+        this(executor, enaUrl, getTempDir(), cache);
+    }
+
+    public EnaXmlRetriever(Executor executor, String enaUrl, File workingDir, EnaEntryCache cache) {
         this.workingDir = workingDir;
         this.enaUrl = enaUrl;
         this.executor = executor;
+        this.cache = cache;
+    }
+
+    /**
+     * @return persistent cache used by this retriever, or null if entries are
+     *         only kept for the lifetime of this retriever
+     */
+    public EnaEntryCache getCache() {
+        return cache;
+    }
+
+    public MaterializerMetrics getMetrics() {
+        return metrics;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @param maxConnections
+     *            maximum number of connections to ENA held open at once, and
+     *            number of threads used to prefetch entries. Must be set
+     *            before the first download.
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getWgsDecoderThreads() {
+        return wgsDecoderThreads;
+    }
+
+    /**
+     * @param wgsDecoderThreads
+     *            number of threads used to decode the entries of each WGS set
+     *            (see {@link WgsSetDecoder}), not used if
+     *            {@link #setWgsFlatFile(boolean)} is set
+     */
+    public void setWgsDecoderThreads(int wgsDecoderThreads) {
+        this.wgsDecoderThreads = wgsDecoderThreads;
+    }
+
+    public boolean isWgsFlatFile() {
+        return wgsFlatFile;
+    }
+
+    /**
+     * @param wgsFlatFile
+     *            if true, store and return WGS entries as flatfile text rather
+     *            than XML. Must be set before the first WGS set is retrieved.
+     */
+    public void setWgsFlatFile(boolean wgsFlatFile) {
+        this.wgsFlatFile = wgsFlatFile;
+    }
+
+    /**
+     * @param initialRetryDelay
+     *            time in milliseconds to wait before the first retry of a
+     *            failed download, doubling for each further retry
+     * @param maxRetryDelay
+     *            maximum time in milliseconds to wait between retries
+     */
+    public void setRetryDelays(long initialRetryDelay, long maxRetryDelay) {
+        this.initialRetryDelay = initialRetryDelay;
+        this.maxRetryDelay = maxRetryDelay;
+    }
+
+    /**
+     * @param metrics
+     *            metrics to add a stage to for each download, recording the
+     *            bytes received (may be null)
+     */
+    public void setMetrics(MaterializerMetrics metrics) {
+        this.metrics = metrics;
     }
 
     private Log getLog() {
@@ -105,84 +239,372 @@ public class EnaXmlRetriever {
         return log;
     }
 
+    /**
+     * @param accession
+     *            of entry
+     * @return true if {@link #openEntry(String, String)} returns the entry as
+     *         flatfile text rather than XML, as for entries from WGS sets
+     */
+    public boolean isFlatFile(String accession) {
+        return wgsFlatFile && WGS_ACCESSION.matcher(accession).matches();
+    }
+
+    /**
+     * @param accession
+     *            of entry to retrieve
+     * @return stream containing entry in XML format, or flatfile format if
+     *         {@link #isFlatFile(String)}, to be closed by the caller
+     */
+    public InputStream openEntry(String accession) {
+        return openEntry(accession, null);
+    }
+
     /**
      * @param accession
      *            of entry to retrieve
+     * @param version
+     *            version of entry to retrieve, used for caching (may be null
+     *            if not known, in which case the entry is not cached)
+     * @return stream containing entry in XML format, or flatfile format if
+     *         {@link #isFlatFile(String)}, to be closed by the caller
+     */
+    public InputStream openEntry(String accession, String version) {
+        for (int tries = 1;; tries++) {
+            try {
+                Matcher m = WGS_ACCESSION.matcher(accession);
+                if (m.matches()) {
+                    WgsSetStore store = getWgsSet(m.group(1));
+                    InputStream is = store.openEntry(accession);
+                    if (is == null) {
+                        throw new EnaParsingException(
+                                "Entry " + accession + " not found in WGS set " + store.getFile().getPath());
+                    }
+                    return is;
+                } else {
+                    return new FileInputStream(getFileForEntry(accession, version));
+                }
+            } catch (FileNotFoundException e) {
+                // the cache may evict a file between checking and opening it
+                if (tries >= MAX_TRIES || !forgetMissing(accession)) {
+                    throw new EnaParsingException("Could not read ENA record " + accession, e);
+                }
+                getLog().debug("Retrieving evicted entry " + accession + " again");
+            } catch (IOException e) {
+                throw new EnaParsingException("Could not read ENA record " + accession, e);
+            }
+        }
+    }
+
+    /**
+     * Forget a completed retrieval for an accession if its file no longer
+     * exists, for instance because the cache has evicted it, so that it is
+     * retrieved again
+     * 
+     * @param accession
+     * @return true if a retrieval was forgotten
+     */
+    protected boolean forgetMissing(String accession) {
+        Matcher m = WGS_ACCESSION.matcher(accession);
+        if (m.matches()) {
+            return forgetMissing(wgs, m.group(1), WgsSetStore::getFile);
+        } else {
+            return forgetMissing(files, accession, Function.identity());
+        }
+    }
+
+    private static <T> boolean forgetMissing(ConcurrentMap<String, CompletableFuture<T>> retrievals, String key,
+            Function<T, File> getFile) {
+        CompletableFuture<T> future = retrievals.get(key);
+        if (future == null || !future.isDone() || future.isCompletedExceptionally()
+                || getFile.apply(future.join()).exists()) {
+            return false;
+        }
+        return retrievals.remove(key, future);
+    }
+
+    /**
+     * @param accession
+     *            of non-WGS entry to retrieve
      * @return file containing entry in XML format
      */
     public File getFileForEntry(String accession) {
+        return getFileForEntry(accession, null);
+    }
+
+    /**
+     * @param accession
+     *            of non-WGS entry to retrieve
+     * @param version
+     *            of entry (may be null)
+     * @return file containing entry in XML format
+     */
+    public File getFileForEntry(String accession, String version) {
+        File f = join(retrieve(files, accession, () -> retrieveFile(accession, version), false), accession);
+        if (!f.exists() && forgetMissing(files, accession, Function.identity())) {
+            getLog().debug("Retrieving evicted entry " + accession + " again");
+            f = join(retrieve(files, accession, () -> retrieveFile(accession, version), false), accession);
+        }
+        return f;
+    }
 
+    private File retrieveFile(String accession, String version) {
         getLog().info("Retrieving entry " + accession);
-        File f = files.get(accession);
-        if (f == null) {
-            Matcher m = WGS_ACCESSION.matcher(accession);
-            if (m.matches()) {
-                String root = m.group(1);
-                if (!wgs.contains(root)) {
-                    // lazily download the complete WGS set in batch
-                    loadWgsFiles(root);
-                    wgs.add(root);
-                }
-                f = files.get(accession);
-            } else {
-                f = getStandardFile(accession);
-                files.put(accession, f);
+        if (cache != null && !StringUtils.isEmpty(version)) {
+            try {
+                return cache.getEntry(accession + "." + version + ".xml", file -> {
+                    String retrieved = writeStandardFile(accession, file);
+                    if (!version.equals(retrieved)) {
+                        // ENA serves the current version, which must not be
+                        // cached under the version requested
+                        File uncached = getFile(accession);
+                        uncached.deleteOnExit();
+                        Files.copy(file.toPath(), uncached.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                        throw new VersionMismatchException(uncached, "Retrieved version " + retrieved + " of "
+                                + accession + " rather than version " + version);
+                    }
+                });
+            } catch (VersionMismatchException e) {
+                getLog().warn(e.getMessage() + ": entry not cached");
+                return e.getFile();
+            } catch (IOException e) {
+                throw new EnaParsingException("Could not cache ENA record " + accession, e);
             }
+        } else {
+            return getStandardFile(accession);
         }
+    }
 
-        return f;
+    /**
+     * @param root
+     *            WGS set prefix
+     * @return store containing all entries from the set, lazily downloaded in
+     *         batch
+     */
+    protected WgsSetStore getWgsSet(String root) {
+        WgsSetStore store = join(retrieve(wgs, root, () -> loadWgsFiles(root), false), root);
+        if (!store.getFile().exists() && forgetMissing(wgs, root, WgsSetStore::getFile)) {
+            getLog().debug("Retrieving evicted WGS set " + root + " again");
+            store = join(retrieve(wgs, root, () -> loadWgsFiles(root), false), root);
+        }
+        return store;
+    }
+
+    /**
+     * Start retrieving an entry on the prefetch pool if it has not already
+     * been retrieved, so that a later call to {@link #openEntry(String, String)}
+     * does not need to wait for it to download. For WGS entries, the whole set
+     * is retrieved.
+     * 
+     * @param accession
+     *            of entry to retrieve
+     * @param version
+     *            of entry (may be null)
+     * @return future completing once the entry is available
+     */
+    public CompletableFuture<Void> prefetchEntry(String accession, String version) {
+        Matcher m = WGS_ACCESSION.matcher(accession);
+        if (m.matches()) {
+            String root = m.group(1);
+            return retrieve(wgs, root, () -> loadWgsFiles(root), true).thenApply(store -> null);
+        } else {
+            return retrieve(files, accession, () -> retrieveFile(accession, version), true).thenApply(f -> null);
+        }
+    }
+
+    /**
+     * Start retrieving entries for the supplied components concurrently
+     * 
+     * @param mds
+     *            components to retrieve entries for
+     * @return futures completing as each entry becomes available
+     */
+    public List<CompletableFuture<Void>> prefetchEntries(Collection<GenomicComponentMetaData> mds) {
+        List<CompletableFuture<Void>> futures = CollectionUtils.createArrayList(mds.size());
+        for (GenomicComponentMetaData md : mds) {
+            futures.add(prefetchEntry(md.getAccession(), md.getVersion()));
+        }
+        return futures;
+    }
+
+    /**
+     * Get the retrieval for a key, starting it if not already started or
+     * previously failed
+     * 
+     * @param retrievals
+     *            retrievals in progress or complete
+     * @param key
+     *            key for retrieval
+     * @param supplier
+     *            function carrying out the retrieval
+     * @param async
+     *            if true, carry out the retrieval on the prefetch pool,
+     *            otherwise on the current thread
+     * @return future for the result of the retrieval
+     */
+    private <T> CompletableFuture<T> retrieve(ConcurrentMap<String, CompletableFuture<T>> retrievals, String key,
+            Supplier<T> supplier, boolean async) {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        CompletableFuture<T> existing = retrievals.putIfAbsent(key, future);
+        if (existing != null) {
+            return existing;
+        }
+        Runnable task = () -> {
+            try {
+                future.complete(supplier.get());
+            } catch (RuntimeException | Error e) {
+                retrievals.remove(key, future);
+                future.completeExceptionally(e);
+            }
+        };
+        if (async) {
+            getPrefetchExecutor().execute(task);
+        } else {
+            task.run();
+        }
+        return future;
+    }
+
+    private static <T> T join(CompletableFuture<T> future, String key) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new EnaParsingException("Could not retrieve ENA record " + key, cause);
+        }
+    }
+
+    private synchronized ExecutorService getPrefetchExecutor() {
+        if (prefetchExecutor == null) {
+            prefetchExecutor = Executors.newFixedThreadPool(maxConnections, ConcurrencyUtils.getDaemonThreadFactory());
+        }
+        return prefetchExecutor;
+    }
+
+    protected synchronized CloseableHttpClient getHttpClient() {
+        if (httpClient == null) {
+            PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+            connectionManager.setMaxTotal(maxConnections);
+            connectionManager.setDefaultMaxPerRoute(maxConnections);
+            httpClient = HttpClients.custom().setConnectionManager(connectionManager).build();
+        }
+        return httpClient;
+    }
+
+    /**
+     * Close the HTTP client and stop any prefetching. Entries already
+     * retrieved can still be opened.
+     */
+    public synchronized void close() {
+        if (prefetchExecutor != null) {
+            prefetchExecutor.shutdownNow();
+            prefetchExecutor = null;
+        }
+        if (httpClient != null) {
+            try {
+                httpClient.close();
+            } catch (IOException e) {
+                getLog().warn("Could not close HTTP client", e);
+            }
+            httpClient = null;
+        }
     }
 
     protected File getStandardFile(String accession) {
-        String url = TemplateBuilder.template(this.enaUrl, "ac", accession);
         File f = getFile(accession);
         f.deleteOnExit();
+        writeStandardFile(accession, f);
+        return f;
+    }
+
+    /**
+     * @param accession
+     * @return URL for the entry in EMBL flatfile format
+     */
+    protected String getUrl(String accession) {
+        return TemplateBuilder.template(this.enaUrl, "ac", accession);
+    }
+
+    /**
+     * Retrieve the current version of a non-WGS entry and write it as XML
+     * 
+     * @param accession
+     * @param f
+     *            file to write the entry to
+     * @return version of the entry retrieved, or null if not known
+     */
+    protected String writeStandardFile(String accession, File f) {
+        String url = getUrl(accession);
         getLog().debug("Downloading standard entry " + accession);
+        AtomicReference<String> version = new AtomicReference<>();
         download(url, is -> {
             EmblEntryReader eReader = new EmblEntryReader(new BufferedReader(new InputStreamReader(is)));
             ValidationResult read = eReader.read();
             if (read.isHasReportMessage()) {
                 log.warn(read.getReportMessage());
             }
+            Entry entry = eReader.getEntry();
+            if (entry.getSequence() != null && entry.getSequence().getVersion() != null) {
+                version.set(String.valueOf(entry.getSequence().getVersion()));
+            }
             // write entry to disk as XML
-            XmlEntryWriter writer = new XmlEntryWriter(eReader.getEntry());
-            writer.write(new FileWriter(f));
+            XmlEntryWriter writer = new XmlEntryWriter(entry);
+            try (FileWriter fw = new FileWriter(f)) {
+                writer.write(fw);
+            }
         });
-        return f;
+        return version.get();
+    }
+
+    protected WgsSetStore loadWgsFiles(String root) {
+        if (cache != null) {
+            // WGS set prefixes include the set version
+            try {
+                File f = cache.getEntry(root + (wgsFlatFile ? ".wgs.embl" : ".wgs.xml"), file -> writeWgsFiles(root, file).close());
+                return WgsSetStore.open(f);
+            } catch (IOException e) {
+                throw new EnaParsingException("Could not cache WGS set " + root, e);
+            }
+        } else {
+            File f = new File(workingDir, root + (wgsFlatFile ? ".embl" : ".xml"));
+            f.deleteOnExit();
+            return writeWgsFiles(root, f);
+        }
     }
 
-    protected void loadWgsFiles(String root) {
+    protected WgsSetStore writeWgsFiles(String root, File f) {
         getLog().debug("Downloading WGS set " + root);
         // URL requires a set=true argument
         String url = TemplateBuilder.template(this.enaUrl, "ac", root) + "&set=true";
         getLog().debug("Dwonloading " + url);
+        AtomicReference<WgsSetStore> storeRef = new AtomicReference<>();
         download(url, is -> {
-            getLog().debug("Parsing stream to entries");
-            EmblEntryReader eReader = new EmblEntryReader(
-                    new BufferedReader(new InputStreamReader(new GZIPInputStream(is))));
-            // loop until all entries found
-            do {
-                getLog().debug("Reading next entry");
-                ValidationResult read = eReader.read();
-                if (read.isHasReportMessage()) {
-                    log.warn(read.getReportMessage());
-                }
-                if (eReader.isEntry()) {
-                    Entry entry = eReader.getEntry();
-                    String entryAcc = entry.getPrimaryAccession();
-                    getLog().debug("Entry " + entryAcc + " found");
-                    File f = getFile(entryAcc);
-                    getLog().debug("Writing to file " + f.getPath());
-                    f.deleteOnExit();
-                    // write entry to disk as XML
-                    XmlEntryWriter writer = new XmlEntryWriter(entry);
-                    writer.write(new FileWriter(f));
-                    files.put(entryAcc, f);
-                }
-            } while (eReader.isEntry());
+            if (wgsFlatFile) {
+                getLog().debug("Splitting stream to flatfile entries");
+            } else {
+                getLog().debug("Decoding stream to entries with " + wgsDecoderThreads + " threads");
+            }
+            // write all entries to a single store file rather than one file per
+            // entry
+            WgsSetStore store = new WgsSetStore(f);
+            storeRef.set(store);
+            try {
+                int n = new WgsSetDecoder(wgsDecoderThreads, wgsDecoderThreads * 4, wgsFlatFile)
+                        .decode(new InputStreamReader(new GZIPInputStream(is)), store);
+                getLog().debug("Decoded " + n + " entries from WGS set " + root);
+            } finally {
+                store.close();
+            }
             getLog().debug("Completed downloading WGS set " + root);
-
         });
+        if (storeRef.get() == null) {
+            throw new EnaParsingException("Could not retrieve WGS set " + root);
+        }
+        return storeRef.get();
     }
 
     /**
@@ -203,53 +625,141 @@ public class EnaXmlRetriever {
 
     /**
      * Generic method to retrieve a stream from a URL, using locking and
-     * sleep-retries. Input stream is passed to a consumer
+     * retries with exponential backoff. Input stream is passed to a consumer
      * 
      * @param url
      * @param consumer
      *            function to consume stream
      */
     protected void download(String url, CheckedConsumer<InputStream> consumer) {
-
-        try {
-            executor.execute(new Runnable() {
-                public void run() {
-                    int tries = 0;
-                    while (tries < MAX_TRIES) {
-                        CloseableHttpResponse response = null;
-                        try {
-                            getLog().debug("Downloading " + url);
-                            CloseableHttpClient httpclient = HttpClients.createDefault();
-                            HttpGet httpget = new HttpGet(url);
-                            response = httpclient.execute(httpget);
-                            consumer.consume(response.getEntity().getContent());
-                            tries = MAX_TRIES;
-                            break;
-                        } catch (MaterializationUncheckedException | IOException e) {
-                            if (tries++ < MAX_TRIES) {
-                                getLog().warn("Could not parse ENA record from URL " + url + ": retrying", e);
-                                try {
-                                    Thread.sleep(SLEEP_TIME);
-                                } catch (InterruptedException e1) {
-                                    getLog().warn("Woke up from sleep", e1);
-                                }
-                            } else {
-                                throw new EnaParsingException("Could not parse ENA record from URL " + url, e);
-                            }
-                        } finally {
-                            if (response != null) {
-                                try {
-                                    response.close();
-                                } catch (IOException e) {
-                                    // do nothing
-                                }
-                            }
-                        }
+        for (int tries = 1;; tries++) {
+            try {
+                // only hold a slot whilst downloading, not whilst waiting to
+                // retry
+                executor.execute(() -> {
+                    try {
+                        downloadOnce(url, consumer);
+                    } catch (IOException e) {
+                        throw new DownloadException(e);
                     }
+                });
+                return;
+            } catch (MaterializationUncheckedException | DownloadException e) {
+                Throwable cause = e instanceof DownloadException ? e.getCause() : e;
+                if (tries >= MAX_TRIES) {
+                    throw new EnaParsingException("Could not parse ENA record from URL " + url, cause);
+                }
+                long delay = getRetryDelay(tries);
+                getLog().warn("Could not parse ENA record from URL " + url + ": retrying in " + delay + " ms", cause);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e1) {
+                    Thread.currentThread().interrupt();
+                    throw new EnaParsingException("Interrupted whilst retrieving ENA record from URL " + url, cause);
                 }
-            });
-        } finally {
+            }
+        }
+    }
+
+    private void downloadOnce(String url, CheckedConsumer<InputStream> consumer) throws IOException {
+        getLog().debug("Downloading " + url);
+        try (CloseableHttpResponse response = getHttpClient().execute(new HttpGet(url))) {
+            int status = response.getStatusLine().getStatusCode();
+            if (status != HttpStatus.SC_OK) {
+                throw new IOException("Unexpected response " + response.getStatusLine() + " from " + url);
+            }
+            if (metrics == null) {
+                consumer.consume(response.getEntity().getContent());
+            } else {
+                MaterializerMetrics.Timer timer = metrics.start(MaterializerMetrics.DOWNLOAD, url);
+                CountingInputStream is = new CountingInputStream(response.getEntity().getContent());
+                consumer.consume(is);
+                timer.getStage().setBytes(is.count);
+                timer.stop();
+            }
+            // read any remaining content so the connection can be reused
+            EntityUtils.consume(response.getEntity());
+        }
+    }
+
+    /**
+     * @param tries
+     *            number of attempts made so far
+     * @return time to wait in milliseconds before the next attempt, chosen at
+     *         random between half and all of an exponentially increasing delay
+     */
+    protected long getRetryDelay(int tries) {
+        long delay = Math.min(maxRetryDelay, initialRetryDelay << Math.min(tries - 1, 30));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * Wraps a failure to download so it can be passed out of the executor
+     */
+    private static class DownloadException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        DownloadException(IOException cause) {
+            super(cause);
+        }
 
+    }
+
+    /**
+     * Signals that the entry retrieved for a cache key was a different version
+     * to the one requested, and holds an uncached copy of it
+     */
+    private static class VersionMismatchException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+        private final File file;
+
+        VersionMismatchException(File file, String message) {
+            super(message);
+            this.file = file;
+        }
+
+        File getFile() {
+            return file;
+        }
+
+    }
+
+    /**
+     * Stream counting the bytes read from it
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
         }
 
     }
@@ -258,7 +768,12 @@ public class EnaXmlRetriever {
         EnaXmlRetriever r = new EnaXmlRetriever(new FileLockExecutor("/tmp/lockdir", 10),
                 "https://www.ebi.ac.uk/ena/data/view/$ac$&display=text&expanded=true", new File("/tmp/testena"));
         for (String a : args) {
-            System.out.println(r.getFileForEntry(a).getAbsolutePath());
+            InputStream is = r.openEntry(a);
+            try {
+                System.out.println(a + ": " + IOUtils.toByteArray(is).length + " bytes");
+            } finally {
+                is.close();
+            }
         }
     }
 
@@ -0,0 +1,308 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.ensembl.genomeloader.materializer;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.ensembl.genomeloader.model.Gene;
+import org.ensembl.genomeloader.model.GenomicComponent;
+import org.ensembl.genomeloader.model.Protein;
+import org.ensembl.genomeloader.model.Transcript;
+import org.ensembl.genomeloader.util.collections.CollectionUtils;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Records the cost of each stage of materializing a genome (metadata
+ * retrieval, component download and parsing, processors, validators and
+ * dumping) so that slow or memory-hungry stages can be found and tracked
+ * across runs. Each stage records wall time, and CPU time and bytes allocated
+ * by the thread running the stage as reported by {@link ThreadMXBean}, so work
+ * a stage hands to other threads is not included. Where a stage produces or
+ * changes model objects, counts of genes, proteins and xrefs are also kept.
+ */
+public class MaterializerMetrics {
+
+    public static final String METADATA = "metadata";
+    public static final String DOWNLOAD = "download";
+    public static final String SLOT_WAIT = "slotWait";
+    public static final String COMPONENT = "component";
+    public static final String PROCESSOR = "processor";
+    public static final String VALIDATOR = "validator";
+    public static final String GENOME = "genome";
+    public static final String DUMP = "dump";
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /**
+     * Cost of a single stage
+     */
+    public static class Stage {
+
+        private final String category;
+        private final String name;
+        private final String thread;
+        private long wallMs;
+        private long cpuMs = -1;
+        private long allocatedBytes = -1;
+        private Long bytes;
+        private Integer genes;
+        private Integer proteins;
+        private Integer xrefs;
+
+        protected Stage(String category, String name) {
+            this.category = category;
+            this.name = name;
+            this.thread = Thread.currentThread().getName();
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+
+        public long getWallMs() {
+            return wallMs;
+        }
+
+        /**
+         * @return CPU time used by the thread running the stage, or -1 if not
+         *         supported by the JVM
+         */
+        public long getCpuMs() {
+            return cpuMs;
+        }
+
+        /**
+         * @return bytes allocated by the thread running the stage, or -1 if
+         *         not supported by the JVM
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * @return bytes transferred, for download stages
+         */
+        public Long getBytes() {
+            return bytes;
+        }
+
+        public void setBytes(Long bytes) {
+            this.bytes = bytes;
+        }
+
+        public Integer getGenes() {
+            return genes;
+        }
+
+        public Integer getProteins() {
+            return proteins;
+        }
+
+        public Integer getXrefs() {
+            return xrefs;
+        }
+
+        /**
+         * Set gene, protein and xref counts from the supplied components
+         */
+        public void setCounts(Collection<GenomicComponent> components) {
+            int nGenes = 0;
+            int nProteins = 0;
+            int nXrefs = 0;
+            for (GenomicComponent component : components) {
+                nXrefs += component.getDatabaseReferences().size();
+                for (Gene gene : component.getGenes()) {
+                    nGenes++;
+                    nXrefs += gene.getDatabaseReferences().size();
+                    for (Protein protein : gene.getProteins()) {
+                        nProteins++;
+                        nXrefs += protein.getDatabaseReferences().size();
+                        for (Transcript transcript : protein.getTranscripts()) {
+                            nXrefs += transcript.getDatabaseReferences().size();
+                        }
+                    }
+                }
+            }
+            genes = nGenes;
+            proteins = nProteins;
+            xrefs = nXrefs;
+        }
+
+    }
+
+    /**
+     * Measures a stage running on the current thread
+     */
+    public class Timer {
+
+        private final Stage stage;
+        private final long wallStart;
+        private final long cpuStart;
+        private final long allocStart;
+
+        private Timer(String category, String name) {
+            stage = new Stage(category, name);
+            wallStart = System.nanoTime();
+            cpuStart = getCpuTime();
+            allocStart = getAllocatedBytes();
+        }
+
+        public Stage getStage() {
+            return stage;
+        }
+
+        /**
+         * Finish the stage and add it to the metrics
+         * 
+         * @return completed stage
+         */
+        public Stage stop() {
+            stage.wallMs = (System.nanoTime() - wallStart) / 1000000;
+            long cpu = getCpuTime();
+            if (cpu >= 0 && cpuStart >= 0) {
+                stage.cpuMs = (cpu - cpuStart) / 1000000;
+            }
+            long alloc = getAllocatedBytes();
+            if (alloc >= 0 && allocStart >= 0) {
+                stage.allocatedBytes = alloc - allocStart;
+            }
+            synchronized (stages) {
+                stages.add(stage);
+            }
+            return stage;
+        }
+
+    }
+
+    private final List<Stage> stages = CollectionUtils.createArrayList();
+
+    /**
+     * Start timing a stage on the current thread
+     * 
+     * @param category
+     *            type of stage e.g. {@link #PROCESSOR}
+     * @param name
+     *            name of stage within category
+     * @return timer to stop when the stage is complete
+     */
+    public Timer start(String category, String name) {
+        return new Timer(category, name);
+    }
+
+    /**
+     * @return completed stages in order of completion
+     */
+    public List<Stage> getStages() {
+        synchronized (stages) {
+            return CollectionUtils.createArrayList(stages.toArray(new Stage[stages.size()]));
+        }
+    }
+
+    /**
+     * @return number of stages, total wall time, CPU time, allocated bytes and
+     *         transferred bytes for each category
+     */
+    public Map<String, Map<String, Long>> getTotals() {
+        Map<String, Map<String, Long>> totals = CollectionUtils.createLinkedHashMap();
+        for (Stage stage : getStages()) {
+            Map<String, Long> total = totals.get(stage.getCategory());
+            if (total == null) {
+                total = CollectionUtils.createLinkedHashMap();
+                totals.put(stage.getCategory(), total);
+            }
+            add(total, "stages", 1);
+            add(total, "wallMs", stage.getWallMs());
+            if (stage.getCpuMs() >= 0) {
+                add(total, "cpuMs", stage.getCpuMs());
+            }
+            if (stage.getAllocatedBytes() >= 0) {
+                add(total, "allocatedBytes", stage.getAllocatedBytes());
+            }
+            if (stage.getBytes() != null) {
+                add(total, "bytes", stage.getBytes());
+            }
+        }
+        return totals;
+    }
+
+    private static void add(Map<String, Long> total, String key, long value) {
+        Long current = total.get(key);
+        total.put(key, current == null ? value : current + value);
+    }
+
+    /**
+     * Write totals and all stages to a JSON file
+     * 
+     * @param file
+     * @throws IOException
+     */
+    public void writeReport(File file) throws IOException {
+        Map<String, Object> report = CollectionUtils.createLinkedHashMap();
+        report.put("totals", getTotals());
+        report.put("stages", getStages());
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.setSerializationInclusion(Include.NON_NULL);
+        mapper.enable(SerializationFeature.INDENT_OUTPUT);
+        mapper.writeValue(file, report);
+    }
+
+    /**
+     * @param dumpFile
+     *            JSON genome dump
+     * @return file to write the report for the dump to, alongside the dump
+     */
+    public static File getReportFile(File dumpFile) {
+        String name = dumpFile.getName().replaceAll("\\.json$", "");
+        return new File(dumpFile.getAbsoluteFile().getParentFile(), name + ".metrics.json");
+    }
+
+    private static long getCpuTime() {
+        if (THREADS.isCurrentThreadCpuTimeSupported()) {
+            return THREADS.getCurrentThreadCpuTime();
+        }
+        return -1;
+    }
+
+    private static long getAllocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) THREADS;
+            if (sunThreads.isThreadAllocatedMemorySupported() && sunThreads.isThreadAllocatedMemoryEnabled()) {
+                return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+}
@@ -1,6 +1,7 @@
 package org.ensembl.genomeloader.materializer;
 
 import java.util.Collection;
+import java.util.Map;
 
 import org.ensembl.genomeloader.model.Rnagene;
 
@@ -15,4 +16,13 @@ public interface RfamGeneFetcher {
 
 	public Collection<Rnagene> fetchGenes(String accession);
 
+	/**
+	 * Retrieve Rnagenes for many accessions at once
+	 * 
+	 * @param accessions
+	 *            versioned INSDC accessions
+	 * @return genes keyed by accession, omitting accessions with no genes
+	 */
+	public Map<String, Collection<Rnagene>> fetchGenes(Collection<String> accessions);
+
 }
@@ -0,0 +1,66 @@
+package org.ensembl.genomeloader.materializer;
+
+import static org.ensembl.genomeloader.materializer.DatabaseReferenceSerializer.writeStringFieldIfNotEmpty;
+
+import java.io.IOException;
+
+import org.ensembl.genomeloader.model.sequence.Sequence;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+/**
+ * Writes a {@link Sequence} in the same form as the default bean serializer,
+ * but copies the sequence to the output in chunks so that a string containing
+ * the whole sequence is never built.
+ */
+public class SequenceSerializer extends JsonSerializer<Sequence> {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    @Override
+    public void serialize(Sequence seq, JsonGenerator gen, SerializerProvider serializers)
+            throws IOException, JsonProcessingException {
+        gen.writeStartObject();
+        writeStringFieldIfNotEmpty(gen, "description", seq.getDescription());
+        writeStringFieldIfNotEmpty(gen, "identifier", seq.getIdentifier());
+        gen.writeNumberField("length", seq.getLength());
+        if (seq.getProperties() != null && !seq.getProperties().isEmpty()) {
+            gen.writeObjectField("properties", seq.getProperties());
+        }
+        if (seq.getLength() > 0) {
+            gen.writeFieldName("sequence");
+            // write the value as raw chunks between quotes, escaping as needed
+            gen.writeRawValue("\"");
+            int len = (int) seq.getLength();
+            char[] chunk = new char[CHUNK_SIZE];
+            for (int start = 0; start < len; start += CHUNK_SIZE) {
+                int n = Math.min(CHUNK_SIZE, len - start);
+                seq.getChars(start, start + n, chunk, 0);
+                writeEscaped(gen, chunk, n);
+            }
+            gen.writeRaw('"');
+        }
+        gen.writeEndObject();
+    }
+
+    private static void writeEscaped(JsonGenerator gen, char[] chunk, int n) throws IOException {
+        int start = 0;
+        for (int i = 0; i < n; i++) {
+            char c = chunk[i];
+            if (c == '"' || c == '\\' || c < 0x20) {
+                gen.writeRaw(chunk, start, i - start);
+                if (c == '"' || c == '\\') {
+                    gen.writeRaw(new char[] { '\\', c }, 0, 2);
+                } else {
+                    gen.writeRaw(String.format("\\u%04x", (int) c));
+                }
+                start = i + 1;
+            }
+        }
+        gen.writeRaw(chunk, start, n - start);
+    }
+
+}
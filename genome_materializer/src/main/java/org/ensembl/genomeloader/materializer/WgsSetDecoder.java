@@ -0,0 +1,316 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.ensembl.genomeloader.materializer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ensembl.genomeloader.materializer.EnaXmlRetriever.CheckedConsumer;
+import org.ensembl.genomeloader.util.concurrency.ConcurrencyUtils;
+
+import uk.ac.ebi.embl.api.entry.Entry;
+import uk.ac.ebi.embl.api.validation.ValidationResult;
+import uk.ac.ebi.embl.flatfile.reader.embl.EmblEntryReader;
+import uk.ac.ebi.embl.flatfile.writer.xml.XmlEntryWriter;
+
+/**
+ * Decodes the flatfile for a WGS set into a {@link WgsSetStore} as a pipeline,
+ * so that reading, decoding and writing entries do not block each other:
+ * <ol>
+ * <li>the calling thread reads the (gunzipped) stream and splits it into the
+ * text of each entry</li>
+ * <li>a pool of decoders parses each entry and renders it as XML</li>
+ * <li>a single sink writes decoded entries to the store in the order they
+ * were read</li>
+ * </ol>
+ * Entries pass from the reader to the sink through a bounded queue, so no
+ * more than queueSize entries are held in memory at once however large the
+ * set is, and the reader waits for the sink when decoding falls behind.
+ * <p/>
+ * If flatFile is set, entries are instead stored as flatfile text, to be
+ * parsed by
+ * {@link EnaParser#parseFlatFile(org.ensembl.genomeloader.metadata.GenomicComponentMetaData, java.io.InputStream)}
+ * when each component is parsed. Finding the accession of an entry is much
+ * cheaper than reading it, so the calling thread then writes each entry
+ * straight to the store without a pipeline.
+ */
+public class WgsSetDecoder {
+
+    /**
+     * Entry rendered as XML or flatfile text, with its accession
+     */
+    protected static class DecodedEntry {
+
+        private final String accession;
+        private final String text;
+
+        public DecodedEntry(String accession, String text) {
+            this.accession = accession;
+            this.text = text;
+        }
+
+    }
+
+    private static final String END_OF_ENTRY = "//";
+    private static final String ACCESSION_LINE = "AC   ";
+    private static final String ID_LINE = "ID   ";
+    private static final int LINE_CODE_LENGTH = 5;
+    private static final long POLL_MS = 100;
+    private static final Future<DecodedEntry> END = CompletableFuture.completedFuture(null);
+
+    private final int threads;
+    private final int queueSize;
+    private final boolean flatFile;
+    private Log log;
+
+    /**
+     * @param threads
+     *            number of decoder threads
+     */
+    public WgsSetDecoder(int threads) {
+        this(threads, threads * 4);
+    }
+
+    /**
+     * @param threads
+     *            number of decoder threads
+     * @param queueSize
+     *            maximum number of entries read but not yet written
+     */
+    public WgsSetDecoder(int threads, int queueSize) {
+        this(threads, queueSize, false);
+    }
+
+    /**
+     * @param threads
+     *            number of decoder threads
+     * @param queueSize
+     *            maximum number of entries read but not yet written
+     * @param flatFile
+     *            if true, store the flatfile text of each entry rather than
+     *            rendering it as XML
+     */
+    public WgsSetDecoder(int threads, int queueSize, boolean flatFile) {
+        this.threads = threads;
+        this.queueSize = queueSize;
+        this.flatFile = flatFile;
+    }
+
+    protected Log getLog() {
+        if (log == null) {
+            log = LogFactory.getLog(this.getClass());
+        }
+        return log;
+    }
+
+    /**
+     * Decode all entries read from the supplied flatfile and write them to the
+     * store. The store is not closed.
+     * 
+     * @param flatfile
+     *            reader for the flatfile of a WGS set
+     * @param store
+     *            store to write entries to
+     * @return number of entries written
+     * @throws IOException
+     */
+    public int decode(Reader flatfile, WgsSetStore store) throws IOException {
+        if (flatFile) {
+            AtomicInteger n = new AtomicInteger();
+            readEntries(flatfile, text -> {
+                DecodedEntry entry = findEntry(text);
+                if (entry != null) {
+                    store.addEntry(entry.accession, w -> w.write(entry.text));
+                    n.incrementAndGet();
+                }
+            });
+            return n.get();
+        }
+        ExecutorService decoders = Executors.newFixedThreadPool(threads, ConcurrencyUtils.getDaemonThreadFactory());
+        ExecutorService sinkExecutor = Executors.newSingleThreadExecutor(ConcurrencyUtils.getDaemonThreadFactory());
+        BlockingQueue<Future<DecodedEntry>> queue = new ArrayBlockingQueue<Future<DecodedEntry>>(queueSize);
+        Future<Integer> sink = sinkExecutor.submit(() -> writeEntries(queue, store));
+        try {
+            readEntries(flatfile, text -> put(queue, decoders.submit(() -> decodeEntry(text)), sink));
+            put(queue, END, sink);
+            return getResult(sink);
+        } finally {
+            sink.cancel(true);
+            decoders.shutdownNow();
+            sinkExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Split the supplied flatfile into the text of each entry
+     */
+    private static void readEntries(Reader flatfile, CheckedConsumer<String> entryConsumer) throws IOException {
+        BufferedReader reader = new BufferedReader(flatfile);
+        StringBuilder text = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            text.append(line).append('\n');
+            if (line.startsWith(END_OF_ENTRY)) {
+                entryConsumer.consume(text.toString());
+                text.setLength(0);
+            }
+        }
+        if (text.toString().trim().length() > 0) {
+            // final entry without a terminator
+            entryConsumer.consume(text.toString());
+        }
+    }
+
+    /**
+     * Add a decoded entry to the queue, waiting for space but giving up if the
+     * sink has stopped
+     */
+    private static void put(BlockingQueue<Future<DecodedEntry>> queue, Future<DecodedEntry> entry,
+            Future<Integer> sink) throws IOException {
+        try {
+            while (!queue.offer(entry, POLL_MS, TimeUnit.MILLISECONDS)) {
+                if (sink.isDone()) {
+                    getResult(sink);
+                    throw new EnaParsingException("WGS set writer stopped before all entries were written");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted whilst decoding WGS set");
+        }
+    }
+
+    private static int getResult(Future<Integer> sink) throws IOException {
+        try {
+            return sink.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted whilst decoding WGS set");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ExecutionException) {
+                // failure in a decoder
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new EnaParsingException("Could not decode WGS set", cause);
+            }
+        }
+    }
+
+    /**
+     * Write entries to the store in the order they were queued
+     */
+    private int writeEntries(BlockingQueue<Future<DecodedEntry>> queue, WgsSetStore store)
+            throws InterruptedException, ExecutionException, IOException {
+        int n = 0;
+        while (true) {
+            Future<DecodedEntry> next = queue.take();
+            if (next == END) {
+                return n;
+            }
+            final DecodedEntry entry = next.get();
+            if (entry != null) {
+                store.addEntry(entry.accession, w -> w.write(entry.text));
+                n++;
+            }
+        }
+    }
+
+    /**
+     * Parse the text of a single entry and render it as XML
+     * 
+     * @param text
+     *            flatfile text of the entry
+     * @return decoded entry or null if the text contains no entry
+     * @throws IOException
+     */
+    protected DecodedEntry decodeEntry(String text) throws IOException {
+        EmblEntryReader reader = new EmblEntryReader(new BufferedReader(new StringReader(text)));
+        ValidationResult read = reader.read();
+        if (read.isHasReportMessage()) {
+            getLog().warn(read.getReportMessage());
+        }
+        if (!reader.isEntry()) {
+            return null;
+        }
+        Entry entry = reader.getEntry();
+        getLog().debug("Entry " + entry.getPrimaryAccession() + " found");
+        StringWriter xml = new StringWriter();
+        new XmlEntryWriter(entry).write(xml);
+        return new DecodedEntry(entry.getPrimaryAccession(), xml.toString());
+    }
+
+    /**
+     * Find the primary accession of a single entry, from the first accession
+     * on the AC line or failing that the ID line
+     * 
+     * @param text
+     *            flatfile text of the entry
+     * @return entry holding the unchanged text, or null if the text contains
+     *         no entry
+     * @throws IOException
+     */
+    protected DecodedEntry findEntry(String text) throws IOException {
+        String accession = null;
+        BufferedReader reader = new BufferedReader(new StringReader(text));
+        String line;
+        while ((line = reader.readLine()) != null && !line.startsWith(END_OF_ENTRY)) {
+            if (line.startsWith(ACCESSION_LINE)) {
+                accession = getFirstToken(line);
+                break;
+            } else if (line.startsWith(ID_LINE) && accession == null) {
+                accession = getFirstToken(line);
+            }
+        }
+        if (accession == null || accession.isEmpty()) {
+            return null;
+        }
+        getLog().debug("Entry " + accession + " found");
+        return new DecodedEntry(accession, text);
+    }
+
+    private static String getFirstToken(String line) {
+        String value = line.substring(LINE_CODE_LENGTH).trim();
+        int end = 0;
+        while (end < value.length() && value.charAt(end) != ';' && !Character.isWhitespace(value.charAt(end))) {
+            end++;
+        }
+        return value.substring(0, end);
+    }
+
+}
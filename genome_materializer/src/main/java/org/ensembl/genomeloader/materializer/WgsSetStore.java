@@ -0,0 +1,266 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.genomeloader.materializer;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.Map;
+
+import org.ensembl.genomeloader.materializer.EnaXmlRetriever.CheckedConsumer;
+import org.ensembl.genomeloader.util.collections.CollectionUtils;
+
+import uk.ac.ebi.embl.api.entry.Entry;
+import uk.ac.ebi.embl.flatfile.writer.xml.XmlEntryWriter;
+
+/**
+ * Store for the XML (or flatfile text) of all entries from a WGS set in a
+ * single file. Entries are appended to the file as they are read from the
+ * set, and the byte range of each entry is kept in an index so that entries
+ * can be read back individually without writing one file per entry.
+ * <p/>
+ * When the store is closed, the index is appended to the file followed by a
+ * fixed length trailer holding the offset of the index, so that a completed
+ * store can be reopened later with {@link #open(File)}.
+ */
+public class WgsSetStore implements Closeable {
+
+    /**
+     * Output stream that keeps track of the number of bytes written
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count = 0;
+
+        public CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+    }
+
+    /**
+     * Input stream reading a fixed region of a file
+     */
+    private static class RegionInputStream extends InputStream {
+
+        private final RandomAccessFile file;
+        private long remaining;
+
+        public RegionInputStream(File file, long offset, long length) throws IOException {
+            this.file = new RandomAccessFile(file, "r");
+            this.file.seek(offset);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            remaining--;
+            return file.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = file.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(Integer.MAX_VALUE, remaining);
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+
+    }
+
+    private static final int TRAILER_LENGTH = 20;
+    private static final String TRAILER_FORMAT = "%019d\n";
+
+    private final File file;
+    private final Map<String, long[]> index = CollectionUtils.createHashMap();
+    private CountingOutputStream os;
+    private Writer writer;
+
+    private WgsSetStore(File file, Map<String, long[]> index) {
+        this.file = file;
+        this.index.putAll(index);
+    }
+
+    /**
+     * Reopen a store previously written and closed
+     *
+     * @param file
+     *            file containing the store
+     * @return store for reading
+     * @throws IOException
+     *             if the file does not contain a complete store
+     */
+    public static WgsSetStore open(File file) throws IOException {
+        Map<String, long[]> index = CollectionUtils.createHashMap();
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.length() < TRAILER_LENGTH) {
+                throw new IOException("File " + file + " is not a complete WGS set store");
+            }
+            raf.seek(raf.length() - TRAILER_LENGTH);
+            byte[] trailer = new byte[TRAILER_LENGTH];
+            raf.readFully(trailer);
+            long indexStart;
+            try {
+                indexStart = Long.parseLong(new String(trailer, "US-ASCII").trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("File " + file + " is not a complete WGS set store", e);
+            }
+            raf.seek(indexStart);
+            String line;
+            while (raf.getFilePointer() < raf.length() - TRAILER_LENGTH && (line = raf.readLine()) != null) {
+                String[] cols = line.split("\t");
+                index.put(cols[0], new long[] { Long.parseLong(cols[1]), Long.parseLong(cols[2]) });
+            }
+        } finally {
+            raf.close();
+        }
+        return new WgsSetStore(file, index);
+    }
+
+    /**
+     * @param file
+     *            file to write entries to (overwritten if it exists)
+     * @throws IOException
+     */
+    public WgsSetStore(File file) throws IOException {
+        this.file = file;
+        this.os = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        this.writer = new OutputStreamWriter(os);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Append the XML representation of an entry to the store
+     *
+     * @param entry
+     * @throws IOException
+     */
+    public void addEntry(final Entry entry) throws IOException {
+        addEntry(entry.getPrimaryAccession(), w -> new XmlEntryWriter(entry).write(w));
+    }
+
+    /**
+     * Append an entry to the store
+     *
+     * @param accession
+     *            accession of entry
+     * @param entryWriter
+     *            writes the entry XML or flatfile text to the supplied writer
+     * @throws IOException
+     */
+    public synchronized void addEntry(String accession, CheckedConsumer<Writer> entryWriter) throws IOException {
+        if (writer == null) {
+            throw new IllegalStateException("Cannot add entry " + accession + " to closed store " + file);
+        }
+        // flush before and after so counts reflect bytes written to disk
+        writer.flush();
+        long start = os.getCount();
+        entryWriter.consume(writer);
+        writer.flush();
+        index.put(accession, new long[] { start, os.getCount() - start });
+    }
+
+    public synchronized boolean containsEntry(String accession) {
+        return index.containsKey(accession);
+    }
+
+    /**
+     * Open a stream for the XML or flatfile text of the specified entry. This can be called
+     * once the store has been closed for writing.
+     *
+     * @param accession
+     * @return stream or null if the entry is not found in the store
+     * @throws IOException
+     */
+    public InputStream openEntry(String accession) throws IOException {
+        long[] region;
+        synchronized (this) {
+            region = index.get(accession);
+            if (region == null) {
+                return null;
+            }
+            if (writer != null) {
+                writer.flush();
+            }
+        }
+        return new RegionInputStream(file, region[0], region[1]);
+    }
+
+    /**
+     * Finish writing to the store, appending the index. Entries can still be
+     * read once closed.
+     */
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.flush();
+            long indexStart = os.getCount();
+            for (Map.Entry<String, long[]> e : index.entrySet()) {
+                writer.write(e.getKey() + "\t" + e.getValue()[0] + "\t" + e.getValue()[1] + "\n");
+            }
+            writer.write(String.format(TRAILER_FORMAT, indexStart));
+            writer.close();
+            writer = null;
+            os = null;
+        }
+    }
+
+}
@@ -24,79 +24,250 @@
 package org.ensembl.genomeloader.materializer.executor;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.ensembl.genomeloader.materializer.MaterializerMetrics;
 
 /**
+ * Executor limiting the number of commands run at once across all processes
+ * sharing a lock directory. Each of the slotN slots is a file lock on
+ * lockDir/lockN. Threads in this process queue fairly for one of slotN local
+ * permits, so up to slotN commands can run concurrently in one process, and a
+ * thread holding a permit then claims any slot not held by this process or by
+ * another process. If all slots are held elsewhere, the thread sleeps with
+ * jittered exponential backoff before trying again rather than spinning. Time
+ * spent waiting for a slot is recorded and can be reported with
+ * {@link #getReport()}.
+ * 
  * @author dstaines
  * 
  */
 public class FileLockExecutor implements Executor {
 
+	private static final long MIN_BACKOFF_MS = 10;
+	private static final long MAX_BACKOFF_MS = 1000;
+
+	/**
+	 * Slot claimed by this process
+	 */
+	private final class Slot {
+
+		private final int n;
+		private final FileChannel channel;
+		private final FileLock lock;
+
+		private Slot(int n, FileChannel channel, FileLock lock) {
+			this.n = n;
+			this.channel = channel;
+			this.lock = lock;
+		}
+
+		private void release() {
+			log.debug("Releasing lock " + n);
+			try {
+				lock.release();
+			} catch (IOException e) {
+				log.warn("Could not release lock " + n, e);
+			} finally {
+				closeQuietly(channel);
+				releaseLocal(n);
+			}
+		}
+
+	}
+
 	private final String lockDir;
 	private final int slotN;
 	private final Log log;
+	private final Semaphore permits;
+	private final boolean[] held;
+	private final AtomicLong waits = new AtomicLong();
+	private final AtomicLong waitMs = new AtomicLong();
+	private final AtomicLong maxWaitMs = new AtomicLong();
+	private final AtomicLong backoffs = new AtomicLong();
+	private MaterializerMetrics metrics;
 
 	/**
 	 * @param slotN
 	 * @param lockDir
 	 */
 	public FileLockExecutor(String lockDir, int slotN) {
+		if (slotN < 1) {
+			throw new IllegalArgumentException("At least one slot is needed");
+		}
 		this.lockDir = lockDir;
 		this.slotN = slotN;
+		this.permits = new Semaphore(slotN, true);
+		this.held = new boolean[slotN];
 		log = LogFactory.getLog(this.getClass());
 	}
 
-	public synchronized void execute(Runnable command) {
-		boolean success = false;
-		while (!success) {
-			for (int n = 0; n < slotN; n++) {
-				FileChannel channel = null;
-				try {
-					channel = new RandomAccessFile(new File(lockDir + "/lock"
-							+ n), "rw").getChannel();
-					FileLock lock = null;
-					try {
-						log.debug("Acquiring lock " + n);
-						lock = channel.tryLock();
-					} catch (OverlappingFileLockException e) {
-						lock = null;
-					}
-					if (lock != null) {
-						try {
-							log.debug("Acquired lock " + n);
-							command.run();
-							success = true;
-							break;
-						} finally {
-							log.debug("Releasing lock " + n);
-							lock.release();
-						}
-					} else {
-						log.debug("Failed to acquire lock " + n);
-					}
-				} catch (FileNotFoundException e) {
-					throw new RuntimeException("Problem locking", e);
-				} catch (IOException e) {
-					throw new RuntimeException("Problem locking", e);
-				} finally {
-					try {
-						if (channel != null) {
-							channel.close();
-						}
-					} catch (IOException e1) {
-						// swallow
-					}
+	public MaterializerMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @param metrics
+	 *            optional metrics to record the wait for each slot to
+	 */
+	public void setMetrics(MaterializerMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public void execute(Runnable command) {
+		long start = System.nanoTime();
+		MaterializerMetrics.Timer timer = metrics == null ? null
+				: metrics.start(MaterializerMetrics.SLOT_WAIT, lockDir);
+		Slot slot;
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted waiting for lock", e);
+		}
+		try {
+			try {
+				slot = acquireSlot();
+			} finally {
+				recordWait((System.nanoTime() - start) / 1000000);
+				if (timer != null) {
+					timer.stop();
+				}
+			}
+			try {
+				command.run();
+			} finally {
+				slot.release();
+			}
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Claim a free slot, backing off while all slots are held by other
+	 * processes. Only called by a thread holding a permit, so at least one
+	 * slot is never held by this process.
+	 */
+	private Slot acquireSlot() {
+		long backoff = MIN_BACKOFF_MS;
+		// start at a random slot to spread processes over the lock files
+		int offset = ThreadLocalRandom.current().nextInt(slotN);
+		while (true) {
+			for (int i = 0; i < slotN; i++) {
+				int n = (offset + i) % slotN;
+				Slot slot = tryAcquire(n);
+				if (slot != null) {
+					return slot;
 				}
 			}
+			backoffs.incrementAndGet();
+			long sleep = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+			log.debug("All " + slotN + " locks in " + lockDir + " held, waiting " + sleep + " ms");
+			try {
+				Thread.sleep(sleep);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted waiting for lock", e);
+			}
+			backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
 		}
 	}
+
+	private Slot tryAcquire(int n) {
+		if (!claimLocal(n)) {
+			return null;
+		}
+		FileChannel channel = null;
+		FileLock lock = null;
+		try {
+			log.debug("Acquiring lock " + n);
+			channel = new RandomAccessFile(new File(lockDir + "/lock" + n), "rw").getChannel();
+			try {
+				lock = channel.tryLock();
+			} catch (OverlappingFileLockException e) {
+				// held by another executor using the same directory
+				lock = null;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Problem locking", e);
+		} finally {
+			if (lock == null) {
+				closeQuietly(channel);
+				releaseLocal(n);
+			}
+		}
+		if (lock == null) {
+			log.debug("Failed to acquire lock " + n);
+			return null;
+		}
+		log.debug("Acquired lock " + n);
+		return new Slot(n, channel, lock);
+	}
+
+	private synchronized boolean claimLocal(int n) {
+		if (held[n]) {
+			return false;
+		}
+		held[n] = true;
+		return true;
+	}
+
+	private synchronized void releaseLocal(int n) {
+		held[n] = false;
+	}
+
+	private static void closeQuietly(FileChannel channel) {
+		try {
+			if (channel != null) {
+				channel.close();
+			}
+		} catch (IOException e1) {
+			// swallow
+		}
+	}
+
+	private void recordWait(long ms) {
+		waits.incrementAndGet();
+		waitMs.addAndGet(ms);
+		maxWaitMs.accumulateAndGet(ms, Math::max);
+	}
+
+	/**
+	 * @return number of commands that have waited for a slot
+	 */
+	public long getWaitCount() {
+		return waits.get();
+	}
+
+	/**
+	 * @return total time in ms commands have waited for a slot
+	 */
+	public long getTotalWaitMs() {
+		return waitMs.get();
+	}
+
+	/**
+	 * @return longest time in ms a command has waited for a slot
+	 */
+	public long getMaxWaitMs() {
+		return maxWaitMs.get();
+	}
+
+	public String getReport() {
+		long n = waits.get();
+		return String.format("Lock slots %s: %d commands, %.1f ms mean wait, %d ms max wait, %d backoffs", lockDir,
+				n, n == 0 ? 0.0 : (double) waitMs.get() / n, maxWaitMs.get(), backoffs.get());
+	}
+
 }
@@ -0,0 +1,200 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.ensembl.genomeloader.materializer.genome_collections;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ensembl.genomeloader.materializer.impl.MaterializationUncheckedException;
+import org.ensembl.genomeloader.metadata.GenomeMetaData;
+import org.ensembl.genomeloader.metadata.GenomeMetaData.OrganismNameType;
+import org.ensembl.genomeloader.metadata.GenomicComponentMetaData;
+import org.ensembl.genomeloader.metadata.GenomicComponentMetaData.GenomicComponentType;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * On-disk snapshots of the {@link GenomeMetaData} and component list
+ * retrieved from Genome Collections, so that repeated loads of the same
+ * assembly version do not need to query it again. Snapshots are stored as
+ * JSON files named by set chain, set version and WGS policy (e.g.
+ * <code>GCA_000005845.2.AUTOMATIC.json</code>), so a new assembly version is
+ * never served from an older snapshot.
+ * <p/>
+ * Only the fields populated by {@link OracleGenomeCollections} are stored.
+ * Snapshots are written to a temporary file and moved into place so that
+ * processes sharing a directory never see a partially written snapshot, and a
+ * snapshot which cannot be read is treated as missing.
+ */
+public class GenomeMetaDataSnapshots {
+
+    private static final String SUFFIX = ".json";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final File dir;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private Log log;
+
+    /**
+     * @param dir
+     *            directory to store snapshots in
+     */
+    public GenomeMetaDataSnapshots(File dir) {
+        this.dir = dir;
+        dir.mkdirs();
+        if (!dir.isDirectory()) {
+            throw new MaterializationUncheckedException("Could not create metadata snapshot directory " + dir.getPath());
+        }
+    }
+
+    private Log getLog() {
+        if (log == null) {
+            log = LogFactory.getLog(GenomeMetaDataSnapshots.class);
+        }
+        return log;
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    protected File getFile(String setChain, String version, String policy) {
+        return new File(dir, setChain + "." + version + "." + policy + SUFFIX);
+    }
+
+    /**
+     * @param setChain
+     * @param version
+     *            set version
+     * @param policy
+     *            WGS policy used to choose components
+     * @return metadata with components, or null if no usable snapshot exists
+     */
+    public GenomeMetaData read(String setChain, String version, String policy) {
+        final File f = getFile(setChain, version, policy);
+        if (!f.exists()) {
+            getLog().debug("No metadata snapshot found for " + setChain + "." + version);
+            return null;
+        }
+        try {
+            final GenomeMetaData md = fromJson(mapper.readTree(f));
+            if (!setChain.equals(md.getId()) || !version.equals(md.getVersion())) {
+                getLog().warn("Ignoring metadata snapshot " + f.getPath() + " for " + md.getId() + "."
+                        + md.getVersion());
+                return null;
+            }
+            getLog().debug("Read metadata snapshot " + f.getPath());
+            return md;
+        } catch (IOException | RuntimeException e) {
+            getLog().warn("Ignoring unreadable metadata snapshot " + f.getPath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Store metadata and its components, replacing any existing snapshot for
+     * the same set version. Failure to write is logged but not fatal.
+     * 
+     * @param md
+     * @param policy
+     *            WGS policy used to choose components
+     */
+    public void write(GenomeMetaData md, String policy) {
+        final File f = getFile(md.getId(), md.getVersion(), policy);
+        File tmp = null;
+        try {
+            tmp = File.createTempFile(f.getName() + ".", TMP_SUFFIX, dir);
+            mapper.writeValue(tmp, toJson(md));
+            Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            getLog().debug("Wrote metadata snapshot " + f.getPath());
+        } catch (final IOException e) {
+            getLog().warn("Could not write metadata snapshot " + f.getPath(), e);
+        } finally {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    protected JsonNode toJson(GenomeMetaData md) {
+        final ObjectNode node = mapper.createObjectNode();
+        node.put("id", md.getId());
+        node.put("name", md.getName());
+        node.put("taxId", md.getTaxId());
+        node.put("version", md.getVersion());
+        node.put("assemblyName", md.getAssemblyName());
+        node.put("assemblyDefault", md.getAssemblyDefault());
+        node.put("description", md.getDescription());
+        final ObjectNode names = node.putObject("organismNames");
+        for (final Map.Entry<OrganismNameType, String> name : md.getOrganismNames().entrySet()) {
+            names.put(name.getKey().name(), name.getValue());
+        }
+        final ArrayNode components = node.putArray("components");
+        for (final GenomicComponentMetaData cmd : md.getComponentMetaData()) {
+            final ObjectNode component = components.addObject();
+            component.put("accession", cmd.getAccession());
+            component.put("version", cmd.getVersion());
+            if (cmd.getComponentType() != null) {
+                component.put("componentType", cmd.getComponentType().name());
+            }
+            component.put("name", cmd.getName());
+        }
+        return node;
+    }
+
+    protected GenomeMetaData fromJson(JsonNode node) {
+        final GenomeMetaData md = new GenomeMetaData(node.get("id").asText(), node.get("name").asText(),
+                node.get("taxId").asInt());
+        md.setVersion(getText(node, "version"));
+        md.setAssemblyName(getText(node, "assemblyName"));
+        md.setAssemblyDefault(getText(node, "assemblyDefault"));
+        md.setDescription(getText(node, "description"));
+        for (final Iterator<Map.Entry<String, JsonNode>> i = node.get("organismNames").fields(); i
+                .hasNext();) {
+            final Map.Entry<String, JsonNode> name = i.next();
+            md.setOrganismName(OrganismNameType.valueOf(name.getKey()), name.getValue().asText());
+        }
+        for (final JsonNode component : node.get("components")) {
+            final GenomicComponentMetaData cmd = new GenomicComponentMetaData(getText(component, "accession"), md);
+            cmd.setVersion(getText(component, "version"));
+            final String type = getText(component, "componentType");
+            if (type != null) {
+                cmd.setComponentType(GenomicComponentType.valueOf(type));
+            }
+            cmd.setName(getText(component, "name"));
+            md.getComponentMetaData().add(cmd);
+        }
+        return md;
+    }
+
+    private static String getText(JsonNode node, String field) {
+        final JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+}
@@ -23,6 +23,7 @@
  */
 package org.ensembl.genomeloader.materializer.genome_collections;
 
+import java.io.File;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -43,6 +44,7 @@ import org.ensembl.genomeloader.util.sql.RowMapper;
 import org.ensembl.genomeloader.util.sql.SqlLib;
 import org.ensembl.genomeloader.util.sql.SqlServiceTemplate;
 import org.ensembl.genomeloader.util.sql.SqlServiceTemplateImpl;
+import org.ensembl.genomeloader.util.templating.TemplateBuilder;
 
 /**
  * DAO for Genome Collections database
@@ -126,10 +128,20 @@ public class OracleGenomeCollections implements GenomeCollections {
     }
 
     private final GcWgsPolicy policy;
+    private GenomeMetaDataSnapshots snapshots;
+
+    /**
+     * Maximum number of accessions bound in one feature count query (Oracle
+     * allows at most 1000 expressions in an IN list)
+     */
+    private static final int COUNT_BATCH_SIZE = 1000;
 
     public OracleGenomeCollections(EnaGenomeConfig config, SqlService srv) {
         this(new SqlServiceTemplateImpl(config.getEtaUri(), srv),
                 GcWgsPolicy.valueOf(config.getWgsPolicy().toUpperCase()));
+        if (!StringUtils.isEmpty(config.getMetadataSnapshotDir())) {
+            setSnapshots(new GenomeMetaDataSnapshots(new File(config.getMetadataSnapshotDir())));
+        }
     };
 
     public OracleGenomeCollections(SqlServiceTemplate gcServer, GcWgsPolicy policy) {
@@ -138,6 +150,19 @@ public class OracleGenomeCollections implements GenomeCollections {
         this.policy = policy;
     }
 
+    public GenomeMetaDataSnapshots getSnapshots() {
+        return snapshots;
+    }
+
+    /**
+     * @param snapshots
+     *            snapshots to reuse metadata from when the set version has not
+     *            changed, or null to always query Genome Collections
+     */
+    public void setSnapshots(GenomeMetaDataSnapshots snapshots) {
+        this.snapshots = snapshots;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -145,16 +170,39 @@ public class OracleGenomeCollections implements GenomeCollections {
      * GenomeCollections #getGenomeForSetChain(java.lang.String)
      */
     public GenomeMetaData getGenomeForSetChain(String setChain) {
+        if (snapshots != null) {
+            // only the current set version is needed to find a snapshot
+            final String version = getVersionForSetChain(setChain);
+            if (!StringUtils.isEmpty(version)) {
+                final GenomeMetaData md = snapshots.read(setChain, version, policy.name());
+                if (md != null) {
+                    getLog().info("Using metadata snapshot for " + setChain + "." + version + " with "
+                            + md.getComponentMetaData().size() + " components");
+                    return md;
+                }
+            }
+        }
         getLog().info("Fetching metadata for " + setChain);
         final List<GenomeMetaData> mds = gcServer.queryForList(sqlLib.getQuery("getGenomeForId"), genomeMapper,
                 setChain);
         final GenomeMetaData md = CollectionUtils.getFirstElement(mds, null);
         if (md != null) {
             addComponentsForGenome(md);
+            if (snapshots != null) {
+                snapshots.write(md, policy.name());
+            }
         }
         return md;
     }
 
+    /**
+     * @param setChain
+     * @return latest version of the set chain, or null if not found
+     */
+    protected String getVersionForSetChain(String setChain) {
+        return gcServer.queryForDefaultObject(sqlLib.getQuery("getGenomeVersionForId"), String.class, setChain);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -238,10 +286,19 @@ public class OracleGenomeCollections implements GenomeCollections {
                 getLog().info("Using " + wgs.size() + "WGS components");
                 return wgs;
             } else {
-                final int componentFeatureN = countFeaturesGC(components);
-                final int wgsFeatureN = countFeatures(wgs);
+                // count the smaller set in full, then count the larger set
+                // only until it is known to have more features
+                final int componentFeatureN;
+                final int wgsFeatureN;
+                if (components.size() <= wgs.size()) {
+                    componentFeatureN = countFeaturesGC(components, Integer.MAX_VALUE);
+                    wgsFeatureN = countFeatures(wgs, componentFeatureN + 1);
+                } else {
+                    wgsFeatureN = countFeatures(wgs, Integer.MAX_VALUE);
+                    componentFeatureN = countFeaturesGC(components, wgsFeatureN);
+                }
                 getLog().info("Found " + componentFeatureN + " features on " + components.size() + " GC components vs. "
-                        + wgsFeatureN + " on " + wgs.size() + " WGS components");
+                        + wgsFeatureN + " on " + wgs.size() + " WGS components (counting stops once one set has more)");
                 if (componentFeatureN >= wgsFeatureN) {
                     getLog().info("Using " + components.size() + " GC components");
                     return components;
@@ -257,23 +314,78 @@ public class OracleGenomeCollections implements GenomeCollections {
     }
 
     protected int countFeatures(List<GenomicComponentMetaData> components) {
-        int n = 0;
+        return countFeatures(components, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Count CDS features on the supplied components using ENA
+     * 
+     * @param components
+     * @param stopAt
+     *            count at which to stop counting further components
+     * @return number of features, or a partial count of at least stopAt
+     */
+    protected int countFeatures(List<GenomicComponentMetaData> components, int stopAt) {
+        final List<String> accs = new ArrayList<String>(components.size());
         for (final GenomicComponentMetaData component : components) {
-            n += gcServer.queryForDefaultObject(sqlLib.getQuery("getFeatureCountForComponent"), Integer.class,
-                    component.getAccession());
+            accs.add(component.getAccession());
         }
-        return n;
+        return countFeatures("getFeatureCountForComponents", accs, stopAt);
     }
 
     protected int countFeaturesGC(List<GenomicComponentMetaData> components) {
-        int n = 0;
+        return countFeaturesGC(components, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Count CDS features on the supplied components using GC statistics
+     * 
+     * @param components
+     * @param stopAt
+     *            count at which to stop counting further components
+     * @return number of features, or a partial count of at least stopAt
+     */
+    protected int countFeaturesGC(List<GenomicComponentMetaData> components, int stopAt) {
+        final List<String> accs = new ArrayList<String>(components.size());
         for (final GenomicComponentMetaData component : components) {
-            n += gcServer.queryForDefaultObject(sqlLib.getQuery("getFeatureCountForComponentGC"), Integer.class,
-                    component.getAccession() + "." + component.getVersion());
+            accs.add(component.getAccession() + "." + component.getVersion());
+        }
+        return countFeatures("getFeatureCountForComponentsGC", accs, stopAt);
+    }
+
+    /**
+     * Sum feature counts for accessions in batches, stopping early if the
+     * total reaches stopAt
+     */
+    protected int countFeatures(String queryName, List<String> accs, int stopAt) {
+        int n = 0;
+        for (int start = 0; start < accs.size() && n < stopAt; start += COUNT_BATCH_SIZE) {
+            final List<String> batch = accs.subList(start, Math.min(accs.size(), start + COUNT_BATCH_SIZE));
+            n += countFeatureBatch(queryName, batch);
         }
         return n;
     }
 
+    /**
+     * @param queryName
+     *            query with an <code>$accs$</code> placeholder for the list of
+     *            bind variables
+     * @param accs
+     *            accessions to count features for
+     * @return total number of features for all accessions
+     */
+    protected int countFeatureBatch(String queryName, List<String> accs) {
+        final StringBuilder binds = new StringBuilder();
+        for (int i = 0; i < accs.size(); i++) {
+            if (i > 0) {
+                binds.append(',');
+            }
+            binds.append('?');
+        }
+        final String sql = TemplateBuilder.template(sqlLib.getQuery(queryName), "accs", binds.toString());
+        return gcServer.queryForDefaultObject(sql, Integer.class, accs.toArray());
+    }
+
     /*
      * (non-Javadoc)
      * 
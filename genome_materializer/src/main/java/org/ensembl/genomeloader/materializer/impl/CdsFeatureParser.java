@@ -28,6 +28,7 @@ import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.biojavax.bio.seq.RichLocation;
 import org.ensembl.genomeloader.materializer.EnaParsingException;
 import org.ensembl.genomeloader.metadata.GenomicComponentMetaData;
 import org.ensembl.genomeloader.model.AnnotatedGene;
@@ -39,6 +40,7 @@ import org.ensembl.genomeloader.model.GeneName;
 import org.ensembl.genomeloader.model.GeneNameType;
 import org.ensembl.genomeloader.model.ModelUtils;
 import org.ensembl.genomeloader.model.impl.DatabaseReferenceImpl;
+import org.ensembl.genomeloader.model.impl.DelegatingEntityLocation;
 import org.ensembl.genomeloader.model.impl.GeneImpl;
 import org.ensembl.genomeloader.model.impl.GenomicComponentImpl;
 import org.ensembl.genomeloader.model.impl.ProteinImpl;
@@ -100,7 +102,7 @@ public class CdsFeatureParser extends XmlEnaFeatureParser {
 		component.addGene(gene);
 	}
 
-	private final Pattern exceptPattern = Pattern
+	private static final Pattern exceptPattern = Pattern
 			.compile("\\(pos:([0-9]+)..([0-9]+),aa:([A-Za-z]+)\\)");
 
 	protected void addExceptions(EntityLocation loc,
@@ -128,6 +130,19 @@ public class CdsFeatureParser extends XmlEnaFeatureParser {
 		return loc;
 	}
 
+	/**
+	 * Copy a location so it can be attached to another entity without parsing
+	 * the feature location again. The parsed location is shared, but the copy
+	 * has its own exceptions and insertions.
+	 * 
+	 * @param loc
+	 * @return copy of location
+	 */
+	protected static EntityLocation copyLocation(EntityLocation loc) {
+		return new DelegatingEntityLocation(loc,
+				(RichLocation) DelegatingEntityLocation.getLocation(loc));
+	}
+
 	protected GeneImpl buildGene(GenomicComponentImpl component,
 			Element element, Map<String, List<String>> qualifiers) {
 
@@ -171,14 +186,15 @@ public class CdsFeatureParser extends XmlEnaFeatureParser {
 		transcript.addDatabaseReference(getFeatureIdentifierRef(component,
 				element, "TRANSCRIPT"));
 
-		gene.setLocation(getLocation(element, qualifiers));
-		protein.setLocation(getLocation(element, qualifiers));
+		EntityLocation loc = getLocation(element, qualifiers);
+		gene.setLocation(loc);
+		protein.setLocation(copyLocation(loc));
 		// set pseudo for sub-codon sequences
 		if(ModelUtils.getEntityLocationLength(protein.getLocation())<3) {
 		    protein.setPseudo(true);
 		    gene.setBiotype("pseudogene");
 		}
-		transcript.setLocation(getLocation(element, qualifiers));
+		transcript.setLocation(copyLocation(loc));
 
 		// attach xrefs
 		for (DatabaseReference xref : parseXrefs(element)) {
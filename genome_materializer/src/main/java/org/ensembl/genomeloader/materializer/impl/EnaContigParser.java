@@ -18,11 +18,8 @@ package org.ensembl.genomeloader.materializer.impl;
 
 import org.ensembl.genomeloader.materializer.EnaParser;
 import org.ensembl.genomeloader.materializer.EnaXmlRetriever;
-import org.ensembl.genomeloader.model.impl.GenomicComponentImpl;
 import org.ensembl.genomeloader.xrefregistry.DatabaseReferenceTypeRegistry;
 
-import nu.xom.Element;
-
 /**
  * Minimal parser that only deals with parsing the sequence and CON of an entry
  * 
@@ -36,8 +33,9 @@ public class EnaContigParser extends EnaParser {
     }
 
     @Override
-    protected void parseFeatures(GenomicComponentImpl component, Element entryElem) {
+    protected boolean isParsingFeatures() {
         // do nothing with features
+        return false;
     }
 
 }
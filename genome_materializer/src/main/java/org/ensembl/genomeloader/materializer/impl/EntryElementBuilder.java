@@ -0,0 +1,306 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.ensembl.genomeloader.materializer.impl;
+
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.ensembl.genomeloader.materializer.EnaGenomeMaterializer;
+import org.ensembl.genomeloader.materializer.EnaParser;
+import org.ensembl.genomeloader.model.sequence.Sequence;
+
+import nu.xom.Attribute;
+import nu.xom.Element;
+import uk.ac.ebi.embl.api.entry.Entry;
+import uk.ac.ebi.embl.api.entry.Text;
+import uk.ac.ebi.embl.api.entry.XRef;
+import uk.ac.ebi.embl.api.entry.feature.Feature;
+import uk.ac.ebi.embl.api.entry.feature.SourceFeature;
+import uk.ac.ebi.embl.api.entry.location.CompoundLocation;
+import uk.ac.ebi.embl.api.entry.location.Gap;
+import uk.ac.ebi.embl.api.entry.location.LocalBase;
+import uk.ac.ebi.embl.api.entry.location.LocalBetween;
+import uk.ac.ebi.embl.api.entry.location.Location;
+import uk.ac.ebi.embl.api.entry.location.Order;
+import uk.ac.ebi.embl.api.entry.location.RemoteBase;
+import uk.ac.ebi.embl.api.entry.location.RemoteBetween;
+import uk.ac.ebi.embl.api.entry.location.RemoteLocation;
+import uk.ac.ebi.embl.api.entry.location.RemoteRange;
+import uk.ac.ebi.embl.api.entry.qualifier.Qualifier;
+import uk.ac.ebi.embl.api.entry.reference.Reference;
+import uk.ac.ebi.embl.api.taxonomy.Taxon;
+import uk.ac.ebi.embl.flatfile.writer.xml.XmlEntryWriter;
+
+/**
+ * Builds the elements read by {@link EnaParser} and the
+ * {@link XmlEnaFeatureParser}s directly from an embl-api {@link Entry}, using
+ * the element and attribute names written by {@link XmlEntryWriter}. Only the
+ * parts of the ENA XML that are actually parsed are built, so an entry read
+ * from a flatfile can be handed to the feature parsers without being written
+ * out as XML text and parsed back.
+ */
+public class EntryElementBuilder {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * Build the entry element with the attributes and header elements (but not
+     * the features or sequence) of an entry
+     * 
+     * @param entry
+     * @return entry element
+     */
+    public static Element buildEntryElement(Entry entry) {
+        Element entryElem = new Element("entry");
+        addAttribute(entryElem, "accession", entry.getPrimaryAccession());
+        uk.ac.ebi.embl.api.entry.sequence.Sequence seq = entry.getSequence();
+        if (seq != null) {
+            addAttribute(entryElem, "version", seq.getVersion());
+        }
+        addAttribute(entryElem, "dataClass", entry.getDataClass());
+        if (seq != null) {
+            addAttribute(entryElem, "moleculeType", seq.getMoleculeType());
+            addAttribute(entryElem, "sequenceLength", seq.getLength());
+            if (seq.getTopology() != null) {
+                addAttribute(entryElem, "topology", seq.getTopology().name().toLowerCase());
+            }
+        }
+        if (entry.getFirstPublic() != null) {
+            addAttribute(entryElem, "firstPublic", EnaGenomeMaterializer.formatEnaDate(entry.getFirstPublic()));
+        }
+        if (entry.getLastUpdated() != null) {
+            addAttribute(entryElem, "lastUpdated", EnaGenomeMaterializer.formatEnaDate(entry.getLastUpdated()));
+        }
+        for (Text secondary : entry.getSecondaryAccessions()) {
+            addText(entryElem, "secondaryAccession", secondary.getText());
+        }
+        addText(entryElem, "description", entry.getDescription() == null ? null : entry.getDescription().getText());
+        for (Reference reference : entry.getReferences()) {
+            Element refElem = new Element("reference");
+            if (reference.getPublication() != null) {
+                for (XRef xref : reference.getPublication().getXRefs()) {
+                    refElem.appendChild(buildXrefElement(xref));
+                }
+            }
+            entryElem.appendChild(refElem);
+        }
+        if (seq != null && seq.getContigs() != null && !seq.getContigs().isEmpty()) {
+            entryElem.appendChild(buildContigElement(seq.getContigs()));
+        }
+        return entryElem;
+    }
+
+    /**
+     * Build an element for a feature, including its location, qualifiers and
+     * xrefs
+     * 
+     * @param feature
+     * @return feature element
+     */
+    public static Element buildFeatureElement(Feature feature) {
+        Element featureElem = new Element("feature");
+        addAttribute(featureElem, "name", feature.getName());
+        addAttribute(featureElem, "location", renderLocation(feature.getLocations()));
+        if (feature instanceof SourceFeature) {
+            Taxon taxon = ((SourceFeature) feature).getTaxon();
+            if (taxon != null) {
+                featureElem.appendChild(buildTaxonElement(taxon));
+            }
+        }
+        for (XRef xref : feature.getXRefs()) {
+            featureElem.appendChild(buildXrefElement(xref));
+        }
+        for (Qualifier qualifier : feature.getQualifiers()) {
+            Element qualifierElem = new Element("qualifier");
+            addAttribute(qualifierElem, "name", qualifier.getName());
+            addText(qualifierElem, "value", qualifier.getValue());
+            featureElem.appendChild(qualifierElem);
+        }
+        return featureElem;
+    }
+
+    /**
+     * Copy the sequence of an entry to a sequence in chunks, without building
+     * a string containing the whole sequence
+     * 
+     * @param entry
+     * @param seq
+     *            sequence to append to
+     */
+    public static void appendSequence(Entry entry, Sequence seq) {
+        byte[] bytes = entry.getSequence() == null ? null : entry.getSequence().getSequenceByte();
+        if (bytes == null) {
+            return;
+        }
+        char[] chunk = new char[Math.min(CHUNK_SIZE, bytes.length)];
+        for (int start = 0; start < bytes.length; start += chunk.length) {
+            int n = Math.min(chunk.length, bytes.length - start);
+            for (int i = 0; i < n; i++) {
+                chunk[i] = (char) bytes[start + i];
+            }
+            seq.appendSequence(chunk, 0, n);
+        }
+    }
+
+    /**
+     * Render a location in EMBL feature table format e.g.
+     * complement(join(&lt;1..100,200..&gt;300))
+     * 
+     * @param locations
+     * @return location string
+     */
+    public static String renderLocation(CompoundLocation<Location> locations) {
+        StringBuilder sb = new StringBuilder();
+        List<Location> locs = locations.getLocations();
+        if (locations.isComplement()) {
+            sb.append("complement(");
+        }
+        if (locs.size() > 1) {
+            sb.append(locations instanceof Order ? "order(" : "join(");
+        }
+        for (int i = 0; i < locs.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            renderLocation(sb, locs.get(i), i == 0 && locations.isLeftPartial(),
+                    i == locs.size() - 1 && locations.isRightPartial());
+        }
+        if (locs.size() > 1) {
+            sb.append(')');
+        }
+        if (locations.isComplement()) {
+            sb.append(')');
+        }
+        return sb.toString();
+    }
+
+    private static void renderLocation(StringBuilder sb, Location loc, boolean leftPartial, boolean rightPartial) {
+        if (loc.isComplement()) {
+            sb.append("complement(");
+        }
+        if (loc instanceof Gap) {
+            sb.append("gap(").append(loc.getLength()).append(')');
+        } else {
+            if (loc instanceof RemoteLocation) {
+                RemoteLocation remote = (RemoteLocation) loc;
+                sb.append(remote.getAccession());
+                if (remote.getVersion() != null) {
+                    sb.append('.').append(remote.getVersion());
+                }
+                sb.append(':');
+            }
+            boolean base = loc instanceof LocalBase || loc instanceof RemoteBase;
+            if (leftPartial) {
+                sb.append('<');
+            } else if (base && rightPartial) {
+                // a single base partial at its right end e.g. >100
+                sb.append('>');
+            }
+            sb.append(loc.getBeginPosition());
+            if (loc instanceof LocalBetween || loc instanceof RemoteBetween) {
+                sb.append('^').append(loc.getEndPosition());
+            } else if (!base || (leftPartial && rightPartial)) {
+                // a base partial at both ends can only be written as a range
+                sb.append("..");
+                if (rightPartial) {
+                    sb.append('>');
+                }
+                sb.append(loc.getEndPosition());
+            }
+        }
+        if (loc.isComplement()) {
+            sb.append(')');
+        }
+    }
+
+    private static Element buildContigElement(List<Location> contigs) {
+        Element contigElem = new Element("contig");
+        long begin = 1;
+        for (Location loc : contigs) {
+            long end = begin + loc.getLength() - 1;
+            if (loc instanceof Gap) {
+                Element gapElem = new Element("gap");
+                addAttribute(gapElem, "begin", begin);
+                addAttribute(gapElem, "end", end);
+                addAttribute(gapElem, "length", loc.getLength());
+                if (((Gap) loc).isUnknownLength()) {
+                    addAttribute(gapElem, "unknownLength", "true");
+                }
+                contigElem.appendChild(gapElem);
+            } else if (loc instanceof RemoteRange) {
+                RemoteRange range = (RemoteRange) loc;
+                Element rangeElem = new Element("range");
+                addAttribute(rangeElem, "primaryBegin", range.getBeginPosition());
+                addAttribute(rangeElem, "primaryEnd", range.getEndPosition());
+                addAttribute(rangeElem, "begin", begin);
+                addAttribute(rangeElem, "end", end);
+                addAttribute(rangeElem, "accession", range.getAccession());
+                addAttribute(rangeElem, "version", range.getVersion());
+                if (range.isComplement()) {
+                    addAttribute(rangeElem, "complement", "true");
+                }
+                contigElem.appendChild(rangeElem);
+            }
+            begin = end + 1;
+        }
+        return contigElem;
+    }
+
+    private static Element buildTaxonElement(Taxon taxon) {
+        Element taxonElem = new Element("taxon");
+        addAttribute(taxonElem, "scientificName", taxon.getScientificName());
+        addAttribute(taxonElem, "taxId", taxon.getTaxId());
+        if (!StringUtils.isEmpty(taxon.getLineage())) {
+            // lineage is held as a string e.g. "Bacteria; Proteobacteria."
+            Element lineageElem = new Element("lineage");
+            for (String name : taxon.getLineage().split(";")) {
+                name = StringUtils.removeEnd(name.trim(), ".");
+                if (!StringUtils.isEmpty(name)) {
+                    Element linElem = new Element("taxon");
+                    addAttribute(linElem, "scientificName", name);
+                    lineageElem.appendChild(linElem);
+                }
+            }
+            taxonElem.appendChild(lineageElem);
+        }
+        return taxonElem;
+    }
+
+    private static Element buildXrefElement(XRef xref) {
+        Element xrefElem = new Element("xref");
+        addAttribute(xrefElem, "db", xref.getDatabase());
+        addAttribute(xrefElem, "id", xref.getPrimaryAccession());
+        addAttribute(xrefElem, "secondaryId", xref.getSecondaryAccession());
+        return xrefElem;
+    }
+
+    private static void addAttribute(Element elem, String name, Object value) {
+        if (value != null) {
+            elem.addAttribute(new Attribute(name, String.valueOf(value)));
+        }
+    }
+
+    private static void addText(Element parent, String name, String text) {
+        if (text != null) {
+            Element elem = new Element(name);
+            elem.appendChild(text);
+            parent.appendChild(elem);
+        }
+    }
+
+}
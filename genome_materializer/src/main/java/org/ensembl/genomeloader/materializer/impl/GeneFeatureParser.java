@@ -113,6 +113,7 @@ public class GeneFeatureParser extends CdsFeatureParser {
             if (noms != null && !noms.isEmpty()) {
                 masterGene.setName(noms.get(0).getName());
             }
+            component.getIndexedGenes().update(masterGene);
         } else {
             getLog().debug("No protein coding gene found for " + locusTags);
             // try to find an RNA gene instead
@@ -136,6 +137,9 @@ public class GeneFeatureParser extends CdsFeatureParser {
                     component.getRnagenes().remove(rnaGene);
                 }
             }
+            if (masterRnaGene != null) {
+                component.getIndexedRnagenes().update(masterRnaGene);
+            }
             if (masterRnaGene == null) {
 
                 boolean isFrameshift = hasNote(qualifiers, "contains frameshift")
@@ -165,9 +169,12 @@ public class GeneFeatureParser extends CdsFeatureParser {
                     protein.addDatabaseReference(getFeatureIdentifierRef(component, element, "PROTEIN"));
                     transcript.addDatabaseReference(getFeatureIdentifierRef(component, element, "TRANSCRIPT"));
 
-                    gene.setLocation(getLocation(element, qualifiers));
-                    protein.setLocation(getLocation(element, qualifiers));
-                    transcript.setLocation(getLocation(element, qualifiers));
+                    // reuse the location parsed above rather than parsing it again
+                    EntityLocation pseudoLoc = copyLocation(loc);
+                    addExceptions(pseudoLoc, qualifiers);
+                    gene.setLocation(pseudoLoc);
+                    protein.setLocation(copyLocation(pseudoLoc));
+                    transcript.setLocation(copyLocation(pseudoLoc));
 
                     // attach xrefs
                     for (DatabaseReference xref : parseXrefs(element)) {
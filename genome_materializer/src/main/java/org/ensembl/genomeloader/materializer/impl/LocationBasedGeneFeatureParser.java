@@ -123,6 +123,7 @@ public class LocationBasedGeneFeatureParser extends CdsFeatureParser {
 			if (masterGene != null) {
 				masterGene.getDatabaseReferences().addAll(xrefs);
 				masterGene.addAnnotatedGene(geneNames);
+				component.getIndexedGenes().update(masterGene);
 			} else {
 				System.out.println("No gene found for "+loc);
 			}
@@ -118,7 +118,8 @@ public class MrnaFeatureParser extends XmlEnaFeatureParser {
 				GeneNameType.ORDEREDLOCUSNAMES);
 		// find candidate transcripts
 		List<Transcript> candidates = CollectionUtils.createArrayList();
-		for (Gene g : findGenesByName(component.getGenes(), locusTags)) {
+		List<Gene> genes = findGenesByName(component.getGenes(), locusTags);
+		for (Gene g : genes) {
 			for (Protein p : g.getProteins()) {
 				for (Transcript t : p.getTranscripts()) {
 					if (LocationUtils.contains(loc, t.getLocation())) {
@@ -153,6 +154,9 @@ public class MrnaFeatureParser extends XmlEnaFeatureParser {
 							+ t.getLocation() + " with mRNA location " + loc);
 			t.setLocation(loc);
 			t.addDatabaseReference(transcriptFeatureIdRef);
+			for (Gene g : genes) {
+				component.getIndexedGenes().update(g);
+			}
 		}
 
 	}
@@ -55,7 +55,8 @@ public class PeptideFeatureParser extends XmlEnaFeatureParser {
 		ft.setType(ProteinFeatureType.forEmblString(element
 				.getAttributeValue("name")));
 		boolean found = false;
-		for (Gene gene : component.getGenes()) {
+		for (Gene gene : component.getIndexedGenes().findOverlapping(
+				ft.getLocation().getMin(), ft.getLocation().getMax(), null)) {
 			for (Protein protein : gene.getProteins()) {
 				if (protein.getLocation().contains(ft.getLocation())
 						&& LocationUtils.overlapsInFrame(ft.getLocation(),
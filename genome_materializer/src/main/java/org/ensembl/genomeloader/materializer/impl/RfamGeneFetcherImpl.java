@@ -2,6 +2,8 @@ package org.ensembl.genomeloader.materializer.impl;
 
 import java.sql.SQLException;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -15,16 +17,21 @@ import org.ensembl.genomeloader.model.impl.RnaTranscriptImpl;
 import org.ensembl.genomeloader.model.impl.RnageneImpl;
 import org.ensembl.genomeloader.services.sql.ROResultSet;
 import org.ensembl.genomeloader.util.biojava.LocationUtils;
+import org.ensembl.genomeloader.util.collections.CollectionUtils;
 import org.ensembl.genomeloader.util.sql.RowMapper;
 import org.ensembl.genomeloader.util.sql.SqlServiceTemplate;
 
 public class RfamGeneFetcherImpl implements RfamGeneFetcher {
+    public static final int DEFAULT_BATCH_SIZE = 1000;
     private static final String NC_RNA = "ncRNA";
     private final static String ANALYSIS = "RFAM_GENES";
-    private final static String RFAM_SQL = "select rfam_acc,rfam_id,description,family.type,"
-            + "seq_start,seq_end,case when seq_start>seq_end then -1 else 1 end "
-            + "from full_region join family using (rfam_acc) " + "where rfamseq_acc=? "
-            + "and family.type like 'Gene%' " + "and is_significant=1";
+    private final static String RFAM_COLUMNS = "select rfam_acc,rfam_id,description,family.type,"
+            + "seq_start,seq_end,case when seq_start>seq_end then -1 else 1 end";
+    private final static String RFAM_WHERE = "and family.type like 'Gene%' " + "and is_significant=1";
+    private final static String RFAM_SQL = RFAM_COLUMNS + " from full_region join family using (rfam_acc) "
+            + "where rfamseq_acc=? " + RFAM_WHERE;
+    private final static String RFAM_BATCH_SQL = RFAM_COLUMNS
+            + ",rfamseq_acc from full_region join family using (rfam_acc) " + "where rfamseq_acc in (";
 
     private Log log;
 
@@ -38,39 +45,54 @@ public class RfamGeneFetcherImpl implements RfamGeneFetcher {
     private final RowMapper<Rnagene> mapper = new RowMapper<Rnagene>() {
 
         public Rnagene mapRow(ROResultSet resultSet, int position) throws SQLException {
-            final RnageneImpl gene = new RnageneImpl();
-            gene.setAnalysis(ANALYSIS);
-            // type contains a biotype-like string which can be parsed out
-            final String[] types = resultSet.getString(4).split("; ?");
-            if (types.length > 1) {
-                gene.setBiotype(types[1]);
-            }
-            if (StringUtils.isEmpty(gene.getBiotype())) {
-                gene.setBiotype(NC_RNA);
-            }
-            gene.setName(resultSet.getString(2));
-            gene.setDescription(resultSet.getString(3));
-            gene.setLocation(new DelegatingEntityLocation(LocationUtils.buildSimpleLocation(resultSet.getInt(5),
-                    resultSet.getInt(6), resultSet.getInt(7) == 1)));
-            gene.addDatabaseReference(
-                    new DatabaseReferenceImpl(rfamType, resultSet.getString(1), resultSet.getString(2)));
-            final RnaTranscriptImpl t = new RnaTranscriptImpl();
-            t.setName(gene.getName());
-            t.setDescription(gene.getDescription());
-            t.setLocation(gene.getLocation());
-            t.setBiotype(gene.getBiotype());
-            t.setAnalysis(gene.getAnalysis());
-            gene.addTranscript(t);
-            return gene;
+            return mapGene(resultSet);
         }
     };
 
+    protected Rnagene mapGene(ROResultSet resultSet) throws SQLException {
+        final RnageneImpl gene = new RnageneImpl();
+        gene.setAnalysis(ANALYSIS);
+        // type contains a biotype-like string which can be parsed out
+        final String[] types = resultSet.getString(4).split("; ?");
+        if (types.length > 1) {
+            gene.setBiotype(types[1]);
+        }
+        if (StringUtils.isEmpty(gene.getBiotype())) {
+            gene.setBiotype(NC_RNA);
+        }
+        gene.setName(resultSet.getString(2));
+        gene.setDescription(resultSet.getString(3));
+        gene.setLocation(new DelegatingEntityLocation(LocationUtils.buildSimpleLocation(resultSet.getInt(5),
+                resultSet.getInt(6), resultSet.getInt(7) == 1)));
+        gene.addDatabaseReference(
+                new DatabaseReferenceImpl(rfamType, resultSet.getString(1), resultSet.getString(2)));
+        final RnaTranscriptImpl t = new RnaTranscriptImpl();
+        t.setName(gene.getName());
+        t.setDescription(gene.getDescription());
+        t.setLocation(gene.getLocation());
+        t.setBiotype(gene.getBiotype());
+        t.setAnalysis(gene.getAnalysis());
+        gene.addTranscript(t);
+        return gene;
+    }
+
     private final SqlServiceTemplate rfamSrv;
     private final DatabaseReferenceType rfamType;
+    private final int batchSize;
+    private final List<String> placeholders;
 
     public RfamGeneFetcherImpl(SqlServiceTemplate rfamSrv, DatabaseReferenceType rfamType) {
+        this(rfamSrv, rfamType, DEFAULT_BATCH_SIZE);
+    }
+
+    public RfamGeneFetcherImpl(SqlServiceTemplate rfamSrv, DatabaseReferenceType rfamType, int batchSize) {
         this.rfamSrv = rfamSrv;
         this.rfamType = rfamType;
+        this.batchSize = batchSize;
+        placeholders = CollectionUtils.createArrayList(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            placeholders.add("?");
+        }
         if (this.rfamType == null) {
             throw new MaterializationUncheckedException("Null type passed for RFAM");
         }
@@ -81,4 +103,32 @@ public class RfamGeneFetcherImpl implements RfamGeneFetcher {
         return rfamSrv.queryForList(RFAM_SQL, mapper, accession);
     }
 
+    public Map<String, Collection<Rnagene>> fetchGenes(Collection<String> accessions) {
+        final Map<String, Collection<Rnagene>> genes = CollectionUtils.createHashMap();
+        final List<String> accs = CollectionUtils.createArrayList(accessions.size());
+        accs.addAll(accessions);
+        final int size = accs.size();
+        for (int start = 0; start < size; start += batchSize) {
+            final int end = Math.min(start + batchSize, size);
+            final List<String> accSub = accs.subList(start, end);
+            getLog().debug("Retrieving RFAM genes for batch of " + accSub.size() + " (" + end + "/" + size + ")");
+            final String sql = RFAM_BATCH_SQL + StringUtils.join(placeholders.subList(0, accSub.size()).iterator(), ',')
+                    + ") " + RFAM_WHERE;
+            rfamSrv.queryForList(sql, new RowMapper<Rnagene>() {
+
+                public Rnagene mapRow(ROResultSet resultSet, int position) throws SQLException {
+                    final String acc = resultSet.getString(8);
+                    Collection<Rnagene> accGenes = genes.get(acc);
+                    if (accGenes == null) {
+                        accGenes = CollectionUtils.createArrayList();
+                        genes.put(acc, accGenes);
+                    }
+                    accGenes.add(mapGene(resultSet));
+                    return null;
+                }
+            }, accSub.toArray());
+        }
+        return genes;
+    }
+
 }
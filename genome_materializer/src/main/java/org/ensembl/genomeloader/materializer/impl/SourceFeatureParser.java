@@ -48,6 +48,13 @@ public class SourceFeatureParser {
     public void parseFeature(GenomicComponentMetaData md, Element element) {
 
         GenomeMetaData gmd = md.getGenomeMetaData();
+        // components from the same genome may be parsed concurrently
+        synchronized (gmd) {
+            parseFeature(md, gmd, element);
+        }
+    }
+
+    protected void parseFeature(GenomicComponentMetaData md, GenomeMetaData gmd, Element element) {
 
         final Element taxonElement = getFirstChild(element, "taxon");
         if (taxonElement == null) {
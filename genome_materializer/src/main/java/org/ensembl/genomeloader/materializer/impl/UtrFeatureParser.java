@@ -81,7 +81,9 @@ public class UtrFeatureParser extends XmlEnaFeatureParser {
 		boolean isFound = false;
 		String nom = element.getAttribute("name").getValue();
 		boolean isFive = FIVE_UTR.equals(nom);
-		GENE: for (Gene gene : component.getGenes()) {
+		// transcripts abutting the UTR overlap the positions either side of it
+		GENE: for (Gene gene : component.getIndexedGenes().findOverlapping(
+				uLoc.getMin() - 1, uLoc.getMax() + 1, uLoc.getStrand())) {
 			for (Protein protein : gene.getProteins()) {
 				for (Transcript transcript : protein.getTranscripts()) {
 					EntityLocation tLoc = transcript.getLocation();
@@ -111,6 +113,7 @@ public class UtrFeatureParser extends XmlEnaFeatureParser {
 							eLoc.getExceptions().addAll(tLoc.getExceptions());
 							transcript.setLocation(eLoc);
 							transcript.getDatabaseReferences().addAll(xrefs);
+							component.getIndexedGenes().update(gene);
 							break GENE;
 						}
 					}
@@ -25,6 +25,7 @@ package org.ensembl.genomeloader.materializer.impl;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -45,6 +46,7 @@ import org.ensembl.genomeloader.model.impl.AnnotatedGeneImpl;
 import org.ensembl.genomeloader.model.impl.DatabaseReferenceImpl;
 import org.ensembl.genomeloader.model.impl.DelegatingEntityLocation;
 import org.ensembl.genomeloader.model.impl.GeneNameImpl;
+import org.ensembl.genomeloader.model.impl.IndexedGeneSet;
 import org.ensembl.genomeloader.model.impl.GenomicComponentImpl;
 import org.ensembl.genomeloader.util.biojava.LocationUtils;
 import org.ensembl.genomeloader.util.collections.CollectionUtils;
@@ -60,6 +62,7 @@ import nu.xom.Element;
 public abstract class XmlEnaFeatureParser {
 
     protected static final String EMBL_AC_RE = "[A-Z]+[0-9]+\\.[0-9]+:";
+    private static final Pattern EMBL_AC_PATTERN = Pattern.compile(EMBL_AC_RE);
     protected static final String ID_TEMPLATE = "$ac$.$version$:$key$:$loc$";
 
     protected XmlEnaFeatureParser def;
@@ -130,7 +133,7 @@ public abstract class XmlEnaFeatureParser {
      */
     protected String cleanupLoc(String locStr) {
         // return locStr;
-        return locStr.replaceAll(EMBL_AC_RE, StringUtils.EMPTY);
+        return EMBL_AC_PATTERN.matcher(locStr).replaceAll(StringUtils.EMPTY);
     }
 
     protected static Map<String, List<String>> getQualifiers(Element element) {
@@ -216,8 +219,13 @@ public abstract class XmlEnaFeatureParser {
      * @param loc
      * @return
      */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
     protected static <T extends Locatable> List<T> findEnclosedFeatures(Collection<T> features, EntityLocation loc) {
         List<T> enclosed = CollectionUtils.createArrayList();
+        if (features instanceof IndexedGeneSet) {
+            // only check genes near the location
+            features = ((IndexedGeneSet) features).findOverlapping(loc.getMin(), loc.getMax(), null);
+        }
         for (T feature : features) {
             if (LocationUtils.encloses(loc, feature.getLocation())) {
                 enclosed.add(feature);
@@ -236,8 +244,12 @@ public abstract class XmlEnaFeatureParser {
      *            gene name set to check
      * @return
      */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
     protected static <T extends AnnotatedGene> List<T> findGenesByName(Collection<T> features,
             Collection<GeneName> genes) {
+        if (features instanceof IndexedGeneSet) {
+            return ((IndexedGeneSet) features).findByName(genes);
+        }
         List<T> enclosed = CollectionUtils.createArrayList();
         for (T feature : features) {
             for (GeneName name : genes) {
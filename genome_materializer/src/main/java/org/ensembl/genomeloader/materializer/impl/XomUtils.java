@@ -22,6 +22,7 @@
  */
 package org.ensembl.genomeloader.materializer.impl;
 
+import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -31,6 +32,10 @@ import org.ensembl.genomeloader.util.collections.CollectionUtils;
 import org.ensembl.genomeloader.util.collections.FactoryMap;
 import org.ensembl.genomeloader.util.collections.ObjectFactory;
 
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import nu.xom.Attribute;
 import nu.xom.Element;
 import nu.xom.Elements;
 import nu.xom.Node;
@@ -205,4 +210,37 @@ public class XomUtils {
 		return map;
 	}
 
+	/**
+	 * Build an element from the subtree at the current position of a pull
+	 * parser, which must be positioned on a start tag. On return, the parser
+	 * is positioned on the matching end tag.
+	 * 
+	 * @param xpp
+	 *            pull parser positioned on a start tag
+	 * @return element containing the subtree
+	 * @throws XmlPullParserException
+	 * @throws IOException
+	 */
+	public static Element readElement(XmlPullParser xpp)
+			throws XmlPullParserException, IOException {
+		Element elem = new Element(xpp.getName());
+		for (int i = 0; i < xpp.getAttributeCount(); i++) {
+			elem.addAttribute(new Attribute(xpp.getAttributeName(i), xpp
+					.getAttributeValue(i)));
+		}
+		while (true) {
+			int event = xpp.next();
+			if (event == XmlPullParser.START_TAG) {
+				elem.appendChild(readElement(xpp));
+			} else if (event == XmlPullParser.TEXT) {
+				elem.appendChild(xpp.getText());
+			} else if (event == XmlPullParser.END_TAG) {
+				return elem;
+			} else if (event == XmlPullParser.END_DOCUMENT) {
+				throw new XomUtilsException("Unexpected end of document in element "
+						+ elem.getLocalName());
+			}
+		}
+	}
+
 }
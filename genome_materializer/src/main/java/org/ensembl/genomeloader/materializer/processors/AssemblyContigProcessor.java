@@ -16,9 +16,19 @@
 
 package org.ensembl.genomeloader.materializer.processors;
 
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -38,12 +48,14 @@ import org.ensembl.genomeloader.model.impl.AssemblySequenceImpl;
 import org.ensembl.genomeloader.model.impl.GenomicComponentImpl;
 import org.ensembl.genomeloader.util.biojava.LocationUtils;
 import org.ensembl.genomeloader.util.collections.CollectionUtils;
+import org.ensembl.genomeloader.util.concurrency.ConcurrencyUtils;
 import org.ensembl.genomeloader.xrefregistry.DatabaseReferenceTypeRegistry;
 
 /**
  * Use assembly information for CON sequences to replicate assembly in an
  * Ensembl-compatible way. This involves retrieving contigs referenced by CONs
- * as additional {@link GenomicComponent}s.
+ * as additional {@link GenomicComponent}s. Contigs are retrieved one level of
+ * the assembly at a time, in parallel.
  * 
  * @author dstaines
  *
@@ -74,10 +86,10 @@ public class AssemblyContigProcessor implements GenomeProcessor {
         // 1. build a hash of the components
         final Map<String, GenomicComponent> newComponents = CollectionUtils.createHashMap();
         log.info("Processing contigs for genome " + genome.getName());
-        for (final GenomicComponent topLevel : genome.getGenomicComponents()) {
-            if (config.isLoadAssembly() && assemblyValid) {
-                processComponent(topLevel, newComponents);
-            } else {
+        if (config.isLoadAssembly() && assemblyValid) {
+            processComponents(genome.getGenomicComponents(), newComponents);
+        } else {
+            for (final GenomicComponent topLevel : genome.getGenomicComponents()) {
                 processTopLevelComponent(topLevel, newComponents);
             }
         }
@@ -119,30 +131,136 @@ public class AssemblyContigProcessor implements GenomeProcessor {
         return valid;
     }
 
-    private void processComponent(GenomicComponent component, Map<String, GenomicComponent> newComponents) {
-        if (component.getAssemblyElements().size() > 0) {
-            log.info("Processing contigs for genomic component " + component.getAccession());
-            for (final AssemblyElement elem : component.getAssemblyElements()) {
-                if (AssemblySequence.class.isAssignableFrom(elem.getClass())) {
-                    final AssemblySequence seq = (AssemblySequence) elem;
-                    log.info("Processing contig " + seq.getAccession() + " for genomic component "
-                            + component.getAccession());
-                    if (!newComponents.containsKey(seq.getAccession())) {
-                        try {
-                            // get the component
-                            GenomicComponentMetaData md = new GenomicComponentMetaData(seq.getAccession(),
-                                    component.getMetaData().getGenomeMetaData());
-                            final GenomicComponent assComp = materializer.getComponent(md);
-                            newComponents.put(seq.getAccession(), assComp);
-                            assComp.setTopLevel(false);
-                            // process it...
-                            processComponent(assComp, newComponents);
-                        } catch (final MaterializationUncheckedException e) {
-                            throw new EnaParsingException("Could not parse ENA record " + seq.getAccession(), e);
+    /**
+     * Expand the assembly of the supplied top level components breadth-first:
+     * each level of components is finished, then all contigs they reference
+     * which have not been seen yet are retrieved and parsed together, using up
+     * to {@link EnaGenomeConfig#getComponentThreads()} threads, to form the
+     * next level
+     * 
+     * @param topLevels
+     * @param newComponents
+     *            map of accession to components added so far
+     */
+    private void processComponents(List<GenomicComponent> topLevels, Map<String, GenomicComponent> newComponents) {
+        final int threads = Math.max(1, config.getComponentThreads());
+        final ExecutorService executor = threads > 1
+                ? Executors.newFixedThreadPool(threads, ConcurrencyUtils.getDaemonThreadFactory()) : null;
+        try {
+            List<GenomicComponent> level = topLevels;
+            int depth = 0;
+            while (!level.isEmpty()) {
+                for (final GenomicComponent component : level) {
+                    processComponent(component, newComponents);
+                }
+                // collect contigs not seen before, once each
+                final Map<String, GenomicComponentMetaData> mds = CollectionUtils.createLinkedHashMap();
+                for (final GenomicComponent component : level) {
+                    for (final AssemblyElement elem : component.getAssemblyElements()) {
+                        if (AssemblySequence.class.isAssignableFrom(elem.getClass())) {
+                            final AssemblySequence seq = (AssemblySequence) elem;
+                            if (!newComponents.containsKey(seq.getAccession()) && !mds.containsKey(seq.getAccession())) {
+                                mds.put(seq.getAccession(), getContigMetaData(component, seq));
+                            }
                         }
                     }
                 }
+                if (!mds.isEmpty()) {
+                    log.info("Retrieving " + mds.size() + " contigs for " + level.size()
+                            + " genomic components at assembly level " + depth + " using " + threads + " threads");
+                }
+                level = getComponents(executor, threads, mds.values());
+                for (final GenomicComponent assComp : level) {
+                    newComponents.put(assComp.getAccession(), assComp);
+                    assComp.setTopLevel(false);
+                }
+                depth++;
             }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Retrieve and parse components, keeping no more than twice the number of
+     * threads in flight at once
+     * 
+     * @param executor
+     *            executor to use, or null to parse components in turn
+     * @param threads
+     * @param mds
+     *            components to retrieve
+     * @return components in the same order as mds
+     */
+    private List<GenomicComponent> getComponents(ExecutorService executor, int threads,
+            Collection<GenomicComponentMetaData> mds) {
+        final List<GenomicComponent> components = CollectionUtils.createArrayList(mds.size());
+        materializer.prefetchComponents(mds);
+        if (executor == null) {
+            for (final GenomicComponentMetaData md : mds) {
+                components.add(getComponent(md));
+            }
+            return components;
+        }
+        final int window = threads * 2;
+        final Deque<Future<GenomicComponent>> pending = new ArrayDeque<Future<GenomicComponent>>(window);
+        final Iterator<GenomicComponentMetaData> next = mds.iterator();
+        try {
+            for (final GenomicComponentMetaData md : mds) {
+                while (next.hasNext() && pending.size() < window) {
+                    pending.add(submitComponent(executor, next.next()));
+                }
+                try {
+                    components.add(pending.poll().get());
+                } catch (final ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    } else {
+                        throw new EnaParsingException("Could not parse ENA record " + md.getAccession(), cause);
+                    }
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MaterializationUncheckedException("Interrupted while retrieving contigs", e);
+        } finally {
+            for (final Future<GenomicComponent> future : pending) {
+                future.cancel(true);
+            }
+        }
+        return components;
+    }
+
+    private Future<GenomicComponent> submitComponent(ExecutorService executor, final GenomicComponentMetaData md) {
+        return executor.submit(new Callable<GenomicComponent>() {
+            public GenomicComponent call() {
+                return getComponent(md);
+            }
+        });
+    }
+
+    private GenomicComponent getComponent(GenomicComponentMetaData md) {
+        log.info("Processing contig " + md.getAccession());
+        try {
+            return materializer.getComponent(md);
+        } catch (final MaterializationUncheckedException e) {
+            throw new EnaParsingException("Could not parse ENA record " + md.getAccession(), e);
+        }
+    }
+
+    /**
+     * Finish a component once it has been retrieved: CONs lose their sequence
+     * in favour of their contigs, and components without an assembly become
+     * contigs
+     */
+    private void processComponent(GenomicComponent component, Map<String, GenomicComponent> newComponents) {
+        if (component.getAssemblyElements().size() > 0) {
+            log.info("Processing contigs for genomic component " + component.getAccession());
             // remove sequence as we no longer need it
             component.setSequence(null);
             if (!component.isTopLevel()) {
@@ -163,6 +281,13 @@ public class AssemblyContigProcessor implements GenomeProcessor {
         }
     }
 
+    private GenomicComponentMetaData getContigMetaData(GenomicComponent component, AssemblySequence seq) {
+        final GenomicComponentMetaData md = new GenomicComponentMetaData(seq.getAccession(),
+                component.getMetaData().getGenomeMetaData());
+        md.setVersion(String.valueOf(seq.getVersion()));
+        return md;
+    }
+
     /**
      * Create and attach a new 1:1 child component
      * 
@@ -20,11 +20,19 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -66,6 +74,50 @@ public abstract class CollectionInterproGenomeProcessor implements GenomeProcess
 
     protected final static SqlLib SQLLIB = new SqlLib("/org/ensembl/genomeloader/materializer/sql.xml");
 
+    /**
+     * Values from one row of the InterPro feature query
+     */
+    protected static class FeatureRow {
+
+        private final String proteinKey;
+        private final String ipro;
+        private final String iproShort;
+        private final String iproName;
+        private final String featureType;
+        private final String methodAc;
+        private final String methodName;
+        private final int start;
+        private final int end;
+        private final String goId;
+        private final String goSrc;
+
+        public FeatureRow(String proteinKey, String ipro, String iproShort, String iproName, String featureType,
+                String methodAc, String methodName, int start, int end, String goId, String goSrc) {
+            this.proteinKey = proteinKey;
+            this.ipro = ipro;
+            this.iproShort = iproShort;
+            this.iproName = iproName;
+            this.featureType = featureType;
+            this.methodAc = methodAc;
+            this.methodName = methodName;
+            this.start = start;
+            this.end = end;
+            this.goId = goId;
+            this.goSrc = goSrc;
+        }
+
+        public FeatureRow(ResultSet resultSet) throws SQLException {
+            this(resultSet.getString(1), resultSet.getString(2), resultSet.getString(3), resultSet.getString(4),
+                    resultSet.getString(5), resultSet.getString(6), resultSet.getString(7), resultSet.getInt(8),
+                    resultSet.getInt(9), resultSet.getString(10), resultSet.getString(11));
+        }
+
+    }
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final int DEFAULT_BATCHES_IN_FLIGHT = 2;
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
     private static final String IEA_TYPE = "IEA";
     private Log log;
     private final SqlServiceTemplate ipSrv;
@@ -73,15 +125,43 @@ public abstract class CollectionInterproGenomeProcessor implements GenomeProcess
     private final DatabaseReferenceType[] keyTypes;
     private final DatabaseReferenceType goType;
     private final String featureQuery;
-    private final int BATCH_SIZE = 500;
+    private final int batchSize;
+    private final int batchesInFlight;
+    private final int fetchSize;
 
     public CollectionInterproGenomeProcessor(SqlServiceTemplate ipSrv, DatabaseReferenceType ipType,
             DatabaseReferenceType goType, String featureQuery, DatabaseReferenceType... keyTypes) {
+        this(ipSrv, ipType, goType, featureQuery, DEFAULT_BATCH_SIZE, DEFAULT_BATCHES_IN_FLIGHT, DEFAULT_FETCH_SIZE,
+                keyTypes);
+    }
+
+    /**
+     * @param ipSrv
+     * @param ipType
+     * @param goType
+     * @param featureQuery
+     *            query taking an array of keys
+     * @param batchSize
+     *            number of keys to query at once
+     * @param batchesInFlight
+     *            number of batches to query at once, each using its own
+     *            connection, whilst results of the current batch are added
+     *            to the genome
+     * @param fetchSize
+     *            number of rows to retrieve per round trip
+     * @param keyTypes
+     */
+    public CollectionInterproGenomeProcessor(SqlServiceTemplate ipSrv, DatabaseReferenceType ipType,
+            DatabaseReferenceType goType, String featureQuery, int batchSize, int batchesInFlight, int fetchSize,
+            DatabaseReferenceType... keyTypes) {
         this.ipSrv = ipSrv;
         this.ipType = ipType;
         this.keyTypes = keyTypes;
         this.goType = goType;
         this.featureQuery = featureQuery;
+        this.batchSize = batchSize;
+        this.batchesInFlight = Math.max(1, batchesInFlight);
+        this.fetchSize = fetchSize;
     }
 
     protected Log getLog() {
@@ -93,72 +173,7 @@ public abstract class CollectionInterproGenomeProcessor implements GenomeProcess
 
     public void processGenome(Genome genome) {
 
-        Connection con = null;
-        PreparedStatement ps = null;
-        ResultSet rs = null;
-        try {
-
-            getLog().info("Retrieving InterPro features for " + genome.getId());
-            // 1. get the connection
-            con = ((LocalSqlService) ipSrv.getSqlService()).openConnection(ipSrv.getUri());
-            getLog().debug("Preparing statement");
-            ps = con.prepareStatement(featureQuery);
-            // 2. build the array
-            final ArrayDescriptor arrayDescriptor = ArrayDescriptor.createDescriptor("INTERPRO.STRING_LIST_T",
-                    con.getMetaData().getConnection());
-            final Map<String, List<Protein>> proteinsByKey = hashProteins(genome);
-            final Set<String> features = CollectionUtils.createHashSet();
-            final Set<String> goLessFeatures = CollectionUtils.createHashSet();
-            // create lookup of the proteins which don't already have GO dbxrefs
-            for (final List<Protein> proteins : proteinsByKey.values()) {
-                for (final Protein protein : proteins) {
-                    if (!ModelUtils.hasReferenceForType(protein, goType)) {
-                        goLessFeatures.add(protein.getIdentifyingId());
-                    }
-                }
-            }
-            final List<String> keys = new ArrayList<String>(proteinsByKey.keySet());
-            int start = 0;
-            final int size = keys.size();
-            int nFeatures = 0;
-            while (start < size) {
-                int end = start + BATCH_SIZE;
-                if (end >= size) {
-                    end = size;
-                }
-                final List<String> keySub = keys.subList(start, end);
-                getLog().info("Adding features for batch of " + keySub.size() + " (" + end + "/" + size + ")");
-                getLog().info("Building array of " + keySub.size() + " keys");
-                final ARRAY arr = new ARRAY(arrayDescriptor, con.getMetaData().getConnection(),
-                        keySub.toArray(new String[keySub.size()]));
-                ps.setArray(1, arr);
-                getLog().info("Running query");
-                rs = ps.executeQuery();
-                getLog().info("Getting results");
-                int n = 0;
-                while (rs.next()) {
-                    n++;
-                    addFeatures(proteinsByKey, features, goLessFeatures, rs);
-                }
-                getLog().info("Got " + n + " results");
-                nFeatures += n;
-                rs.close();
-                start = end;
-            }
-            getLog().info("Finished retrieving " + nFeatures + " InterPro features for " + size + " proteins "
-                    + genome.getId());
-
-        } catch (final SqlServiceException e) {
-            throw new MaterializationUncheckedException("Could not map InterPro domains to genome " + genome.getId(),
-                    e);
-        } catch (final SQLException e) {
-            throw new MaterializationUncheckedException("Could not map InterPro domains to genome " + genome.getId(),
-                    e);
-        } finally {
-            DbUtils.closeDbObject(rs);
-            DbUtils.closeDbObject(ps);
-            DbUtils.closeDbObject(con);
-        }
+        retrieveFeatures(genome);
 
         getLog().info("Retrieving InterPro db versions");
         genome.getMetaData().getDbVersions().putAll(
@@ -183,6 +198,113 @@ public abstract class CollectionInterproGenomeProcessor implements GenomeProcess
 
     }
 
+    /**
+     * Retrieve InterPro features for all proteins in the genome. Batches of
+     * keys are queried on separate threads so that the next batches are
+     * being retrieved whilst the results of the current batch are added to
+     * the genome. Results are always added in batch order.
+     *
+     * @param genome
+     */
+    protected void retrieveFeatures(Genome genome) {
+        getLog().info("Retrieving InterPro features for " + genome.getId());
+        final Map<String, List<Protein>> proteinsByKey = hashProteins(genome);
+        final Set<String> features = CollectionUtils.createHashSet();
+        final Set<String> goLessFeatures = CollectionUtils.createHashSet();
+        // create lookup of the proteins which don't already have GO dbxrefs
+        for (final List<Protein> proteins : proteinsByKey.values()) {
+            for (final Protein protein : proteins) {
+                if (!ModelUtils.hasReferenceForType(protein, goType)) {
+                    goLessFeatures.add(protein.getIdentifyingId());
+                }
+            }
+        }
+        final List<String> keys = new ArrayList<String>(proteinsByKey.keySet());
+        final int size = keys.size();
+        final List<List<String>> batches = CollectionUtils.createArrayList();
+        for (int start = 0; start < size; start += batchSize) {
+            batches.add(keys.subList(start, Math.min(start + batchSize, size)));
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(batchesInFlight);
+        try {
+            final Deque<Future<List<FeatureRow>>> pending = new ArrayDeque<Future<List<FeatureRow>>>();
+            int next = 0;
+            while (next < batches.size() && pending.size() < batchesInFlight) {
+                pending.add(submitBatch(executor, batches.get(next++)));
+            }
+            int done = 0;
+            int nFeatures = 0;
+            for (final List<String> batch : batches) {
+                final List<FeatureRow> rows = pending.remove().get();
+                // start the next batch before adding this one to the genome
+                if (next < batches.size()) {
+                    pending.add(submitBatch(executor, batches.get(next++)));
+                }
+                done += batch.size();
+                getLog().info("Adding " + rows.size() + " features for batch of " + batch.size() + " (" + done + "/"
+                        + size + ")");
+                for (final FeatureRow row : rows) {
+                    addFeatures(proteinsByKey, features, goLessFeatures, row);
+                }
+                nFeatures += rows.size();
+            }
+            getLog().info("Finished retrieving " + nFeatures + " InterPro features for " + size + " proteins "
+                    + genome.getId());
+        } catch (final ExecutionException e) {
+            throw new MaterializationUncheckedException("Could not map InterPro domains to genome " + genome.getId(),
+                    e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MaterializationUncheckedException("Could not map InterPro domains to genome " + genome.getId(),
+                    e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Future<List<FeatureRow>> submitBatch(ExecutorService executor, final List<String> keys) {
+        return executor.submit(new Callable<List<FeatureRow>>() {
+            public List<FeatureRow> call() throws Exception {
+                return fetchBatch(keys);
+            }
+        });
+    }
+
+    /**
+     * Run the feature query for a batch of keys on its own connection
+     *
+     * @param keys
+     * @return rows retrieved
+     * @throws SqlServiceException
+     * @throws SQLException
+     */
+    protected List<FeatureRow> fetchBatch(List<String> keys) throws SqlServiceException, SQLException {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = ((LocalSqlService) ipSrv.getSqlService()).openConnection(ipSrv.getUri());
+            ps = con.prepareStatement(featureQuery);
+            ps.setFetchSize(fetchSize);
+            final ArrayDescriptor arrayDescriptor = ArrayDescriptor.createDescriptor("INTERPRO.STRING_LIST_T",
+                    con.getMetaData().getConnection());
+            final ARRAY arr = new ARRAY(arrayDescriptor, con.getMetaData().getConnection(),
+                    keys.toArray(new String[keys.size()]));
+            ps.setArray(1, arr);
+            getLog().debug("Running query for batch of " + keys.size() + " keys");
+            rs = ps.executeQuery();
+            final List<FeatureRow> rows = CollectionUtils.createArrayList();
+            while (rs.next()) {
+                rows.add(new FeatureRow(rs));
+            }
+            return rows;
+        } finally {
+            DbUtils.closeDbObject(rs);
+            DbUtils.closeDbObject(ps);
+            DbUtils.closeDbObject(con);
+        }
+    }
+
     protected Map<String, List<Protein>> hashProteins(Genome genome) {
         final Map<String, List<Protein>> proteinsByKey = CollectionUtils.createHashMap();
         for (final GenomicComponent genomicComponent : genome.getGenomicComponents()) {
@@ -190,9 +312,8 @@ public abstract class CollectionInterproGenomeProcessor implements GenomeProcess
             for (final Gene gene : genomicComponent.getGenes()) {
                 for (final Protein protein : gene.getProteins()) {
                     // remove preexisting interpro xrefs as they may be stale
-                    for (final DatabaseReference ref : ModelUtils.getReferencesForType(protein, ipType)) {
-                        protein.getDatabaseReferences().remove(ref);
-                    }
+                    protein.getDatabaseReferences().removeAll(
+                            new ArrayList<DatabaseReference>(ModelUtils.getReferencesForType(protein, ipType)));
                     for (final DatabaseReferenceType type : keyTypes) {
                         final String key = getIdentifier(protein, type);
                         List<Protein> ps = proteinsByKey.get(key);
@@ -214,34 +335,25 @@ public abstract class CollectionInterproGenomeProcessor implements GenomeProcess
     }
 
     private void addFeatures(final Map<String, List<Protein>> proteinsByKey, final Set<String> features,
-            final Set<String> goLessFeatures, ResultSet resultSet) throws SQLException {
-
-        final String proteinKey = resultSet.getString(1);
-        final List<Protein> proteins = proteinsByKey.get(proteinKey);
-        final String featureType = resultSet.getString(5);
-        final String methodAc = resultSet.getString(6);
-        final String methodName = resultSet.getString(7);
-        final int start = resultSet.getInt(8);
-        final int end = resultSet.getInt(9);
+            final Set<String> goLessFeatures, FeatureRow row) {
 
-        final String key = proteinKey + ":" + featureType + ":" + methodAc + ":" + start + "-" + end;
+        final List<Protein> proteins = proteinsByKey.get(row.proteinKey);
+        final String key = row.proteinKey + ":" + row.featureType + ":" + row.methodAc + ":" + row.start + "-"
+                + row.end;
         if (!features.contains(key)) {
             // create interpro
-            final String ipro = resultSet.getString(2);
-            final String iproShort = resultSet.getString(3);
-            final String iproName = resultSet.getString(4);
-            final DatabaseReferenceImpl iproX = new DatabaseReferenceImpl(ipType, ipro);
-            iproX.setDescription(iproShort + "||" + iproName);
+            final DatabaseReferenceImpl iproX = new DatabaseReferenceImpl(ipType, row.ipro);
+            iproX.setDescription(row.iproShort + "||" + row.iproName);
             for (final Protein protein : proteins) {
                 protein.addDatabaseReference(iproX);
                 // create protein feature
-                final ProteinFeatureType type = ProteinFeatureType.forString(featureType);
+                final ProteinFeatureType type = ProteinFeatureType.forString(row.featureType);
                 if (type == null) {
-                    throw new SQLException(
-                            "ProteinFeatureType " + featureType + " not found for " + resultSet.getString(2));
+                    throw new MaterializationUncheckedException(
+                            "ProteinFeatureType " + row.featureType + " not found for " + row.ipro);
                 }
-                final ProteinFeature pf = new ProteinFeatureImpl(type, methodAc, methodName, start, end,
-                        ProteinFeatureSource.INTERPRO);
+                final ProteinFeature pf = new ProteinFeatureImpl(type, row.methodAc, row.methodName, row.start,
+                        row.end, ProteinFeatureSource.INTERPRO);
 
                 protein.addProteinFeature(pf);
             }
@@ -249,14 +361,11 @@ public abstract class CollectionInterproGenomeProcessor implements GenomeProcess
         }
         for (final Protein protein : proteins) {
             if (goLessFeatures.contains(protein.getIdentifyingId())) {
-                final String goId = resultSet.getString(10);
-                final String goSrc = resultSet.getString(11);
-
                 // create GO
-                if (!StringUtils.isEmpty(goId)) {
+                if (!StringUtils.isEmpty(row.goId)) {
                     final DatabaseReference iproX = ModelUtils.getReferenceForType(protein, ipType);
-                    final DatabaseReferenceImpl goX = new DatabaseReferenceImpl(goType, goId, IEA_TYPE);
-                    goX.setQuarternaryIdentifier(goSrc);
+                    final DatabaseReferenceImpl goX = new DatabaseReferenceImpl(goType, row.goId, IEA_TYPE);
+                    goX.setQuarternaryIdentifier(row.goSrc);
                     goX.setSource(iproX);
                     for (Transcript t : protein.getTranscripts()) {
                         t.addDatabaseReference(goX);
@@ -267,4 +376,14 @@ public abstract class CollectionInterproGenomeProcessor implements GenomeProcess
 
     }
 
+    @Override
+    public Set<ModelPart> reads() {
+        return EnumSet.of(ModelPart.COMPONENTS, ModelPart.FEATURES, ModelPart.PROTEIN_XREFS);
+    }
+
+    @Override
+    public Set<ModelPart> writes() {
+        return EnumSet.of(ModelPart.TRANSCRIPT_XREFS, ModelPart.PROTEIN_XREFS, ModelPart.PROTEIN_FEATURES);
+    }
+
 }
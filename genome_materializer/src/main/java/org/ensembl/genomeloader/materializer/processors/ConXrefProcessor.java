@@ -24,9 +24,12 @@
 package org.ensembl.genomeloader.materializer.processors;
 
 import java.sql.SQLException;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.ensembl.genomeloader.materializer.EnaGenomeConfig;
@@ -42,7 +45,7 @@ import org.ensembl.genomeloader.model.impl.DatabaseReferenceImpl;
 import org.ensembl.genomeloader.services.sql.ROResultSet;
 import org.ensembl.genomeloader.services.sql.SqlService;
 import org.ensembl.genomeloader.util.collections.CollectionUtils;
-import org.ensembl.genomeloader.util.sql.MapRowMapper;
+import org.ensembl.genomeloader.util.sql.RowMapper;
 import org.ensembl.genomeloader.util.sql.SqlLib;
 import org.ensembl.genomeloader.util.sql.SqlServiceTemplate;
 import org.ensembl.genomeloader.util.sql.SqlServiceTemplateImpl;
@@ -50,12 +53,17 @@ import org.ensembl.genomeloader.xrefregistry.DatabaseReferenceTypeRegistry;
 
 /**
  * Processor that deals with inadequacies of the ENA CON expansion code where CDS
- * feature xrefs are not included in the expanded entry
+ * feature xrefs are not included in the expanded entry. Xrefs for all CON
+ * components in the genome are retrieved in batches of accessions and added
+ * to the matching proteins once all batches have been read, with identical
+ * references shared between proteins.
  * 
  * @author dstaines
  * 
  */
-public class ConXrefProcessor implements GenomeProcessor {
+public class ConXrefProcessor implements FetchingGenomeProcessor<List<Runnable>> {
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
 
     private Log log;
 
@@ -66,116 +74,177 @@ public class ConXrefProcessor implements GenomeProcessor {
         return log;
     }
 
+    /**
+     * Protein with the gene it belongs to, for attaching gene-level xrefs
+     */
+    private static class ProteinEntry {
+        private final Gene gene;
+        private final Protein protein;
+        private boolean found = false;
+
+        ProteinEntry(Gene gene, Protein protein) {
+            this.gene = gene;
+            this.protein = protein;
+        }
+    }
+
     private final SqlServiceTemplate enaTemplate;
     private final DatabaseReferenceTypeRegistry registry;
-    private final String conXrefQuery;
-    private final String conConXrefQuery;
+    private final SqlLib sqlLib;
+    private final int batchSize;
+    private final List<String> placeholders;
 
     public ConXrefProcessor(EnaGenomeConfig config, SqlService srv, DatabaseReferenceTypeRegistry registry) {
-        this(new SqlServiceTemplateImpl(config.getEnaUri(), srv), registry);
+        this(new SqlServiceTemplateImpl(config.getEnaUri(), srv), registry, config.getConXrefBatchSize());
     }
 
     public ConXrefProcessor(SqlServiceTemplate enaTemplate, DatabaseReferenceTypeRegistry registry) {
+        this(enaTemplate, registry, DEFAULT_BATCH_SIZE);
+    }
+
+    public ConXrefProcessor(SqlServiceTemplate enaTemplate, DatabaseReferenceTypeRegistry registry, int batchSize) {
         this.enaTemplate = enaTemplate;
         this.registry = registry;
-        final SqlLib sqlLib = new SqlLib("/org/ensembl/genomeloader/materializer/sql.xml");
-        conXrefQuery = sqlLib.getQuery("conXrefQuery");
-        conConXrefQuery = sqlLib.getQuery("conConXrefQuery");
+        this.batchSize = batchSize;
+        sqlLib = new SqlLib("/org/ensembl/genomeloader/materializer/sql.xml");
+        placeholders = CollectionUtils.createArrayList(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            placeholders.add("?");
+        }
     }
 
-    private final MapRowMapper<String, Set<DatabaseReference>> mapper = new MapRowMapper<String, Set<DatabaseReference>>() {
-
-        private Map<String, DatabaseReferenceType> knownXrefTypes = CollectionUtils.createHashMap();
-
-        public Set<DatabaseReference> mapRow(ROResultSet resultSet, int position) throws SQLException {
-            final Set<DatabaseReference> refs = CollectionUtils.createHashSet();
-            existingObject(refs, resultSet, position);
-            return refs;
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.ensembl.genomeloader.materializer.processors.FetchingGenomeProcessor#
+     * fetch (org.ensembl.genomeloader.model.Genome)
+     */
+    public List<Runnable> fetch(Genome genome) {
+        getLog().info("Finding CDS db_xref qualifiers for CONs");
+        final List<String> accs = CollectionUtils.createArrayList();
+        final Map<String, List<ProteinEntry>> proteinsByPid = CollectionUtils.createHashMap();
+        for (final GenomicComponent component : genome.getGenomicComponents()) {
+            if (component.getMetaData().isCon()) {
+                accs.add(component.getVersionedAccession());
+                for (final Gene gene : component.getGenes()) {
+                    for (final Protein protein : gene.getProteins()) {
+                        List<ProteinEntry> entries = proteinsByPid.get(protein.getIdentifyingId());
+                        if (entries == null) {
+                            entries = CollectionUtils.createArrayList(1);
+                            proteinsByPid.put(protein.getIdentifyingId(), entries);
+                        }
+                        entries.add(new ProteinEntry(gene, protein));
+                    }
+                }
+            }
+        }
+        if (accs.isEmpty()) {
+            return CollectionUtils.createArrayList();
+        }
+        final XrefRowMapper mapper = new XrefRowMapper(proteinsByPid);
+        final int size = accs.size();
+        for (int start = 0; start < size; start += batchSize) {
+            final int end = Math.min(start + batchSize, size);
+            final List<String> accSub = accs.subList(start, end);
+            getLog().info("Finding CDS db_xref qualifiers for batch of " + accSub.size() + " CON components (" + end
+                    + "/" + size + ")");
+            final String pH = StringUtils.join(placeholders.subList(0, accSub.size()).iterator(), ',');
+            enaTemplate.queryForList(sqlLib.getQuery("conXrefBatchQuery", new String[] { pH }), mapper,
+                    accSub.toArray());
+            enaTemplate.queryForList(sqlLib.getQuery("conConXrefBatchQuery", new String[] { pH }), mapper,
+                    accSub.toArray());
         }
+        for (final Map.Entry<String, List<ProteinEntry>> e : proteinsByPid.entrySet()) {
+            if (!e.getValue().get(0).found) {
+                getLog().warn("Could not find xrefs for protein_id " + e.getKey());
+            }
+        }
+        getLog().info("Found " + mapper.n + " CDS db_xref qualifiers (" + mapper.refs.size()
+                + " distinct) for " + size + " CON components");
+        return mapper.updates;
+    }
 
-        public Map<String, Set<DatabaseReference>> getMap() {
-            return CollectionUtils.createHashMap();
+    public void apply(Genome genome, List<Runnable> updates) {
+        for (final Runnable update : updates) {
+            update.run();
         }
+    }
+
+    /**
+     * Mapper collecting additions of xrefs to proteins as rows are read,
+     * reusing a single {@link DatabaseReference} for each distinct database and
+     * identifier
+     */
+    private class XrefRowMapper implements RowMapper<Object> {
+
+        private final Map<String, List<ProteinEntry>> proteinsByPid;
+        private final Map<String, DatabaseReferenceType> knownXrefTypes = CollectionUtils.createHashMap();
+        private final Map<String, DatabaseReference> refs = CollectionUtils.createHashMap();
+        private final List<Runnable> updates = CollectionUtils.createArrayList();
+        private int n = 0;
 
-        public String getKey(ROResultSet resultSet) throws SQLException {
-            return resultSet.getString(1);
+        XrefRowMapper(Map<String, List<ProteinEntry>> proteinsByPid) {
+            this.proteinsByPid = proteinsByPid;
         }
 
-        public void existingObject(Set<DatabaseReference> refs, ROResultSet resultSet, int position)
-                throws SQLException {
-            final String db = resultSet.getString(2);
-            final String id = resultSet.getString(3);
-            DatabaseReferenceType type = knownXrefTypes.get(db);
-            if (type == null) {
-                type = registry.getTypeForOtherName(db);
-                if (type == null) {
-                    getLog().debug("Unknown database type " + db);
-                    type = new DatabaseReferenceType(-1, db, "", db, db, db, TypeEnum.GENE);
+        public Object mapRow(ROResultSet resultSet, int position) throws SQLException {
+            final List<ProteinEntry> entries = proteinsByPid.get(resultSet.getString(1));
+            if (entries != null) {
+                final DatabaseReference xref = getReference(resultSet.getString(2), resultSet.getString(3));
+                for (final ProteinEntry entry : entries) {
+                    entry.found = true;
+                    n++;
+                    updates.add(() -> addReference(entry, xref));
                 }
-                knownXrefTypes.put(db, type);
             }
-            refs.add(new DatabaseReferenceImpl(type, id));
+            return null;
         }
 
-    };
-
-    /*
-     * (non-Javadoc)
-     * 
-     * @see org.ensembl.genomeloader.materializer.ena.processors.GenomeProcessor#
-     * processGenome (org.ensembl.genomeloader.genomebuilder.model.Genome)
-     */
-    public void processGenome(Genome genome) {
-        getLog().info("Finding CDS db_xref qualifiers for CONs");
-        for (final GenomicComponent component : genome.getGenomicComponents()) {
-
-            if (component.getMetaData().isCon()) {
+        private void addReference(ProteinEntry entry, DatabaseReference xref) {
+            switch (xref.getDatabaseReferenceType().getType()) {
+            case GENE:
+                entry.gene.addDatabaseReference(xref);
+                break;
+            case PROTEIN:
+                entry.protein.addDatabaseReference(xref);
+                break;
+            case TRANSCRIPT:
+                for (final Transcript transcript : entry.protein.getTranscripts()) {
+                    transcript.addDatabaseReference(xref);
+                }
+                break;
+            }
+        }
 
-                getLog().info("Finding CDS db_xref qualifiers for component " + component.getVersionedAccession());
-                final Map<String, Set<DatabaseReference>> refs = CollectionUtils.createHashMap();
-                refs.putAll(enaTemplate.queryForMap(conXrefQuery, mapper, component.getVersionedAccession()));
-                getLog().info("Found " + refs.size() + " CDS db_xref qualifiers from CONs for component "
-                        + component.getVersionedAccession());
-                refs.putAll(enaTemplate.queryForMap(conConXrefQuery, mapper, component.getVersionedAccession()));
-                getLog().info("Found " + refs.size() + " CDS db_xref qualifiers from CONs/CONCONs for component "
-                        + component.getVersionedAccession());
-                if (refs.size() > 0) {
-                    getLog().info("Adding CDS db_xref qualifiers for component " + component.getVersionedAccession());
-                    int n = 0;
-                    // work through proteins looking for protein_id
-                    for (final Gene gene : component.getGenes()) {
-                        for (final Protein protein : gene.getProteins()) {
-                            final String pid = protein.getIdentifyingId();
-                            final Set<DatabaseReference> xrefs = refs.get(pid);
-                            if (xrefs != null) {
-                                // attach xrefs
-                                for (final DatabaseReference xref : xrefs) {
-                                    n++;
-                                    switch (xref.getDatabaseReferenceType().getType()) {
-                                    case GENE:
-                                        gene.addDatabaseReference(xref);
-                                        break;
-                                    case PROTEIN:
-                                        protein.addDatabaseReference(xref);
-                                        break;
-                                    case TRANSCRIPT:
-                                        for (final Transcript transcript : protein.getTranscripts()) {
-                                            transcript.addDatabaseReference(xref);
-                                        }
-                                        break;
-                                    }
-                                }
-                            } else {
-                                getLog().warn("Could not find xrefs for protein_id " + pid);
-                            }
-                        }
+        private DatabaseReference getReference(String db, String id) {
+            final String key = db + ':' + id;
+            DatabaseReference xref = refs.get(key);
+            if (xref == null) {
+                DatabaseReferenceType type = knownXrefTypes.get(db);
+                if (type == null) {
+                    type = registry.getTypeForOtherName(db);
+                    if (type == null) {
+                        getLog().debug("Unknown database type " + db);
+                        type = new DatabaseReferenceType(-1, db, "", db, db, db, TypeEnum.GENE);
                     }
-                    getLog().info("Added " + n + " CDS db_xref qualifiers for component "
-                            + component.getVersionedAccession());
-
+                    knownXrefTypes.put(db, type);
                 }
+                xref = new DatabaseReferenceImpl(type, id);
+                refs.put(key, xref);
             }
+            return xref;
         }
+
+    }
+
+    @Override
+    public Set<ModelPart> reads() {
+        return EnumSet.of(ModelPart.COMPONENTS, ModelPart.FEATURES);
+    }
+
+    @Override
+    public Set<ModelPart> writes() {
+        return EnumSet.of(ModelPart.GENE_XREFS, ModelPart.TRANSCRIPT_XREFS, ModelPart.PROTEIN_XREFS);
     }
 
 }
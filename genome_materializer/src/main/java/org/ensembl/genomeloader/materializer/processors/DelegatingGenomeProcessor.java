@@ -16,13 +16,38 @@
 
 package org.ensembl.genomeloader.materializer.processors;
 
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.ensembl.genomeloader.materializer.MaterializerMetrics;
+import org.ensembl.genomeloader.materializer.impl.MaterializationUncheckedException;
 import org.ensembl.genomeloader.model.Genome;
 import org.ensembl.genomeloader.util.collections.CollectionUtils;
 
+/**
+ * {@link GenomeProcessor} that runs a list of processors over a genome. By
+ * default processors are run one at a time in the order supplied. If more than
+ * one thread is allowed, each processor is instead started as soon as all
+ * earlier processors whose declared {@link GenomeProcessor#reads()} and
+ * {@link GenomeProcessor#writes()} conflict with its own have finished, so
+ * processors working on separate parts of the model can overlap. The fetch
+ * phase of a {@link FetchingGenomeProcessor} only waits for earlier processors
+ * writing the parts it reads, so database queries for different processors
+ * can overlap even when their changes to the genome must be applied in turn.
+ * The time taken by each processor is recorded, along with CPU time, allocation and
+ * model counts if {@link MaterializerMetrics} are supplied.
+ */
 public class DelegatingGenomeProcessor implements GenomeProcessor {
 
 	private Log log;
@@ -35,6 +60,9 @@ public class DelegatingGenomeProcessor implements GenomeProcessor {
 	}
 
 	private final List<GenomeProcessor> processors;
+	private final Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
+	private int threads = 1;
+	private MaterializerMetrics metrics;
 
 	public DelegatingGenomeProcessor(GenomeProcessor... processors) {
 		this(CollectionUtils.createArrayList(processors));
@@ -44,13 +72,181 @@ public class DelegatingGenomeProcessor implements GenomeProcessor {
 		this.processors = processors;
 	}
 
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @param threads
+	 *            maximum number of processors to run at once
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public MaterializerMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @param metrics
+	 *            metrics to add a stage to for each processor run (may be
+	 *            null)
+	 */
+	public void setMetrics(MaterializerMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return time in milliseconds taken by each processor in the last run,
+	 *         in order of completion
+	 */
+	public Map<String, Long> getTimings() {
+		synchronized (timings) {
+			return new LinkedHashMap<String, Long>(timings);
+		}
+	}
+
 	public void processGenome(Genome genome) {
 		getLog().info("Processing genome " + genome.getId());
-		for (GenomeProcessor p : processors) {
-			getLog().info("Running processor " + p.getClass().getSimpleName());
+		timings.clear();
+		if (threads > 1 && processors.size() > 1) {
+			processConcurrently(genome);
+		} else {
+			for (GenomeProcessor p : processors) {
+				runProcessor(p, genome);
+			}
+		}
+		getLog().info("Finished processing genome " + genome.getId() + ": " + getTimings());
+	}
+
+	protected void processConcurrently(final Genome genome) {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<CompletableFuture<?>> futures = CollectionUtils.createArrayList(processors.size());
+			for (int i = 0; i < processors.size(); i++) {
+				final GenomeProcessor p = processors.get(i);
+				// wait for all earlier processors which conflict with this one
+				List<CompletableFuture<?>> deps = CollectionUtils.createArrayList();
+				for (int j = 0; j < i; j++) {
+					if (conflicts(processors.get(j), p)) {
+						deps.add(futures.get(j));
+					}
+				}
+				if (p instanceof FetchingGenomeProcessor) {
+					// fetch only needs earlier processors writing what it reads
+					List<CompletableFuture<?>> fetchDeps = CollectionUtils.createArrayList();
+					for (int j = 0; j < i; j++) {
+						if (!Collections.disjoint(processors.get(j).writes(), p.reads())) {
+							fetchDeps.add(futures.get(j));
+						}
+					}
+					final FetchingGenomeProcessor<?> fp = (FetchingGenomeProcessor<?>) p;
+					final CompletableFuture<Object> fetched = allOf(fetchDeps)
+							.thenApplyAsync(v -> fetch(fp, genome), executor);
+					deps.add(fetched);
+					futures.add(allOf(deps).thenRunAsync(() -> apply(fp, genome, fetched.join()), executor));
+				} else {
+					futures.add(allOf(deps).thenRunAsync(() -> runProcessor(p, genome), executor));
+				}
+			}
+			for (CompletableFuture<?> future : futures) {
+				try {
+					future.join();
+				} catch (CompletionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					} else if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new MaterializationUncheckedException("Could not process genome " + genome.getId(), cause);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static CompletableFuture<Void> allOf(List<CompletableFuture<?>> futures) {
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]));
+	}
+
+	protected void runProcessor(GenomeProcessor p, Genome genome) {
+		runStage(p.getClass().getSimpleName(), genome, () -> {
 			p.processGenome(genome);
+			return null;
+		});
+	}
+
+	protected <T> T fetch(FetchingGenomeProcessor<T> p, Genome genome) {
+		return runStage(p.getClass().getSimpleName() + ".fetch", genome, () -> p.fetch(genome));
+	}
+
+	@SuppressWarnings("unchecked")
+	protected <T> void apply(FetchingGenomeProcessor<T> p, Genome genome, Object data) {
+		runStage(p.getClass().getSimpleName() + ".apply", genome, () -> {
+			p.apply(genome, (T) data);
+			return null;
+		});
+	}
+
+	private <T> T runStage(String name, Genome genome, Supplier<T> stage) {
+		getLog().info("Running processor " + name);
+		MaterializerMetrics.Timer timer = metrics == null ? null : metrics.start(MaterializerMetrics.PROCESSOR, name);
+		long start = System.currentTimeMillis();
+		T result = stage.get();
+		long elapsed = System.currentTimeMillis() - start;
+		if (timer != null) {
+			// the model can only be counted safely if no other processor is
+			// running
+			if (threads <= 1) {
+				timer.getStage().setCounts(genome.getGenomicComponents());
+			}
+			timer.stop();
+		}
+		getLog().info("Processor " + name + " completed in " + elapsed + " ms");
+		synchronized (timings) {
+			String key = name;
+			for (int n = 2; timings.containsKey(key); n++) {
+				key = name + "#" + n;
+			}
+			timings.put(key, elapsed);
+		}
+		return result;
+	}
+
+	/**
+	 * @return true if the two processors cannot safely run at the same time
+	 */
+	protected static boolean conflicts(GenomeProcessor p1, GenomeProcessor p2) {
+		Set<ModelPart> w1 = p1.writes();
+		Set<ModelPart> w2 = p2.writes();
+		return !Collections.disjoint(w1, p2.reads()) || !Collections.disjoint(w1, w2)
+				|| !Collections.disjoint(p1.reads(), w2);
+	}
+
+	public Set<ModelPart> reads() {
+		Set<ModelPart> parts = EnumSet.noneOf(ModelPart.class);
+		for (GenomeProcessor p : processors) {
+			parts.addAll(p.reads());
+		}
+		return parts;
+	}
+
+	public Set<ModelPart> writes() {
+		Set<ModelPart> parts = EnumSet.noneOf(ModelPart.class);
+		for (GenomeProcessor p : processors) {
+			parts.addAll(p.writes());
 		}
-		getLog().info("Finished processing genome " + genome.getId());
+		return parts;
+	}
+
+	/**
+	 * @return processors in the order they are run
+	 */
+	protected List<GenomeProcessor> getProcessors() {
+		return Collections.unmodifiableList(processors);
 	}
 
 	protected void addProcessor(GenomeProcessor processor) {
@@ -48,29 +48,31 @@ public class EnaGenomeProcessor extends DelegatingGenomeProcessor {
                 new AltTranslationProcessor(config, registry), new AssemblyContigProcessor(config, registry, retriever),
                 new MetaDataProcessor(config));
 
+        setThreads(config.getProcessorThreads());
+
         if (!StringUtils.isEmpty(config.getEnaUri())) {
             addProcessor(new ConXrefProcessor(config, srv, registry));
         }
 
-//        if (!StringUtils.isEmpty(config.getUniparcUri())) {
-//            addProcessor(new UpiGenomeProcessor(config, srv, registry));
-//        }
-//
-//        if (!StringUtils.isEmpty(config.getUniProtUri())) {
-//            addProcessor(new UniProtDescriptionGenomeProcessor(config, srv, registry));
-//            addProcessor(new UniProtXrefGenomeProcessor(config, srv, registry));
-//            addProcessor(new UniProtECGenomeProcessor(config, srv, registry));
-//        }
-//
-//        if (!StringUtils.isEmpty(config.getInterproUri())) {
-//            addProcessor(new UpiInterproGenomeProcessor(config, srv, registry));
-//            addProcessor(new InterproPathwayGenomeProcessor(config, srv, registry));
-//        }
-//
-//        if (!StringUtils.isEmpty(config.getRfamUri())) {
-//            addProcessor(new RfamProcessor(config, srv, registry));
-//        }
-//
+        if (!StringUtils.isEmpty(config.getUniparcUri())) {
+            addProcessor(new UpiGenomeProcessor(config, srv, registry));
+        }
+
+        if (!StringUtils.isEmpty(config.getUniProtUri())) {
+            addProcessor(new UniProtDescriptionGenomeProcessor(config, srv, registry));
+            addProcessor(new UniProtXrefGenomeProcessor(config, srv, registry));
+            addProcessor(new UniProtECGenomeProcessor(config, srv, registry));
+        }
+
+        if (!StringUtils.isEmpty(config.getInterproUri())) {
+            addProcessor(new UpiInterproGenomeProcessor(config, srv, registry));
+            addProcessor(new InterproPathwayGenomeProcessor(config, srv, registry));
+        }
+
+        if (!StringUtils.isEmpty(config.getRfamUri())) {
+            addProcessor(new RfamProcessor(config, srv, registry));
+        }
+
 //        if (config.isUseAccessionsForNames()) {
 //            addProcessor(new ComponentAccessionNamingProcessor());
 //        }
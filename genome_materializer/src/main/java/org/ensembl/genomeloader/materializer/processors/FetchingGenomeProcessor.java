@@ -0,0 +1,57 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.genomeloader.materializer.processors;
+
+import org.ensembl.genomeloader.model.Genome;
+
+/**
+ * {@link GenomeProcessor} split into a fetch phase, which reads the model and
+ * retrieves data from external sources without modifying the genome, and an
+ * apply phase which adds the retrieved data to the genome.
+ * <p/>
+ * {@link DelegatingGenomeProcessor} starts the fetch as soon as earlier
+ * processors writing the parts of the model given by {@link #reads()} have
+ * finished, so fetches from different databases can run at the same time,
+ * whilst the apply phase waits for all earlier conflicting processors as for
+ * any other {@link GenomeProcessor}.
+ * 
+ * @param <T>
+ *            data retrieved by the fetch phase
+ */
+public interface FetchingGenomeProcessor<T> extends GenomeProcessor {
+
+	/**
+	 * Retrieve the data needed for the genome. Must not modify the genome.
+	 * 
+	 * @param genome
+	 * @return data to pass to {@link #apply(Genome, Object)}
+	 */
+	public T fetch(Genome genome);
+
+	/**
+	 * Add data retrieved by {@link #fetch(Genome)} to the genome
+	 * 
+	 * @param genome
+	 * @param data
+	 */
+	public void apply(Genome genome, T data);
+
+	public default void processGenome(Genome genome) {
+		apply(genome, fetch(genome));
+	}
+
+}
@@ -16,11 +16,19 @@
 
 package org.ensembl.genomeloader.materializer.processors;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 import org.ensembl.genomeloader.model.Genome;
 
 /**
  * Interface for classes that can accept and modify a post-materialization
  * {@link Genome} object
+ * <p/>
+ * Processors may declare the parts of the model they read and write so that
+ * {@link DelegatingGenomeProcessor} can run processors which do not conflict
+ * at the same time. By default a processor is assumed to read and write the
+ * whole model, and so runs alone.
  * 
  * @author dstaines
  * 
@@ -29,4 +37,18 @@ public interface GenomeProcessor {
 
 	public void processGenome(Genome genome);
 
+	/**
+	 * @return parts of the model read by this processor
+	 */
+	public default Set<ModelPart> reads() {
+		return EnumSet.allOf(ModelPart.class);
+	}
+
+	/**
+	 * @return parts of the model modified by this processor
+	 */
+	public default Set<ModelPart> writes() {
+		return EnumSet.allOf(ModelPart.class);
+	}
+
 }
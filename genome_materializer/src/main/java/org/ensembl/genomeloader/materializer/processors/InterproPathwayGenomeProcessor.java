@@ -21,6 +21,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -53,12 +54,13 @@ import oracle.sql.ArrayDescriptor;
 /**
  * {@link GenomeProcessor} to add pathway {@link DatabaseReference} instances to
  * {@link Protein}s from a {@link Genome} based on existing InterPro
- * {@link DatabaseReference}s and InterPro2Pathways
+ * {@link DatabaseReference}s and InterPro2Pathways. Pathways are retrieved
+ * for all InterPro accessions before any are added.
  * 
  * @author dstaines
  * 
  */
-public class InterproPathwayGenomeProcessor implements GenomeProcessor {
+public class InterproPathwayGenomeProcessor implements FetchingGenomeProcessor<Map<String, Collection<DatabaseReference>>> {
 
     protected final static SqlLib SQLLIB = new SqlLib("/org/ensembl/genomeloader/materializer/sql.xml");
 
@@ -87,18 +89,19 @@ public class InterproPathwayGenomeProcessor implements GenomeProcessor {
         return log;
     }
 
-    public void processGenome(Genome genome) {
-        try {
-            getLog().info("Loading InterPro pathway references for " + genome.getName());
-            // 1. hash Proteins by InterPro accession
-            Map<String, Collection<Protein>> proteins = hashProteinsByInterPro(genome);
-            // 2. for each batch of InterPro accessions, get pathways
-            Map<String, Collection<DatabaseReference>> pathways = hashPathwaysByInterPro(proteins.keySet());
-            // 3. apply Pathways to Proteins
-            addPathways(proteins, pathways);
-            getLog().info("Finished loading InterPro pathway references for " + genome.getName());
-        } finally {
-        }
+    public Map<String, Collection<DatabaseReference>> fetch(Genome genome) {
+        getLog().info("Loading InterPro pathway references for " + genome.getName());
+        // 1. hash Proteins by InterPro accession
+        Map<String, Collection<Protein>> proteins = hashProteinsByInterPro(genome);
+        // 2. for each batch of InterPro accessions, get pathways
+        return hashPathwaysByInterPro(proteins.keySet());
+    }
+
+    public void apply(Genome genome, Map<String, Collection<DatabaseReference>> pathways) {
+        // 3. apply Pathways to Proteins, hashed again as the proteins are not
+        // kept between phases
+        addPathways(hashProteinsByInterPro(genome), pathways);
+        getLog().info("Finished loading InterPro pathway references for " + genome.getName());
     }
 
     protected void addPathways(Map<String, Collection<Protein>> proteins,
@@ -199,4 +202,14 @@ public class InterproPathwayGenomeProcessor implements GenomeProcessor {
         return proteins;
     }
 
+    @Override
+    public Set<ModelPart> reads() {
+        return EnumSet.of(ModelPart.COMPONENTS, ModelPart.FEATURES, ModelPart.PROTEIN_XREFS);
+    }
+
+    @Override
+    public Set<ModelPart> writes() {
+        return EnumSet.of(ModelPart.PROTEIN_XREFS);
+    }
+
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.genomeloader.materializer.processors;
+
+/**
+ * Parts of a {@link org.ensembl.genomeloader.model.Genome} that a
+ * {@link GenomeProcessor} may read or write, used to decide which processors
+ * can safely run at the same time
+ */
+public enum ModelPart {
+
+	/**
+	 * list of components and their metadata, sequence and assembly
+	 */
+	COMPONENTS,
+	/**
+	 * genes, transcripts, proteins and other features attached to components
+	 */
+	FEATURES,
+	/**
+	 * RNA genes attached to components
+	 */
+	RNA_GENES,
+	/**
+	 * cross-references attached to genes
+	 */
+	GENE_XREFS,
+	/**
+	 * cross-references attached to transcripts
+	 */
+	TRANSCRIPT_XREFS,
+	/**
+	 * cross-references attached to proteins
+	 */
+	PROTEIN_XREFS,
+	/**
+	 * features such as domains attached to proteins
+	 */
+	PROTEIN_FEATURES,
+	/**
+	 * descriptions, names and versions of existing cross-references, as
+	 * distinct from which cross-references are attached to each entity
+	 */
+	XREF_DESCRIPTIONS;
+
+}
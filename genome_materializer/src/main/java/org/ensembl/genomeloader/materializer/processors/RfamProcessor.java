@@ -1,6 +1,9 @@
 package org.ensembl.genomeloader.materializer.processors;
 
 import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -12,13 +15,15 @@ import org.ensembl.genomeloader.model.Genome;
 import org.ensembl.genomeloader.model.GenomicComponent;
 import org.ensembl.genomeloader.model.Rnagene;
 import org.ensembl.genomeloader.services.sql.SqlService;
+import org.ensembl.genomeloader.util.collections.CollectionUtils;
 import org.ensembl.genomeloader.util.sql.SqlServiceTemplate;
 import org.ensembl.genomeloader.util.sql.SqlServiceTemplateImpl;
 import org.ensembl.genomeloader.xrefregistry.DatabaseReferenceTypeRegistry;
 
 /**
  * {@link GenomeProcessor} to add {@link Rnagene} instances from RFAM to a
- * {@link Genome}
+ * {@link Genome}. Genes for all components are fetched together and then
+ * added to each component by accession.
  * 
  * @author dstaines
  *
@@ -45,18 +50,40 @@ public class RfamProcessor implements GenomeProcessor {
     }
 
     public RfamProcessor(EnaGenomeConfig config, SqlService srv, DatabaseReferenceTypeRegistry registry) {
-        this(new SqlServiceTemplateImpl(config.getRfamUri(), srv), registry.getTypeForQualifiedName("Rfam", "ncrna"));
+        this(new RfamGeneFetcherImpl(new SqlServiceTemplateImpl(config.getRfamUri(), srv),
+                registry.getTypeForQualifiedName("Rfam", "ncrna"), config.getRfamBatchSize()));
     }
 
     public void processGenome(Genome genome) {
         getLog().info("Fetching RFAM genes for " + genome.getName());
+        final Map<String, GenomicComponent> components = CollectionUtils.createLinkedHashMap();
         for (final GenomicComponent component : genome.getGenomicComponents()) {
-            getLog().info("Fetching RFAM genes for " + component.getAccession());
-            final Collection<Rnagene> genes = fetcher.fetchGenes(component.getVersionedAccession());
-            getLog().info("Fetched " + genes.size() + " RFAM genes for " + component.getAccession());
-            component.getRnagenes().addAll(genes);
+            components.put(component.getVersionedAccession(), component);
         }
-        getLog().info("Fetching RFAM genes for " + genome.getName() + " completed");
+        final Map<String, Collection<Rnagene>> genes = fetcher.fetchGenes(components.keySet());
+        int n = 0;
+        for (final Map.Entry<String, Collection<Rnagene>> e : genes.entrySet()) {
+            final GenomicComponent component = components.get(e.getKey());
+            if (component == null) {
+                getLog().warn("Ignoring RFAM genes for unknown component " + e.getKey());
+            } else {
+                getLog().debug("Fetched " + e.getValue().size() + " RFAM genes for " + component.getAccession());
+                component.getRnagenes().addAll(e.getValue());
+                n += e.getValue().size();
+            }
+        }
+        getLog().info("Fetching RFAM genes for " + genome.getName() + " completed: added " + n + " genes to "
+                + genes.size() + "/" + components.size() + " components");
+    }
+
+    @Override
+    public Set<ModelPart> reads() {
+        return EnumSet.of(ModelPart.COMPONENTS);
+    }
+
+    @Override
+    public Set<ModelPart> writes() {
+        return EnumSet.of(ModelPart.RNA_GENES);
     }
 
 }
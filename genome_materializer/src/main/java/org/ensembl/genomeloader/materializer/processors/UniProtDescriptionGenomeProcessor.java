@@ -19,8 +19,10 @@ package org.ensembl.genomeloader.materializer.processors;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -45,12 +47,13 @@ import org.ensembl.genomeloader.xrefregistry.DatabaseReferenceTypeRegistry;
 /**
  * Processor that adds missing descriptions to UniProt xrefs. This is because
  * the ENA records just contain the accession, but Ensembl requires the
- * description
+ * description. Descriptions for all accessions are retrieved before any xref
+ * is updated.
  * 
  * @author dstaines
  *
  */
-public class UniProtDescriptionGenomeProcessor implements GenomeProcessor {
+public class UniProtDescriptionGenomeProcessor implements FetchingGenomeProcessor<List<Runnable>> {
 
     private Log log;
     private final SqlServiceTemplate upSrv;
@@ -86,8 +89,8 @@ public class UniProtDescriptionGenomeProcessor implements GenomeProcessor {
         return log;
     }
 
-    public void processGenome(final Genome genome) {
-        getLog().info("Updating UniProt xrefs for genome " + genome.getId());
+    public List<Runnable> fetch(final Genome genome) {
+        getLog().info("Retrieving UniProt descriptions for genome " + genome.getId());
         // hash proteins by UPI
         final Map<String, Collection<DatabaseReference>> xrefsByAcc = CollectionUtils.createHashMap();
         for (final GenomicComponent genomicComponent : genome.getGenomicComponents()) {
@@ -110,6 +113,7 @@ public class UniProtDescriptionGenomeProcessor implements GenomeProcessor {
             }
         }
         final List<String> accs = new ArrayList<String>(xrefsByAcc.keySet());
+        final List<Runnable> updates = CollectionUtils.createArrayList();
         int start = 0;
         final int size = accs.size();
         while (start < size) {
@@ -122,25 +126,45 @@ public class UniProtDescriptionGenomeProcessor implements GenomeProcessor {
 
             final String pH = StringUtils.join(placeholders.subList(0, pidSub.size()).iterator(), ',');
             final String sql = sqlLib.getQuery("uniProtDescriptionBatch", new String[] { pH });
-            upSrv.queryForList(sql, new RowMapper<String>() {
+            updates.addAll(upSrv.queryForList(sql, new RowMapper<Runnable>() {
 
-                public String mapRow(ROResultSet resultSet, int position) throws SQLException {
+                public Runnable mapRow(ROResultSet resultSet, int position) throws SQLException {
                     final String acc = resultSet.getString(1);
                     final String name = resultSet.getString(2);
                     final String des = resultSet.getString(3);
                     final String version = resultSet.getString(4);
                     final Collection<DatabaseReference> refs = xrefsByAcc.get(acc);
-                    for (final DatabaseReference ref : refs) {
-                        ((DatabaseReferenceImpl) ref).setDescription(des);
-                        ((DatabaseReferenceImpl) ref).setSecondaryIdentifier(name);
-                        ref.setVersion(version);
-                    }
-                    return acc;
+                    return () -> {
+                        for (final DatabaseReference ref : refs) {
+                            ((DatabaseReferenceImpl) ref).setDescription(des);
+                            ((DatabaseReferenceImpl) ref).setSecondaryIdentifier(name);
+                            ref.setVersion(version);
+                        }
+                    };
                 }
 
-            }, pidSub.toArray());
+            }, pidSub.toArray()));
             start = end;
         }
+        return updates;
+    }
+
+    public void apply(Genome genome, List<Runnable> updates) {
+        getLog().info("Updating " + updates.size() + " UniProt xrefs for genome " + genome.getId());
+        for (final Runnable update : updates) {
+            update.run();
+        }
         getLog().info("Finished updating UniProt xrefs for genome " + genome.getId());
     }
+
+    @Override
+    public Set<ModelPart> reads() {
+        return EnumSet.of(ModelPart.COMPONENTS, ModelPart.FEATURES, ModelPart.PROTEIN_XREFS);
+    }
+
+    @Override
+    public Set<ModelPart> writes() {
+        // only existing xrefs are changed
+        return EnumSet.of(ModelPart.XREF_DESCRIPTIONS);
+    }
 }
@@ -19,8 +19,10 @@ package org.ensembl.genomeloader.materializer.processors;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -43,12 +45,13 @@ import org.ensembl.genomeloader.util.sql.SqlServiceTemplateImpl;
 import org.ensembl.genomeloader.xrefregistry.DatabaseReferenceTypeRegistry;
 
 /**
- * Add EC numbers based on UniProt xrefs
+ * Add EC numbers based on UniProt xrefs. EC numbers for all accessions are
+ * retrieved before any are added.
  * 
  * @author dstaines
  *
  */
-public class UniProtECGenomeProcessor implements GenomeProcessor {
+public class UniProtECGenomeProcessor implements FetchingGenomeProcessor<List<Runnable>> {
 
     private Log log;
     private final SqlServiceTemplate upSrv;
@@ -86,8 +89,8 @@ public class UniProtECGenomeProcessor implements GenomeProcessor {
         return log;
     }
 
-    public void processGenome(final Genome genome) {
-        getLog().info("Adding EC numbers to genome " + genome.getId());
+    public List<Runnable> fetch(final Genome genome) {
+        getLog().info("Retrieving EC numbers for genome " + genome.getId());
         // hash proteins by uniprot accession
         final Map<String, Collection<Protein>> protsByAcc = CollectionUtils.createHashMap();
         for (final GenomicComponent genomicComponent : genome.getGenomicComponents()) {
@@ -110,6 +113,7 @@ public class UniProtECGenomeProcessor implements GenomeProcessor {
             }
         }
         final List<String> accs = new ArrayList<String>(protsByAcc.keySet());
+        final List<Runnable> updates = CollectionUtils.createArrayList();
         int start = 0;
         final int size = accs.size();
         while (start < size) {
@@ -122,20 +126,40 @@ public class UniProtECGenomeProcessor implements GenomeProcessor {
 
             final String pH = StringUtils.join(placeholders.subList(0, pidSub.size()).iterator(), ',');
             final String sql = sqlLib.getQuery("uniProtECBatch", new String[] { pH });
-            upSrv.queryForList(sql, new RowMapper<String>() {
+            updates.addAll(upSrv.queryForList(sql, new RowMapper<Runnable>() {
 
-                public String mapRow(ROResultSet resultSet, int position) throws SQLException {
+                public Runnable mapRow(ROResultSet resultSet, int position) throws SQLException {
                     final String acc = resultSet.getString(1);
                     final String ec = resultSet.getString(2);
-                    for (final Protein p : protsByAcc.get(acc)) {
-                        p.addDatabaseReference(new DatabaseReferenceImpl(enzType, ec));
-                    }
-                    return acc;
+                    final Collection<Protein> proteins = protsByAcc.get(acc);
+                    return () -> {
+                        for (final Protein p : proteins) {
+                            p.addDatabaseReference(new DatabaseReferenceImpl(enzType, ec));
+                        }
+                    };
                 }
 
-            }, pidSub.toArray());
+            }, pidSub.toArray()));
             start = end;
         }
+        return updates;
+    }
+
+    public void apply(Genome genome, List<Runnable> updates) {
+        getLog().info("Adding " + updates.size() + " EC numbers to genome " + genome.getId());
+        for (final Runnable update : updates) {
+            update.run();
+        }
         getLog().info("Finished adding EC numbers to genome " + genome.getId());
     }
+
+    @Override
+    public Set<ModelPart> reads() {
+        return EnumSet.of(ModelPart.COMPONENTS, ModelPart.FEATURES, ModelPart.PROTEIN_XREFS);
+    }
+
+    @Override
+    public Set<ModelPart> writes() {
+        return EnumSet.of(ModelPart.PROTEIN_XREFS);
+    }
 }
@@ -18,8 +18,10 @@ package org.ensembl.genomeloader.materializer.processors;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -145,4 +147,14 @@ public class UniProtGenomeProcessor implements GenomeProcessor {
         }
         getLog().info("Finished adding missing UniProt xrefs to genome " + genome.getId());
     }
+
+    @Override
+    public Set<ModelPart> reads() {
+        return EnumSet.of(ModelPart.COMPONENTS, ModelPart.FEATURES, ModelPart.PROTEIN_XREFS);
+    }
+
+    @Override
+    public Set<ModelPart> writes() {
+        return EnumSet.of(ModelPart.PROTEIN_XREFS);
+    }
 }
@@ -19,9 +19,10 @@ package org.ensembl.genomeloader.materializer.processors;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -49,12 +50,12 @@ import org.ensembl.genomeloader.xrefregistry.DatabaseReferenceTypeRegistry;
 /**
  * Processor to add transitive xrefs from UniProt based on UniProt mappings.
  * Note that only xrefs from databases listed in the whitelist file are
- * included.
+ * included. Xrefs for all accessions are retrieved before any are added.
  * 
  * @author dstaines
  *
  */
-public class UniProtXrefGenomeProcessor implements GenomeProcessor {
+public class UniProtXrefGenomeProcessor implements FetchingGenomeProcessor<List<Runnable>> {
 
     private Log log;
     private final SqlServiceTemplate upSrv;
@@ -110,8 +111,8 @@ public class UniProtXrefGenomeProcessor implements GenomeProcessor {
         return log;
     }
 
-    public void processGenome(final Genome genome) {
-        getLog().info("Adding UniProt transitive xrefs to genome " + genome.getId());
+    public List<Runnable> fetch(final Genome genome) {
+        getLog().info("Retrieving UniProt transitive xrefs for genome " + genome.getId());
         // hash proteins by UniProt
         final Map<String, Collection<Protein>> proteinsByAc = CollectionUtils.createHashMap();
         final Map<String, DatabaseReference> uniprotRefs = CollectionUtils.createHashMap();
@@ -146,7 +147,7 @@ public class UniProtXrefGenomeProcessor implements GenomeProcessor {
         final List<String> acs = new ArrayList<String>(proteinsByAc.keySet());
         int start = 0;
         final int size = acs.size();
-        final AtomicInteger n = new AtomicInteger(0);
+        final List<Runnable> updates = CollectionUtils.createArrayList();
         while (start < size) {
             int end = start + BATCH_SIZE;
             if (end >= size) {
@@ -157,9 +158,9 @@ public class UniProtXrefGenomeProcessor implements GenomeProcessor {
 
             final String pH = StringUtils.join(placeholders.subList(0, acSub.size()).iterator(), ',');
             final String sql = sqlLib.getQuery("uniProtXrefsBatch", new String[] { pH, dbList });
-            upSrv.queryForList(sql, new RowMapper<String>() {
+            for (final Runnable update : upSrv.queryForList(sql, new RowMapper<Runnable>() {
 
-                public String mapRow(ROResultSet resultSet, int position) throws SQLException {
+                public Runnable mapRow(ROResultSet resultSet, int position) throws SQLException {
                     final String acc = resultSet.getString(1);
                     final String dbName = resultSet.getString(2);
                     final String pid = resultSet.getString(3);
@@ -168,47 +169,74 @@ public class UniProtXrefGenomeProcessor implements GenomeProcessor {
                     final String qid = resultSet.getString(6);
                     if (dbName.equalsIgnoreCase("GO")) {
                         final DatabaseReference ref = uniprotRefs.get(acc);
-                        for (final Protein p : proteinsByAc.get(acc)) {
-                            final DatabaseReferenceImpl goX = new DatabaseReferenceImpl(getType(dbName), pid,
-                                    note.replaceAll(":.*", StringUtils.EMPTY));
-                            goX.setSource(ref);
-                            for(Transcript t: p.getTranscripts()) {
-                                t.addDatabaseReference(goX);
+                        final DatabaseReferenceType type = getType(dbName);
+                        return () -> {
+                            for (final Protein p : proteinsByAc.get(acc)) {
+                                final DatabaseReferenceImpl goX = new DatabaseReferenceImpl(type, pid,
+                                        note.replaceAll(":.*", StringUtils.EMPTY));
+                                goX.setSource(ref);
+                                for(Transcript t: p.getTranscripts()) {
+                                    t.addDatabaseReference(goX);
+                                }
                             }
-                        }
-                        n.incrementAndGet();
+                        };
                     } else {
                         final DatabaseReferenceType type = getType(dbName);
                         if (type == null) {
                             getLog().debug("Unknown database reference type " + dbName + " from UniProt " + acc);
+                            return null;
                         } else {
                             final DatabaseReferenceImpl ref = new DatabaseReferenceImpl(type, pid, sid);
                             ref.setQuarternaryIdentifier(qid);
                             ref.setDescription(note);
-                            if (type.getType().equals(TypeEnum.PROTEIN) || type.getType().equals(TypeEnum.TRANSCRIPT)) {
-                                for (final Protein p : proteinsByAc.get(acc)) {
-                                    if (type.getType().equals(TypeEnum.TRANSCRIPT)) {
-                                        for (final Transcript t : p.getTranscripts()) {
-                                            t.addDatabaseReference(ref);
+                            return () -> {
+                                if (type.getType().equals(TypeEnum.PROTEIN)
+                                        || type.getType().equals(TypeEnum.TRANSCRIPT)) {
+                                    for (final Protein p : proteinsByAc.get(acc)) {
+                                        if (type.getType().equals(TypeEnum.TRANSCRIPT)) {
+                                            for (final Transcript t : p.getTranscripts()) {
+                                                t.addDatabaseReference(ref);
+                                            }
+                                        } else {
+                                            p.addDatabaseReference(ref);
                                         }
-                                    } else {
-                                        p.addDatabaseReference(ref);
+                                    }
+                                } else {
+                                    for (final Gene g : genesByAc.get(acc)) {
+                                        g.addDatabaseReference(ref);
                                     }
                                 }
-                            } else {
-                                for (final Gene g : genesByAc.get(acc)) {
-                                    g.addDatabaseReference(ref);
-                                }
-                            }
+                            };
                         }
                     }
-                    return acc;
                 }
 
-            }, acSub.toArray());
+            }, acSub.toArray())) {
+                if (update != null) {
+                    updates.add(update);
+                }
+            }
             start = end;
         }
-        getLog().info("Finished adding "+n.get()+" UniProt transitive xrefs to genome " + genome.getId());
+        return updates;
+    }
+
+    public void apply(Genome genome, List<Runnable> updates) {
+        getLog().info("Adding UniProt transitive xrefs to genome " + genome.getId());
+        for (final Runnable update : updates) {
+            update.run();
+        }
+        getLog().info("Finished adding " + updates.size() + " UniProt transitive xrefs to genome " + genome.getId());
+    }
+
+    @Override
+    public Set<ModelPart> reads() {
+        return EnumSet.of(ModelPart.COMPONENTS, ModelPart.FEATURES, ModelPart.PROTEIN_XREFS);
+    }
+
+    @Override
+    public Set<ModelPart> writes() {
+        return EnumSet.of(ModelPart.GENE_XREFS, ModelPart.TRANSCRIPT_XREFS, ModelPart.PROTEIN_XREFS);
     }
 
 }
@@ -16,7 +16,13 @@
 
 package org.ensembl.genomeloader.materializer.processors;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -31,19 +37,25 @@ import org.ensembl.genomeloader.model.GenomicComponent;
 import org.ensembl.genomeloader.model.ModelUtils;
 import org.ensembl.genomeloader.model.Protein;
 import org.ensembl.genomeloader.model.impl.DatabaseReferenceImpl;
+import org.ensembl.genomeloader.services.sql.ROResultSet;
 import org.ensembl.genomeloader.services.sql.SqlService;
+import org.ensembl.genomeloader.util.collections.CollectionUtils;
+import org.ensembl.genomeloader.util.sql.RowMapper;
 import org.ensembl.genomeloader.util.sql.SqlLib;
 import org.ensembl.genomeloader.util.sql.SqlServiceTemplate;
 import org.ensembl.genomeloader.util.sql.SqlServiceTemplateImpl;
 import org.ensembl.genomeloader.xrefregistry.DatabaseReferenceTypeRegistry;
 
 /**
- * Processor to add UPIs based on protein_ids
+ * Processor to add UPIs based on protein_ids. protein_ids for all proteins in
+ * the genome are collected first and then looked up in UniParc in batches of
+ * {@link EnaGenomeConfig#getUpiBatchSize()} rather than one query per protein.
+ * UPIs are only added once all batches have been retrieved.
  * 
  * @author dstaines
  *
  */
-public class UpiGenomeProcessor implements GenomeProcessor {
+public class UpiGenomeProcessor implements FetchingGenomeProcessor<List<Runnable>> {
 
     private static final int CDS_THRESHOLD = 9;
     private Log log;
@@ -52,6 +64,8 @@ public class UpiGenomeProcessor implements GenomeProcessor {
     private final DatabaseReferenceType pidType;
     private final SqlLib sqlLib;
     private final EnaGenomeConfig config;
+    private final int batchSize;
+    private final List<String> placeholders;
 
     public UpiGenomeProcessor(EnaGenomeConfig config, SqlServiceTemplate upiSrv, DatabaseReferenceType upiType,
             DatabaseReferenceType pidType) {
@@ -60,6 +74,11 @@ public class UpiGenomeProcessor implements GenomeProcessor {
         this.upiType = upiType;
         this.pidType = pidType;
         this.sqlLib = new SqlLib("/org/ensembl/genomeloader/materializer/sql.xml");
+        this.batchSize = config.getUpiBatchSize();
+        placeholders = CollectionUtils.createArrayList(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            placeholders.add("(?,?)");
+        }
     }
 
     public UpiGenomeProcessor(EnaGenomeConfig config, SqlService srv, DatabaseReferenceTypeRegistry registry) {
@@ -74,8 +93,12 @@ public class UpiGenomeProcessor implements GenomeProcessor {
         return log;
     }
 
-    public void processGenome(Genome genome) {
-        getLog().info("Adding UPIs to genome " + genome.getId());
+    public List<Runnable> fetch(Genome genome) {
+        getLog().info("Retrieving UPIs for genome " + genome.getId());
+        // collect proteins first so UniParc can be queried in batches
+        final List<Protein> proteins = CollectionUtils.createArrayList();
+        final List<DatabaseReference> pids = CollectionUtils.createArrayList();
+        final Set<String> pidAcs = CollectionUtils.createLinkedHashSet();
         for (final GenomicComponent genomicComponent : genome.getGenomicComponents()) {
             for (final Gene gene : genomicComponent.getGenes()) {
                 for (final Protein protein : gene.getProteins()) {
@@ -84,10 +107,9 @@ public class UpiGenomeProcessor implements GenomeProcessor {
                     if (pid != null) {
                         final int len = ModelUtils.getEntityLocationLength(protein.getLocation());
                         if (len >= CDS_THRESHOLD) {
-                            final String upi = getUpiForProteinId(pid);
-                            if (!StringUtils.isEmpty(upi)) {
-                                protein.getDatabaseReferences().add(getUpiRef(upi));
-                            }
+                            proteins.add(protein);
+                            pids.add(pid);
+                            pidAcs.add(pid.getSecondaryIdentifier());
                         } else {
                             getLog().warn("Skipping UPI lookup for protein_id " + pid.getPrimaryIdentifier()
                                     + " as CDS length is only " + len);
@@ -96,6 +118,23 @@ public class UpiGenomeProcessor implements GenomeProcessor {
                 }
             }
         }
+        final Map<String, Set<String>> upisByPid = getUpisForProteinIds(new ArrayList<String>(pidAcs));
+        final List<Runnable> updates = CollectionUtils.createArrayList(proteins.size());
+        for (int i = 0; i < proteins.size(); i++) {
+            final String upi = getUpiForProteinId(pids.get(i), upisByPid.get(pids.get(i).getSecondaryIdentifier()));
+            if (!StringUtils.isEmpty(upi)) {
+                final Protein protein = proteins.get(i);
+                updates.add(() -> protein.getDatabaseReferences().add(getUpiRef(upi)));
+            }
+        }
+        return updates;
+    }
+
+    public void apply(Genome genome, List<Runnable> updates) {
+        getLog().info("Adding " + updates.size() + " UPIs to genome " + genome.getId());
+        for (final Runnable update : updates) {
+            update.run();
+        }
         getLog().info("Finished adding UPIs to genome " + genome.getId());
     }
 
@@ -103,24 +142,86 @@ public class UpiGenomeProcessor implements GenomeProcessor {
         return new DatabaseReferenceImpl(upiType, upi);
     }
 
-    protected String getUpiForProteinId(DatabaseReference pid) {
+    /**
+     * Find UPIs for the supplied versioned protein_ids, querying UniParc in
+     * batches
+     * 
+     * @param pidAcs
+     *            versioned protein_ids e.g. AAC73112.1
+     * @return map of versioned protein_id to UPIs found
+     */
+    protected Map<String, Set<String>> getUpisForProteinIds(List<String> pidAcs) {
+        final Map<String, Set<String>> upis = CollectionUtils.createHashMap(pidAcs.size());
+        final int size = pidAcs.size();
+        for (int start = 0; start < size; start += batchSize) {
+            final int end = Math.min(start + batchSize, size);
+            getLog().debug("Finding UPIs for batch of " + (end - start) + " (" + end + "/" + size + ")");
+            fetchBatch(pidAcs.subList(start, end), upis);
+        }
+        return upis;
+    }
+
+    /**
+     * Query UniParc for a single batch of versioned protein_ids, adding the
+     * UPIs found to the supplied map
+     * 
+     * @param pidAcs
+     *            versioned protein_ids, no more than the batch size
+     * @param upis
+     *            map of versioned protein_id to UPIs
+     */
+    protected void fetchBatch(List<String> pidAcs, final Map<String, Set<String>> upis) {
+        final List<String> args = CollectionUtils.createArrayList(pidAcs.size() * 2);
+        for (final String pidAc : pidAcs) {
+            final String[] pids = pidAc.split("\\.");
+            if (pids.length != 2) {
+                throw new MaterializationUncheckedException("Cannot find UPI for unversioned protein ID " + pidAc);
+            }
+            args.add(pids[0]);
+            args.add(pids[1]);
+        }
+        final String pH = StringUtils.join(placeholders.subList(0, pidAcs.size()).iterator(), ',');
+        final String sql = sqlLib.getQuery("pidToUpiBatch", new String[] { pH });
+        upiSrv.queryForList(sql, new RowMapper<String>() {
+
+            public String mapRow(ROResultSet resultSet, int position) throws SQLException {
+                final String pidAc = resultSet.getString(1) + "." + resultSet.getString(2);
+                Set<String> pidUpis = upis.get(pidAc);
+                if (pidUpis == null) {
+                    pidUpis = CollectionUtils.createHashSet();
+                    upis.put(pidAc, pidUpis);
+                }
+                pidUpis.add(resultSet.getString(3));
+                return null;
+            }
+        }, args.toArray());
+    }
+
+    protected String getUpiForProteinId(DatabaseReference pid, Collection<String> upis) {
         String upi = null;
-        final String[] pids = pid.getSecondaryIdentifier().split("\\.");
-        final List<String> upis = upiSrv.queryForDefaultObjectList(sqlLib.getQuery("pidToUpi"), String.class, pids[0],
-                pids[1]);
-        if (upis.size() == 1) {
-            upi = upis.get(0);
-        } else if (upis.size() > 1) {
+        if (upis != null && upis.size() == 1) {
+            upi = upis.iterator().next();
+        } else if (upis != null && upis.size() > 1) {
             throw new MaterializationUncheckedException("More than one UPI found for protein ID " + pid);
         } else {
             final String msg = "No UPI found for protein ID " + pid;
             if (!config.isAllowMissingUpis()) {
                 throw new MaterializationUncheckedException(msg);
             } else {
-                log.warn(msg);
+                getLog().warn(msg);
             }
         }
         return upi;
     }
 
+    @Override
+    public Set<ModelPart> reads() {
+        return EnumSet.of(ModelPart.COMPONENTS, ModelPart.FEATURES, ModelPart.PROTEIN_XREFS);
+    }
+
+    @Override
+    public Set<ModelPart> writes() {
+        return EnumSet.of(ModelPart.PROTEIN_XREFS);
+    }
+
 }
@@ -31,8 +31,8 @@ public class UpiInterproGenomeProcessor extends CollectionInterproGenomeProcesso
 
     public UpiInterproGenomeProcessor(EnaGenomeConfig config, SqlService srv, DatabaseReferenceTypeRegistry registry) {
         super(new SqlServiceTemplateImpl(config.getInterproUri(), srv), registry.getTypeForName("InterPro"),
-                registry.getTypeForName("GO"), SQLLIB.getQuery("upiToIproArrayIprel"),
-                registry.getTypeForName("UniParc"));
+                registry.getTypeForName("GO"), SQLLIB.getQuery("upiToIproArrayIprel"), config.getInterproBatchSize(),
+                config.getInterproBatchesInFlight(), config.getInterproFetchSize(), registry.getTypeForName("UniParc"));
     }
 
 }
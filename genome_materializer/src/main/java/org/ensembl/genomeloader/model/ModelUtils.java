@@ -43,6 +43,7 @@ import org.biojavax.bio.seq.RichLocation.Strand;
 import org.biojavax.bio.seq.SimplePosition;
 import org.biojavax.bio.seq.SimpleRichLocation;
 import org.ensembl.genomeloader.model.EntityLocation.MappingState;
+import org.ensembl.genomeloader.model.impl.DatabaseReferenceSet;
 import org.ensembl.genomeloader.model.impl.DelegatingEntityLocation;
 import org.ensembl.genomeloader.model.sequence.Sequence;
 import org.ensembl.genomeloader.model.sequence.SequenceTranslationException;
@@ -1047,11 +1048,25 @@ public class ModelUtils {
 				getReferencesForType(referee, type), null);
 	}
 
+	/**
+	 * Find the references of a given type attached to an object. Where the
+	 * object keeps its references in a {@link DatabaseReferenceSet}, this is a
+	 * read-only live view which must be copied before removing references of
+	 * that type from the object whilst iterating.
+	 * 
+	 * @param referee
+	 * @param type
+	 * @return references of the given type
+	 */
 	public static Collection<DatabaseReference> getReferencesForType(
 			CrossReferenced referee, DatabaseReferenceType type) {
+		final Set<DatabaseReference> allRefs = referee.getDatabaseReferences();
+		if (allRefs instanceof DatabaseReferenceSet) {
+			return ((DatabaseReferenceSet) allRefs).getReferencesForType(type);
+		}
 		final Collection<DatabaseReference> refs = CollectionUtils
 				.createHashSet();
-		for (final DatabaseReference ref : referee.getDatabaseReferences()) {
+		for (final DatabaseReference ref : allRefs) {
 			if (ref.getDatabaseReferenceType().equals(type)) {
 				refs.add(ref);
 			}
@@ -0,0 +1,142 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.genomeloader.model.impl;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.ensembl.genomeloader.model.DatabaseReference;
+import org.ensembl.genomeloader.model.DatabaseReferenceType;
+import org.ensembl.genomeloader.util.collections.CollectionUtils;
+
+/**
+ * Set of {@link DatabaseReference}s which also keeps an index of its members
+ * by {@link DatabaseReferenceType}, so that the references of a given type
+ * can be found without scanning the whole set. The index is updated on every
+ * addition and removal, including removal through the iterator.
+ * <p/>
+ * The index uses the type a reference has when it is added, so the type of a
+ * reference should not be changed whilst it is in the set.
+ */
+public class DatabaseReferenceSet extends AbstractSet<DatabaseReference> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Set<DatabaseReference> references = CollectionUtils.createHashSet();
+    private final Map<DatabaseReferenceType, Set<DatabaseReference>> referencesByType = CollectionUtils
+            .createHashMap();
+    private final Map<DatabaseReferenceType, Set<DatabaseReference>> viewsByType = CollectionUtils.createHashMap();
+
+    public DatabaseReferenceSet() {
+    }
+
+    public DatabaseReferenceSet(Collection<? extends DatabaseReference> references) {
+        addAll(references);
+    }
+
+    /**
+     * @param type
+     * @return read-only live view of the references of the given type. The
+     *         view must be copied before removing references of that type
+     *         from this set whilst iterating over it.
+     */
+    public Set<DatabaseReference> getReferencesForType(DatabaseReferenceType type) {
+        final Set<DatabaseReference> view = viewsByType.get(type);
+        return view == null ? Collections.<DatabaseReference> emptySet() : view;
+    }
+
+    @Override
+    public boolean add(DatabaseReference reference) {
+        if (references.add(reference)) {
+            final DatabaseReferenceType type = reference.getDatabaseReferenceType();
+            Set<DatabaseReference> refs = referencesByType.get(type);
+            if (refs == null) {
+                refs = CollectionUtils.createHashSet();
+                referencesByType.put(type, refs);
+                viewsByType.put(type, Collections.unmodifiableSet(refs));
+            }
+            refs.add(reference);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (references.remove(o)) {
+            unindex((DatabaseReference) o);
+            return true;
+        }
+        return false;
+    }
+
+    private void unindex(DatabaseReference reference) {
+        final Set<DatabaseReference> refs = referencesByType.get(reference.getDatabaseReferenceType());
+        if (refs != null) {
+            refs.remove(reference);
+        }
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return references.contains(o);
+    }
+
+    @Override
+    public int size() {
+        return references.size();
+    }
+
+    @Override
+    public void clear() {
+        references.clear();
+        // keep the per-type sets so that existing views stay valid
+        for (final Set<DatabaseReference> refs : referencesByType.values()) {
+            refs.clear();
+        }
+    }
+
+    @Override
+    public Iterator<DatabaseReference> iterator() {
+        final Iterator<DatabaseReference> i = references.iterator();
+        return new Iterator<DatabaseReference>() {
+
+            private DatabaseReference current;
+
+            public boolean hasNext() {
+                return i.hasNext();
+            }
+
+            public DatabaseReference next() {
+                current = i.next();
+                return current;
+            }
+
+            public void remove() {
+                i.remove();
+                unindex(current);
+            }
+
+        };
+    }
+
+}
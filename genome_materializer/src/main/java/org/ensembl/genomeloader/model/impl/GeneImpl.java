@@ -22,7 +22,6 @@
  */
 package org.ensembl.genomeloader.model.impl;
 
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -94,7 +93,7 @@ public class GeneImpl extends AbstractModelComponent implements Gene {
 	 */
 	public Set<DatabaseReference> getDatabaseReferences() {
 		if (databaseReferences == null) {
-			databaseReferences = new HashSet<DatabaseReference>();
+			databaseReferences = new DatabaseReferenceSet();
 		}
 		return databaseReferences;
 	}
@@ -149,7 +148,8 @@ public class GeneImpl extends AbstractModelComponent implements Gene {
 	 *            the databaseReferences to set
 	 */
 	public void setDatabaseReferences(Set<DatabaseReference> databaseReferences) {
-		this.databaseReferences = databaseReferences;
+		this.databaseReferences = databaseReferences == null || databaseReferences instanceof DatabaseReferenceSet
+				? databaseReferences : new DatabaseReferenceSet(databaseReferences);
 	}
 
 	/*
@@ -59,7 +59,7 @@ public class GenomicComponentImpl implements GenomicComponent {
 
     private Set<SimpleFeature> features;
 
-    private Set<Gene> genes = null;
+    private IndexedGeneSet<Gene> genes = null;
 
     @JsonIgnore
     protected Genome genome;
@@ -76,7 +76,7 @@ public class GenomicComponentImpl implements GenomicComponent {
 
     private Set<RepeatRegion> repeats;
 
-    private Set<Rnagene> rnagenes;
+    private IndexedGeneSet<Rnagene> rnagenes;
 
     private Sequence sequence;
 
@@ -151,8 +151,16 @@ public class GenomicComponentImpl implements GenomicComponent {
      * org.ensembl.genomeloader.genomebuilder.model.GenomicComponent#getGenes()
      */
     public Set<Gene> getGenes() {
+        return getIndexedGenes();
+    }
+
+    /**
+     * @return genes of this component, with lookups by name and location
+     */
+    @JsonIgnore
+    public IndexedGeneSet<Gene> getIndexedGenes() {
         if (genes == null) {
-            genes = CollectionUtils.createHashSet();
+            genes = new IndexedGeneSet<Gene>();
         }
         return genes;
     }
@@ -216,12 +224,32 @@ public class GenomicComponentImpl implements GenomicComponent {
     }
 
     public Set<Rnagene> getRnagenes() {
+        return getIndexedRnagenes();
+    }
+
+    /**
+     * @return RNA genes of this component, with lookups by name and location
+     */
+    @JsonIgnore
+    public IndexedGeneSet<Rnagene> getIndexedRnagenes() {
         if (rnagenes == null) {
-            rnagenes = CollectionUtils.createHashSet();
+            rnagenes = new IndexedGeneSet<Rnagene>();
         }
         return rnagenes;
     }
 
+    /**
+     * Discard the gene indexes built whilst parsing the component
+     */
+    public void clearIndexes() {
+        if (genes != null) {
+            genes.clearIndex();
+        }
+        if (rnagenes != null) {
+            rnagenes.clearIndex();
+        }
+    }
+
     public Sequence getSequence() {
         return sequence;
     }
@@ -251,7 +279,8 @@ public class GenomicComponentImpl implements GenomicComponent {
      * @param genes
      */
     public void setGenes(Set<Gene> genes) {
-        this.genes = genes;
+        this.genes = genes == null || genes instanceof IndexedGeneSet ? (IndexedGeneSet<Gene>) genes
+                : new IndexedGeneSet<Gene>(genes);
     }
 
     public void setGenome(Genome genome) {
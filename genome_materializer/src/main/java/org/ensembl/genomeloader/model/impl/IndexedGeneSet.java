@@ -0,0 +1,365 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.genomeloader.model.impl;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.biojavax.bio.seq.RichLocation.Strand;
+import org.ensembl.genomeloader.model.AnnotatedGene;
+import org.ensembl.genomeloader.model.EntityLocation;
+import org.ensembl.genomeloader.model.Gene;
+import org.ensembl.genomeloader.model.GeneName;
+import org.ensembl.genomeloader.model.Locatable;
+import org.ensembl.genomeloader.model.Protein;
+import org.ensembl.genomeloader.model.Rnagene;
+import org.ensembl.genomeloader.model.RnaTranscript;
+import org.ensembl.genomeloader.model.Transcript;
+import org.ensembl.genomeloader.util.collections.CollectionUtils;
+
+/**
+ * Set of genes for a {@link GenomicComponentImpl} which can be indexed for
+ * the lookups made whilst parsing a feature table: genes are hashed by
+ * {@link GeneName} (which includes the {@link GeneName#getType()}), and the
+ * extent of each gene and its transcripts and proteins is held per strand in
+ * an index ordered by start position.
+ * <p/>
+ * The index is built on the first lookup and kept up to date as genes are
+ * added and removed. Code which changes the names or locations of a gene in
+ * the set must call {@link #update(AnnotatedGene)} afterwards. Lookups return
+ * genes in the iteration order of the set. {@link #clearIndex()} releases the
+ * index once parsing is complete.
+ *
+ * @param <T>
+ *            type of gene
+ */
+public class IndexedGeneSet<T extends AnnotatedGene & Locatable> extends AbstractSet<T> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Indexed position of a gene
+     */
+    private static class Entry<T> {
+
+        private final T gene;
+        private final long order;
+        private Strand strand;
+        private int min;
+        private int max;
+        private Collection<GeneName> names;
+
+        public Entry(T gene, long order) {
+            this.gene = gene;
+            this.order = order;
+        }
+
+    }
+
+    /**
+     * Genes on one strand ordered by the start of their extent. Overlap
+     * queries scan starts from the query start minus the longest extent seen.
+     */
+    private static class StrandIndex<T> {
+
+        private final NavigableMap<Integer, List<Entry<T>>> byMin = new TreeMap<Integer, List<Entry<T>>>();
+        private int maxLength = 0;
+
+        public void add(Entry<T> entry) {
+            List<Entry<T>> entries = byMin.get(entry.min);
+            if (entries == null) {
+                entries = CollectionUtils.createArrayList(1);
+                byMin.put(entry.min, entries);
+            }
+            entries.add(entry);
+            maxLength = Math.max(maxLength, entry.max - entry.min);
+        }
+
+        public void remove(Entry<T> entry) {
+            List<Entry<T>> entries = byMin.get(entry.min);
+            if (entries != null) {
+                entries.remove(entry);
+                if (entries.isEmpty()) {
+                    byMin.remove(entry.min);
+                }
+            }
+        }
+
+        public void findOverlapping(int min, int max, List<Entry<T>> found) {
+            for (List<Entry<T>> entries : byMin.subMap(min - maxLength, true, max, true).values()) {
+                for (Entry<T> entry : entries) {
+                    if (entry.max >= min) {
+                        found.add(entry);
+                    }
+                }
+            }
+        }
+
+    }
+
+    private static final Comparator<Entry<?>> ORDER = new Comparator<Entry<?>>() {
+        public int compare(Entry<?> o1, Entry<?> o2) {
+            return Long.compare(o1.order, o2.order);
+        }
+    };
+
+    private final Set<T> genes = CollectionUtils.createLinkedHashSet();
+    private transient Map<T, Entry<T>> entries;
+    private transient Map<GeneName, Set<Entry<T>>> byName;
+    private transient Map<Strand, StrandIndex<T>> byStrand;
+    private transient long nextOrder = 0;
+
+    public IndexedGeneSet() {
+    }
+
+    public IndexedGeneSet(Collection<? extends T> genes) {
+        addAll(genes);
+    }
+
+    @Override
+    public boolean add(T gene) {
+        if (genes.add(gene)) {
+            if (entries != null) {
+                index(new Entry<T>(gene, nextOrder++));
+            }
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (genes.remove(o)) {
+            if (entries != null) {
+                unindex(entries.remove(o));
+            }
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return genes.contains(o);
+    }
+
+    @Override
+    public int size() {
+        return genes.size();
+    }
+
+    @Override
+    public void clear() {
+        genes.clear();
+        clearIndex();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        final Iterator<T> i = genes.iterator();
+        return new Iterator<T>() {
+
+            private T current;
+
+            public boolean hasNext() {
+                return i.hasNext();
+            }
+
+            public T next() {
+                current = i.next();
+                return current;
+            }
+
+            public void remove() {
+                i.remove();
+                if (entries != null) {
+                    unindex(entries.remove(current));
+                }
+            }
+
+        };
+    }
+
+    /**
+     * Refresh the index for a gene whose names or location (or those of its
+     * transcripts and proteins) have changed
+     *
+     * @param gene
+     */
+    public void update(T gene) {
+        if (entries != null) {
+            Entry<T> entry = entries.get(gene);
+            if (entry != null) {
+                unindex(entry);
+                index(entry);
+            }
+        }
+    }
+
+    /**
+     * Discard the index, which will be rebuilt if needed
+     */
+    public void clearIndex() {
+        entries = null;
+        byName = null;
+        byStrand = null;
+    }
+
+    /**
+     * @param names
+     * @return genes with any of the supplied names
+     */
+    public List<T> findByName(Collection<GeneName> names) {
+        buildIndex();
+        Set<Entry<T>> found = CollectionUtils.createHashSet();
+        for (GeneName name : names) {
+            Set<Entry<T>> named = byName.get(name);
+            if (named != null) {
+                found.addAll(named);
+            }
+        }
+        return toGenes(found);
+    }
+
+    /**
+     * Find genes which, together with their transcripts and proteins, may
+     * overlap the specified region. Callers should check the exact locations
+     * of the genes returned.
+     *
+     * @param min
+     * @param max
+     * @param strand
+     *            strand to search (genes of unknown strand are always
+     *            included), or null for all strands
+     * @return genes in the region
+     */
+    public List<T> findOverlapping(int min, int max, Strand strand) {
+        buildIndex();
+        List<Entry<T>> found = CollectionUtils.createArrayList();
+        for (Map.Entry<Strand, StrandIndex<T>> e : byStrand.entrySet()) {
+            if (strand == null || strand.equals(e.getKey()) || Strand.UNKNOWN_STRAND.equals(e.getKey())) {
+                e.getValue().findOverlapping(min, max, found);
+            }
+        }
+        return toGenes(found);
+    }
+
+    private List<T> toGenes(Collection<Entry<T>> found) {
+        List<Entry<T>> sorted = CollectionUtils.createArrayList(found.size());
+        sorted.addAll(found);
+        Collections.sort(sorted, ORDER);
+        List<T> genes = CollectionUtils.createArrayList(sorted.size());
+        for (Entry<T> entry : sorted) {
+            genes.add(entry.gene);
+        }
+        return genes;
+    }
+
+    private void buildIndex() {
+        if (entries == null) {
+            entries = CollectionUtils.createHashMap(genes.size());
+            byName = CollectionUtils.createHashMap();
+            byStrand = CollectionUtils.createHashMap();
+            nextOrder = 0;
+            for (T gene : genes) {
+                index(new Entry<T>(gene, nextOrder++));
+            }
+        }
+    }
+
+    private void index(Entry<T> entry) {
+        entries.put(entry.gene, entry);
+        entry.names = CollectionUtils.createArrayList();
+        for (List<GeneName> names : entry.gene.getNameMap().values()) {
+            entry.names.addAll(names);
+        }
+        for (GeneName name : entry.names) {
+            Set<Entry<T>> named = byName.get(name);
+            if (named == null) {
+                named = CollectionUtils.createHashSet();
+                byName.put(name, named);
+            }
+            named.add(entry);
+        }
+        EntityLocation loc = entry.gene.getLocation();
+        if (loc != null) {
+            entry.strand = loc.getStrand();
+            entry.min = loc.getMin();
+            entry.max = loc.getMax();
+            for (Locatable part : getParts(entry.gene)) {
+                EntityLocation partLoc = part.getLocation();
+                if (partLoc != null) {
+                    entry.min = Math.min(entry.min, partLoc.getMin());
+                    entry.max = Math.max(entry.max, partLoc.getMax());
+                }
+            }
+            StrandIndex<T> index = byStrand.get(entry.strand);
+            if (index == null) {
+                index = new StrandIndex<T>();
+                byStrand.put(entry.strand, index);
+            }
+            index.add(entry);
+        }
+    }
+
+    private void unindex(Entry<T> entry) {
+        if (entry == null) {
+            return;
+        }
+        for (GeneName name : entry.names) {
+            Set<Entry<T>> named = byName.get(name);
+            if (named != null) {
+                named.remove(entry);
+            }
+        }
+        if (entry.strand != null) {
+            byStrand.get(entry.strand).remove(entry);
+            entry.strand = null;
+        }
+    }
+
+    /**
+     * @return transcripts and proteins whose locations are included in the
+     *         extent of the gene
+     */
+    private static List<Locatable> getParts(Object gene) {
+        List<Locatable> parts = CollectionUtils.createArrayList();
+        if (gene instanceof Gene) {
+            for (Protein protein : ((Gene) gene).getProteins()) {
+                parts.add(protein);
+                for (Transcript transcript : protein.getTranscripts()) {
+                    parts.add(transcript);
+                }
+            }
+        } else if (gene instanceof Rnagene) {
+            for (RnaTranscript transcript : ((Rnagene) gene).getTranscripts()) {
+                parts.add(transcript);
+            }
+        }
+        return parts;
+    }
+
+}
@@ -71,7 +71,7 @@ public class ProteinImpl implements Protein {
      */
     public Set<DatabaseReference> getDatabaseReferences() {
         if (this.databaseReferences == null) {
-            this.databaseReferences = CollectionUtils.createHashSet();
+            this.databaseReferences = new DatabaseReferenceSet();
         }
         return this.databaseReferences;
     }
@@ -101,7 +101,8 @@ public class ProteinImpl implements Protein {
     }
 
     public void setDatabaseReferences(Set<DatabaseReference> databaseReferences) {
-        this.databaseReferences = databaseReferences;
+        this.databaseReferences = databaseReferences == null || databaseReferences instanceof DatabaseReferenceSet
+            ? databaseReferences : new DatabaseReferenceSet(databaseReferences);
     }
 
     public void setLocation(EntityLocation location) {
@@ -133,7 +133,7 @@ public class TranscriptImpl implements Transcript {
      */
     public Set<DatabaseReference> getDatabaseReferences() {
         if (this.databaseReferences == null) {
-            databaseReferences = CollectionUtils.createHashSet();
+            databaseReferences = new DatabaseReferenceSet();
         }
         return this.databaseReferences;
     }
@@ -142,7 +142,8 @@ public class TranscriptImpl implements Transcript {
      * @param databaseReferences
      */
     public void setDatabaseReferences(Set<DatabaseReference> databaseReferences) {
-        this.databaseReferences = databaseReferences;
+        this.databaseReferences = databaseReferences == null || databaseReferences instanceof DatabaseReferenceSet
+            ? databaseReferences : new DatabaseReferenceSet(databaseReferences);
     }
 
     public void addDatabaseReference(DatabaseReference reference) {
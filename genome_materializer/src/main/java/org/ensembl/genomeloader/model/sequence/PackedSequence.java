@@ -0,0 +1,304 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.genomeloader.model.sequence;
+
+import java.util.Arrays;
+
+/**
+ * Compact storage for nucleotide sequence using 2 bits per base. Bases which
+ * cannot be packed (N and other IUPAC codes) are stored as runs in a separate
+ * exception list, so long runs of N cost a single entry. Case is held
+ * separately as a list of runs of lower case positions, so soft-masked or
+ * mixed-case sequence costs one entry per masked region rather than per base.
+ * Positions are 0-based as for {@link String}.
+ */
+public class PackedSequence {
+
+    private static final int BASES_PER_WORD = 32;
+    private static final char[] BASES = { 'A', 'C', 'G', 'T' };
+    private static final char[] COMPLEMENTS = new char[128];
+
+    static {
+        for (char c = 0; c < COMPLEMENTS.length; c++) {
+            COMPLEMENTS[c] = c;
+        }
+        String from = "ACGTRYKMBVDHacgtrykmbvdh";
+        String to = "TGCAYRMKVBHDtgcayrmkvbhd";
+        for (int i = 0; i < from.length(); i++) {
+            COMPLEMENTS[from.charAt(i)] = to.charAt(i);
+        }
+    }
+
+    private long[] words = new long[4];
+    private int length = 0;
+
+    // runs of bases which are not packed
+    private int[] excStarts = new int[4];
+    private int[] excLengths = new int[4];
+    private char[] excChars = new char[4];
+    private int excCount = 0;
+
+    // runs of lower case positions
+    private int[] lowerStarts = new int[4];
+    private int[] lowerLengths = new int[4];
+    private int lowerCount = 0;
+
+    public int length() {
+        return length;
+    }
+
+    public void append(CharSequence seq) {
+        ensureCapacity(length + seq.length());
+        for (int i = 0; i < seq.length(); i++) {
+            append(seq.charAt(i));
+        }
+    }
+
+    public void append(char[] chars, int start, int len) {
+        ensureCapacity(length + len);
+        for (int i = start; i < start + len; i++) {
+            append(chars[i]);
+        }
+    }
+
+    private void append(char c) {
+        if (Character.isLowerCase(c)) {
+            addLowerCase(length);
+        }
+        int code = encode(c);
+        if (code < 0) {
+            addException(length, c);
+        } else {
+            words[length / BASES_PER_WORD] |= ((long) code) << ((length % BASES_PER_WORD) * 2);
+        }
+        length++;
+    }
+
+    private int encode(char c) {
+        int code;
+        switch (c) {
+        case 'A':
+        case 'a':
+            code = 0;
+            break;
+        case 'C':
+        case 'c':
+            code = 1;
+            break;
+        case 'G':
+        case 'g':
+            code = 2;
+            break;
+        case 'T':
+        case 't':
+            code = 3;
+            break;
+        default:
+            return -1;
+        }
+        return code;
+    }
+
+    private void addLowerCase(int pos) {
+        int last = lowerCount - 1;
+        if (last >= 0 && lowerStarts[last] + lowerLengths[last] == pos) {
+            lowerLengths[last]++;
+        } else {
+            if (lowerCount == lowerStarts.length) {
+                int newLen = lowerCount * 2;
+                lowerStarts = Arrays.copyOf(lowerStarts, newLen);
+                lowerLengths = Arrays.copyOf(lowerLengths, newLen);
+            }
+            lowerStarts[lowerCount] = pos;
+            lowerLengths[lowerCount] = 1;
+            lowerCount++;
+        }
+    }
+
+    private void addException(int pos, char c) {
+        int last = excCount - 1;
+        if (last >= 0 && excChars[last] == c && excStarts[last] + excLengths[last] == pos) {
+            excLengths[last]++;
+        } else {
+            if (excCount == excStarts.length) {
+                int newLen = excCount * 2;
+                excStarts = Arrays.copyOf(excStarts, newLen);
+                excLengths = Arrays.copyOf(excLengths, newLen);
+                excChars = Arrays.copyOf(excChars, newLen);
+            }
+            excStarts[excCount] = pos;
+            excLengths[excCount] = 1;
+            excChars[excCount] = c;
+            excCount++;
+        }
+    }
+
+    private void ensureCapacity(int newLength) {
+        int nWords = (newLength + BASES_PER_WORD - 1) / BASES_PER_WORD;
+        if (nWords > words.length) {
+            words = Arrays.copyOf(words, Math.max(nWords, words.length * 2));
+        }
+    }
+
+    /**
+     * @return index of the first run ending after pos
+     */
+    private static int findRun(int[] starts, int[] lengths, int count, int pos) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] + lengths[mid] <= pos) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private void checkRange(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new StringIndexOutOfBoundsException(
+                    "Range " + start + "-" + end + " out of bounds for sequence of length " + length);
+        }
+    }
+
+    public char charAt(int pos) {
+        checkRange(pos, pos + 1);
+        int r = findRun(excStarts, excLengths, excCount, pos);
+        if (r < excCount && excStarts[r] <= pos) {
+            return excChars[r];
+        }
+        char c = BASES[(int) (words[pos / BASES_PER_WORD] >>> ((pos % BASES_PER_WORD) * 2)) & 3];
+        int l = findRun(lowerStarts, lowerLengths, lowerCount, pos);
+        return l < lowerCount && lowerStarts[l] <= pos ? Character.toLowerCase(c) : c;
+    }
+
+    /**
+     * Copy bases into a character array, in the manner of
+     * {@link String#getChars(int, int, char[], int)}
+     *
+     * @param start
+     *            first position (inclusive)
+     * @param end
+     *            last position (exclusive)
+     * @param dst
+     *            destination array
+     * @param dstBegin
+     *            offset into destination array
+     */
+    public void getChars(int start, int end, char[] dst, int dstBegin) {
+        checkRange(start, end);
+        int r = findRun(excStarts, excLengths, excCount, start);
+        int pos = start;
+        int d = dstBegin;
+        while (pos < end) {
+            if (r < excCount && excStarts[r] <= pos) {
+                int runEnd = Math.min(end, excStarts[r] + excLengths[r]);
+                Arrays.fill(dst, d, d + runEnd - pos, excChars[r]);
+                d += runEnd - pos;
+                pos = runEnd;
+                r++;
+            } else {
+                int packedEnd = r < excCount ? Math.min(end, excStarts[r]) : end;
+                while (pos < packedEnd) {
+                    dst[d++] = BASES[(int) (words[pos / BASES_PER_WORD] >>> ((pos % BASES_PER_WORD) * 2)) & 3];
+                    pos++;
+                }
+            }
+        }
+        // apply case to packed bases, exceptions already having their own
+        for (int l = findRun(lowerStarts, lowerLengths, lowerCount, start); l < lowerCount
+                && lowerStarts[l] < end; l++) {
+            int runEnd = Math.min(end, lowerStarts[l] + lowerLengths[l]);
+            for (int i = Math.max(start, lowerStarts[l]); i < runEnd; i++) {
+                int j = dstBegin + i - start;
+                dst[j] = Character.toLowerCase(dst[j]);
+            }
+        }
+    }
+
+    /**
+     * Copy the reverse complement of a range of bases into a character array.
+     * IUPAC ambiguity codes are complemented, and other characters are copied
+     * unchanged.
+     *
+     * @param start
+     *            first position (inclusive)
+     * @param end
+     *            last position (exclusive)
+     * @param dst
+     *            destination array
+     * @param dstBegin
+     *            offset into destination array
+     */
+    public void getReverseComplementChars(int start, int end, char[] dst, int dstBegin) {
+        getChars(start, end, dst, dstBegin);
+        int i = dstBegin;
+        int j = dstBegin + end - start - 1;
+        while (i <= j) {
+            char ci = complement(dst[i]);
+            dst[i++] = complement(dst[j]);
+            dst[j--] = ci;
+        }
+    }
+
+    public static char complement(char c) {
+        return c < COMPLEMENTS.length ? COMPLEMENTS[c] : c;
+    }
+
+    public String substring(int start, int end) {
+        char[] chars = new char[end - start];
+        getChars(start, end, chars, 0);
+        return new String(chars);
+    }
+
+    public String reverseComplement(int start, int end) {
+        char[] chars = new char[end - start];
+        getReverseComplementChars(start, end, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * @return number of runs of bases stored outside the packed array
+     */
+    public int getExceptionCount() {
+        return excCount;
+    }
+
+    /**
+     * @return number of runs of lower case bases
+     */
+    public int getLowerCaseRunCount() {
+        return lowerCount;
+    }
+
+    /**
+     * @return approximate number of bytes used to hold the sequence, excluding
+     *         object headers
+     */
+    public long getStoredBytes() {
+        return 8L * words.length + 10L * excStarts.length + 8L * lowerStarts.length;
+    }
+
+    @Override
+    public String toString() {
+        return substring(0, length);
+    }
+
+}
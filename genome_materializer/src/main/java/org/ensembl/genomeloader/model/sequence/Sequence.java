@@ -26,7 +26,10 @@ import org.apache.commons.lang.builder.ReflectionToStringBuilder;
 
 /**
  * Very simple bean to hold information and sequence contents so it can be
- * written
+ * written. Sequence is held in a {@link PackedSequence}, so callers needing
+ * part of the sequence should use {@link #getSequence(int, int)} or
+ * {@link #getChars(int, int, char[], int)} rather than {@link #getSequence()}
+ * which builds a string for the whole sequence.
  *
  * @author dstaines
  *
@@ -35,14 +38,14 @@ public class Sequence extends SequenceInformation {
 
     public Sequence(String seqStr) {
         super();
-        this.seqStr.append(seqStr);
+        this.seq.append(seqStr);
     }
 
     public Sequence(SequenceInformation seq) {
         super(seq);
     }
 
-    protected StringBuilder seqStr = new StringBuilder();
+    protected PackedSequence seq = new PackedSequence();
 
     /**
      * Data type name used by ComponentMetaData
@@ -58,25 +61,61 @@ public class Sequence extends SequenceInformation {
     }
 
     public void appendSequence(String sequence) {
-        seqStr.append(sequence);
+        seq.append(sequence);
+    }
+
+    public void appendSequence(char[] chars, int start, int length) {
+        seq.append(chars, start, length);
     }
 
     public String getSequence() {
-        return seqStr.toString();
+        return seq.toString();
     }
 
     public void setSequence(String sequence) {
-        seqStr = new StringBuilder(sequence);
+        seq = new PackedSequence();
+        seq.append(sequence);
     }
 
+    /**
+     * @param offset
+     *            1-based start
+     * @param length
+     *            number of bases, or -1 for the remainder of the sequence
+     * @return subsequence
+     */
     public String getSequence(int offset, int length) {
-        String sq = null;
         if (length == -1) {
-            sq = getSequence().substring(offset - 1);
+            return seq.substring(offset - 1, seq.length());
         } else {
-            sq = getSequence().substring(offset - 1, offset - 1 + length);
+            return seq.substring(offset - 1, offset - 1 + length);
         }
-        return sq;
+    }
+
+    /**
+     * @param offset
+     *            1-based start
+     * @param length
+     *            number of bases
+     * @return reverse complement of subsequence
+     */
+    public String getReverseComplement(int offset, int length) {
+        return seq.reverseComplement(offset - 1, offset - 1 + length);
+    }
+
+    /**
+     * Copy part of the sequence into a character array, in the manner of
+     * {@link String#getChars(int, int, char[], int)}
+     *
+     * @param start
+     *            0-based start (inclusive)
+     * @param end
+     *            0-based end (exclusive)
+     * @param dst
+     * @param dstBegin
+     */
+    public void getChars(int start, int end, char[] dst, int dstBegin) {
+        seq.getChars(start, end, dst, dstBegin);
     }
 
     public String toString() {
@@ -85,7 +124,7 @@ public class Sequence extends SequenceInformation {
 
     @Override
     public long getLength() {
-        return getSequence().length();
+        return seq.length();
     }
 
 }
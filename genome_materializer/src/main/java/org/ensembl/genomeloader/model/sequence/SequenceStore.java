@@ -0,0 +1,138 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.ensembl.genomeloader.model.sequence;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Sidecar file holding the bases of many sequences, so that sequences can be
+ * released from the heap once parsed and read back only when bases are
+ * needed. Bases are stored one byte per base, so any range of a sequence can
+ * be read without reading the rest. Sequences can be stored and read from
+ * several threads at once. The file is deleted when the store is closed.
+ */
+public class SequenceStore implements Closeable {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final File file;
+    private final FileChannel channel;
+    private long end = 0;
+
+    /**
+     * @param file
+     *            file to write bases to (overwritten if it exists)
+     * @throws IOException
+     */
+    @SuppressWarnings("resource")
+    public SequenceStore(File file) throws IOException {
+        this.file = file;
+        this.channel = new RandomAccessFile(file, "rw").getChannel();
+        this.channel.truncate(0);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Write the bases of a sequence to the store
+     *
+     * @param seq
+     *            sequence to store
+     * @return sequence with the same description, identifier and properties
+     *         which reads its bases from the store
+     * @throws IOException
+     */
+    public StoredSequence store(Sequence seq) throws IOException {
+        int length = (int) seq.getLength();
+        long offset;
+        synchronized (this) {
+            offset = end;
+            end += length;
+        }
+        char[] chars = new char[Math.min(CHUNK_SIZE, length)];
+        byte[] bytes = new byte[chars.length];
+        for (int start = 0; start < length; start += chars.length) {
+            int n = Math.min(chars.length, length - start);
+            seq.getChars(start, start + n, chars, 0);
+            for (int i = 0; i < n; i++) {
+                bytes[i] = (byte) chars[i];
+            }
+            ByteBuffer buf = ByteBuffer.wrap(bytes, 0, n);
+            long pos = offset + start;
+            while (buf.hasRemaining()) {
+                pos += channel.write(buf, pos);
+            }
+        }
+        return new StoredSequence(seq, this, offset, length);
+    }
+
+    /**
+     * Read bases from the store into a character array
+     *
+     * @param offset
+     *            position in the store of the first base
+     * @param dst
+     *            destination array
+     * @param dstBegin
+     *            offset into destination array
+     * @param length
+     *            number of bases to read
+     * @throws IOException
+     */
+    void read(long offset, char[] dst, int dstBegin, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(Math.min(CHUNK_SIZE, length));
+        int d = dstBegin;
+        long pos = offset;
+        while (d < dstBegin + length) {
+            buf.clear();
+            buf.limit(Math.min(buf.capacity(), dstBegin + length - d));
+            while (buf.hasRemaining()) {
+                int n = channel.read(buf, pos + buf.position());
+                if (n < 0) {
+                    throw new EOFException("Unexpected end of sequence store " + file.getPath());
+                }
+            }
+            buf.flip();
+            while (buf.hasRemaining()) {
+                dst[d++] = (char) buf.get();
+            }
+            pos += buf.limit();
+        }
+    }
+
+    /**
+     * Close and delete the store. Sequences read from the store cannot be
+     * used afterwards.
+     */
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+}
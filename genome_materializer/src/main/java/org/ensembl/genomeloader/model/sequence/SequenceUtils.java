@@ -195,23 +195,29 @@ public class SequenceUtils {
 							"Cannot extract a subsequence with length less than zero for location "
 									+ location);
 				}
-				subseq.append(sequence.getSequence(subLoc.getMin(), len));
 			}
-			SymbolList symL = DNATools.createDNA(subseq.toString().trim());
-			// 1.3 reverse complement if needed
+			// 1.3 reverse complement if needed, working back from the last
+			// sublocation so only the bases needed are ever copied
 			if (RichLocation.Strand.NEGATIVE_STRAND == location.getStrand()) {
-				// reverse complement it
-				symL = DNATools.reverseComplement(symL);
+				for (int i = locs.size() - 1; i >= 0; i--) {
+					RichLocation subLoc = locs.get(i);
+					subseq.append(sequence.getReverseComplement(
+							subLoc.getMin(),
+							subLoc.getMax() - subLoc.getMin() + 1));
+				}
+			} else {
+				for (RichLocation subLoc : locs) {
+					subseq.append(sequence.getSequence(subLoc.getMin(),
+							subLoc.getMax() - subLoc.getMin() + 1));
+				}
 			}
+			// check alphabet and normalise case
+			SymbolList symL = DNATools.createDNA(subseq.toString().trim());
 			return symL.seqString();
 		} catch (IllegalSymbolException e) {
 			String msg = "Could not extract sequence for location " + location;
 			getLog().error(msg, e);
 			throw new SequenceTranslationException(msg, e);
-		} catch (IllegalAlphabetException e) {
-			String msg = "Could not extract sequence for location " + location;
-			getLog().error(msg, e);
-			throw new SequenceTranslationException(msg, e);
 		} catch (StringIndexOutOfBoundsException e) {
 			String msg = "Could not extract sequence for location " + location;
 			getLog().error(msg, e);
@@ -271,7 +277,7 @@ public class SequenceUtils {
 
 	private static Map<String, String> aminoAcids = null;
 
-	private static Map<String, String> getAminoAcids() {
+	private static synchronized Map<String, String> getAminoAcids() {
 		if (aminoAcids == null) {
 			try {
 				aminoAcids = CollectionUtils.createHashMap(23);
@@ -0,0 +1,111 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.ensembl.genomeloader.model.sequence;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * {@link Sequence} whose bases are held in a {@link SequenceStore} rather than
+ * on the heap. Only the position of the bases in the store is kept, and bases
+ * are read from the store each time they are requested, so callers should
+ * read the ranges they need with {@link #getChars(int, int, char[], int)} or
+ * {@link #getSequence(int, int)} rather than the whole sequence. Stored
+ * sequences cannot be modified.
+ */
+public class StoredSequence extends Sequence {
+
+    private final SequenceStore store;
+    private final long offset;
+    private final int length;
+
+    StoredSequence(SequenceInformation seq, SequenceStore store, long offset, int length) {
+        super(seq);
+        // bases are never held in memory
+        this.seq = null;
+        this.store = store;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public void appendSequence(String sequence) {
+        throw new UnsupportedOperationException("Stored sequence " + getIdentifier() + " cannot be modified");
+    }
+
+    @Override
+    public void appendSequence(char[] chars, int start, int length) {
+        throw new UnsupportedOperationException("Stored sequence " + getIdentifier() + " cannot be modified");
+    }
+
+    @Override
+    public void setSequence(String sequence) {
+        throw new UnsupportedOperationException("Stored sequence " + getIdentifier() + " cannot be modified");
+    }
+
+    @Override
+    public String getSequence() {
+        return read(0, length);
+    }
+
+    @Override
+    public String getSequence(int offset, int length) {
+        if (length == -1) {
+            return read(offset - 1, this.length);
+        } else {
+            return read(offset - 1, offset - 1 + length);
+        }
+    }
+
+    @Override
+    public String getReverseComplement(int offset, int length) {
+        char[] chars = new char[length];
+        getChars(offset - 1, offset - 1 + length, chars, 0);
+        for (int i = 0, j = length - 1; i <= j; i++, j--) {
+            char ci = PackedSequence.complement(chars[i]);
+            chars[i] = PackedSequence.complement(chars[j]);
+            chars[j] = ci;
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public void getChars(int start, int end, char[] dst, int dstBegin) {
+        if (start < 0 || end > length || start > end) {
+            throw new StringIndexOutOfBoundsException(
+                    "Range " + start + "-" + end + " out of bounds for sequence of length " + length);
+        }
+        try {
+            store.read(offset + start, dst, dstBegin, end - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read sequence " + getIdentifier() + " from store", e);
+        }
+    }
+
+    private String read(int start, int end) {
+        char[] chars = new char[end - start];
+        getChars(start, end, chars, 0);
+        return new String(chars);
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.ensembl.genomeloader.util.biojava;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.biojavax.bio.seq.RichLocation;
+import org.biojavax.bio.seq.SimplePosition;
+import org.biojavax.bio.seq.SimpleRichLocation;
+import org.ensembl.genomeloader.util.collections.CollectionUtils;
+
+/**
+ * Compact, immutable representation of an INSDC feature location as a list of
+ * segments held in primitive arrays. Locations are parsed in a single pass by
+ * a recursive-descent parser which handles <code>join</code>,
+ * <code>order</code> and <code>complement</code> (nested to any depth), fuzzy
+ * <code>&lt;</code>/<code>&gt;</code> ends, <code>^</code> sites and remote
+ * accessions (e.g. <code>AB000001.1:1..100</code>). {@link #toRichLocation()}
+ * builds the equivalent BioJava location where one is needed.
+ */
+public final class EmblLocation {
+
+	private static final byte FUZZY_START = 1;
+	private static final byte FUZZY_END = 2;
+	private static final byte COMPLEMENT = 4;
+	private static final byte INTERBASE = 8;
+
+	private static final EmblLocation EMPTY = new EmblLocation(new int[0],
+			new int[0], new byte[0], null, 0);
+
+	private final int[] starts;
+	private final int[] ends;
+	private final byte[] flags;
+	private final String[] accessions;
+	private final int count;
+
+	private EmblLocation(int[] starts, int[] ends, byte[] flags,
+			String[] accessions, int count) {
+		this.starts = starts;
+		this.ends = ends;
+		this.flags = flags;
+		this.accessions = accessions;
+		this.count = count;
+	}
+
+	/**
+	 * Parse a location in INSDC format
+	 * 
+	 * @param location
+	 *            location string
+	 * @return parsed location
+	 * @throws LocationException
+	 *             if the location cannot be parsed
+	 */
+	public static EmblLocation parse(String location) {
+		return new Parser(location).parse();
+	}
+
+	/**
+	 * @return number of segments in the location
+	 */
+	public int getSegmentCount() {
+		return count;
+	}
+
+	public int getStart(int i) {
+		checkIndex(i);
+		return starts[i];
+	}
+
+	public int getEnd(int i) {
+		checkIndex(i);
+		return ends[i];
+	}
+
+	public boolean isFuzzyStart(int i) {
+		return hasFlag(i, FUZZY_START);
+	}
+
+	public boolean isFuzzyEnd(int i) {
+		return hasFlag(i, FUZZY_END);
+	}
+
+	public boolean isComplement(int i) {
+		return hasFlag(i, COMPLEMENT);
+	}
+
+	/**
+	 * @return true if the segment is a site between two bases (e.g.
+	 *         <code>123^124</code>)
+	 */
+	public boolean isInterbase(int i) {
+		return hasFlag(i, INTERBASE);
+	}
+
+	/**
+	 * @return accession of the entry containing the segment, or null if the
+	 *         segment is on the entry containing the feature
+	 */
+	public String getAccession(int i) {
+		checkIndex(i);
+		return accessions == null ? null : accessions[i];
+	}
+
+	/**
+	 * @return lowest position in the location, or 0 if empty
+	 */
+	public int getMin() {
+		int min = count == 0 ? 0 : Integer.MAX_VALUE;
+		for (int i = 0; i < count; i++) {
+			min = Math.min(min, Math.min(starts[i], ends[i]));
+		}
+		return min;
+	}
+
+	/**
+	 * @return highest position in the location, or 0 if empty
+	 */
+	public int getMax() {
+		int max = 0;
+		for (int i = 0; i < count; i++) {
+			max = Math.max(max, Math.max(starts[i], ends[i]));
+		}
+		return max;
+	}
+
+	private boolean hasFlag(int i, byte flag) {
+		checkIndex(i);
+		return (flags[i] & flag) != 0;
+	}
+
+	private void checkIndex(int i) {
+		if (i < 0 || i >= count) {
+			throw new IndexOutOfBoundsException("Segment " + i
+					+ " out of bounds for location with " + count
+					+ " segments");
+		}
+	}
+
+	/**
+	 * Build the equivalent BioJava location. Segments are ranked in the order
+	 * they appear in the string. Remote accessions are not carried over, in
+	 * the same way as they are stripped from feature locations before
+	 * parsing.
+	 * 
+	 * @return location, or {@link RichLocation#EMPTY_LOCATION} if there are
+	 *         no segments
+	 */
+	public RichLocation toRichLocation() {
+		List<RichLocation> locs = CollectionUtils.createArrayList(count);
+		for (int i = 0; i < count; i++) {
+			RichLocation.Strand strand = (flags[i] & COMPLEMENT) != 0 ? RichLocation.Strand.NEGATIVE_STRAND
+					: RichLocation.Strand.POSITIVE_STRAND;
+			locs.add(new SimpleRichLocation(new SimplePosition(
+					(flags[i] & FUZZY_START) != 0, false, starts[i]),
+					new SimplePosition(false, (flags[i] & FUZZY_END) != 0,
+							ends[i]), i + 1, strand));
+		}
+		return LocationUtils.construct(locs);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		if (count > 1) {
+			s.append("join(");
+		}
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				s.append(',');
+			}
+			if (isComplement(i)) {
+				s.append("complement(");
+			}
+			if (getAccession(i) != null) {
+				s.append(getAccession(i)).append(':');
+			}
+			if (isFuzzyStart(i)) {
+				s.append('<');
+			}
+			s.append(starts[i]);
+			if (isInterbase(i)) {
+				s.append('^').append(ends[i]);
+			} else if (ends[i] != starts[i] || isFuzzyEnd(i)) {
+				s.append("..");
+				if (isFuzzyEnd(i)) {
+					s.append('>');
+				}
+				s.append(ends[i]);
+			}
+			if (isComplement(i)) {
+				s.append(')');
+			}
+		}
+		if (count > 1) {
+			s.append(')');
+		}
+		return s.toString();
+	}
+
+	/**
+	 * Single pass recursive-descent parser for the grammar:
+	 * 
+	 * <pre>
+	 * list       := location ("," location)*
+	 * location   := operator | segment
+	 * operator   := ("join" | "order" | "complement") "(" list ")"
+	 * segment    := [accession ":"] ["&lt;" | "&gt;"] int [separator ["&lt;" | "&gt;"] int]
+	 * separator  := ".." | "." | "^" | "^."
+	 * </pre>
+	 * 
+	 * A list outside <code>join</code> is treated as a join, and
+	 * <code>complement</code> of a list applies to every member, as in the
+	 * abbreviated forms used by the Ensembl tables. Empty members of a list
+	 * are skipped, and unbalanced brackets are tolerated at the end of the
+	 * string where they are unambiguous.
+	 */
+	private static final class Parser {
+
+		private final String str;
+		private int pos = 0;
+		private int[] starts = new int[4];
+		private int[] ends = new int[4];
+		private byte[] flags = new byte[4];
+		private String[] accessions = null;
+		private int count = 0;
+
+		Parser(String str) {
+			this.str = str;
+		}
+
+		EmblLocation parse() {
+			if (str.isEmpty()) {
+				return EMPTY;
+			}
+			parseList(false);
+			// tolerate stray closing brackets at the end
+			while (peek() == ')') {
+				pos++;
+			}
+			if (pos != str.length()) {
+				throw error("unexpected '" + str.charAt(pos) + "'");
+			}
+			return new EmblLocation(starts, ends, flags, accessions, count);
+		}
+
+		private void parseLocation(boolean complement) {
+			char c = peek();
+			if (c == 'j' && lookingAt("join(") || c == 'o'
+					&& lookingAt("order(")) {
+				pos = str.indexOf('(', pos) + 1;
+				parseList(complement);
+				expect(')');
+			} else if (c == 'c' && lookingAt("complement(")) {
+				pos += "complement(".length();
+				parseList(!complement);
+				// tolerate an unclosed complement at the end
+				if (pos < str.length()) {
+					expect(')');
+				}
+			} else {
+				parseSegment(complement);
+			}
+		}
+
+		private void parseList(boolean complement) {
+			while (true) {
+				char c = peek();
+				if (c != ',' && c != ')') {
+					parseLocation(complement);
+				}
+				if (peek() == ',') {
+					pos++;
+				} else {
+					break;
+				}
+			}
+		}
+
+		private void parseSegment(boolean complement) {
+			String accession = null;
+			if (Character.isLetter(peek())) {
+				int colon = str.indexOf(':', pos);
+				if (colon < 0) {
+					throw error("unexpected '" + peek() + "'");
+				}
+				accession = str.substring(pos, colon);
+				pos = colon + 1;
+			}
+			char startSign = readSign();
+			int start = readInt();
+			int end = start;
+			char endSign = 0;
+			boolean interbase = false;
+			char c = peek();
+			if (c == '.' || c == '^') {
+				interbase = c == '^';
+				pos++;
+				if (peek() == '.') {
+					pos++;
+				}
+				endSign = readSign();
+				end = readInt();
+			}
+			byte f = complement ? COMPLEMENT : 0;
+			// a sign before a single position can apply to either end
+			if (startSign != 0) {
+				f |= startSign == '>' && start == end ? FUZZY_END : FUZZY_START;
+			}
+			if (endSign != 0) {
+				f |= endSign == '<' && start == end ? FUZZY_START : FUZZY_END;
+			}
+			if (interbase) {
+				f |= INTERBASE;
+			}
+			add(start, end, f, accession);
+		}
+
+		private void add(int start, int end, byte f, String accession) {
+			if (count == starts.length) {
+				int newLen = count * 2;
+				starts = Arrays.copyOf(starts, newLen);
+				ends = Arrays.copyOf(ends, newLen);
+				flags = Arrays.copyOf(flags, newLen);
+				if (accessions != null) {
+					accessions = Arrays.copyOf(accessions, newLen);
+				}
+			}
+			if (accession != null && accessions == null) {
+				accessions = new String[starts.length];
+			}
+			starts[count] = start;
+			ends[count] = end;
+			flags[count] = f;
+			if (accessions != null) {
+				accessions[count] = accession;
+			}
+			count++;
+		}
+
+		private char readSign() {
+			char c = peek();
+			if (c == '<' || c == '>') {
+				pos++;
+				return c;
+			}
+			return 0;
+		}
+
+		private int readInt() {
+			int begin = pos;
+			long n = 0;
+			while (pos < str.length() && str.charAt(pos) >= '0'
+					&& str.charAt(pos) <= '9') {
+				n = n * 10 + (str.charAt(pos++) - '0');
+				if (n > Integer.MAX_VALUE) {
+					throw error("position too large");
+				}
+			}
+			if (pos == begin) {
+				throw error(pos < str.length() ? "unexpected '"
+						+ str.charAt(pos) + "'" : "unexpected end");
+			}
+			return (int) n;
+		}
+
+		private char peek() {
+			return pos < str.length() ? str.charAt(pos) : 0;
+		}
+
+		private boolean lookingAt(String token) {
+			return str.startsWith(token, pos);
+		}
+
+		private void expect(char c) {
+			if (peek() != c) {
+				throw error("expected '" + c + "'");
+			}
+			pos++;
+		}
+
+		private LocationException error(String msg) {
+			return new LocationException("Could not parse location " + str
+					+ ": " + msg + " at position " + pos);
+		}
+
+	}
+
+}
@@ -29,8 +29,6 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.apache.commons.lang.StringUtils;
 import org.biojava.bio.symbol.CircularLocation;
@@ -473,81 +471,16 @@ public class LocationUtils {
 		return loc;
 	}
 
-	private static Pattern EMBL_JOIN = Pattern
-			.compile("^(join|order)\\((.*?)\\)$");
-	private static Pattern EMBL_COMP_JOIN = Pattern
-			.compile("^complement\\((join|order)\\((.*?)\\)\\)$");
-	private static Pattern EMBL_LOC = Pattern
-			.compile("^(complement\\()?([<>]?)([0-9]+)(([.^][.]?)([<>]?)([0-9]+))?(\\))?$");
-
+	/**
+	 * Parse a location in INSDC format into a BioJava location
+	 * 
+	 * @param location
+	 *            location string
+	 * @return location
+	 * @see EmblLocation
+	 */
 	public static RichLocation parseEmblLocation(String location) {
-		List<RichLocation> locs = CollectionUtils.createArrayList();
-		Matcher m1 = EMBL_JOIN.matcher(location);
-		boolean outerComp = false;
-		if (!m1.matches()) {
-			m1 = EMBL_COMP_JOIN.matcher(location);
-			if (m1.matches()) {
-				outerComp = true;
-				location = m1.group(2);
-			}
-		} else {
-			location = m1.group(2);
-		}
-		int rank = 0;
-		for (String locStr : location.split(",")) {
-			if (!StringUtils.isEmpty(locStr)) {
-				m1 = EMBL_LOC.matcher(locStr);
-				int start = 0;
-				int end = 0;
-				boolean fuzzystart = false;
-				boolean fuzzyend = false;
-				boolean complement = false;
-				String operator = null;
-				if (m1.matches() && m1.groupCount() == 8) {
-					if (!StringUtils.isEmpty(m1.group(1))) {
-						complement = true;
-					}
-					start = Integer.parseInt(m1.group(3));
-					operator = m1.group(6);
-					if (StringUtils.isEmpty(m1.group(7)))
-						end = start;
-					else
-						end = Integer.parseInt(m1.group(7));
-					if (!StringUtils.isEmpty(m1.group(2))) {
-						if (m1.group(2).equals(">") && start == end) {
-							fuzzyend = true;
-						} else {
-							fuzzystart = true;
-						}
-					}
-					if (!StringUtils.isEmpty(m1.group(6))) {
-						if (m1.group(6).equals("<") && start == end) {
-							fuzzystart = true;
-						} else {
-							fuzzyend = true;
-						}
-					}
-				} else {
-					throw new LocationException("Could not parse location "
-							+ locStr + " from " + location);
-				}
-				RichLocation.Strand strand = complement ^ outerComp ? RichLocation.Strand.NEGATIVE_STRAND
-						: RichLocation.Strand.POSITIVE_STRAND;
-				// RichLocation.Strand strand = complement ?
-				// RichLocation.Strand.NEGATIVE_STRAND
-				// : RichLocation.Strand.POSITIVE_STRAND;
-				SimplePosition startPos = new SimplePosition(fuzzystart, false,
-						start);
-				SimplePosition endPos = new SimplePosition(false, fuzzyend, end);
-				SimpleRichLocation simpleRichLocation = new SimpleRichLocation(
-						startPos, endPos, ++rank, strand);
-				if (INTERBASE_SYM.equals(operator)) {
-					simpleRichLocation.getNoteSet().add(INTERBASE);
-				}
-				locs.add(simpleRichLocation);
-			}
-		}
-		return construct(locs);
+		return EmblLocation.parse(location).toRichLocation();
 	}
 
 	public static RichLocation buildSimpleLocation(int start,
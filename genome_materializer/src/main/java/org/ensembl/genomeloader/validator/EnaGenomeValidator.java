@@ -74,7 +74,7 @@ public class EnaGenomeValidator extends DelegatingGenomeValidator {
     public void validateGenome(Genome genome) throws GenomeValidationException {
         for (final GenomeValidator validator : validators) {
             try {
-                validator.validateGenome(genome);
+                runValidator(validator, genome);
             } catch (final ComponentSizeValidationException e) {
                 getLog().warn("Replacing component lengths as problem found: " + e.getMessage());
                 for (final GenomicComponent c : genome.getGenomicComponents()) {
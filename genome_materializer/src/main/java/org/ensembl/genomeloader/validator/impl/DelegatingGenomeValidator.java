@@ -21,6 +21,7 @@ import java.util.Collection;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.ensembl.genomeloader.materializer.MaterializerMetrics;
 import org.ensembl.genomeloader.model.Genome;
 import org.ensembl.genomeloader.validator.GenomeValidationException;
 import org.ensembl.genomeloader.validator.GenomeValidator;
@@ -39,6 +40,7 @@ public class DelegatingGenomeValidator implements GenomeValidator {
 	}
 	
 	protected final Collection<GenomeValidator> validators;
+	private MaterializerMetrics metrics;
 
 	public DelegatingGenomeValidator(Collection<GenomeValidator> validators) {
 		this.validators = validators;
@@ -48,9 +50,36 @@ public class DelegatingGenomeValidator implements GenomeValidator {
 		this(Arrays.asList(validators));
 	}
 
+	public MaterializerMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @param metrics
+	 *            metrics to add a stage to for each validator run (may be
+	 *            null)
+	 */
+	public void setMetrics(MaterializerMetrics metrics) {
+		this.metrics = metrics;
+	}
+
 	public void validateGenome(Genome genome) throws GenomeValidationException {
 		for(GenomeValidator validator: validators) {
+			runValidator(validator, genome);
+		}
+	}
+
+	protected void runValidator(GenomeValidator validator, Genome genome) throws GenomeValidationException {
+		if (metrics == null) {
 			validator.validateGenome(genome);
+		} else {
+			MaterializerMetrics.Timer timer = metrics.start(MaterializerMetrics.VALIDATOR,
+					validator.getClass().getSimpleName());
+			try {
+				validator.validateGenome(genome);
+			} finally {
+				timer.stop();
+			}
 		}
 	}
 
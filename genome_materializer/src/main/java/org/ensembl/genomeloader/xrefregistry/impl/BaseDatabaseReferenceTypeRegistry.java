@@ -96,7 +96,7 @@ public abstract class BaseDatabaseReferenceTypeRegistry implements
 	 * Initalize on demand id lookup map. Uses the values from
 	 * {@link #getAllTypes()} and loops through populating idLookup accordingly.
 	 */
-	protected Map<Integer, DatabaseReferenceType> getIdLookupMap() {
+	protected synchronized Map<Integer, DatabaseReferenceType> getIdLookupMap() {
 		if (idLookup == null) {
 			Collection<DatabaseReferenceType> refs = getAllTypes();
 			idLookup = createHashMap(refs.size() * 2);
@@ -114,7 +114,7 @@ public abstract class BaseDatabaseReferenceTypeRegistry implements
 	 * {@link #getAllTypes()} and loops through populating nameLookup
 	 * accordingly using all names, lowercased.
 	 */
-	protected Map<String, DatabaseReferenceType> getNameLookupMap() {
+	protected synchronized Map<String, DatabaseReferenceType> getNameLookupMap() {
 		if (nameLookup == null) {
 			Collection<DatabaseReferenceType> refs = getAllTypes();
 			nameLookup = createHashMap(refs.size() * 2);
@@ -100,7 +100,7 @@ public class XmlDatabaseReferenceTypeRegistry extends
 	 * @see org.ensembl.genomeloader.genomebuilder.impl.BaseDatabaseReferenceTypeRegistry#getTypes()
 	 */
 	@Override
-	protected MultiListValueMap<String, DatabaseReferenceType> getTypes() {
+	protected synchronized MultiListValueMap<String, DatabaseReferenceType> getTypes() {
 		if (typeMap == null) {
 			typeMap = CollectionUtils.createMultiListValueMap();
 			for (DatabaseReferenceType type : ((DatabaseReferenceTypes) getXstream()
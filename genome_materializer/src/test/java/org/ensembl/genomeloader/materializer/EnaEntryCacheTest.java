@@ -0,0 +1,115 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.genomeloader.materializer;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EnaEntryCacheTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("enacache").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private static void write(File f, int length) throws IOException {
+        FileWriter w = new FileWriter(f);
+        try {
+            for (int i = 0; i < length; i++) {
+                w.write('A');
+            }
+        } finally {
+            w.close();
+        }
+    }
+
+    @Test
+    public void testHitMiss() throws Exception {
+        EnaEntryCache cache = new EnaEntryCache(dir, 1000);
+        File f = cache.getEntry("U00096.3.xml", file -> write(file, 10));
+        assertTrue(f.exists());
+        assertEquals(10, f.length());
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        File f2 = cache.getEntry("U00096.3.xml", file -> {
+            throw new IllegalStateException("Entry should be cached");
+        });
+        assertEquals(f, f2);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        // a second cache on the same directory sees the entry
+        EnaEntryCache cache2 = new EnaEntryCache(dir, 1000);
+        cache2.getEntry("U00096.3.xml", file -> {
+            throw new IllegalStateException("Entry should be cached");
+        });
+        assertEquals(1, cache2.getHits());
+        assertEquals(0, cache2.getMisses());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        EnaEntryCache cache = new EnaEntryCache(dir, 250);
+        File a = cache.getEntry("A.1.xml", file -> write(file, 100));
+        File b = cache.getEntry("B.1.xml", file -> write(file, 100));
+        // make a the most recently used
+        a.setLastModified(System.currentTimeMillis() - 10000);
+        b.setLastModified(System.currentTimeMillis() - 20000);
+        cache.getEntry("A.1.xml", file -> write(file, 100));
+        File c = cache.getEntry("C.1.xml", file -> write(file, 100));
+        assertTrue(a.exists());
+        assertFalse(b.exists());
+        assertTrue(c.exists());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void testLockFilesRemoved() throws Exception {
+        EnaEntryCache cache = new EnaEntryCache(dir, 1000);
+        cache.getEntry("A.1.xml", file -> write(file, 10));
+        try {
+            cache.getEntry("B.1.xml", file -> {
+                throw new IOException("Could not retrieve B");
+            });
+        } catch (IOException e) {
+            // expected
+        }
+        assertFalse(new File(dir, "A.1.xml.lock").exists());
+        assertFalse(new File(dir, "B.1.xml.lock").exists());
+        assertFalse(new File(dir, "B.1.xml").exists());
+        // entries can still be populated once their lock file is gone
+        assertEquals(20, cache.getEntry("B.1.xml", file -> write(file, 20)).length());
+    }
+
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.ensembl.genomeloader.materializer;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.ensembl.genomeloader.materializer.executor.SimpleExecutor;
+import org.ensembl.genomeloader.metadata.GenomeMetaData;
+import org.ensembl.genomeloader.metadata.GenomicComponentMetaData;
+import org.ensembl.genomeloader.util.collections.CollectionUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class EnaXmlRetrieverTest {
+
+    /**
+     * Retriever writing the body of each response to the entry file rather
+     * than converting from EMBL format, reporting a fixed entry version
+     */
+    private static class TestRetriever extends EnaXmlRetriever {
+
+        private volatile String servedVersion = "1";
+
+        public TestRetriever(String enaUrl, File workingDir) {
+            super(new SimpleExecutor(), enaUrl, workingDir);
+            setRetryDelays(10, 40);
+        }
+
+        public TestRetriever(String enaUrl, File workingDir, EnaEntryCache cache) {
+            super(new SimpleExecutor(), enaUrl, workingDir, cache);
+            setRetryDelays(10, 40);
+        }
+
+        @Override
+        protected String writeStandardFile(String accession, File f) {
+            download(getUrl(accession), is -> {
+                try (OutputStream os = new FileOutputStream(f)) {
+                    IOUtils.copy(is, os);
+                }
+            });
+            return servedVersion;
+        }
+
+    }
+
+    private HttpServer server;
+    private File dir;
+    private String enaUrl;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    // number of requests to fail before succeeding
+    private volatile int failures = 0;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("enaxml").toFile();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/entry/", exchange -> {
+            int n = active.incrementAndGet();
+            maxActive.accumulateAndGet(n, Math::max);
+            try {
+                String acc = exchange.getRequestURI().getPath().replaceAll(".*/", "");
+                byte[] body = ("entry " + acc).getBytes(StandardCharsets.UTF_8);
+                Thread.sleep(50);
+                if (requests.incrementAndGet() <= failures) {
+                    exchange.sendResponseHeaders(503, -1);
+                } else {
+                    exchange.sendResponseHeaders(200, body.length);
+                    exchange.getResponseBody().write(body);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                active.decrementAndGet();
+                exchange.close();
+            }
+        });
+        server.start();
+        enaUrl = "http://localhost:" + server.getAddress().getPort() + "/entry/$ac$";
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private static String read(InputStream is) throws IOException {
+        try {
+            return IOUtils.toString(is);
+        } finally {
+            is.close();
+        }
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        failures = 2;
+        try (EnaXmlRetriever retriever = new TestRetriever(enaUrl, dir)) {
+            assertEquals("entry AB000001", read(retriever.openEntry("AB000001")));
+            assertEquals(3, requests.get());
+            // entry is only retrieved once
+            assertEquals("entry AB000001", read(retriever.openEntry("AB000001")));
+            assertEquals(3, requests.get());
+        }
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        failures = 10;
+        try (EnaXmlRetriever retriever = new TestRetriever(enaUrl, dir)) {
+            try {
+                retriever.openEntry("AB000001");
+                fail("Exception not thrown");
+            } catch (EnaParsingException e) {
+                assertEquals(3, requests.get());
+            }
+            // failed retrieval can be tried again
+            failures = 0;
+            assertEquals("entry AB000001", read(retriever.openEntry("AB000001")));
+        }
+    }
+
+    @Test
+    public void testRetryDelay() {
+        EnaXmlRetriever retriever = new EnaXmlRetriever(enaUrl);
+        retriever.setRetryDelays(100, 1000);
+        for (int tries = 1; tries < 10; tries++) {
+            long max = Math.min(1000, 100 << (tries - 1));
+            long delay = retriever.getRetryDelay(tries);
+            assertTrue(delay >= max / 2 && delay <= max);
+        }
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        GenomeMetaData gmd = new GenomeMetaData("1", "test", 0);
+        List<GenomicComponentMetaData> mds = CollectionUtils.createArrayList();
+        for (int i = 1; i <= 8; i++) {
+            GenomicComponentMetaData md = new GenomicComponentMetaData("AB00000" + i, gmd);
+            md.setVersion("1");
+            mds.add(md);
+        }
+        try (EnaXmlRetriever retriever = new TestRetriever(enaUrl, dir)) {
+            retriever.setMaxConnections(4);
+            List<CompletableFuture<Void>> futures = retriever.prefetchEntries(mds);
+            // entries already being retrieved are not retrieved again
+            retriever.prefetchEntries(mds);
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).join();
+            assertEquals(8, requests.get());
+            assertTrue("Entries were not retrieved concurrently", maxActive.get() > 1);
+            assertTrue("Too many entries retrieved at once", maxActive.get() <= 4);
+            for (GenomicComponentMetaData md : mds) {
+                assertEquals("entry " + md.getAccession(), read(retriever.openEntry(md.getAccession())));
+            }
+            assertEquals(8, requests.get());
+        }
+    }
+
+    @Test
+    public void testEvictedEntryRetrievedAgain() throws Exception {
+        EnaEntryCache cache = new EnaEntryCache(new File(dir, "cache"), 1000);
+        try (EnaXmlRetriever retriever = new TestRetriever(enaUrl, dir, cache)) {
+            File f = retriever.getFileForEntry("AB000001", "1");
+            assertEquals("entry AB000001", read(retriever.openEntry("AB000001", "1")));
+            assertEquals(1, requests.get());
+            // simulate eviction of the remembered file by another retrieval
+            assertTrue(f.delete());
+            assertEquals("entry AB000001", read(retriever.openEntry("AB000001", "1")));
+            assertEquals(2, requests.get());
+            assertTrue(f.exists());
+        }
+    }
+
+    @Test
+    public void testVersionMismatchNotCached() throws Exception {
+        File cacheDir = new File(dir, "cache");
+        EnaEntryCache cache = new EnaEntryCache(cacheDir, 100000);
+        try (TestRetriever retriever = new TestRetriever(enaUrl, dir, cache)) {
+            retriever.servedVersion = "2";
+            assertEquals("entry AB000001", read(retriever.openEntry("AB000001", "1")));
+            assertFalse(new File(cacheDir, "AB000001.1.xml").exists());
+            assertFalse(new File(cacheDir, "AB000001.2.xml").exists());
+            // a matching version is cached
+            retriever.servedVersion = "1";
+            assertEquals("entry AB000002", read(retriever.openEntry("AB000002", "1")));
+            assertTrue(new File(cacheDir, "AB000002.1.xml").exists());
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.ensembl.genomeloader.materializer;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import org.ensembl.genomeloader.model.Gene;
+import org.ensembl.genomeloader.model.Genome;
+import org.ensembl.genomeloader.model.impl.DatabaseReferenceImpl;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class MaterializerMetricsTest extends BaseGenomeTest {
+
+    @Test
+    public void testStages() throws Exception {
+        MaterializerMetrics metrics = new MaterializerMetrics();
+        Gene gene = buildCdsGene("1..99", "gene");
+        gene.addDatabaseReference(new DatabaseReferenceImpl(null, "x"));
+        Genome genome = getEmptyGenome(1000, gene, buildCdsGene("101..199", "gene2"));
+        MaterializerMetrics.Timer timer = metrics.start(MaterializerMetrics.COMPONENT, "A");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.append(i);
+        }
+        timer.getStage().setCounts(genome.getGenomicComponents());
+        timer.stop();
+        timer = metrics.start(MaterializerMetrics.DOWNLOAD, "http://example.org/A");
+        timer.getStage().setBytes(100L);
+        timer.stop();
+        metrics.start(MaterializerMetrics.DOWNLOAD, "http://example.org/B").stop().setBytes(50L);
+
+        List<MaterializerMetrics.Stage> stages = metrics.getStages();
+        assertEquals(3, stages.size());
+        MaterializerMetrics.Stage stage = stages.get(0);
+        assertEquals(2, stage.getGenes().intValue());
+        assertEquals(2, stage.getProteins().intValue());
+        assertEquals(1, stage.getXrefs().intValue());
+        assertNull(stage.getBytes());
+        assertTrue(stage.getAllocatedBytes() != 0);
+        assertEquals(150L, metrics.getTotals().get(MaterializerMetrics.DOWNLOAD).get("bytes").longValue());
+        assertEquals(2L, metrics.getTotals().get(MaterializerMetrics.DOWNLOAD).get("stages").longValue());
+
+        File dump = File.createTempFile("genome", ".json");
+        dump.deleteOnExit();
+        File report = MaterializerMetrics.getReportFile(dump);
+        report.deleteOnExit();
+        assertEquals(dump.getParentFile(), report.getParentFile());
+        assertEquals(dump.getName().replace(".json", ".metrics.json"), report.getName());
+        metrics.writeReport(report);
+        JsonNode written = new ObjectMapper().readTree(report);
+        assertEquals(3, written.get("stages").size());
+        assertEquals("A", written.get("stages").get(0).get("name").asText());
+        assertEquals(2, written.get("stages").get(0).get("genes").asInt());
+        assertEquals(150, written.get("totals").get(MaterializerMetrics.DOWNLOAD).get("bytes").asLong());
+    }
+
+}
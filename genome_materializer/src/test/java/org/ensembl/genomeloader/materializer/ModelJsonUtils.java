@@ -0,0 +1,77 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.ensembl.genomeloader.materializer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.ensembl.genomeloader.util.collections.CollectionUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Render model objects as JSON that can be compared between two parses.
+ * Properties held in hash sets (features, repeats, pseudogenes, proteins,
+ * transcripts, protein features, database references and synonyms) have no
+ * defined order and are sorted; all other arrays, including genes and RNA
+ * genes, keep the order in which they were parsed.
+ */
+public final class ModelJsonUtils {
+
+    private static final Set<String> UNORDERED = new HashSet<String>(Arrays.asList("features", "repeats",
+            "pseudogenes", "proteins", "transcripts", "proteinFeatures", "databaseReferences", "synonyms"));
+
+    private ModelJsonUtils() {
+    }
+
+    public static String toComparableJson(ObjectMapper mapper, Object o) throws IOException {
+        // sequences are written raw so cannot be converted straight to a tree
+        return toComparableJson(mapper.readTree(mapper.writeValueAsString(o)), false);
+    }
+
+    private static String toComparableJson(JsonNode node, boolean unordered) {
+        if (node.isObject()) {
+            Map<String, String> fields = new TreeMap<String, String>();
+            for (Iterator<Map.Entry<String, JsonNode>> i = node.fields(); i.hasNext();) {
+                Map.Entry<String, JsonNode> field = i.next();
+                fields.put(field.getKey(), toComparableJson(field.getValue(), UNORDERED.contains(field.getKey())));
+            }
+            return fields.toString();
+        } else if (node.isArray()) {
+            List<String> elems = CollectionUtils.createArrayList();
+            for (JsonNode elem : node) {
+                elems.add(toComparableJson(elem, false));
+            }
+            if (unordered) {
+                Collections.sort(elems);
+            }
+            return elems.toString();
+        } else {
+            return node.toString();
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.genomeloader.materializer;
+
+import static junit.framework.Assert.assertEquals;
+
+import java.util.Date;
+import java.util.Random;
+
+import org.ensembl.genomeloader.metadata.GenomeMetaData;
+import org.ensembl.genomeloader.metadata.GenomicComponentMetaData;
+import org.ensembl.genomeloader.model.Genome;
+import org.ensembl.genomeloader.model.GenomicComponent;
+import org.ensembl.genomeloader.model.impl.GenomicComponentImpl;
+import org.junit.Test;
+
+/**
+ * Checks that parallel parsing of components gives the same genome as
+ * sequential parsing
+ */
+public class ParallelMaterializerTest {
+
+    private static final int N_COMPONENTS = 50;
+
+    private static class StubMaterializer extends EnaGenomeMaterializer {
+
+        private final Random random = new Random(42);
+
+        public StubMaterializer(int threads) {
+            super(null, null, null, null, threads);
+        }
+
+        @Override
+        public GenomicComponent getComponent(GenomicComponentMetaData md) {
+            try {
+                Thread.sleep(random.nextInt(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            int n = Integer.parseInt(md.getAccession().substring(1));
+            md.setCreationDate(new Date(1000000L * (N_COMPONENTS - n)));
+            md.setUpdateDate(new Date(1000000L * n));
+            md.setGeneticCode(n % 2 == 0 ? GenomicComponentMetaData.NULL_GENETIC_CODE : 4);
+            GenomicComponentImpl c = new GenomicComponentImpl(md);
+            c.setAccession(md.getAccession());
+            return c;
+        }
+    }
+
+    private Genome materialize(int threads) {
+        GenomeMetaData gmd = new GenomeMetaData("1", "", 0);
+        gmd.setSuperregnum(GenomeMetaData.BAC_SUPERREGNUM);
+        for (int i = 0; i < N_COMPONENTS; i++) {
+            gmd.getComponentMetaData().add(new GenomicComponentMetaData("C" + i, gmd));
+        }
+        return new StubMaterializer(threads).getGenome(gmd);
+    }
+
+    @Test
+    public void testOrderAndDates() {
+        Genome serial = materialize(1);
+        Genome parallel = materialize(4);
+        assertEquals(N_COMPONENTS, parallel.getGenomicComponents().size());
+        for (int i = 0; i < N_COMPONENTS; i++) {
+            GenomicComponent s = serial.getGenomicComponents().get(i);
+            GenomicComponent p = parallel.getGenomicComponents().get(i);
+            assertEquals("C" + i, p.getAccession());
+            assertEquals(s.getAccession(), p.getAccession());
+            assertEquals(s.getMetaData().getGeneticCode(), p.getMetaData().getGeneticCode());
+            assertEquals(p.getGenome(), parallel);
+        }
+        assertEquals(serial.getMetaData().getCreationDate(), parallel.getMetaData().getCreationDate());
+        assertEquals(serial.getMetaData().getUpdateDate(), parallel.getMetaData().getUpdateDate());
+        assertEquals(EnaGenomeMaterializer.BACTERIA_CODE,
+                parallel.getGenomicComponents().get(0).getMetaData().getGeneticCode());
+    }
+
+}
@@ -25,24 +25,94 @@ package org.ensembl.genomeloader.materializer;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import org.ensembl.genomeloader.materializer.executor.SimpleExecutor;
+import org.ensembl.genomeloader.materializer.impl.EnaContigParser;
+import org.ensembl.genomeloader.materializer.impl.XmlEnaFeatureParser;
 import org.ensembl.genomeloader.metadata.GenomeMetaData;
 import org.ensembl.genomeloader.metadata.GenomicComponentMetaData;
+import org.ensembl.genomeloader.model.Gene;
 import org.ensembl.genomeloader.model.GenomicComponent;
+import org.ensembl.genomeloader.model.Protein;
+import org.ensembl.genomeloader.model.impl.GenomicComponentImpl;
+import org.ensembl.genomeloader.model.sequence.SequenceStore;
+import org.ensembl.genomeloader.model.sequence.StoredSequence;
 import org.ensembl.genomeloader.util.InputOutputUtils;
+import org.ensembl.genomeloader.util.biojava.LocationUtils;
+import org.ensembl.genomeloader.util.collections.CollectionUtils;
 import org.ensembl.genomeloader.xrefregistry.DatabaseReferenceTypeRegistry;
 import org.ensembl.genomeloader.xrefregistry.impl.XmlDatabaseReferenceTypeRegistry;
 import org.junit.Test;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import nu.xom.Element;
+
 /**
  * @author dstaines
  * 
  */
 public class ParseComponentTest {
 
+    /**
+     * Parser recording the features it is given
+     */
+    private static class RecordingParser extends XmlEnaFeatureParser {
+
+        private final List<String> parsed;
+
+        public RecordingParser(DatabaseReferenceTypeRegistry registry, List<String> parsed) {
+            super(registry);
+            this.parsed = parsed;
+        }
+
+        @Override
+        public void parseFeature(GenomicComponentImpl component, Element element) {
+            parsed.add(element.getAttributeValue("name") + " " + element.getAttributeValue("location"));
+        }
+
+        @Override
+        public List<Class<? extends XmlEnaFeatureParser>> dependsOn() {
+            return Collections.emptyList();
+        }
+
+    }
+
+    /**
+     * Parser recording the features it is given, which must be run after
+     * {@link RecordingParser}
+     */
+    private static class DependentRecordingParser extends RecordingParser {
+
+        public DependentRecordingParser(DatabaseReferenceTypeRegistry registry, List<String> parsed) {
+            super(registry, parsed);
+        }
+
+        @Override
+        public List<Class<? extends XmlEnaFeatureParser>> dependsOn() {
+            return Collections.<Class<? extends XmlEnaFeatureParser>> singletonList(RecordingParser.class);
+        }
+
+    }
+
+    private static final String ENTRY = "<entry accession=\"XX000001\" version=\"1\" dataClass=\"STD\" "
+            + "sequenceLength=\"10\" topology=\"linear\" firstPublic=\"2000-01-01\" lastUpdated=\"2000-01-01\">"
+            + "<description>Test entry</description>"
+            + "<feature name=\"source\" location=\"1..10\"><taxon scientificName=\"Test\" taxId=\"1\"/></feature>"
+            + "<feature name=\"gene\" location=\"1..3\"/>" + "<feature name=\"CDS\" location=\"1..3\"/>"
+            + "<feature name=\"repeat_region\" location=\"4..5\"/>" + "<feature name=\"CDS\" location=\"6..9\"/>"
+            + "<feature name=\"gene\" location=\"6..9\"/>" + "<sequence>acgtacgtac</sequence></entry>";
+
     private final DatabaseReferenceTypeRegistry reg = new XmlDatabaseReferenceTypeRegistry();
 
     @Test
@@ -69,4 +139,95 @@ public class ParseComponentTest {
         System.out.println("Genes=>" + gc.getGenes().size());
     }
 
+    @Test
+    public void testStreamMatchesDocument() throws Exception {
+        EnaParser parser = new EnaParser(null, reg);
+        ObjectMapper mapper = DumpGenome.createObjectMapper();
+        for (String acc : new String[] { "AP001918", "U00096" }) {
+            InputStream is = InputOutputUtils.openGzippedClasspathResource("/" + acc + ".xml.gz");
+            GenomicComponent docGc = parser.parse(new GenomicComponentMetaData(acc, new GenomeMetaData("1", "", 0)),
+                    parser.parseDocument(is));
+            is = InputOutputUtils.openGzippedClasspathResource("/" + acc + ".xml.gz");
+            GenomicComponent streamGc = parser.parse(new GenomicComponentMetaData(acc, new GenomeMetaData("1", "", 0)),
+                    is);
+            // genes and RNA genes must be in the same order
+            assertEquals(ModelJsonUtils.toComparableJson(mapper, docGc),
+                    ModelJsonUtils.toComparableJson(mapper, streamGc));
+        }
+    }
+
+    @Test
+    public void testReuseParsers() throws Exception {
+        EnaParser parser = new EnaParser(null, reg);
+        assertSame(parser.getParserForFeature("CDS"), parser.getParserForFeature("CDS"));
+        GenomicComponent gc1 = parser.parse(new GenomicComponentMetaData("AP001918", new GenomeMetaData("1", "", 0)),
+                InputOutputUtils.openGzippedClasspathResource("/AP001918.xml.gz"));
+        GenomicComponent gc2 = parser.parse(new GenomicComponentMetaData("AP001918", new GenomeMetaData("1", "", 0)),
+                InputOutputUtils.openGzippedClasspathResource("/AP001918.xml.gz"));
+        assertEquals(gc1.getGenes().size(), gc2.getGenes().size());
+        for (Gene gene : gc1.getGenes()) {
+            for (Protein protein : gene.getProteins()) {
+                // locations are parsed once but not shared between entities
+                assertNotSame(gene.getLocation(), protein.getLocation());
+                assertEquals(LocationUtils.locationToEmblFormat(gene.getLocation()),
+                        LocationUtils.locationToEmblFormat(protein.getLocation()));
+            }
+        }
+    }
+
+    @Test
+    public void testSequenceStore() throws Exception {
+        EnaParser parser = new EnaParser(null, reg);
+        GenomicComponent memGc = parser.parse(new GenomicComponentMetaData("AP001918", new GenomeMetaData("1", "", 0)),
+                InputOutputUtils.openGzippedClasspathResource("/AP001918.xml.gz"));
+        SequenceStore store = new SequenceStore(File.createTempFile("sequences", ".seq"));
+        try {
+            parser.setSequenceStore(store);
+            GenomicComponent storedGc = parser.parse(
+                    new GenomicComponentMetaData("AP001918", new GenomeMetaData("1", "", 0)),
+                    InputOutputUtils.openGzippedClasspathResource("/AP001918.xml.gz"));
+            assertTrue(storedGc.getSequence() instanceof StoredSequence);
+            assertEquals(memGc.getSequence().getIdentifier(), storedGc.getSequence().getIdentifier());
+            assertEquals(memGc.getSequence().getSequence(), storedGc.getSequence().getSequence());
+            ObjectMapper mapper = DumpGenome.createObjectMapper();
+            assertEquals(mapper.writeValueAsString(memGc.getSequence()),
+                    mapper.writeValueAsString(storedGc.getSequence()));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testFeatureOrder() throws Exception {
+        final List<String> parsed = CollectionUtils.createArrayList();
+        EnaParser parser = new EnaParser(null, reg) {
+            @Override
+            protected XmlEnaFeatureParser createParserForFeature(String key) {
+                return "gene".equals(key) ? new DependentRecordingParser(reg, parsed)
+                        : new RecordingParser(reg, parsed);
+            }
+        };
+        // features without dependencies are parsed in the order they are read,
+        // and the rest once the parsers they depend on have run
+        List<String> expected = Arrays.asList("source 1..10", "CDS 1..3", "repeat_region 4..5", "CDS 6..9",
+                "gene 1..3", "gene 6..9");
+        parser.parse(new GenomicComponentMetaData("XX000001", new GenomeMetaData("1", "", 0)),
+                new ByteArrayInputStream(ENTRY.getBytes("UTF-8")));
+        assertEquals(expected, parsed);
+        parsed.clear();
+        parser.parse(new GenomicComponentMetaData("XX000001", new GenomeMetaData("1", "", 0)),
+                parser.parseDocument(new ByteArrayInputStream(ENTRY.getBytes("UTF-8"))));
+        assertEquals(expected, parsed);
+    }
+
+    @Test
+    public void testContigParserSkipsFeatures() throws Exception {
+        EnaParser parser = new EnaContigParser(null, reg);
+        GenomicComponent gc = parser.parse(new GenomicComponentMetaData("AP001918", new GenomeMetaData("1", "", 0)),
+                InputOutputUtils.openGzippedClasspathResource("/AP001918.xml.gz"));
+        assertEquals("AP001918", gc.getAccession());
+        assertTrue(gc.getGenes().isEmpty());
+        assertTrue(gc.getFeatures().isEmpty());
+    }
+
 }
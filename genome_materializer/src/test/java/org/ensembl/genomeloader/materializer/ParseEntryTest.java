@@ -0,0 +1,283 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.ensembl.genomeloader.materializer;
+
+import static junit.framework.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.ensembl.genomeloader.materializer.impl.EntryElementBuilder;
+import org.ensembl.genomeloader.materializer.impl.XomUtils;
+import org.ensembl.genomeloader.materializer.impl.XomUtils.ElementsIterable;
+import org.ensembl.genomeloader.metadata.GenomeMetaData;
+import org.ensembl.genomeloader.metadata.GenomicComponentMetaData;
+import org.ensembl.genomeloader.model.GenomicComponent;
+import org.ensembl.genomeloader.util.InputOutputUtils;
+import org.ensembl.genomeloader.xrefregistry.DatabaseReferenceTypeRegistry;
+import org.ensembl.genomeloader.xrefregistry.impl.XmlDatabaseReferenceTypeRegistry;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import nu.xom.Document;
+import nu.xom.Element;
+import uk.ac.ebi.embl.api.entry.Entry;
+import uk.ac.ebi.embl.api.entry.EntryFactory;
+import uk.ac.ebi.embl.api.entry.Text;
+import uk.ac.ebi.embl.api.entry.XRef;
+import uk.ac.ebi.embl.api.entry.feature.Feature;
+import uk.ac.ebi.embl.api.entry.feature.FeatureFactory;
+import uk.ac.ebi.embl.api.entry.feature.SourceFeature;
+import uk.ac.ebi.embl.api.entry.location.CompoundLocation;
+import uk.ac.ebi.embl.api.entry.location.Join;
+import uk.ac.ebi.embl.api.entry.location.Location;
+import uk.ac.ebi.embl.api.entry.location.LocationFactory;
+import uk.ac.ebi.embl.api.entry.location.Order;
+import uk.ac.ebi.embl.api.entry.qualifier.QualifierFactory;
+import uk.ac.ebi.embl.api.entry.reference.Publication;
+import uk.ac.ebi.embl.api.entry.reference.ReferenceFactory;
+import uk.ac.ebi.embl.api.entry.sequence.Sequence;
+import uk.ac.ebi.embl.api.entry.sequence.SequenceFactory;
+import uk.ac.ebi.embl.api.taxonomy.Taxon;
+import uk.ac.ebi.embl.api.taxonomy.TaxonFactory;
+
+/**
+ * Checks that components parsed from embl-api entries are identical to those
+ * parsed from the ENA XML for the same entries. Features, genes and other
+ * arrays must come out in the same order; only properties held in hash sets
+ * are sorted before comparison (see {@link ModelJsonUtils})
+ */
+public class ParseEntryTest {
+
+    private static final Pattern RANGE = Pattern
+            .compile("(?:([A-Z0-9_]+)(?:\\.(\\d+))?:)?(<)?(\\d+)(?:(\\.\\.|\\^)(>)?(\\d+))?");
+
+    private final DatabaseReferenceTypeRegistry reg = new XmlDatabaseReferenceTypeRegistry();
+    private final LocationFactory locationFactory = new LocationFactory();
+
+    /**
+     * Build an entry as {@link uk.ac.ebi.embl.flatfile.reader.embl.EmblEntryReader}
+     * would from the flatfile version of the supplied ENA XML
+     */
+    private Entry toEntry(Element entryElem) {
+        Entry entry = new EntryFactory().createEntry();
+        entry.setPrimaryAccession(entryElem.getAttributeValue("accession"));
+        entry.setDataClass(entryElem.getAttributeValue("dataClass"));
+        entry.setFirstPublic(EnaGenomeMaterializer.parseEnaDate(entryElem.getAttributeValue("firstPublic")));
+        entry.setLastUpdated(EnaGenomeMaterializer.parseEnaDate(entryElem.getAttributeValue("lastUpdated")));
+        entry.setDescription(new Text(XomUtils.getFirstChild(entryElem, "description").getValue()));
+        for (Element elem : new ElementsIterable(entryElem.getChildElements("secondaryAccession"))) {
+            entry.addSecondaryAccession(new Text(elem.getValue()));
+        }
+        int n = 0;
+        for (Element refElem : new ElementsIterable(entryElem.getChildElements("reference"))) {
+            Publication publication = new Publication();
+            for (Element xrefElem : new ElementsIterable(refElem.getChildElements("xref"))) {
+                publication.addXRef(new XRef(xrefElem.getAttributeValue("db"), xrefElem.getAttributeValue("id")));
+            }
+            entry.addReference(new ReferenceFactory().createReference(publication, ++n));
+        }
+        Sequence seq = new SequenceFactory().createSequenceByte(
+                entryElem.getFirstChildElement("sequence").getValue().replaceAll("\\s+", "").getBytes());
+        seq.setVersion(Integer.valueOf(entryElem.getAttributeValue("version")));
+        seq.setMoleculeType(entryElem.getAttributeValue("moleculeType"));
+        seq.setTopology(Sequence.Topology.valueOf(entryElem.getAttributeValue("topology").toUpperCase()));
+        entry.setSequence(seq);
+        for (Element featureElem : new ElementsIterable(entryElem.getChildElements("feature"))) {
+            entry.addFeature(toFeature(featureElem));
+        }
+        return entry;
+    }
+
+    private Feature toFeature(Element featureElem) {
+        String name = featureElem.getAttributeValue("name");
+        Feature feature;
+        if ("source".equals(name)) {
+            feature = new FeatureFactory().createSourceFeature();
+            Element taxonElem = featureElem.getFirstChildElement("taxon");
+            Taxon taxon = new TaxonFactory().createTaxon();
+            taxon.setTaxId(Long.valueOf(taxonElem.getAttributeValue("taxId")));
+            taxon.setScientificName(taxonElem.getAttributeValue("scientificName"));
+            Element lineageElem = taxonElem.getFirstChildElement("lineage");
+            if (lineageElem != null) {
+                StringBuilder lineage = new StringBuilder();
+                for (Element linElem : new ElementsIterable(lineageElem.getChildElements("taxon"))) {
+                    lineage.append(linElem.getAttributeValue("scientificName")).append("; ");
+                }
+                taxon.setLineage(lineage.toString().replaceAll("; $", "."));
+            }
+            ((SourceFeature) feature).setTaxon(taxon);
+        } else {
+            feature = new FeatureFactory().createFeature(name);
+        }
+        feature.setLocations(toLocations(featureElem.getAttributeValue("location")));
+        for (Element xrefElem : new ElementsIterable(featureElem.getChildElements("xref"))) {
+            feature.addXRef(new XRef(xrefElem.getAttributeValue("db"), xrefElem.getAttributeValue("id"),
+                    xrefElem.getAttributeValue("secondaryId")));
+        }
+        QualifierFactory qualifierFactory = new QualifierFactory();
+        for (Element qualifierElem : new ElementsIterable(featureElem.getChildElements("qualifier"))) {
+            Element valueElem = qualifierElem.getFirstChildElement("value");
+            feature.addQualifier(qualifierFactory.createQualifier(qualifierElem.getAttributeValue("name"),
+                    valueElem == null ? null : valueElem.getValue()));
+        }
+        return feature;
+    }
+
+    private CompoundLocation<Location> toLocations(String locStr) {
+        boolean complement = false;
+        if (locStr.startsWith("complement(")) {
+            complement = true;
+            locStr = locStr.substring(11, locStr.length() - 1);
+        }
+        CompoundLocation<Location> locations;
+        if (locStr.startsWith("order(")) {
+            locations = new Order<Location>();
+            locStr = locStr.substring(6, locStr.length() - 1);
+        } else {
+            locations = new Join<Location>();
+            if (locStr.startsWith("join(")) {
+                locStr = locStr.substring(5, locStr.length() - 1);
+            }
+        }
+        locations.setComplement(complement);
+        String[] locStrs = locStr.split(",");
+        for (int i = 0; i < locStrs.length; i++) {
+            boolean locComplement = false;
+            String s = locStrs[i];
+            if (s.startsWith("complement(")) {
+                locComplement = true;
+                s = s.substring(11, s.length() - 1);
+            }
+            Matcher m = RANGE.matcher(s);
+            assertEquals("Cannot convert location " + s, true, m.matches());
+            Long begin = Long.valueOf(m.group(4));
+            Location loc;
+            if (m.group(5) == null) {
+                loc = m.group(1) == null ? locationFactory.createLocalBase(begin)
+                        : locationFactory.createRemoteBase(m.group(1), toVersion(m.group(2)), begin);
+            } else if ("^".equals(m.group(5))) {
+                Long end = Long.valueOf(m.group(7));
+                loc = m.group(1) == null ? locationFactory.createLocalBetween(begin, end)
+                        : locationFactory.createRemoteBetween(m.group(1), toVersion(m.group(2)), begin, end);
+            } else {
+                Long end = Long.valueOf(m.group(7));
+                loc = m.group(1) == null ? locationFactory.createLocalRange(begin, end)
+                        : locationFactory.createRemoteRange(m.group(1), toVersion(m.group(2)), begin, end);
+            }
+            loc.setComplement(locComplement);
+            if (i == 0 && m.group(3) != null) {
+                locations.setLeftPartial(true);
+            }
+            if (i == locStrs.length - 1 && m.group(6) != null) {
+                locations.setRightPartial(true);
+            }
+            locations.addLocation(loc);
+        }
+        assertEquals(locStr.replaceAll("complement\\(|\\)", ""),
+                EntryElementBuilder.renderLocation(locations).replaceAll("complement\\(|\\)|join\\(|order\\(", ""));
+        return locations;
+    }
+
+    private static Integer toVersion(String version) {
+        return version == null ? null : Integer.valueOf(version);
+    }
+
+    private void assertSameComponent(String accession) throws Exception {
+        EnaParser parser = new EnaParser(null, reg);
+        Document doc = parser.parseDocument(InputOutputUtils.openGzippedClasspathResource("/" + accession + ".xml.gz"));
+        Entry entry = toEntry(doc.getRootElement());
+        GenomicComponentMetaData xmlMd = new GenomicComponentMetaData(accession, new GenomeMetaData("1", "", 0));
+        GenomicComponent xmlGc = parser.parse(xmlMd,
+                InputOutputUtils.openGzippedClasspathResource("/" + accession + ".xml.gz"));
+        GenomicComponentMetaData entryMd = new GenomicComponentMetaData(accession, new GenomeMetaData("1", "", 0));
+        GenomicComponent entryGc = parser.parse(entryMd, entry);
+        ObjectMapper mapper = DumpGenome.createObjectMapper();
+        assertEquals(ModelJsonUtils.toComparableJson(mapper, xmlMd.getGenomeMetaData()), ModelJsonUtils.toComparableJson(mapper, entryMd.getGenomeMetaData()));
+        assertEquals(ModelJsonUtils.toComparableJson(mapper, xmlGc), ModelJsonUtils.toComparableJson(mapper, entryGc));
+    }
+
+    @Test
+    public void testAP001918() throws Exception {
+        assertSameComponent("AP001918");
+    }
+
+    @Test
+    public void testU00096() throws Exception {
+        assertSameComponent("U00096");
+    }
+
+    @Test
+    public void testWgsParsedFromFlatFile() throws Exception {
+        final List<String> parsed = new ArrayList<String>();
+        EnaXmlRetriever retriever = new EnaXmlRetriever("http://localhost/") {
+            @Override
+            public InputStream openEntry(String accession, String version) {
+                return new ByteArrayInputStream(("ID   " + accession + ";\n//\n").getBytes());
+            }
+        };
+        try {
+            EnaParser parser = new EnaParser(retriever, reg) {
+                @Override
+                public GenomicComponent parse(GenomicComponentMetaData md, InputStream record) {
+                    parsed.add("xml:" + md.getAccession());
+                    return null;
+                }
+
+                @Override
+                public GenomicComponent parseFlatFile(GenomicComponentMetaData md, InputStream record) {
+                    parsed.add("flatfile:" + md.getAccession());
+                    return null;
+                }
+            };
+            GenomicComponentMetaData md = new GenomicComponentMetaData("ABCD01000001", new GenomeMetaData("1", "", 0));
+            // WGS entries are held as XML unless flatfile parsing is enabled
+            parser.parse(md, (URL) null);
+            retriever.setWgsFlatFile(true);
+            parser.parse(md, (URL) null);
+            assertEquals(Arrays.asList("xml:ABCD01000001", "flatfile:ABCD01000001"), parsed);
+        } finally {
+            retriever.close();
+        }
+    }
+
+    @Test
+    public void testRenderPartialBase() throws Exception {
+        CompoundLocation<Location> locations = new Join<Location>();
+        locations.addLocation(locationFactory.createLocalBase(100L));
+        locations.setRightPartial(true);
+        assertEquals(">100", EntryElementBuilder.renderLocation(locations));
+        locations.setLeftPartial(true);
+        assertEquals("<100..>100", EntryElementBuilder.renderLocation(locations));
+        locations.setRightPartial(false);
+        assertEquals("<100", EntryElementBuilder.renderLocation(locations));
+        locations = new Join<Location>();
+        locations.addLocation(locationFactory.createLocalRange(1L, 50L));
+        locations.addLocation(locationFactory.createRemoteBase("AB000001", 1, 100L));
+        locations.setRightPartial(true);
+        assertEquals("join(1..50,AB000001.1:>100)", EntryElementBuilder.renderLocation(locations));
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.ensembl.genomeloader.materializer;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class WgsSetDecoderTest {
+
+    /**
+     * Decoder reading the accession from the ID line, taking a random time
+     * for each entry so that entries finish out of order
+     */
+    private static class TestDecoder extends WgsSetDecoder {
+
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger maxActive = new AtomicInteger();
+        private final Random random = new Random(1);
+        private final String failOn;
+
+        public TestDecoder(int threads, int queueSize, String failOn) {
+            super(threads, queueSize);
+            this.failOn = failOn;
+        }
+
+        @Override
+        protected DecodedEntry decodeEntry(String text) throws IOException {
+            int n = active.incrementAndGet();
+            maxActive.accumulateAndGet(n, Math::max);
+            try {
+                Thread.sleep(random.nextInt(10));
+                String accession = text.substring(5, text.indexOf(';'));
+                if (accession.equals(failOn)) {
+                    throw new IOException("Could not decode " + accession);
+                }
+                return new DecodedEntry(accession, getText(accession));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+
+    }
+
+    private static String getText(String accession) {
+        return "ID   " + accession + ";\n//\n";
+    }
+
+    private static String getAccession(int i) {
+        return String.format("ABCD01%06d", i);
+    }
+
+    private static String getFlatfile(int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= n; i++) {
+            sb.append("ID   ").append(getAccession(i)).append("; SV 1; linear; genomic DNA; WGS; PRO; 10 BP.\n");
+            sb.append("XX\n");
+            sb.append("SQ   Sequence 10 BP;\n");
+            sb.append("     acgtacgtac                                                        10\n");
+            sb.append("//\n");
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testDecode() throws Exception {
+        File f = File.createTempFile("wgs", ".embl");
+        f.deleteOnExit();
+        WgsSetStore store = new WgsSetStore(f);
+        TestDecoder decoder = new TestDecoder(4, 8, null);
+        assertEquals(200, decoder.decode(new StringReader(getFlatfile(200)), store));
+        store.close();
+        assertTrue("Entries were not decoded concurrently", decoder.maxActive.get() > 1);
+        // entries are written in the order they were read
+        String contents = FileUtils.readFileToString(f, "UTF-8");
+        int last = -1;
+        for (int i = 1; i <= 200; i++) {
+            int pos = contents.indexOf(getText(getAccession(i)));
+            assertTrue("Entry " + i + " out of order", pos > last);
+            last = pos;
+        }
+        assertTrue(WgsSetStore.open(f).containsEntry(getAccession(200)));
+    }
+
+    @Test
+    public void testDecoderFailure() throws Exception {
+        File f = File.createTempFile("wgs", ".embl");
+        f.deleteOnExit();
+        WgsSetStore store = new WgsSetStore(f);
+        TestDecoder decoder = new TestDecoder(4, 8, getAccession(50));
+        try {
+            decoder.decode(new StringReader(getFlatfile(200)), store);
+            fail("Decoder failure not reported");
+        } catch (IOException e) {
+            assertEquals("Could not decode " + getAccession(50), e.getMessage());
+        } finally {
+            store.close();
+        }
+        assertTrue(store.containsEntry(getAccession(49)));
+    }
+
+    @Test
+    public void testDecodeFlatfile() throws Exception {
+        String first = "ID   XXX; SV 1; linear; genomic DNA; WGS; PRO; 10 BP.\nXX\nAC   ABCD01000001; ABCD01000003;\n"
+                + "XX\nSQ   Sequence 10 BP;\n     acgtacgtac                                                        10\n//\n";
+        String second = "ID   ABCD01000002; SV 1; linear; genomic DNA; WGS; PRO; 10 BP.\nXX\n//\n";
+        File f = File.createTempFile("wgs", ".embl");
+        f.deleteOnExit();
+        WgsSetStore store = new WgsSetStore(f);
+        assertEquals(2, new WgsSetDecoder(1, 4, true).decode(new StringReader(first + second + "\n"), store));
+        store.close();
+        // accession comes from the AC line in preference to the ID line
+        assertFalse(store.containsEntry("XXX"));
+        assertEquals(first, IOUtils.toString(store.openEntry(getAccession(1)), "UTF-8"));
+        assertEquals(second, IOUtils.toString(store.openEntry(getAccession(2)), "UTF-8"));
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.genomeloader.materializer;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class WgsSetStoreTest {
+
+    private static String getXml(String accession) {
+        return "<entry accession=\"" + accession + "\"/>\n";
+    }
+
+    private static String read(WgsSetStore store, String accession) throws Exception {
+        InputStream is = store.openEntry(accession);
+        try {
+            return IOUtils.toString(is);
+        } finally {
+            is.close();
+        }
+    }
+
+    @Test
+    public void testStore() throws Exception {
+        File f = File.createTempFile("wgs", ".xml");
+        f.deleteOnExit();
+        WgsSetStore store = new WgsSetStore(f);
+        for (int i = 1; i <= 3; i++) {
+            final String acc = "ABCD0100000" + i;
+            store.addEntry(acc, w -> w.write(getXml(acc)));
+        }
+        // entries can be read while the store is still open
+        assertEquals(getXml("ABCD01000002"), read(store, "ABCD01000002"));
+        store.close();
+        assertTrue(store.containsEntry("ABCD01000001"));
+        assertFalse(store.containsEntry("ABCD01000004"));
+        assertNull(store.openEntry("ABCD01000004"));
+        for (int i = 3; i >= 1; i--) {
+            assertEquals(getXml("ABCD0100000" + i), read(store, "ABCD0100000" + i));
+        }
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        File f = File.createTempFile("wgs", ".xml");
+        f.deleteOnExit();
+        WgsSetStore store = new WgsSetStore(f);
+        for (int i = 1; i <= 3; i++) {
+            final String acc = "ABCD0100000" + i;
+            store.addEntry(acc, w -> w.write(getXml(acc)));
+        }
+        store.close();
+        WgsSetStore reopened = WgsSetStore.open(f);
+        assertFalse(reopened.containsEntry("ABCD01000004"));
+        for (int i = 1; i <= 3; i++) {
+            assertEquals(getXml("ABCD0100000" + i), read(reopened, "ABCD0100000" + i));
+        }
+    }
+
+}
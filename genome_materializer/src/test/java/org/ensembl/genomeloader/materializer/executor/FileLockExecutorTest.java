@@ -0,0 +1,159 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.ensembl.genomeloader.materializer.executor;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.ensembl.genomeloader.materializer.MaterializerMetrics;
+import org.ensembl.genomeloader.util.collections.CollectionUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileLockExecutorTest {
+
+    private File lockDir;
+
+    @Before
+    public void setUp() throws Exception {
+        lockDir = Files.createTempDirectory("locks").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(lockDir);
+    }
+
+    private static Runnable sleeper(final AtomicInteger active, final AtomicInteger maxActive, final long ms) {
+        return new Runnable() {
+            public void run() {
+                int n = active.incrementAndGet();
+                maxActive.accumulateAndGet(n, Math::max);
+                try {
+                    Thread.sleep(ms);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    active.decrementAndGet();
+                }
+            }
+        };
+    }
+
+    private static void runAll(ExecutorService pool, final FileLockExecutor executor, int n, final Runnable command)
+            throws Exception {
+        List<Future<?>> futures = CollectionUtils.createArrayList();
+        for (int i = 0; i < n; i++) {
+            futures.add(pool.submit(new Runnable() {
+                public void run() {
+                    executor.execute(command);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testConcurrentSlots() throws Exception {
+        FileLockExecutor executor = new FileLockExecutor(lockDir.getPath(), 3);
+        MaterializerMetrics metrics = new MaterializerMetrics();
+        executor.setMetrics(metrics);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            runAll(pool, executor, 12, sleeper(active, maxActive, 50));
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals("Slots not all used at once", 3, maxActive.get());
+        assertEquals(12, executor.getWaitCount());
+        assertTrue("No queue wait recorded", executor.getMaxWaitMs() > 0);
+        assertEquals(12, metrics.getStages().size());
+        assertEquals(MaterializerMetrics.SLOT_WAIT, metrics.getStages().get(0).getCategory());
+    }
+
+    @Test
+    public void testSharedAcrossExecutors() throws Exception {
+        // two executors on one directory stand in for two processes
+        final FileLockExecutor executor1 = new FileLockExecutor(lockDir.getPath(), 2);
+        final FileLockExecutor executor2 = new FileLockExecutor(lockDir.getPath(), 2);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        final Runnable command = sleeper(active, maxActive, 50);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = CollectionUtils.createArrayList();
+            futures.add(pool.submit(() -> {
+                runAll(pool, executor1, 4, command);
+                return null;
+            }));
+            futures.add(pool.submit(() -> {
+                runAll(pool, executor2, 4, command);
+                return null;
+            }));
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue("More commands than slots ran at once", maxActive.get() <= 2);
+    }
+
+    @Test
+    public void testWaitWithoutSpinning() throws Exception {
+        final FileLockExecutor holder = new FileLockExecutor(lockDir.getPath(), 1);
+        FileLockExecutor waiter = new FileLockExecutor(lockDir.getPath(), 1);
+        final AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> held = pool.submit(() -> holder.execute(sleeper(active, maxActive, 500)));
+            while (active.get() == 0) {
+                Thread.sleep(5);
+            }
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            long cpu = threads.getCurrentThreadCpuTime();
+            waiter.execute(sleeper(active, maxActive, 1));
+            cpu = threads.getCurrentThreadCpuTime() - cpu;
+            held.get(30, TimeUnit.SECONDS);
+            assertEquals(1, maxActive.get());
+            assertTrue("Did not wait for slot", waiter.getMaxWaitMs() >= 200);
+            assertTrue("Used " + cpu / 1000000 + " ms CPU whilst waiting", cpu < TimeUnit.MILLISECONDS.toNanos(200));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.genomeloader.materializer.genome_collections;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ensembl.genomeloader.materializer.genome_collections.OracleGenomeCollections.GcWgsPolicy;
+import org.apache.commons.io.FileUtils;
+import org.ensembl.genomeloader.metadata.GenomeMetaData;
+import org.ensembl.genomeloader.metadata.GenomeMetaData.OrganismNameType;
+import org.ensembl.genomeloader.metadata.GenomicComponentMetaData;
+import org.ensembl.genomeloader.metadata.GenomicComponentMetaData.GenomicComponentType;
+import org.ensembl.genomeloader.util.collections.CollectionUtils;
+import org.ensembl.genomeloader.util.sql.FakeSqlServiceTemplate;
+import org.junit.Test;
+
+public class OracleGenomeCollectionsTest {
+
+    /**
+     * Template answering feature count queries with one feature per accession
+     * for WGS and ten per accession for GC
+     */
+    private final FakeSqlServiceTemplate template = new FakeSqlServiceTemplate((method, sql, target, binds) -> {
+        assertEquals("queryForDefaultObject", method);
+        return sql.contains("gc_wh_sequence_stats") ? binds.length * 10 : binds.length;
+    });
+
+    private final OracleGenomeCollections gc = new OracleGenomeCollections(template.getTemplate(),
+            GcWgsPolicy.AUTOMATIC);
+
+    /**
+     * @return template answering metadata queries for a single assembly
+     *         version
+     */
+    private static FakeSqlServiceTemplate getMetaDataTemplate() {
+        final AtomicInteger components = new AtomicInteger();
+        return new FakeSqlServiceTemplate((method, sql, target, binds) -> {
+            if (method.equals("queryForDefaultObject")) {
+                assertTrue(sql.contains("max(set_version)"));
+                return "2";
+            }
+            assertEquals("queryForList", method);
+            if (sql.contains("gc_project")) {
+                GenomeMetaData md = new GenomeMetaData("GCA_000001", "Escherichia coli str. K-12", 562);
+                md.setVersion("2");
+                md.setOrganismName(OrganismNameType.FULL, md.getName());
+                md.setAssemblyName("ASM584v2");
+                md.setAssemblyDefault("ASM584v2");
+                md.setDescription("E. coli genome");
+                return CollectionUtils.createArrayList(md);
+            }
+            // one component per component query
+            int n = components.incrementAndGet();
+            GenomicComponentMetaData md = new GenomicComponentMetaData("CP" + n, null);
+            md.setVersion("1");
+            md.setComponentType(GenomicComponentType.CHROMOSOME);
+            md.setName("Chr" + n);
+            return CollectionUtils.createArrayList(md);
+        });
+    }
+
+    private static List<GenomicComponentMetaData> getComponents(String prefix, int n) {
+        GenomeMetaData gmd = new GenomeMetaData("1", "test", 0);
+        List<GenomicComponentMetaData> mds = CollectionUtils.createArrayList(n);
+        for (int i = 0; i < n; i++) {
+            GenomicComponentMetaData md = new GenomicComponentMetaData(prefix + i, gmd);
+            md.setVersion("1");
+            mds.add(md);
+        }
+        return mds;
+    }
+
+    @Test
+    public void testCountBatches() {
+        assertEquals(2500, gc.countFeatures(getComponents("ABCD01", 2500)));
+        assertEquals(3, template.getQueries());
+    }
+
+    @Test
+    public void testComponentsWin() {
+        List<GenomicComponentMetaData> components = getComponents("CP", 1500);
+        List<GenomicComponentMetaData> wgs = getComponents("ABCD01", 1000);
+        assertSame(components, gc.resolveComponents(components, wgs));
+        // WGS counted in full, then GC stops after the first batch
+        assertEquals(1 + 1, template.getQueries());
+    }
+
+    @Test
+    public void testWgsWins() {
+        List<GenomicComponentMetaData> components = getComponents("CP", 100);
+        List<GenomicComponentMetaData> wgs = getComponents("ABCD01", 5000);
+        assertSame(wgs, gc.resolveComponents(components, wgs));
+        // GC counted in full, then WGS stops once it exceeds 1000 features
+        assertEquals(1 + 2, template.getQueries());
+    }
+
+    private static OracleGenomeCollections getSnapshotCollections(FakeSqlServiceTemplate template, File dir) {
+        OracleGenomeCollections gc = new OracleGenomeCollections(template.getTemplate(), GcWgsPolicy.COMPONENTS);
+        gc.setSnapshots(new GenomeMetaDataSnapshots(dir));
+        return gc;
+    }
+
+    @Test
+    public void testSnapshots() throws Exception {
+        File dir = File.createTempFile("snapshots", "");
+        dir.delete();
+        try {
+            FakeSqlServiceTemplate queried = getMetaDataTemplate();
+            GenomeMetaData md = getSnapshotCollections(queried, dir).getGenomeForSetChain("GCA_000001");
+            // version probe, genome and three component queries
+            assertEquals(5, queried.getQueries());
+            assertEquals(3, md.getComponentMetaData().size());
+
+            FakeSqlServiceTemplate cached = getMetaDataTemplate();
+            GenomeMetaData snapshot = getSnapshotCollections(cached, dir).getGenomeForSetChain("GCA_000001");
+            assertEquals(1, cached.getQueries());
+            assertEquals(md.getId(), snapshot.getId());
+            assertEquals(md.getName(), snapshot.getName());
+            assertEquals(md.getTaxId(), snapshot.getTaxId());
+            assertEquals(md.getVersion(), snapshot.getVersion());
+            assertEquals(md.getOrganismNames(), snapshot.getOrganismNames());
+            assertNull(snapshot.getOrganismName(OrganismNameType.COMMON));
+            assertEquals(md.getAssemblyName(), snapshot.getAssemblyName());
+            assertEquals(md.getAssemblyDefault(), snapshot.getAssemblyDefault());
+            assertEquals(md.getDescription(), snapshot.getDescription());
+            assertEquals(md.getComponentMetaData().size(), snapshot.getComponentMetaData().size());
+            for (int i = 0; i < md.getComponentMetaData().size(); i++) {
+                GenomicComponentMetaData expected = md.getComponentMetaData().get(i);
+                GenomicComponentMetaData actual = snapshot.getComponentMetaData().get(i);
+                assertEquals(expected.getVersionedAccession(), actual.getVersionedAccession());
+                assertEquals(expected.getComponentType(), actual.getComponentType());
+                assertEquals(expected.getName(), actual.getName());
+                assertSame(snapshot, actual.getGenomeMetaData());
+            }
+
+            // an unreadable snapshot is replaced by querying again
+            File f = new File(dir, "GCA_000001.2.COMPONENTS.json");
+            FileUtils.writeStringToFile(f, "{\"id\":", "UTF-8");
+            FakeSqlServiceTemplate corrupt = getMetaDataTemplate();
+            getSnapshotCollections(corrupt, dir).getGenomeForSetChain("GCA_000001");
+            assertEquals(5, corrupt.getQueries());
+            assertTrue(FileUtils.readFileToString(f, "UTF-8").contains("CP3"));
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+}
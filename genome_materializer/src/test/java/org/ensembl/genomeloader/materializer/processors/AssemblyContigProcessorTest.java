@@ -0,0 +1,181 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.ensembl.genomeloader.materializer.processors;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ensembl.genomeloader.materializer.EnaGenomeConfig;
+import org.ensembl.genomeloader.materializer.EnaGenomeMaterializer;
+import org.ensembl.genomeloader.metadata.GenomeMetaData;
+import org.ensembl.genomeloader.metadata.GenomicComponentMetaData;
+import org.ensembl.genomeloader.metadata.GenomicComponentMetaData.GenomicComponentType;
+import org.ensembl.genomeloader.model.Genome;
+import org.ensembl.genomeloader.model.GenomicComponent;
+import org.ensembl.genomeloader.model.impl.AssemblySequenceImpl;
+import org.ensembl.genomeloader.model.impl.GenomeImpl;
+import org.ensembl.genomeloader.model.impl.GenomicComponentImpl;
+import org.ensembl.genomeloader.model.sequence.Sequence;
+import org.ensembl.genomeloader.util.biojava.LocationUtils;
+import org.ensembl.genomeloader.util.collections.CollectionUtils;
+import org.junit.Test;
+
+public class AssemblyContigProcessorTest {
+
+    /**
+     * Materializer building components from a map of accession to contig
+     * accessions, recording how many components are retrieved at once
+     */
+    private static class TestMaterializer extends EnaGenomeMaterializer {
+
+        private final Map<String, List<String>> assemblies;
+        private final Map<String, AtomicInteger> retrieved = new ConcurrentHashMap<String, AtomicInteger>();
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger maxActive = new AtomicInteger();
+
+        public TestMaterializer(Map<String, List<String>> assemblies) {
+            super(null, null);
+            this.assemblies = assemblies;
+        }
+
+        @Override
+        public GenomicComponent getComponent(GenomicComponentMetaData md) {
+            int n = active.incrementAndGet();
+            maxActive.accumulateAndGet(n, Math::max);
+            retrieved.computeIfAbsent(md.getAccession(), k -> new AtomicInteger()).incrementAndGet();
+            try {
+                Thread.sleep(10);
+                return buildComponent(md, assemblies.get(md.getAccession()));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+
+    }
+
+    private static GenomicComponentImpl buildComponent(GenomicComponentMetaData md, List<String> contigs) {
+        md.setVersion("1");
+        md.setName(md.getAccession());
+        md.setLength(10);
+        GenomicComponentImpl gc = new GenomicComponentImpl(md);
+        gc.setAccession(md.getAccession());
+        gc.setLength(10);
+        gc.setSequence(new Sequence("ACGTACGTAC"));
+        if (contigs != null) {
+            for (String contig : contigs) {
+                gc.getAssemblyElements().add(new AssemblySequenceImpl(LocationUtils.buildLocation(1, 10, 10, false, null),
+                        contig, 1, 1, 10));
+            }
+        }
+        return gc;
+    }
+
+    private static Genome buildGenome(Map<String, List<String>> assemblies, String... topLevels) {
+        GenomeMetaData gmd = new GenomeMetaData("1", "", 0);
+        Genome genome = new GenomeImpl(gmd);
+        for (String topLevel : topLevels) {
+            GenomicComponentImpl gc = buildComponent(new GenomicComponentMetaData(topLevel, gmd),
+                    assemblies.get(topLevel));
+            gc.setTopLevel(true);
+            genome.addGenomicComponent(gc);
+        }
+        return genome;
+    }
+
+    private static Map<String, GenomicComponent> getComponents(Genome genome) {
+        Map<String, GenomicComponent> components = CollectionUtils.createHashMap();
+        for (GenomicComponent gc : genome.getGenomicComponents()) {
+            components.put(gc.getAccession(), gc);
+        }
+        return components;
+    }
+
+    @Test
+    public void testBreadthFirst() {
+        Map<String, List<String>> assemblies = CollectionUtils.createHashMap();
+        assemblies.put("CON1", Arrays.asList("S1", "S2", "C1", "C2", "C3", "C4"));
+        assemblies.put("CON2", Arrays.asList("C5", "C6", "C7", "C8"));
+        // two scaffolds sharing a contig at the next level down
+        assemblies.put("S1", Arrays.asList("C9", "C10"));
+        assemblies.put("S2", Arrays.asList("C10", "C11"));
+        Genome genome = buildGenome(assemblies, "CON1", "CON2", "L1");
+        EnaGenomeConfig config = new EnaGenomeConfig();
+        config.setComponentThreads(3);
+        TestMaterializer materializer = new TestMaterializer(assemblies);
+        new AssemblyContigProcessor(config, materializer).processGenome(genome);
+
+        assertEquals(13, materializer.retrieved.size());
+        for (Map.Entry<String, AtomicInteger> e : materializer.retrieved.entrySet()) {
+            assertEquals("Contig " + e.getKey() + " retrieved more than once", 1, e.getValue().get());
+        }
+        assertTrue("Contigs were not retrieved concurrently", materializer.maxActive.get() > 1);
+        assertTrue("Too many contigs retrieved at once", materializer.maxActive.get() <= 3);
+
+        // 3 top levels, 2 scaffolds, 11 contigs and a contig for the top level
+        Map<String, GenomicComponent> components = getComponents(genome);
+        assertEquals(17, genome.getGenomicComponents().size());
+        assertEquals(16, components.size());
+        for (String con : Arrays.asList("CON1", "CON2")) {
+            assertTrue(components.get(con).isTopLevel());
+            assertNull(components.get(con).getSequence());
+        }
+        for (String scaffold : Arrays.asList("S1", "S2")) {
+            GenomicComponent gc = components.get(scaffold);
+            assertFalse(gc.isTopLevel());
+            assertNull(gc.getSequence());
+            assertEquals(GenomicComponentType.SUPERCONTIG, gc.getMetaData().getComponentType());
+        }
+        for (int i = 1; i <= 11; i++) {
+            GenomicComponent gc = components.get("C" + i);
+            assertFalse(gc.isTopLevel());
+            assertEquals("C" + i + ".1", gc.getMetaData().getName());
+            assertEquals(GenomicComponentType.CONTIG, gc.getMetaData().getComponentType());
+        }
+        assertFalse(materializer.retrieved.containsKey("L1"));
+        // the top level without an assembly maps 1:1 onto a new contig
+        GenomicComponent l1 = genome.getGenomicComponents().get(2);
+        assertEquals("L1", l1.getAccession());
+        assertEquals(1, l1.getAssemblyElements().size());
+        assertNull(l1.getSequence());
+        assertEquals(GenomicComponentType.CONTIG, components.get("L1").getMetaData().getComponentType());
+    }
+
+    @Test
+    public void testSingleThread() {
+        Map<String, List<String>> assemblies = CollectionUtils.createHashMap();
+        assemblies.put("CON1", Arrays.asList("S1", "C1", "C2"));
+        assemblies.put("S1", Arrays.asList("C3", "C4"));
+        Genome genome = buildGenome(assemblies, "CON1");
+        TestMaterializer materializer = new TestMaterializer(assemblies);
+        new AssemblyContigProcessor(new EnaGenomeConfig(), materializer).processGenome(genome);
+        assertEquals(5, materializer.retrieved.size());
+        assertEquals(1, materializer.maxActive.get());
+        assertEquals(6, genome.getGenomicComponents().size());
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.genomeloader.materializer.processors;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ensembl.genomeloader.materializer.BaseGenomeTest;
+import org.ensembl.genomeloader.model.DatabaseReferenceType;
+import org.ensembl.genomeloader.model.DatabaseReferenceType.TypeEnum;
+import org.ensembl.genomeloader.model.Gene;
+import org.ensembl.genomeloader.model.Genome;
+import org.ensembl.genomeloader.model.ModelUtils;
+import org.ensembl.genomeloader.model.Protein;
+import org.ensembl.genomeloader.model.impl.DatabaseReferenceImpl;
+import org.ensembl.genomeloader.util.collections.CollectionUtils;
+import org.junit.Test;
+
+public class CollectionInterproGenomeProcessorTest extends BaseGenomeTest {
+
+    private static final DatabaseReferenceType UPI = new DatabaseReferenceType(1, "UniParc", "", "UniParc", "UniParc",
+            "UniParc", TypeEnum.PROTEIN);
+    private static final DatabaseReferenceType IPRO = new DatabaseReferenceType(2, "InterPro", "", "InterPro",
+            "InterPro", "Interpro", TypeEnum.PROTEIN);
+    private static final DatabaseReferenceType GO = new DatabaseReferenceType(3, "GO", "", "GO", "GO", "GO",
+            TypeEnum.TRANSCRIPT);
+
+    /**
+     * Processor returning one feature per key, recording how many batches are
+     * fetched at once
+     */
+    private static class TestProcessor extends CollectionInterproGenomeProcessor {
+
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger maxActive = new AtomicInteger();
+        private final AtomicInteger batches = new AtomicInteger();
+
+        public TestProcessor(int batchSize, int batchesInFlight) {
+            super(null, IPRO, GO, null, batchSize, batchesInFlight, 100, UPI);
+        }
+
+        @Override
+        protected List<FeatureRow> fetchBatch(List<String> keys) {
+            int n = active.incrementAndGet();
+            maxActive.accumulateAndGet(n, Math::max);
+            batches.incrementAndGet();
+            try {
+                Thread.sleep(20);
+                List<FeatureRow> rows = CollectionUtils.createArrayList();
+                for (String key : keys) {
+                    rows.add(new FeatureRow(key, "IPR" + key, "short", "name", "PFAM", "PF" + key, "method", 1, 10,
+                            "GO:" + key, "IPR" + key));
+                }
+                return rows;
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+
+    }
+
+    private Genome getGenome(int nProteins) {
+        Gene[] genes = new Gene[nProteins];
+        for (int i = 0; i < nProteins; i++) {
+            genes[i] = buildCdsGene("1..99", "gene" + i);
+            genes[i].getProteins().iterator().next().addDatabaseReference(new DatabaseReferenceImpl(UPI, "UPI" + i));
+        }
+        return getEmptyGenome(1000, genes);
+    }
+
+    @Test
+    public void testPipelined() {
+        Genome genome = getGenome(25);
+        TestProcessor processor = new TestProcessor(2, 3);
+        processor.retrieveFeatures(genome);
+        assertEquals(13, processor.batches.get());
+        assertTrue("Batches were not fetched concurrently", processor.maxActive.get() > 1);
+        assertTrue("Too many batches fetched at once", processor.maxActive.get() <= 3);
+        for (Gene gene : genome.getGenomicComponents().get(0).getGenes()) {
+            Protein protein = gene.getProteins().iterator().next();
+            String upi = ModelUtils.getReferenceForType(protein, UPI).getPrimaryIdentifier();
+            assertEquals(1, protein.getProteinFeatures().size());
+            assertEquals("IPR" + upi, ModelUtils.getReferenceForType(protein, IPRO).getPrimaryIdentifier());
+            assertEquals("GO:" + upi, ModelUtils
+                    .getReferenceForType(protein.getTranscripts().iterator().next(), GO).getPrimaryIdentifier());
+        }
+    }
+
+    @Test
+    public void testSingleBatchInFlight() {
+        Genome genome = getGenome(5);
+        TestProcessor processor = new TestProcessor(2, 1);
+        processor.retrieveFeatures(genome);
+        assertEquals(3, processor.batches.get());
+        assertEquals(1, processor.maxActive.get());
+    }
+
+}
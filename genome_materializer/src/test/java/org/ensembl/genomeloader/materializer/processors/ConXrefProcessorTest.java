@@ -0,0 +1,121 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.genomeloader.materializer.processors;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static org.ensembl.genomeloader.util.sql.FakeSqlServiceTemplate.getRow;
+
+import java.util.List;
+
+import org.ensembl.genomeloader.materializer.BaseGenomeTest;
+import org.ensembl.genomeloader.metadata.GenomicComponentMetaData;
+import org.ensembl.genomeloader.model.DatabaseReference;
+import org.ensembl.genomeloader.model.DatabaseReferenceType;
+import org.ensembl.genomeloader.model.Gene;
+import org.ensembl.genomeloader.model.Genome;
+import org.ensembl.genomeloader.model.GenomicComponent;
+import org.ensembl.genomeloader.model.ModelUtils;
+import org.ensembl.genomeloader.model.Protein;
+import org.ensembl.genomeloader.model.impl.GenomicComponentImpl;
+import org.ensembl.genomeloader.util.collections.CollectionUtils;
+import org.ensembl.genomeloader.util.sql.FakeSqlServiceTemplate;
+import org.ensembl.genomeloader.util.sql.RowMapper;
+import org.ensembl.genomeloader.xrefregistry.DatabaseReferenceTypeRegistry;
+import org.ensembl.genomeloader.xrefregistry.impl.XmlDatabaseReferenceTypeRegistry;
+import org.junit.Test;
+
+public class ConXrefProcessorTest extends BaseGenomeTest {
+
+    private static final DatabaseReferenceTypeRegistry REGISTRY = new XmlDatabaseReferenceTypeRegistry();
+
+    /**
+     * Template returning a shared UniParc xref and a gene xref for the
+     * protein on each CON, with an extra CON/CON xref for the first CON
+     */
+    private final FakeSqlServiceTemplate template = new FakeSqlServiceTemplate((method, sql, target, binds) -> {
+        assertEquals("queryForList", method);
+        @SuppressWarnings("unchecked")
+        RowMapper<Object> mapper = (RowMapper<Object>) target;
+        List<Object> results = CollectionUtils.createArrayList();
+        for (Object bind : binds) {
+            String pid = "gene" + bind.toString().replaceAll("CON([0-9]+)\\.1", "$1") + "P";
+            if (sql.contains("css")) {
+                if (bind.equals("CON0.1")) {
+                    results.add(mapper.mapRow(getRow(pid, "foo", "CONCON"), results.size()));
+                }
+            } else {
+                results.add(mapper.mapRow(getRow(pid, "UniParc", "UPI1"), results.size()));
+                results.add(mapper.mapRow(getRow(pid, "foo", "X" + bind), results.size()));
+            }
+        }
+        return results;
+    });
+
+    private final ConXrefProcessor processor = new ConXrefProcessor(template.getTemplate(), REGISTRY, 2);
+
+    private Genome getGenome(int nCons) {
+        Genome genome = getEmptyGenome(1000, buildCdsGene("1..99", "gene"));
+        for (int i = 0; i < nCons; i++) {
+            GenomicComponentMetaData md = new GenomicComponentMetaData("CON" + i, genome.getMetaData());
+            md.setVersion("1");
+            md.setCon(true);
+            GenomicComponentImpl component = new GenomicComponentImpl(md);
+            component.getGenes().add(buildCdsGene("1..99", "gene" + i));
+            genome.addGenomicComponent(component);
+        }
+        return genome;
+    }
+
+    private static Gene getGene(GenomicComponent component) {
+        return component.getGenes().iterator().next();
+    }
+
+    private static Protein getProtein(GenomicComponent component) {
+        return getGene(component).getProteins().iterator().next();
+    }
+
+    @Test
+    public void testBatchedXrefs() {
+        Genome genome = getGenome(3);
+        processor.processGenome(genome);
+        // two batches of CONs, each with a CON and a CON/CON query
+        assertEquals(4, template.getQueries());
+        DatabaseReferenceType upi = REGISTRY.getTypeForOtherName("UniParc");
+        List<GenomicComponent> components = genome.getGenomicComponents();
+        assertEquals(0, getGene(components.get(0)).getDatabaseReferences().size());
+        assertNull(ModelUtils.getReferenceForType(getProtein(components.get(0)), upi));
+        DatabaseReference shared = ModelUtils.getReferenceForType(getProtein(components.get(1)), upi);
+        assertNotNull(shared);
+        for (int i = 1; i <= 3; i++) {
+            assertSame(shared, ModelUtils.getReferenceForType(getProtein(components.get(i)), upi));
+        }
+        assertEquals(2, getGene(components.get(1)).getDatabaseReferences().size());
+        assertEquals(1, getGene(components.get(2)).getDatabaseReferences().size());
+        assertEquals("XCON1.1",
+                getGene(components.get(2)).getDatabaseReferences().iterator().next().getPrimaryIdentifier());
+    }
+
+    @Test
+    public void testNoCons() {
+        processor.processGenome(getGenome(0));
+        assertEquals(0, template.getQueries());
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.genomeloader.materializer.processors;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.ensembl.genomeloader.materializer.MaterializerMetrics;
+import org.ensembl.genomeloader.materializer.impl.MaterializationUncheckedException;
+import org.ensembl.genomeloader.metadata.GenomeMetaData;
+import org.ensembl.genomeloader.model.Genome;
+import org.ensembl.genomeloader.model.impl.GenomeImpl;
+import org.ensembl.genomeloader.util.collections.CollectionUtils;
+import org.junit.Test;
+
+public class DelegatingGenomeProcessorTest {
+
+    /**
+     * Processor recording when it starts and finishes, and optionally waiting
+     * for a latch
+     */
+    private static class RecordingProcessor implements GenomeProcessor {
+
+        private final String name;
+        private final List<String> events;
+        private final Set<ModelPart> writes;
+        private final CountDownLatch latch;
+
+        public RecordingProcessor(String name, List<String> events, Set<ModelPart> writes, CountDownLatch latch) {
+            this.name = name;
+            this.events = events;
+            this.writes = writes;
+            this.latch = latch;
+        }
+
+        public void processGenome(Genome genome) {
+            events.add("start " + name);
+            if (latch != null) {
+                latch.countDown();
+                try {
+                    if (!latch.await(10, TimeUnit.SECONDS)) {
+                        throw new MaterializationUncheckedException("Processor " + name + " ran alone");
+                    }
+                } catch (InterruptedException e) {
+                    throw new MaterializationUncheckedException("Interrupted", e);
+                }
+            }
+            events.add("end " + name);
+        }
+
+        @Override
+        public Set<ModelPart> reads() {
+            return writes == null ? GenomeProcessor.super.reads() : EnumSet.of(ModelPart.COMPONENTS);
+        }
+
+        @Override
+        public Set<ModelPart> writes() {
+            return writes == null ? GenomeProcessor.super.writes() : writes;
+        }
+
+    }
+
+    private static Genome getGenome() {
+        return new GenomeImpl(new GenomeMetaData("1", "test", 0));
+    }
+
+    @Test
+    public void testSequential() {
+        List<String> events = Collections.synchronizedList(CollectionUtils.<String> createArrayList());
+        DelegatingGenomeProcessor processor = new DelegatingGenomeProcessor(
+                new RecordingProcessor("a", events, null, null), new RecordingProcessor("b", events, null, null));
+        processor.processGenome(getGenome());
+        assertEquals(CollectionUtils.createArrayList("start a", "end a", "start b", "end b"), events);
+        assertEquals(2, processor.getTimings().size());
+        assertTrue(processor.getTimings().containsKey("RecordingProcessor"));
+        assertTrue(processor.getTimings().containsKey("RecordingProcessor#2"));
+    }
+
+    @Test
+    public void testMetrics() {
+        List<String> events = Collections.synchronizedList(CollectionUtils.<String> createArrayList());
+        DelegatingGenomeProcessor processor = new DelegatingGenomeProcessor(
+                new RecordingProcessor("a", events, null, null), new RecordingProcessor("b", events, null, null));
+        MaterializerMetrics metrics = new MaterializerMetrics();
+        processor.setMetrics(metrics);
+        processor.processGenome(getGenome());
+        List<MaterializerMetrics.Stage> stages = metrics.getStages();
+        assertEquals(2, stages.size());
+        for (MaterializerMetrics.Stage stage : stages) {
+            assertEquals(MaterializerMetrics.PROCESSOR, stage.getCategory());
+            assertEquals("RecordingProcessor", stage.getName());
+            assertEquals(0, stage.getGenes().intValue());
+        }
+    }
+
+    @Test
+    public void testOverlap() {
+        List<String> events = Collections.synchronizedList(CollectionUtils.<String> createArrayList());
+        // both processors must be running at once for either to finish
+        CountDownLatch latch = new CountDownLatch(2);
+        DelegatingGenomeProcessor processor = new DelegatingGenomeProcessor(
+                new RecordingProcessor("a", events, EnumSet.of(ModelPart.PROTEIN_XREFS), latch),
+                new RecordingProcessor("b", events, EnumSet.of(ModelPart.RNA_GENES), latch),
+                new RecordingProcessor("c", events, null, null));
+        processor.setThreads(4);
+        processor.processGenome(getGenome());
+        assertEquals(6, events.size());
+        // undeclared processor waits for everything before it
+        assertEquals("start c", events.get(4));
+        assertEquals("end c", events.get(5));
+        assertEquals(3, processor.getTimings().size());
+    }
+
+    @Test
+    public void testConflict() {
+        List<String> events = Collections.synchronizedList(CollectionUtils.<String> createArrayList());
+        DelegatingGenomeProcessor processor = new DelegatingGenomeProcessor(
+                new RecordingProcessor("a", events, EnumSet.of(ModelPart.PROTEIN_XREFS), null),
+                new RecordingProcessor("b", events, EnumSet.of(ModelPart.PROTEIN_XREFS), null));
+        processor.setThreads(4);
+        processor.processGenome(getGenome());
+        assertEquals(CollectionUtils.createArrayList("start a", "end a", "start b", "end b"), events);
+    }
+
+    @Test
+    public void testFailure() {
+        final List<String> events = Collections.synchronizedList(CollectionUtils.<String> createArrayList());
+        DelegatingGenomeProcessor processor = new DelegatingGenomeProcessor(new GenomeProcessor() {
+            public void processGenome(Genome genome) {
+                throw new MaterializationUncheckedException("Failed");
+            }
+        }, new RecordingProcessor("b", events, null, null));
+        processor.setThreads(4);
+        try {
+            processor.processGenome(getGenome());
+            fail("Exception not thrown");
+        } catch (MaterializationUncheckedException e) {
+            assertEquals("Failed", e.getMessage());
+        }
+        // dependent processor does not run
+        assertTrue(events.isEmpty());
+    }
+
+}
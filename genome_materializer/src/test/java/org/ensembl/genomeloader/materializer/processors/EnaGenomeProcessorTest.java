@@ -0,0 +1,68 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.genomeloader.materializer.processors;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+
+import java.util.List;
+
+import org.ensembl.genomeloader.materializer.EnaGenomeConfig;
+import org.ensembl.genomeloader.materializer.EnaXmlRetriever;
+import org.ensembl.genomeloader.xrefregistry.impl.XmlDatabaseReferenceTypeRegistry;
+import org.junit.Test;
+
+public class EnaGenomeProcessorTest {
+
+    private static List<GenomeProcessor> getProcessors(EnaGenomeConfig config) {
+        try (EnaXmlRetriever retriever = new EnaXmlRetriever(config.getEnaEntryUrl())) {
+            return new EnaGenomeProcessor(config, null, new XmlDatabaseReferenceTypeRegistry(), retriever)
+                    .getProcessors();
+        }
+    }
+
+    private static int indexOf(List<GenomeProcessor> processors, Class<?> clazz) {
+        for (int i = 0; i < processors.size(); i++) {
+            if (clazz.isInstance(processors.get(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void testUpi() {
+        EnaGenomeConfig config = new EnaGenomeConfig();
+        assertEquals(-1, indexOf(getProcessors(config), UpiGenomeProcessor.class));
+        config.setUniparcUri("jdbc:oracle:thin:user/pass@//127.0.0.1:1471/UAPRO");
+        config.setUniProtUri("jdbc:oracle:thin:user/pass@//127.0.0.1:1471/SWPREAD");
+        List<GenomeProcessor> processors = getProcessors(config);
+        int upi = indexOf(processors, UpiGenomeProcessor.class);
+        assertFalse(upi == -1);
+        // UPIs are added before UniProt decoration
+        assertEquals(upi + 1, indexOf(processors, UniProtDescriptionGenomeProcessor.class));
+    }
+
+    @Test
+    public void testRfam() {
+        EnaGenomeConfig config = new EnaGenomeConfig();
+        assertEquals(-1, indexOf(getProcessors(config), RfamProcessor.class));
+        config.setRfamUri("jdbc:mysql://127.0.0.1:3306/rfam_12?user=rouser");
+        assertFalse(indexOf(getProcessors(config), RfamProcessor.class) == -1);
+    }
+
+}
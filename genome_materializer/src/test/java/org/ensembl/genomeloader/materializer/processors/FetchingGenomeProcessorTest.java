@@ -0,0 +1,122 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.genomeloader.materializer.processors;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static org.ensembl.genomeloader.util.sql.FakeSqlServiceTemplate.getRow;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.ensembl.genomeloader.materializer.BaseGenomeTest;
+import org.ensembl.genomeloader.materializer.impl.MaterializationUncheckedException;
+import org.ensembl.genomeloader.model.DatabaseReference;
+import org.ensembl.genomeloader.model.DatabaseReferenceType;
+import org.ensembl.genomeloader.model.DatabaseReferenceType.TypeEnum;
+import org.ensembl.genomeloader.model.Gene;
+import org.ensembl.genomeloader.model.Genome;
+import org.ensembl.genomeloader.model.ModelUtils;
+import org.ensembl.genomeloader.model.Protein;
+import org.ensembl.genomeloader.model.impl.DatabaseReferenceImpl;
+import org.ensembl.genomeloader.util.collections.CollectionUtils;
+import org.ensembl.genomeloader.util.sql.FakeSqlServiceTemplate;
+import org.ensembl.genomeloader.util.sql.RowMapper;
+import org.ensembl.genomeloader.util.sql.SqlServiceTemplate;
+import org.junit.Test;
+
+public class FetchingGenomeProcessorTest extends BaseGenomeTest {
+
+    private static final DatabaseReferenceType SW = new DatabaseReferenceType(1, "Uniprot/SWISSPROT", "",
+            "Uniprot/SWISSPROT", "Uniprot/SWISSPROT", "Uniprot/SWISSPROT", TypeEnum.PROTEIN);
+    private static final DatabaseReferenceType TR = new DatabaseReferenceType(2, "Uniprot/SPTREMBL", "",
+            "Uniprot/SPTREMBL", "Uniprot/SPTREMBL", "Uniprot/SPTREMBL", TypeEnum.PROTEIN);
+    private static final DatabaseReferenceType EC = new DatabaseReferenceType(3, "EC_NUMBER", "", "EC_NUMBER",
+            "EC_NUMBER", "EC_NUMBER", TypeEnum.PROTEIN);
+
+    /**
+     * @return template returning a single row for every query, optionally
+     *         waiting for a latch shared with other templates first
+     */
+    private static SqlServiceTemplate getTemplate(final CountDownLatch latch, final String... row) {
+        return new FakeSqlServiceTemplate((method, sql, target, binds) -> {
+            assertEquals("queryForList", method);
+            if (latch != null) {
+                latch.countDown();
+                if (!latch.await(10, TimeUnit.SECONDS)) {
+                    throw new MaterializationUncheckedException("Query ran alone");
+                }
+            }
+            List<Object> results = CollectionUtils.createArrayList();
+            results.add(((RowMapper<?>) target).mapRow(getRow((Object[]) row), 0));
+            return results;
+        }).getTemplate();
+    }
+
+    private Genome getGenome(boolean withUniProt) {
+        Gene gene = buildCdsGene("1..99", "gene1");
+        if (withUniProt) {
+            getProtein(gene).addDatabaseReference(new DatabaseReferenceImpl(SW, "P12345"));
+        }
+        return getEmptyGenome(1000, gene);
+    }
+
+    private static Protein getProtein(Gene gene) {
+        return gene.getProteins().iterator().next();
+    }
+
+    private static Protein getProtein(Genome genome) {
+        return getProtein(genome.getGenomicComponents().get(0).getGenes().iterator().next());
+    }
+
+    @Test
+    public void testFetchesOverlap() {
+        // both queries must be in flight at once for either to complete
+        CountDownLatch latch = new CountDownLatch(2);
+        UniProtDescriptionGenomeProcessor description = new UniProtDescriptionGenomeProcessor(
+                getTemplate(latch, "P12345", "TEST_ECOLI", "Test protein", "3"), SW, TR);
+        UniProtECGenomeProcessor ec = new UniProtECGenomeProcessor(
+                getTemplate(latch, "P12345", "1.1.1.1"), SW, TR, EC);
+        // writes all parts, so both fetches wait for it
+        DelegatingGenomeProcessor processor = new DelegatingGenomeProcessor(new GenomeProcessor() {
+            public void processGenome(Genome genome) {
+                getProtein(genome).addDatabaseReference(new DatabaseReferenceImpl(SW, "P12345"));
+            }
+        }, description, ec);
+        processor.setThreads(4);
+        Genome genome = getGenome(false);
+        processor.processGenome(genome);
+        Protein protein = getProtein(genome);
+        DatabaseReference sw = ModelUtils.getReferenceForType(protein, SW);
+        assertEquals("TEST_ECOLI", sw.getSecondaryIdentifier());
+        assertEquals("Test protein", sw.getDescription());
+        assertEquals("1.1.1.1", ModelUtils.getReferenceForType(protein, EC).getPrimaryIdentifier());
+        assertTrue(processor.getTimings().containsKey("UniProtDescriptionGenomeProcessor.fetch"));
+        assertTrue(processor.getTimings().containsKey("UniProtECGenomeProcessor.apply"));
+    }
+
+    @Test
+    public void testSequential() {
+        UniProtECGenomeProcessor ec = new UniProtECGenomeProcessor(
+                getTemplate(null, "P12345", "1.1.1.1"), SW, TR, EC);
+        Genome genome = getGenome(true);
+        new DelegatingGenomeProcessor(ec).processGenome(genome);
+        assertEquals("1.1.1.1", ModelUtils.getReferenceForType(getProtein(genome), EC).getPrimaryIdentifier());
+    }
+
+}
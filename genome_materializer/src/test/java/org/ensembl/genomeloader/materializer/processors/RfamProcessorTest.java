@@ -0,0 +1,86 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.genomeloader.materializer.processors;
+
+import static junit.framework.Assert.assertEquals;
+import static org.ensembl.genomeloader.util.sql.FakeSqlServiceTemplate.getRow;
+
+import java.util.List;
+
+import org.ensembl.genomeloader.materializer.BaseGenomeTest;
+import org.ensembl.genomeloader.materializer.impl.RfamGeneFetcherImpl;
+import org.ensembl.genomeloader.metadata.GenomicComponentMetaData;
+import org.ensembl.genomeloader.model.DatabaseReferenceType;
+import org.ensembl.genomeloader.model.DatabaseReferenceType.TypeEnum;
+import org.ensembl.genomeloader.model.Genome;
+import org.ensembl.genomeloader.model.GenomicComponent;
+import org.ensembl.genomeloader.model.Rnagene;
+import org.ensembl.genomeloader.model.impl.GenomicComponentImpl;
+import org.ensembl.genomeloader.util.collections.CollectionUtils;
+import org.ensembl.genomeloader.util.sql.FakeSqlServiceTemplate;
+import org.ensembl.genomeloader.util.sql.RowMapper;
+import org.junit.Test;
+
+public class RfamProcessorTest extends BaseGenomeTest {
+
+    private static final DatabaseReferenceType RFAM = new DatabaseReferenceType(1, "Rfam", "", "Rfam", "Rfam", "Rfam",
+            TypeEnum.GENE);
+
+    /**
+     * Template returning one RFAM hit for every other accession
+     */
+    private final FakeSqlServiceTemplate template = new FakeSqlServiceTemplate((method, sql, target, binds) -> {
+        assertEquals("queryForList", method);
+        @SuppressWarnings("unchecked")
+        RowMapper<Object> mapper = (RowMapper<Object>) target;
+        List<Object> results = CollectionUtils.createArrayList();
+        for (Object bind : binds) {
+            int i = Integer.parseInt(bind.toString().replaceAll("C([0-9]+)\\.1", "$1"));
+            if (i % 2 == 0) {
+                results.add(mapper.mapRow(getRow("RF0000" + i, "tRNA", "tRNA", "Gene; tRNA;", 10, 1, -1, bind),
+                        results.size()));
+            }
+        }
+        return results;
+    });
+
+    private final RfamProcessor processor = new RfamProcessor(
+            new RfamGeneFetcherImpl(template.getTemplate(), RFAM, 4));
+
+    @Test
+    public void testBulkFetch() {
+        Genome genome = getEmptyGenome(1000);
+        genome.getGenomicComponents().clear();
+        for (int i = 0; i < 10; i++) {
+            GenomicComponentMetaData md = new GenomicComponentMetaData("C" + i, genome.getMetaData());
+            md.setVersion("1");
+            genome.addGenomicComponent(new GenomicComponentImpl(md));
+        }
+        processor.processGenome(genome);
+        assertEquals(3, template.getQueries());
+        for (int i = 0; i < 10; i++) {
+            GenomicComponent component = genome.getGenomicComponents().get(i);
+            assertEquals(i % 2 == 0 ? 1 : 0, component.getRnagenes().size());
+            for (Rnagene gene : component.getRnagenes()) {
+                assertEquals("tRNA", gene.getBiotype());
+                assertEquals("RF0000" + i,
+                        gene.getDatabaseReferences().iterator().next().getPrimaryIdentifier());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.genomeloader.materializer.processors;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.ensembl.genomeloader.materializer.BaseGenomeTest;
+import org.ensembl.genomeloader.materializer.EnaGenomeConfig;
+import org.ensembl.genomeloader.materializer.impl.MaterializationUncheckedException;
+import org.ensembl.genomeloader.model.DatabaseReference;
+import org.ensembl.genomeloader.model.DatabaseReferenceType;
+import org.ensembl.genomeloader.model.DatabaseReferenceType.TypeEnum;
+import org.ensembl.genomeloader.model.Gene;
+import org.ensembl.genomeloader.model.Genome;
+import org.ensembl.genomeloader.model.ModelUtils;
+import org.ensembl.genomeloader.model.Protein;
+import org.ensembl.genomeloader.model.impl.DatabaseReferenceImpl;
+import org.ensembl.genomeloader.util.collections.CollectionUtils;
+import org.junit.Test;
+
+public class UpiGenomeProcessorTest extends BaseGenomeTest {
+
+    private static final DatabaseReferenceType UPI = new DatabaseReferenceType(1, "UniParc", "", "UniParc", "UniParc",
+            "UniParc", TypeEnum.PROTEIN);
+    private static final DatabaseReferenceType PID = new DatabaseReferenceType(2, "protein_id", "", "protein_id",
+            "protein_id", "protein_id", TypeEnum.PROTEIN);
+
+    /**
+     * Processor returning UPIs from a map, recording the batches queried
+     */
+    private static class TestProcessor extends UpiGenomeProcessor {
+
+        private final Map<String, Set<String>> upis;
+        private final List<List<String>> batches = CollectionUtils.createArrayList();
+
+        public TestProcessor(EnaGenomeConfig config, Map<String, Set<String>> upis) {
+            super(config, null, UPI, PID);
+            this.upis = upis;
+        }
+
+        @Override
+        protected void fetchBatch(List<String> pidAcs, Map<String, Set<String>> found) {
+            batches.add(CollectionUtils.createArrayList(pidAcs.toArray(new String[pidAcs.size()])));
+            for (String pidAc : pidAcs) {
+                if (upis.containsKey(pidAc)) {
+                    found.put(pidAc, upis.get(pidAc));
+                }
+            }
+        }
+
+    }
+
+    private static EnaGenomeConfig getConfig(int batchSize, boolean allowMissing) {
+        EnaGenomeConfig config = new EnaGenomeConfig();
+        config.setUpiBatchSize(batchSize);
+        config.setAllowMissingUpis(allowMissing);
+        return config;
+    }
+
+    private Genome getGenome(String location, int nProteins) {
+        Gene[] genes = new Gene[nProteins];
+        for (int i = 0; i < nProteins; i++) {
+            genes[i] = buildCdsGene(location, "gene" + i);
+            getProtein(genes[i]).addDatabaseReference(new DatabaseReferenceImpl(PID, "PID" + i, "PID" + i + ".1"));
+        }
+        return getEmptyGenome(1000, genes);
+    }
+
+    private static Protein getProtein(Gene gene) {
+        return gene.getProteins().iterator().next();
+    }
+
+    private static Map<String, Set<String>> getUpis(int nProteins) {
+        Map<String, Set<String>> upis = CollectionUtils.createHashMap();
+        for (int i = 0; i < nProteins; i++) {
+            Set<String> upi = CollectionUtils.createHashSet();
+            upi.add("UPI" + i);
+            upis.put("PID" + i + ".1", upi);
+        }
+        return upis;
+    }
+
+    @Test
+    public void testBatches() {
+        Genome genome = getGenome("1..99", 5);
+        TestProcessor processor = new TestProcessor(getConfig(2, false), getUpis(5));
+        processor.processGenome(genome);
+        assertEquals(3, processor.batches.size());
+        assertEquals(1, processor.batches.get(2).size());
+        int i = 0;
+        for (Gene gene : genome.getGenomicComponents().get(0).getGenes()) {
+            DatabaseReference upi = ModelUtils.getReferenceForType(getProtein(gene), UPI);
+            assertEquals("UPI" + i++, upi.getPrimaryIdentifier());
+        }
+    }
+
+    @Test
+    public void testShortCds() {
+        Genome genome = getGenome("1..6", 3);
+        TestProcessor processor = new TestProcessor(getConfig(2, false), getUpis(3));
+        processor.processGenome(genome);
+        assertTrue(processor.batches.isEmpty());
+        for (Gene gene : genome.getGenomicComponents().get(0).getGenes()) {
+            assertNull(ModelUtils.getReferenceForType(getProtein(gene), UPI));
+        }
+    }
+
+    @Test(expected = MaterializationUncheckedException.class)
+    public void testMultipleUpis() {
+        Map<String, Set<String>> upis = getUpis(3);
+        upis.get("PID1.1").add("UPIX");
+        new TestProcessor(getConfig(2, false), upis).processGenome(getGenome("1..99", 3));
+    }
+
+    @Test(expected = MaterializationUncheckedException.class)
+    public void testMissingUpi() {
+        Map<String, Set<String>> upis = getUpis(3);
+        upis.remove("PID1.1");
+        new TestProcessor(getConfig(2, false), upis).processGenome(getGenome("1..99", 3));
+    }
+
+    @Test
+    public void testAllowMissingUpi() {
+        Map<String, Set<String>> upis = getUpis(3);
+        upis.remove("PID1.1");
+        Genome genome = getGenome("1..99", 3);
+        new TestProcessor(getConfig(2, true), upis).processGenome(genome);
+        List<Gene> genes = CollectionUtils.createArrayList(genome.getGenomicComponents().get(0).getGenes()
+                .toArray(new Gene[3]));
+        assertEquals("UPI0", ModelUtils.getReferenceForType(getProtein(genes.get(0)), UPI).getPrimaryIdentifier());
+        assertNull(ModelUtils.getReferenceForType(getProtein(genes.get(1)), UPI));
+        assertEquals("UPI2", ModelUtils.getReferenceForType(getProtein(genes.get(2)), UPI).getPrimaryIdentifier());
+    }
+
+}
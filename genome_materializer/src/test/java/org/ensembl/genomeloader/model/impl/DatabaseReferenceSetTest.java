@@ -0,0 +1,87 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.genomeloader.model.impl;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.ensembl.genomeloader.model.DatabaseReference;
+import org.ensembl.genomeloader.model.DatabaseReferenceType;
+import org.ensembl.genomeloader.model.DatabaseReferenceType.TypeEnum;
+import org.ensembl.genomeloader.model.ModelUtils;
+import org.ensembl.genomeloader.util.collections.CollectionUtils;
+import org.junit.Test;
+
+public class DatabaseReferenceSetTest {
+
+    private static final DatabaseReferenceType UPI = new DatabaseReferenceType(1, "UniParc", "", "UniParc", "UniParc",
+            "UniParc", TypeEnum.PROTEIN);
+    private static final DatabaseReferenceType IPRO = new DatabaseReferenceType(2, "InterPro", "", "InterPro",
+            "InterPro", "Interpro", TypeEnum.PROTEIN);
+
+    @Test
+    public void testIndex() {
+        ProteinImpl protein = new ProteinImpl();
+        protein.addDatabaseReference(new DatabaseReferenceImpl(UPI, "UPI1"));
+        protein.addDatabaseReference(new DatabaseReferenceImpl(IPRO, "IPR1"));
+        protein.addDatabaseReference(new DatabaseReferenceImpl(IPRO, "IPR2"));
+        protein.addDatabaseReference(new DatabaseReferenceImpl(IPRO, "IPR2"));
+        assertEquals(3, protein.getDatabaseReferences().size());
+        Collection<DatabaseReference> ipros = ModelUtils.getReferencesForType(protein, IPRO);
+        assertEquals(2, ipros.size());
+        // lookups return the same view
+        assertSame(ipros, ModelUtils.getReferencesForType(protein, IPRO));
+        assertEquals("UPI1", ModelUtils.getReferenceForType(protein, UPI).getPrimaryIdentifier());
+        assertTrue(ModelUtils.getReferencesForType(new ProteinImpl(), IPRO).isEmpty());
+        // view follows changes to the set
+        protein.getDatabaseReferences().remove(new DatabaseReferenceImpl(IPRO, "IPR1"));
+        assertEquals(1, ipros.size());
+        for (Iterator<DatabaseReference> i = protein.getDatabaseReferences().iterator(); i.hasNext();) {
+            if (i.next().getDatabaseReferenceType().equals(IPRO)) {
+                i.remove();
+            }
+        }
+        assertTrue(ipros.isEmpty());
+        assertFalse(ModelUtils.hasReferenceForType(protein, IPRO));
+        protein.addDatabaseReference(new DatabaseReferenceImpl(IPRO, "IPR3"));
+        assertEquals(1, ipros.size());
+        protein.getDatabaseReferences().clear();
+        assertTrue(ipros.isEmpty());
+        assertFalse(ModelUtils.hasReferenceForType(protein, UPI));
+    }
+
+    @Test
+    public void testSetReferences() {
+        GeneImpl gene = new GeneImpl();
+        Set<DatabaseReference> refs = new HashSet<DatabaseReference>();
+        refs.add(new DatabaseReferenceImpl(UPI, "UPI1"));
+        refs.add(new DatabaseReferenceImpl(IPRO, "IPR1"));
+        gene.setDatabaseReferences(refs);
+        assertTrue(gene.getDatabaseReferences() instanceof DatabaseReferenceSet);
+        assertEquals(1, ModelUtils.getReferencesForType(gene, IPRO).size());
+        gene.getDatabaseReferences().removeAll(CollectionUtils.createArrayList(new DatabaseReferenceImpl(IPRO, "IPR1")));
+        assertTrue(ModelUtils.getReferencesForType(gene, IPRO).isEmpty());
+    }
+
+}
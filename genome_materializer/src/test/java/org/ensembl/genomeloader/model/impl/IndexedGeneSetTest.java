@@ -0,0 +1,117 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.ensembl.genomeloader.model.impl;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.biojavax.bio.seq.RichLocation.Strand;
+import org.ensembl.genomeloader.model.Gene;
+import org.ensembl.genomeloader.model.GeneName;
+import org.ensembl.genomeloader.model.GeneNameType;
+import org.ensembl.genomeloader.util.biojava.LocationUtils;
+import org.ensembl.genomeloader.util.collections.CollectionUtils;
+import org.junit.Test;
+
+public class IndexedGeneSetTest {
+
+    private static Gene buildGene(String locusTag, String location) {
+        GeneImpl gene = new GeneImpl();
+        gene.addGeneName(new GeneNameImpl(locusTag, GeneNameType.ORDEREDLOCUSNAMES));
+        gene.setLocation(new DelegatingEntityLocation(LocationUtils.parseEmblLocation(location)));
+        return gene;
+    }
+
+    private static List<GeneName> names(String name) {
+        return CollectionUtils.<GeneName> createArrayList(new GeneNameImpl(name, GeneNameType.ORDEREDLOCUSNAMES));
+    }
+
+    @Test
+    public void testFindByName() {
+        IndexedGeneSet<Gene> genes = new IndexedGeneSet<Gene>();
+        Gene g1 = buildGene("b0001", "100..200");
+        Gene g2 = buildGene("b0002", "300..400");
+        genes.add(g1);
+        genes.add(g2);
+        assertEquals(CollectionUtils.createArrayList(g2), genes.findByName(names("b0002")));
+        assertTrue(genes.findByName(names("b0003")).isEmpty());
+        // names of a different type do not match
+        assertTrue(genes.findByName(CollectionUtils.<GeneName> createArrayList(new GeneNameImpl("b0001",
+                GeneNameType.NAME))).isEmpty());
+        // genes found by several names are only returned once
+        List<GeneName> both = names("b0001");
+        both.addAll(names("b0002"));
+        both.addAll(names("b0001"));
+        assertEquals(CollectionUtils.createArrayList(g1, g2), genes.findByName(both));
+    }
+
+    @Test
+    public void testFindOverlapping() {
+        IndexedGeneSet<Gene> genes = new IndexedGeneSet<Gene>();
+        Gene g1 = buildGene("b0001", "100..5000");
+        Gene g2 = buildGene("b0002", "300..400");
+        Gene g3 = buildGene("b0003", "complement(350..450)");
+        genes.add(g1);
+        genes.add(g2);
+        genes.add(g3);
+        assertEquals(CollectionUtils.createArrayList(g1, g2, g3), genes.findOverlapping(390, 410, null));
+        assertEquals(CollectionUtils.createArrayList(g1, g2), genes.findOverlapping(390, 410, Strand.POSITIVE_STRAND));
+        assertEquals(CollectionUtils.createArrayList(g3), genes.findOverlapping(390, 410, Strand.NEGATIVE_STRAND));
+        // long genes starting well before the query are still found
+        assertEquals(CollectionUtils.createArrayList(g1), genes.findOverlapping(4000, 4001, null));
+        assertTrue(genes.findOverlapping(5001, 6000, null).isEmpty());
+        assertEquals(CollectionUtils.createArrayList(g1, g2), genes.findOverlapping(200, 300, null));
+    }
+
+    @Test
+    public void testUpdate() {
+        IndexedGeneSet<Gene> genes = new IndexedGeneSet<Gene>();
+        Gene g1 = buildGene("b0001", "100..200");
+        genes.add(g1);
+        assertTrue(genes.findOverlapping(1000, 1100, null).isEmpty());
+        g1.setLocation(new DelegatingEntityLocation(LocationUtils.parseEmblLocation("100..1050")));
+        g1.addGeneName(new GeneNameImpl("thrL", GeneNameType.ORDEREDLOCUSNAMES));
+        genes.update(g1);
+        assertEquals(CollectionUtils.createArrayList(g1), genes.findOverlapping(1000, 1100, null));
+        assertEquals(CollectionUtils.createArrayList(g1), genes.findByName(names("thrL")));
+    }
+
+    @Test
+    public void testRemove() {
+        IndexedGeneSet<Gene> genes = new IndexedGeneSet<Gene>();
+        Gene g1 = buildGene("b0001", "100..200");
+        Gene g2 = buildGene("b0002", "150..250");
+        genes.add(g1);
+        genes.add(g2);
+        assertEquals(2, genes.findOverlapping(160, 170, null).size());
+        genes.remove(g1);
+        assertEquals(CollectionUtils.createArrayList(g2), genes.findOverlapping(160, 170, null));
+        assertTrue(genes.findByName(names("b0001")).isEmpty());
+        for (Iterator<Gene> i = genes.iterator(); i.hasNext();) {
+            i.next();
+            i.remove();
+        }
+        assertTrue(genes.isEmpty());
+        assertTrue(genes.findOverlapping(160, 170, null).isEmpty());
+        assertTrue(genes.findByName(names("b0002")).isEmpty());
+    }
+
+}
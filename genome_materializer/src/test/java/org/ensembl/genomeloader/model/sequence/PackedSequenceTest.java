@@ -0,0 +1,98 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.genomeloader.model.sequence;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import org.biojava.bio.seq.DNATools;
+import org.junit.Test;
+
+public class PackedSequenceTest {
+
+    private static final String SEQ = "acgtacgtNNNNNNNNNNttgcaRYKMacgtACGTacgtacgtacgtacgtacgtacgtacgtNNacg";
+
+    @Test
+    public void testRoundTrip() {
+        PackedSequence packed = new PackedSequence();
+        packed.append(SEQ.substring(0, 10));
+        packed.append(SEQ.substring(10));
+        assertEquals(SEQ.length(), packed.length());
+        assertEquals(SEQ, packed.toString());
+        // runs of N count once, other codes per base, case is held separately
+        assertEquals(6, packed.getExceptionCount());
+        assertEquals(5, packed.getLowerCaseRunCount());
+        for (int i = 0; i < SEQ.length(); i++) {
+            assertEquals(SEQ.charAt(i), packed.charAt(i));
+            for (int j = i; j <= SEQ.length(); j++) {
+                assertEquals(SEQ.substring(i, j), packed.substring(i, j));
+            }
+        }
+    }
+
+    @Test
+    public void testMixedCase() {
+        // soft-masked sequence: alternating blocks of upper and lower case
+        StringBuilder sb = new StringBuilder();
+        String bases = "ACGT";
+        for (int i = 0; i < 100000; i++) {
+            char c = bases.charAt((i * 7 + i / 3) % 4);
+            sb.append((i / 1000) % 2 == 0 ? c : Character.toLowerCase(c));
+        }
+        String seq = "a" + sb.toString();
+        PackedSequence packed = new PackedSequence();
+        packed.append(seq);
+        assertEquals(seq, packed.toString());
+        for (int i = 0; i < seq.length(); i += 997) {
+            assertEquals(seq.charAt(i), packed.charAt(i));
+            assertEquals(seq.substring(i, Math.min(seq.length(), i + 2500)),
+                    packed.substring(i, Math.min(seq.length(), i + 2500)));
+        }
+        // case is not stored as exceptions, and costs one run per masked block
+        assertEquals(0, packed.getExceptionCount());
+        assertEquals(51, packed.getLowerCaseRunCount());
+        // well under the 2 bytes per base used by a String
+        assertTrue("Stored " + packed.getStoredBytes() + " bytes",
+                packed.getStoredBytes() < seq.length() / 3);
+    }
+
+    @Test
+    public void testReverseComplement() throws Exception {
+        PackedSequence packed = new PackedSequence();
+        packed.append(SEQ);
+        for (int i = 0; i < SEQ.length(); i += 7) {
+            String expected = DNATools.reverseComplement(DNATools.createDNA(SEQ.substring(i))).seqString();
+            assertEquals(expected, packed.reverseComplement(i, SEQ.length()).toLowerCase());
+        }
+    }
+
+    @Test
+    public void testSequence() {
+        Sequence seq = new Sequence(SEQ);
+        assertEquals(SEQ.length(), seq.getLength());
+        assertEquals(SEQ.substring(4, 14), seq.getSequence(5, 10));
+        assertEquals(SEQ.substring(60), seq.getSequence(61, -1));
+        try {
+            seq.getSequence(SEQ.length(), 2);
+            fail("Expected exception for range beyond end of sequence");
+        } catch (StringIndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.ensembl.genomeloader.model.sequence;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.fail;
+
+import java.io.File;
+
+import org.junit.Test;
+
+public class SequenceStoreTest {
+
+    private static final String SEQ = "acgtacgtNNNNNNNNNNttgcaRYKMacgtACGTacgtacgtacgtacgtacgtacgtacgtNNacg";
+
+    private static Sequence getSequence(String id, String bases) {
+        Sequence seq = new Sequence(bases);
+        seq.setIdentifier(id);
+        seq.setDescription("Sequence " + id);
+        return seq;
+    }
+
+    @Test
+    public void testStore() throws Exception {
+        File f = File.createTempFile("sequences", ".seq");
+        SequenceStore store = new SequenceStore(f);
+        try {
+            Sequence seq1 = getSequence("1", SEQ);
+            StringBuilder long2 = new StringBuilder();
+            for (int i = 0; i < 1000; i++) {
+                long2.append(SEQ);
+            }
+            Sequence seq2 = getSequence("2", long2.toString());
+            StoredSequence stored1 = store.store(seq1);
+            StoredSequence stored2 = store.store(seq2);
+            assertEquals("1", stored1.getIdentifier());
+            assertEquals("Sequence 2", stored2.getDescription());
+            assertEquals(SEQ.length(), stored1.getLength());
+            assertEquals(long2.length(), stored2.getLength());
+            assertEquals(SEQ, stored1.getSequence());
+            assertEquals(long2.toString(), stored2.getSequence());
+            for (int i = 1; i <= SEQ.length(); i++) {
+                for (int len = 0; i + len - 1 <= SEQ.length(); len++) {
+                    assertEquals(seq1.getSequence(i, len), stored1.getSequence(i, len));
+                    assertEquals(seq1.getReverseComplement(i, len), stored1.getReverseComplement(i, len));
+                }
+                assertEquals(seq1.getSequence(i, -1), stored1.getSequence(i, -1));
+            }
+            char[] chars = new char[20000];
+            stored2.getChars(5, 20005, chars, 0);
+            assertEquals(long2.substring(5, 20005), new String(chars));
+        } finally {
+            store.close();
+        }
+        assertFalse(f.exists());
+    }
+
+    @Test
+    public void testStoredSequenceUnmodifiable() throws Exception {
+        File f = File.createTempFile("sequences", ".seq");
+        SequenceStore store = new SequenceStore(f);
+        try {
+            StoredSequence stored = store.store(getSequence("1", SEQ));
+            try {
+                stored.appendSequence("acgt");
+                fail("Stored sequence modified");
+            } catch (UnsupportedOperationException e) {
+                // expected
+            }
+            try {
+                stored.getSequence(SEQ.length(), 2);
+                fail("Read past end of stored sequence");
+            } catch (StringIndexOutOfBoundsException e) {
+                // expected
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+}
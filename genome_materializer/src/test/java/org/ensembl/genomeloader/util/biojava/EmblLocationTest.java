@@ -0,0 +1,90 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.ensembl.genomeloader.util.biojava;
+
+import org.biojavax.bio.seq.RichLocation;
+
+import junit.framework.TestCase;
+
+public class EmblLocationTest extends TestCase {
+
+	public void testNestedComplement() {
+		EmblLocation loc = EmblLocation
+				.parse("join(complement(join(1..2,<3..4)),5..>6)");
+		assertEquals(3, loc.getSegmentCount());
+		assertTrue(loc.isComplement(0));
+		assertTrue(loc.isComplement(1));
+		assertFalse(loc.isComplement(2));
+		assertTrue(loc.isFuzzyStart(1));
+		assertTrue(loc.isFuzzyEnd(2));
+		assertEquals(1, loc.getMin());
+		assertEquals(6, loc.getMax());
+		RichLocation rLoc = loc.toRichLocation();
+		assertEquals(RichLocation.Strand.UNKNOWN_STRAND, rLoc.getStrand());
+		assertEquals("join(complement(1..2),complement(<3..4),5..>6)",
+				LocationUtils.locationToEmblFormat(rLoc));
+	}
+
+	public void testRemoteAccession() {
+		EmblLocation loc = EmblLocation
+				.parse("join(AB000001.1:1..100,complement(200..300))");
+		assertEquals(2, loc.getSegmentCount());
+		assertEquals("AB000001.1", loc.getAccession(0));
+		assertNull(loc.getAccession(1));
+		assertEquals(1, loc.getStart(0));
+		assertEquals(100, loc.getEnd(0));
+	}
+
+	public void testInterbase() {
+		EmblLocation loc = EmblLocation.parse("123^124");
+		assertTrue(loc.isInterbase(0));
+		assertEquals(123, loc.getStart(0));
+		assertEquals(124, loc.getEnd(0));
+		assertEquals("123^124", loc.toString());
+		assertFalse(EmblLocation.parse("123..124").isInterbase(0));
+	}
+
+	public void testEmpty() {
+		assertEquals(0, EmblLocation.parse("").getSegmentCount());
+		assertEquals(RichLocation.EMPTY_LOCATION, LocationUtils
+				.parseEmblLocation("join()"));
+		assertEquals(2, EmblLocation.parse("join(1..2,,3..4)")
+				.getSegmentCount());
+	}
+
+	public void testUnbalanced() {
+		EmblLocation loc = EmblLocation.parse("complement(1..2");
+		assertTrue(loc.isComplement(0));
+		assertEquals(2, loc.getEnd(0));
+		assertEquals(2, EmblLocation.parse("join(1..10,20..30))")
+				.getSegmentCount());
+	}
+
+	public void testInvalid() {
+		for (String locStr : new String[] { "1..", "abc", "join(1..2",
+				"join(1..2))(", "99999999999" }) {
+			try {
+				EmblLocation.parse(locStr);
+				fail("Expected " + locStr + " to be rejected");
+			} catch (LocationException e) {
+				// expected
+			}
+		}
+	}
+
+}
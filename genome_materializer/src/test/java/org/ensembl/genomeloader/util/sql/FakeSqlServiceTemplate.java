@@ -0,0 +1,100 @@
+/*
+ * Copyright [2009-2014] EMBL-European Bioinformatics Institute
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.genomeloader.util.sql;
+
+import static junit.framework.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ensembl.genomeloader.services.sql.ROResultSet;
+
+/**
+ * Fake {@link SqlServiceTemplate} for tests which passes each query to a
+ * {@link Query} instead of a database, checking that one bind is supplied for
+ * each placeholder and counting the number of queries run
+ */
+public class FakeSqlServiceTemplate implements InvocationHandler {
+
+    /**
+     * Answers a query made through the template
+     */
+    public interface Query {
+
+        /**
+         * @param method
+         *            name of the template method called, e.g.
+         *            <code>queryForList</code>
+         * @param sql
+         *            query
+         * @param target
+         *            {@link RowMapper} or result class passed to the method
+         * @param binds
+         *            bind parameters for the query
+         * @return result of the method
+         */
+        Object answer(String method, String sql, Object target, Object[] binds) throws Exception;
+
+    }
+
+    private final Query query;
+    private final AtomicInteger queries = new AtomicInteger();
+    private final SqlServiceTemplate template;
+
+    public FakeSqlServiceTemplate(Query query) {
+        this.query = query;
+        this.template = (SqlServiceTemplate) Proxy.newProxyInstance(FakeSqlServiceTemplate.class.getClassLoader(),
+                new Class[] { SqlServiceTemplate.class }, this);
+    }
+
+    public SqlServiceTemplate getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return number of queries run through the template
+     */
+    public int getQueries() {
+        return queries.get();
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String sql = (String) args[0];
+        Object[] binds = (Object[]) args[2];
+        assertEquals(binds.length, sql.replaceAll("[^?]", "").length());
+        queries.incrementAndGet();
+        return query.answer(method.getName(), sql, args[1], binds);
+    }
+
+    /**
+     * @param values
+     *            column values in order
+     * @return result set holding a single row, returning the value of a
+     *         column from any getter
+     */
+    public static ROResultSet getRow(final Object... values) {
+        return (ROResultSet) Proxy.newProxyInstance(FakeSqlServiceTemplate.class.getClassLoader(),
+                new Class[] { ROResultSet.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        return values[(Integer) args[0] - 1];
+                    }
+                });
+    }
+
+}